@@ -0,0 +1,15 @@
+// Pass 2 and 3: one direction of the separable 5-tap Gaussian (sigma 1.4),
+// matching cv::GaussianBlur(Size(5, 5), 1.4). uStep is one texel along the
+// blur direction.
+precision mediump float;
+
+varying vec2 vTexCoord;
+uniform sampler2D uTexture;
+uniform vec2 uStep;
+
+void main() {
+    float sum = texture2D(uTexture, vTexCoord).r * 0.30578;
+    sum += (texture2D(uTexture, vTexCoord - uStep).r + texture2D(uTexture, vTexCoord + uStep).r) * 0.23692;
+    sum += (texture2D(uTexture, vTexCoord - 2.0 * uStep).r + texture2D(uTexture, vTexCoord + 2.0 * uStep).r) * 0.11020;
+    gl_FragColor = vec4(sum, sum, sum, 1.0);
+}
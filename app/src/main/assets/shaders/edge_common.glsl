@@ -0,0 +1,31 @@
+// Shared by the gradient passes; prepended to edge_sobel, edge_nms and
+// edge_threshold before compiling.
+//
+// Gradient textures carry the L1 magnitude |gx| + |gy| of the [0, 1] luma
+// scaled by 1/8 and packed into 16 bits across R (high) and G (low), and the
+// quantised gradient direction in B (sector / 3: 0 = horizontal, 1 and 3 =
+// diagonals, 2 = vertical), the same four sectors cv::Canny uses.
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
+
+varying vec2 vTexCoord;
+uniform sampler2D uTexture;
+uniform vec2 uTexelSize;
+
+vec2 packMagnitude(float magnitude) {
+    float v = floor(clamp(magnitude, 0.0, 1.0) * 65535.0 + 0.5);
+    float high = floor(v / 256.0);
+    return vec2(high, v - high * 256.0) / 255.0;
+}
+
+float unpackMagnitude(vec4 texel) {
+    vec2 bytes = floor(texel.rg * 255.0 + 0.5);
+    return (bytes.x * 256.0 + bytes.y) / 65535.0;
+}
+
+float sampleMagnitude(vec2 offset) {
+    return unpackMagnitude(texture2D(uTexture, vTexCoord + offset * uTexelSize));
+}
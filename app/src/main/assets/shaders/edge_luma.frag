@@ -0,0 +1,18 @@
+// Pass 1: RGB to luma with the BT.601 weights cv::cvtColor uses.
+// Define EXTERNAL_INPUT to sample the camera's external OES texture.
+#ifdef EXTERNAL_INPUT
+#extension GL_OES_EGL_image_external : require
+#define INPUT_SAMPLER samplerExternalOES
+#else
+#define INPUT_SAMPLER sampler2D
+#endif
+
+precision mediump float;
+
+varying vec2 vTexCoord;
+uniform INPUT_SAMPLER uTexture;
+
+void main() {
+    float luma = dot(texture2D(uTexture, vTexCoord).rgb, vec3(0.299, 0.587, 0.114));
+    gl_FragColor = vec4(luma, luma, luma, 1.0);
+}
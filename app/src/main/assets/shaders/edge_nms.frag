@@ -0,0 +1,23 @@
+// Pass 5: non-maximum suppression along the gradient direction. Ties keep
+// the first pixel along the scan, as cv::Canny does.
+void main() {
+    vec4 center = texture2D(uTexture, vTexCoord);
+    float magnitude = unpackMagnitude(center);
+    float sector = floor(center.b * 3.0 + 0.5);
+
+    vec2 direction;
+    if (sector == 0.0) {
+        direction = vec2(1.0, 0.0);
+    } else if (sector == 1.0) {
+        direction = vec2(1.0, 1.0);
+    } else if (sector == 2.0) {
+        direction = vec2(0.0, 1.0);
+    } else {
+        direction = vec2(-1.0, 1.0);
+    }
+
+    float before = sampleMagnitude(-direction);
+    float after = sampleMagnitude(direction);
+    float kept = (magnitude > before && magnitude >= after) ? magnitude : 0.0;
+    gl_FragColor = vec4(packMagnitude(kept), center.b, 1.0);
+}
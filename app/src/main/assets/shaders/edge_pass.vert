@@ -0,0 +1,9 @@
+// Fullscreen pass for the GPU edge pipeline. Texture coordinates map the
+// target 1:1 onto the source, so every pass keeps the source image layout.
+attribute vec2 aPosition;
+varying vec2 vTexCoord;
+
+void main() {
+    vTexCoord = aPosition * 0.5 + 0.5;
+    gl_Position = vec4(aPosition, 0.0, 1.0);
+}
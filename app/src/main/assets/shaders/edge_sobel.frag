@@ -0,0 +1,32 @@
+// Pass 4: 3x3 Sobel on the blurred luma, L1 magnitude and direction sector.
+float luma(float dx, float dy) {
+    return texture2D(uTexture, vTexCoord + vec2(dx, dy) * uTexelSize).r;
+}
+
+void main() {
+    float tl = luma(-1.0, -1.0);
+    float t  = luma( 0.0, -1.0);
+    float tr = luma( 1.0, -1.0);
+    float l  = luma(-1.0,  0.0);
+    float r  = luma( 1.0,  0.0);
+    float bl = luma(-1.0,  1.0);
+    float b  = luma( 0.0,  1.0);
+    float br = luma( 1.0,  1.0);
+
+    float gx = (tr + 2.0 * r + br) - (tl + 2.0 * l + bl);
+    float gy = (bl + 2.0 * b + br) - (tl + 2.0 * t + tr);
+    float ax = abs(gx);
+    float ay = abs(gy);
+
+    // tan(22.5) and tan(67.5) bound the four sectors
+    float sector;
+    if (ay <= ax * 0.41421356) {
+        sector = 0.0;
+    } else if (ay > ax * 2.41421356) {
+        sector = 2.0;
+    } else {
+        sector = gx * gy > 0.0 ? 1.0 : 3.0;
+    }
+
+    gl_FragColor = vec4(packMagnitude((ax + ay) / 8.0), sector / 3.0, 1.0);
+}
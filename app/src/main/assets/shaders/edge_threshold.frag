@@ -0,0 +1,25 @@
+// Pass 6: double threshold with one step of hysteresis. Strong pixels are
+// edges; weak pixels are kept when a direct neighbour is strong. Thresholds
+// are in cv::Canny units (L1 gradient of 8-bit luma).
+uniform float uLowThreshold;
+uniform float uHighThreshold;
+
+void main() {
+    // Packed magnitude * 8 * 255 is the 8-bit Sobel L1 magnitude
+    float scale = 8.0 * 255.0;
+    float magnitude = unpackMagnitude(texture2D(uTexture, vTexCoord)) * scale;
+
+    float edge = 0.0;
+    if (magnitude > uHighThreshold) {
+        edge = 1.0;
+    } else if (magnitude > uLowThreshold) {
+        for (int y = -1; y <= 1; y++) {
+            for (int x = -1; x <= 1; x++) {
+                if (sampleMagnitude(vec2(float(x), float(y))) * scale > uHighThreshold) {
+                    edge = 1.0;
+                }
+            }
+        }
+    }
+    gl_FragColor = vec4(edge, edge, edge, 1.0);
+}
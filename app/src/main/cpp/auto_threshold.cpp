@@ -0,0 +1,138 @@
+#include "auto_threshold.h"
+
+#include <algorithm>
+#include <cstring>
+
+// Median mode: thresholds at (1 -/+ sigma) times the median
+#define MEDIAN_SIGMA 0.33
+// Weight of the newest level in the moving average
+#define LEVEL_SMOOTHING 0.2
+// Keeps near-black scenes from turning sensor noise into edges
+#define MIN_LOW_THRESHOLD 10.0
+#define MIN_THRESHOLD_GAP 20.0
+
+AutoThreshold::AutoThreshold() {
+    reset();
+}
+
+void AutoThreshold::reset() {
+    memset(phaseHistogram, 0, sizeof(phaseHistogram));
+    memset(histogram, 0, sizeof(histogram));
+    sampleCount = 0;
+    nextPhase = 0;
+    frameWidth = 0;
+    frameHeight = 0;
+    frameChannels = 0;
+    hasLevel = false;
+    level = 0.0;
+    low = 50.0;
+    high = 150.0;
+}
+
+bool AutoThreshold::update(const uint8_t* pixels, int width, int height, int rowStride, int channels,
+                           ThresholdMode mode) {
+    if (pixels == nullptr || width < SAMPLE_STEP || height < SAMPLE_STEP * PHASES
+        || (channels != 1 && channels != 3 && channels != 4) || rowStride < width * channels) {
+        return false;
+    }
+    if (width != frameWidth || height != frameHeight || channels != frameChannels) {
+        // Phase shares of a different geometry do not add up; start over
+        reset();
+        frameWidth = width;
+        frameHeight = height;
+        frameChannels = channels;
+    }
+
+    // Swap this phase's old samples for the current frame's
+    uint32_t* share = phaseHistogram[nextPhase];
+    for (int i = 0; i < 256; i++) {
+        histogram[i] -= share[i];
+        sampleCount -= share[i];
+    }
+    memset(share, 0, 256 * sizeof(uint32_t));
+
+    int rowStep = SAMPLE_STEP * PHASES;
+    int pixelStep = SAMPLE_STEP * channels;
+    int rowBytes = width * channels;
+    for (int y = nextPhase * SAMPLE_STEP; y < height; y += rowStep) {
+        const uint8_t* row = pixels + static_cast<size_t>(y) * rowStride;
+        if (channels == 1) {
+            for (int x = 0; x < rowBytes; x += pixelStep) {
+                share[row[x]]++;
+            }
+        } else {
+            // BT.601 luma from RGB(A), in 8.8 fixed point
+            for (int x = 0; x < rowBytes; x += pixelStep) {
+                share[(77 * row[x] + 150 * row[x + 1] + 29 * row[x + 2]) >> 8]++;
+            }
+        }
+    }
+    for (int i = 0; i < 256; i++) {
+        histogram[i] += share[i];
+        sampleCount += share[i];
+    }
+    nextPhase = (nextPhase + 1) % PHASES;
+
+    if (sampleCount == 0 || mode == THRESHOLD_FIXED) {
+        return true;
+    }
+
+    int estimate = mode == THRESHOLD_OTSU ? otsuOf(histogram, sampleCount) : medianOf(histogram, sampleCount);
+    level = hasLevel ? level + LEVEL_SMOOTHING * (estimate - level) : estimate;
+    hasLevel = true;
+
+    if (mode == THRESHOLD_OTSU) {
+        high = level;
+        low = level * 0.5;
+    } else {
+        low = (1.0 - MEDIAN_SIGMA) * level;
+        high = (1.0 + MEDIAN_SIGMA) * level;
+    }
+    low = std::max(MIN_LOW_THRESHOLD, std::min(low, 255.0 - MIN_THRESHOLD_GAP));
+    high = std::max(low + MIN_THRESHOLD_GAP, std::min(high, 255.0));
+    return true;
+}
+
+int AutoThreshold::medianOf(const uint32_t* histogram, uint32_t count) {
+    uint32_t half = (count + 1) / 2;
+    uint32_t seen = 0;
+    for (int i = 0; i < 256; i++) {
+        seen += histogram[i];
+        if (seen >= half) {
+            return i;
+        }
+    }
+    return 255;
+}
+
+int AutoThreshold::otsuOf(const uint32_t* histogram, uint32_t count) {
+    double sumAll = 0.0;
+    for (int i = 0; i < 256; i++) {
+        sumAll += static_cast<double>(i) * histogram[i];
+    }
+
+    // Threshold that maximises the between-class variance
+    double sumBelow = 0.0;
+    uint32_t countBelow = 0;
+    double bestVariance = -1.0;
+    int best = 0;
+    for (int t = 0; t < 256; t++) {
+        countBelow += histogram[t];
+        if (countBelow == 0) {
+            continue;
+        }
+        uint32_t countAbove = count - countBelow;
+        if (countAbove == 0) {
+            break;
+        }
+        sumBelow += static_cast<double>(t) * histogram[t];
+        double meanBelow = sumBelow / countBelow;
+        double meanAbove = (sumAll - sumBelow) / countAbove;
+        double variance = static_cast<double>(countBelow) * countAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+        if (variance > bestVariance) {
+            bestVariance = variance;
+            best = t;
+        }
+    }
+    return best;
+}
@@ -0,0 +1,59 @@
+#ifndef AUTO_THRESHOLD_H
+#define AUTO_THRESHOLD_H
+
+#include <cstdint>
+
+// How Canny thresholds are chosen
+enum ThresholdMode {
+    THRESHOLD_FIXED = 0,    // Caller's thresholds
+    THRESHOLD_MEDIAN = 1,   // Band around the median luma
+    THRESHOLD_OTSU = 2      // Otsu's threshold as the high one, half of it as the low one
+};
+
+// Canny thresholds that follow scene brightness.
+//
+// Luma is sampled every SAMPLE_STEP pixels along each axis. The sample rows
+// are split into PHASES interleaved sets, and each frame re-reads only one
+// set, replacing that set's share of a running histogram. The histogram
+// therefore always covers the last PHASES frames, at 1 / (STEP * STEP * PHASES)
+// of the pixels per frame: about 32k reads at 1080p. The level picked from it
+// (median or Otsu) is smoothed with an exponential moving average before the
+// thresholds are derived, so exposure steps do not make the edge map flicker.
+class AutoThreshold {
+public:
+    static const int SAMPLE_STEP = 4;
+    static const int PHASES = 4;
+
+    AutoThreshold();
+
+    // Sample one phase of an 8-bit gray, RGB or RGBA frame and update the
+    // thresholds. Returns false, leaving them unchanged, for unusable input.
+    bool update(const uint8_t* pixels, int width, int height, int rowStride, int channels, ThresholdMode mode);
+
+    // Forget the histogram and the smoothed level
+    void reset();
+
+    double getLow() const { return low; }
+    double getHigh() const { return high; }
+
+    // Smoothed luma level the thresholds were derived from
+    double getLevel() const { return level; }
+
+private:
+    uint32_t phaseHistogram[PHASES][256];
+    uint32_t histogram[256];
+    uint32_t sampleCount;
+    int nextPhase;
+    int frameWidth;
+    int frameHeight;
+    int frameChannels;
+    bool hasLevel;
+    double level;
+    double low;
+    double high;
+
+    static int medianOf(const uint32_t* histogram, uint32_t count);
+    static int otsuOf(const uint32_t* histogram, uint32_t count);
+};
+
+#endif // AUTO_THRESHOLD_H
@@ -0,0 +1,222 @@
+#include "edge_codec.h"
+#include <cstring>
+
+namespace {
+
+inline bool putVarint(uint32_t value, uint8_t*& p, const uint8_t* end) {
+    do {
+        if (p == end) {
+            return false;
+        }
+        uint8_t byte = value & 0x7F;
+        value >>= 7;
+        *p++ = byte | (value ? 0x80 : 0);
+    } while (value);
+    return true;
+}
+
+inline bool getVarint(const uint8_t*& p, const uint8_t* end, uint32_t& value) {
+    value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+        if (p == end) {
+            return false;
+        }
+        uint8_t byte = *p++;
+        value |= static_cast<uint32_t>(byte & 0x7F) << shift;
+        if (!(byte & 0x80)) {
+            return true;
+        }
+    }
+    return false;
+}
+
+inline uint64_t load64(const uint8_t* p) {
+    uint64_t v;
+    memcpy(&v, p, sizeof(v));
+    return v;
+}
+
+} // namespace
+
+EdgeCodec::EdgeCodec(int keyframeInterval)
+    : keyframeInterval(keyframeInterval > 0 ? keyframeInterval : 1)
+    , framesSinceKeyframe(0)
+    , keyframePending(true)
+    , refWidth(0)
+    , refHeight(0)
+    , lastKeyframeSize(0) {
+}
+
+size_t EdgeCodec::maxEncodedSize(int width, int height) {
+    // A varint is never longer than the (non-zero) run it encodes; only the leading
+    // run may be empty, which costs one extra byte
+    return EDGE_CODEC_HEADER_SIZE + static_cast<size_t>(width) * height + 1;
+}
+
+void EdgeCodec::reset() {
+    reference.clear();
+    refWidth = 0;
+    refHeight = 0;
+    framesSinceKeyframe = 0;
+    lastKeyframeSize = 0;
+    keyframePending = true;
+}
+
+size_t EdgeCodec::encode(const uint8_t* edges, int width, int height, int stride,
+                         uint8_t* out, size_t capacity, bool* isKeyframe) {
+    if (!edges || !out || width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF ||
+        stride < width || capacity < EDGE_CODEC_HEADER_SIZE) {
+        return 0;
+    }
+
+    bool keyframe = keyframePending || reference.empty() ||
+                    width != refWidth || height != refHeight ||
+                    framesSinceKeyframe >= keyframeInterval;
+
+    size_t size = 0;
+    if (!keyframe) {
+        size = encodeRuns(edges, width, height, stride, reference.data(), out, capacity);
+        // Once the scene has drifted so far that the delta is bigger than a keyframe,
+        // start over from a fresh keyframe
+        if (size == 0 || size > lastKeyframeSize) {
+            keyframe = true;
+        }
+    }
+
+    if (keyframe) {
+        size = encodeRuns(edges, width, height, stride, nullptr, out, capacity);
+        if (size == 0) {
+            return 0;
+        }
+        storeReference(edges, width, height, stride);
+        lastKeyframeSize = size;
+        framesSinceKeyframe = 0;
+        keyframePending = false;
+    }
+    framesSinceKeyframe++;
+
+    out[0] = keyframe ? EDGE_CODEC_FLAG_KEYFRAME : 0;
+    out[1] = static_cast<uint8_t>(width >> 8);
+    out[2] = static_cast<uint8_t>(width);
+    out[3] = static_cast<uint8_t>(height >> 8);
+    out[4] = static_cast<uint8_t>(height);
+
+    if (isKeyframe) {
+        *isKeyframe = keyframe;
+    }
+    return size;
+}
+
+size_t EdgeCodec::encodeRuns(const uint8_t* edges, int width, int height, int stride,
+                             const uint8_t* ref, uint8_t* out, size_t capacity) const {
+    uint8_t* p = out + EDGE_CODEC_HEADER_SIZE;
+    const uint8_t* end = out + capacity;
+
+    bool state = false;
+    uint32_t run = 0;
+
+    for (int y = 0; y < height; y++) {
+        const uint8_t* row = edges + static_cast<size_t>(y) * stride;
+        const uint8_t* refRow = ref ? ref + static_cast<size_t>(y) * width : nullptr;
+
+        int x = 0;
+        while (x < width) {
+            // Skip 8 pixels at a time while they continue the current run. The reference is
+            // stored as 0x00/0xFF, so equal words mean "unchanged" and complementary words
+            // mean "all flipped".
+            if (x + 8 <= width) {
+                uint64_t a = load64(row + x);
+                uint64_t b = refRow ? load64(refRow + x) : 0;
+                if (state ? a == ~b : a == b) {
+                    run += 8;
+                    x += 8;
+                    continue;
+                }
+            }
+
+            bool bit = (row[x] != 0) != (refRow && refRow[x] != 0);
+            if (bit != state) {
+                if (!putVarint(run, p, end)) {
+                    return 0;
+                }
+                run = 0;
+                state = bit;
+            }
+            run++;
+            x++;
+        }
+    }
+
+    if (!putVarint(run, p, end)) {
+        return 0;
+    }
+    return p - out;
+}
+
+void EdgeCodec::storeReference(const uint8_t* edges, int width, int height, int stride) {
+    reference.resize(static_cast<size_t>(width) * height);
+    uint8_t* dst = reference.data();
+    for (int y = 0; y < height; y++) {
+        const uint8_t* row = edges + static_cast<size_t>(y) * stride;
+        for (int x = 0; x < width; x++) {
+            *dst++ = row[x] ? 0xFF : 0x00;
+        }
+    }
+    refWidth = width;
+    refHeight = height;
+}
+
+bool EdgeDecoder::decode(const uint8_t* data, size_t size, uint8_t* out, int width, int height) {
+    if (!data || !out || size < EDGE_CODEC_HEADER_SIZE) {
+        return false;
+    }
+
+    int frameWidth = (data[1] << 8) | data[2];
+    int frameHeight = (data[3] << 8) | data[4];
+    if (frameWidth != width || frameHeight != height) {
+        return false;
+    }
+
+    size_t pixels = static_cast<size_t>(width) * height;
+    bool keyframe = (data[0] & EDGE_CODEC_FLAG_KEYFRAME) != 0;
+    if (!keyframe && reference.size() != pixels) {
+        return false;
+    }
+
+    const uint8_t* ref = keyframe ? nullptr : reference.data();
+    const uint8_t* p = data + EDGE_CODEC_HEADER_SIZE;
+    const uint8_t* end = data + size;
+    size_t pos = 0;
+    bool state = false;
+
+    while (pos < pixels) {
+        uint32_t run;
+        if (!getVarint(p, end, run) || run > pixels - pos) {
+            return false;
+        }
+
+        if (!state) {
+            if (ref) {
+                memcpy(out + pos, ref + pos, run);
+            } else {
+                memset(out + pos, 0x00, run);
+            }
+        } else {
+            if (ref) {
+                for (uint32_t i = 0; i < run; i++) {
+                    out[pos + i] = static_cast<uint8_t>(~ref[pos + i]);
+                }
+            } else {
+                memset(out + pos, 0xFF, run);
+            }
+        }
+
+        pos += run;
+        state = !state;
+    }
+
+    if (keyframe) {
+        reference.assign(out, out + pixels);
+    }
+    return true;
+}
@@ -0,0 +1,77 @@
+#ifndef EDGE_CODEC_H
+#define EDGE_CODEC_H
+
+#include <cstddef>
+#include <cstdint>
+#include <vector>
+
+// Temporal delta + run-length codec for binary edge maps.
+//
+// Every pixel is treated as a single bit (non-zero = edge). Keyframes encode
+// the map directly; delta frames encode the XOR against the most recent
+// keyframe, so any delta can be decoded as long as its keyframe arrived.
+//
+// Encoded frame layout:
+//   u8      flags (EDGE_CODEC_FLAG_KEYFRAME)
+//   u16 BE  width
+//   u16 BE  height
+//   varint  run lengths (LEB128), alternating clear/set bits, starting with clear
+//
+// Keep in sync with codec/EdgeFrameDecoder.java and web/src/frameRenderer.ts.
+
+#define EDGE_CODEC_HEADER_SIZE 5
+#define EDGE_CODEC_FLAG_KEYFRAME 0x01
+
+class EdgeCodec {
+public:
+    explicit EdgeCodec(int keyframeInterval = 30);
+
+    // Upper bound on encoded size for the given dimensions
+    static size_t maxEncodedSize(int width, int height);
+
+    // Encode one edge map. Returns bytes written, or 0 if the input is invalid
+    // or the output buffer is too small.
+    size_t encode(const uint8_t* edges, int width, int height, int stride,
+                  uint8_t* out, size_t capacity, bool* isKeyframe = nullptr);
+
+    // Make the next frame a keyframe (new viewer, lost packet, ...)
+    void forceKeyframe() { keyframePending = true; }
+
+    void setKeyframeInterval(int interval) { keyframeInterval = interval > 0 ? interval : 1; }
+
+    // Drop reference state; the next frame will be a keyframe
+    void reset();
+
+    static bool isKeyframe(const uint8_t* data, size_t size) {
+        return size >= EDGE_CODEC_HEADER_SIZE && (data[0] & EDGE_CODEC_FLAG_KEYFRAME) != 0;
+    }
+
+private:
+    int keyframeInterval;
+    int framesSinceKeyframe;
+    bool keyframePending;
+    int refWidth;
+    int refHeight;
+    size_t lastKeyframeSize;
+
+    // Last keyframe, one 0x00/0xFF byte per pixel, tightly packed
+    std::vector<uint8_t> reference;
+
+    size_t encodeRuns(const uint8_t* edges, int width, int height, int stride,
+                      const uint8_t* ref, uint8_t* out, size_t capacity) const;
+    void storeReference(const uint8_t* edges, int width, int height, int stride);
+};
+
+class EdgeDecoder {
+public:
+    // Decode into a tightly packed 0/255 map of width*height bytes.
+    // Returns false on malformed input or a delta frame without its keyframe.
+    bool decode(const uint8_t* data, size_t size, uint8_t* out, int width, int height);
+
+    void reset() { reference.clear(); }
+
+private:
+    std::vector<uint8_t> reference;
+};
+
+#endif // EDGE_CODEC_H
@@ -1,16 +1,70 @@
 #include "frame_processor.h"
+#include "native_trace.h"
+#include <opencv2/core/ocl.hpp>
+#include <algorithm>
 #include <chrono>
+#include <cstring>
+#include <vector>
 
 #define LOG_TAG "FrameProcessor"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
 
+// Pyramid mode: the coarse pass runs at lower thresholds so weak full-resolution
+// edges still fall inside the mask
+#define PYRAMID_COARSE_THRESHOLD_SCALE 0.5
+// Coarse rows per band; full-resolution Canny runs on the covered columns of a band
+#define PYRAMID_BAND_ROWS 8
+// Covered column runs closer than this (coarse pixels) are merged into one region
+#define PYRAMID_MERGE_GAP 4
+// Context around each region, so gradients and non-maximum suppression at its
+// border match a full-frame run
+#define PYRAMID_REGION_PAD 8
+// Above this fraction of the frame a single full-frame Canny is cheaper
+#define PYRAMID_FULL_FRAME_FRACTION 0.7
+// Context around each region of interest, for the same reason as PYRAMID_REGION_PAD
+#define ROI_REGION_PAD 8
+
 FrameProcessor::FrameProcessor() 
     : frameWidth(0)
     , frameHeight(0)
     , initialized(false)
+    , activeWidth(0)
+    , activeHeight(0)
     , lastProcessingTime(0.0)
-    , processedFrameCount(0) {
+    , processedFrameCount(0)
+    , windowCount(0)
+    , windowNext(0)
+    , cpuMigrations(0)
+    , backend(BACKEND_MAT)
+    , analysisDivisor(1)
+    , thresholdMode(THRESHOLD_FIXED)
+    , appliedThresholdMode(THRESHOLD_FIXED)
+    , pendingThresholdLow(0.0)
+    , pendingThresholdHigh(0.0)
+    , pendingThresholdNs(0)
+    , lastThresholdLow(0.0)
+    , lastThresholdHigh(0.0)
+    , lastThresholdNs(0)
+    , pyramidLevels(0)
+    , pyramidRadius(2)
+    , kernelRadius(-1)
+    , pendingPyramidLevels(0)
+    , pendingPyramidCoverage(1000)
+    , lastPyramidLevels(0)
+    , lastPyramidCoverage(1000)
+    , autoRoiInterval(0)
+    , appliedAutoRoi(false)
+    , pendingRegionCount(0)
+    , pendingRegionCoverage(1000)
+    , lastRegionCount(0)
+    , lastRegionCoverage(1000) {
+    memset(&placement, 0, sizeof(placement));
+    placement.cpu = -1;
+    placement.cluster = -1;
+    memset(pendingStageNs, 0, sizeof(pendingStageNs));
+    memset(stageWindow, 0, sizeof(stageWindow));
+    memset(stageWindowSum, 0, sizeof(stageWindowSum));
     LOGI("FrameProcessor created");
 }
 
@@ -18,23 +72,40 @@ FrameProcessor::~FrameProcessor() {
     LOGI("FrameProcessor destroyed");
 }
 
-bool FrameProcessor::initialize(int width, int height) {
-    if (width <= 0 || height <= 0) {
-        LOGE("Invalid dimensions: %dx%d", width, height);
+bool FrameProcessor::initialize(int maxWidth, int maxHeight) {
+    if (maxWidth <= 0 || maxHeight <= 0) {
+        LOGE("Invalid dimensions: %dx%d", maxWidth, maxHeight);
         return false;
     }
     
-    frameWidth = width;
-    frameHeight = height;
+    frameWidth = maxWidth;
+    frameHeight = maxHeight;
     
-    // Pre-allocate working matrices to avoid runtime allocations
+    // Pre-allocate working matrices at the maximum size; frames use views of them
     try {
-        workingMat1 = cv::Mat(height, width, CV_8UC3);
-        workingMat2 = cv::Mat(height, width, CV_8UC1);
-        grayMat = cv::Mat(height, width, CV_8UC1);
+        grayMat = cv::Mat(maxHeight, maxWidth, CV_8UC1);
+        workingMat2 = cv::Mat(maxHeight, maxWidth, CV_8UC1);
+        edgeMat = cv::Mat(maxHeight, maxWidth, CV_8UC1);
+        scaledInput = cv::Mat(std::max(1, maxHeight / 2), std::max(1, maxWidth / 2), CV_8UC3);
+        scaledOutput = cv::Mat(std::max(1, maxHeight / 2), std::max(1, maxWidth / 2), CV_8UC1);
+        // Pyramid buffers are allocated on first use at the new size
+        for (cv::Mat& level : pyramidLevelMats) {
+            level.release();
+        }
+        coarseEdges.release();
+        candidateMask.release();
+        bandEdges.release();
+        regionEdges.release();
         initialized = true;
+        activeWidth = 0;
+        activeHeight = 0;
+        
+        // Re-size the device buffers for the new dimensions
+        if (backend == BACKEND_UMAT) {
+            setBackend(BACKEND_UMAT);
+        }
         
-        LOGI("FrameProcessor initialized for %dx%d frames", width, height);
+        LOGI("FrameProcessor initialized for frames up to %dx%d", maxWidth, maxHeight);
         return true;
     } catch (const cv::Exception& e) {
         LOGE("OpenCV initialization error: %s", e.what());
@@ -43,34 +114,254 @@ bool FrameProcessor::initialize(int width, int height) {
 }
 
 bool FrameProcessor::processFrameCanny(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2) {
+    return processFrameCannyRegions(input, output, nullptr, 0, threshold1, threshold2);
+}
+
+bool FrameProcessor::processFrameCannyRegions(const cv::Mat& input, cv::Mat& output, const cv::Rect* regions,
+                                              int regionCount, double threshold1, double threshold2) {
     if (!initialized || input.empty()) {
         LOGE("Processor not initialized or empty input frame");
         return false;
     }
     
-    int64_t startTime = getTimeMs();
+    if (!fits(input.cols, input.rows)) {
+        LOGE("Frame %dx%d exceeds the %dx%d buffers", input.cols, input.rows, frameWidth, frameHeight);
+        return false;
+    }
+    if (input.cols != activeWidth || input.rows != activeHeight) {
+        LOGI("Processing at %dx%d in %dx%d buffers", input.cols, input.rows, frameWidth, frameHeight);
+        activeWidth = input.cols;
+        activeHeight = input.rows;
+    }
+    
+    TRACE_SCOPE("FrameProcessor::processFrameCanny");
+    // JNI may call in on any thread; pick up the processing thread placement
+    affinity::applyToCurrentThread();
+    int64_t stageNs[STAGE_COUNT] = {0};
+    
+    // Automatic thresholds from one histogram phase of the full-size input
+    ThresholdMode mode = getThresholdMode();
+    if (mode != appliedThresholdMode) {
+        // The smoothed level belongs to the old mode's estimator
+        autoThreshold.reset();
+        appliedThresholdMode = mode;
+    }
+    int64_t thresholdNs = 0;
+    if (mode != THRESHOLD_FIXED && input.depth() == CV_8U) {
+        int64_t thresholdStart = getTimeNs();
+        TRACE_SCOPE("autoThreshold");
+        if (autoThreshold.update(input.data, input.cols, input.rows, static_cast<int>(input.step),
+                                 input.channels(), mode)) {
+            threshold1 = autoThreshold.getLow();
+            threshold2 = autoThreshold.getHigh();
+        }
+        thresholdNs = getTimeNs() - thresholdStart;
+    }
+    
+    // Regions to process: the caller's, else the auto-ROI region, else the whole frame
+    cv::Rect frame(0, 0, input.cols, input.rows);
+    bool autoRoi = autoRoiInterval.load() > 0;
+    if (autoRoi != appliedAutoRoi) {
+        roiTracker.reset();
+        appliedAutoRoi = autoRoi;
+    }
+    cv::Rect tracked = frame;
+    if (regionCount <= 0 && autoRoi) {
+        roiTracker.setFullFrameInterval(autoRoiInterval.load());
+        tracked = roiTracker.next(input.cols, input.rows);
+        if (tracked != frame) {
+            regions = &tracked;
+            regionCount = 1;
+        }
+    }
+    
+    int coverage = 1000;
+    int64_t regionPixels = 0;
+    int committedRegions = 0;
+    if (regionCount <= 0) {
+        if (!runCannyStages(input, output, threshold1, threshold2, stageNs, &coverage)) {
+            return false;
+        }
+        pendingRegions[0] = frame;
+        committedRegions = 1;
+        regionPixels = frame.area();
+    } else {
+        // Each region runs on a padded patch so its border matches a whole-frame run;
+        // the interior is copied into an output that is zero elsewhere
+        TRACE_SCOPE("regions");
+        output.create(input.rows, input.cols, CV_8UC1);
+        output.setTo(cv::Scalar(0));
+        int64_t pyramidPixels = 0;
+        for (int i = 0; i < regionCount && committedRegions < ROI_MAX_REGIONS; i++) {
+            int left = std::max(0, regions[i].x);
+            int top = std::max(0, regions[i].y);
+            int right = std::min(input.cols, regions[i].x + regions[i].width);
+            int bottom = std::min(input.rows, regions[i].y + regions[i].height);
+            if (right <= left || bottom <= top) {
+                continue;
+            }
+            cv::Rect area(left, top, right - left, bottom - top);
+            int padLeft = std::max(0, left - ROI_REGION_PAD);
+            int padTop = std::max(0, top - ROI_REGION_PAD);
+            cv::Rect padded(padLeft, padTop, std::min(input.cols, right + ROI_REGION_PAD) - padLeft,
+                            std::min(input.rows, bottom + ROI_REGION_PAD) - padTop);
+            
+            cv::Mat patch = region(regionEdges, frameWidth, frameHeight, padded.width, padded.height, CV_8UC1);
+            int64_t patchNs[STAGE_COUNT] = {0};
+            int patchCoverage = 1000;
+            if (!runCannyStages(input(padded), patch, threshold1, threshold2, patchNs, &patchCoverage)) {
+                return false;
+            }
+            cv::Mat interior = output(area);
+            patch(cv::Rect(left - padLeft, top - padTop, area.width, area.height)).copyTo(interior);
+            
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                stageNs[stage] += patchNs[stage];
+            }
+            pyramidPixels += static_cast<int64_t>(patchCoverage < 0 ? 1000 : patchCoverage) * area.area() / 1000;
+            if (patchCoverage < 0) {
+                coverage = -1;
+            }
+            regionPixels += area.area();
+            pendingRegions[committedRegions++] = area;
+        }
+        if (coverage >= 0 && regionPixels > 0) {
+            coverage = static_cast<int>(pyramidPixels * 1000 / regionPixels);
+        }
+    }
+    
+    // The tracked region follows the edges found in this frame
+    if (autoRoi && (regionCount <= 0 || regions == &tracked)) {
+        roiTracker.update(output, tracked);
+    }
+    
+    // Update statistics
+    processedFrameCount++;
+    pendingStageNs[STAGE_CONVERT] = stageNs[STAGE_CONVERT] + thresholdNs;
+    pendingStageNs[STAGE_BLUR] = stageNs[STAGE_BLUR];
+    pendingStageNs[STAGE_CANNY] = stageNs[STAGE_CANNY];
+    pendingStageNs[STAGE_COPY_OUT] = 0;
+    pendingThresholdLow = threshold1;
+    pendingThresholdHigh = threshold2;
+    pendingThresholdNs = thresholdNs;
+    int levels = pyramidLevels;
+    pendingPyramidLevels = coverage < 0 ? 0 : levels;
+    pendingPyramidCoverage = coverage < 0 ? 1000 : coverage;
+    pendingRegionCount = committedRegions;
+    pendingRegionCoverage = static_cast<int>(regionPixels * 1000 / frame.area());
+    commitFrameTimings();
+    nativetrace::counter("native.processedFrames", processedFrameCount);
+    
+    return true;
+}
+
+bool FrameProcessor::runCannyStages(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2,
+                                    int64_t* stageNs, int* coverage) {
+    // Throttled: detect on a downscaled copy, then scale the edges back to the input size.
+    // Rescaling time is counted as conversion.
+    int divisor = analysisDivisor;
+    bool scaled = divisor > 1 && input.cols / divisor >= 16 && input.rows / divisor >= 16;
+    int64_t scaleNs = 0;
+    cv::Mat scaledSource;
+    cv::Mat scaledTarget;
+    if (scaled) {
+        int64_t scaleStart = getTimeNs();
+        try {
+            TRACE_SCOPE("resizeDown");
+            int scaledWidth = input.cols / divisor;
+            int scaledHeight = input.rows / divisor;
+            scaledSource = region(scaledInput, frameWidth / 2, frameHeight / 2,
+                                  scaledWidth, scaledHeight, input.type());
+            scaledTarget = region(scaledOutput, frameWidth / 2, frameHeight / 2,
+                                  scaledWidth, scaledHeight, CV_8UC1);
+            cv::resize(input, scaledSource, scaledSource.size(), 0, 0, cv::INTER_AREA);
+        } catch (const cv::Exception& e) {
+            LOGE("Analysis downscale failed: %s", e.what());
+            return false;
+        }
+        scaleNs += getTimeNs() - scaleStart;
+    }
+    const cv::Mat& source = scaled ? scaledSource : input;
+    cv::Mat& target = scaled ? scaledTarget : output;
+    
+    // Pyramid mode skips work per region, which only pays off on the CPU
+    int levels = pyramidLevels;
+    bool success = false;
+    *coverage = 1000;
+    if (backend == BACKEND_UMAT && levels == 0) {
+        success = runCannyUMat(source, target, threshold1, threshold2, stageNs);
+        if (!success) {
+            LOGE("UMat backend failed, falling back to Mat");
+            setBackend(BACKEND_MAT);
+        }
+    }
+    if (backend == BACKEND_MAT || levels > 0) {
+        success = runCannyMat(source, target, threshold1, threshold2, stageNs, levels, pyramidRadius, coverage);
+    }
+    if (!success) {
+        return false;
+    }
+    
+    if (scaled) {
+        int64_t scaleStart = getTimeNs();
+        try {
+            TRACE_SCOPE("resizeUp");
+            cv::resize(scaledTarget, output, input.size(), 0, 0, cv::INTER_NEAREST);
+        } catch (const cv::Exception& e) {
+            LOGE("Analysis upscale failed: %s", e.what());
+            return false;
+        }
+        scaleNs += getTimeNs() - scaleStart;
+        stageNs[STAGE_CONVERT] += scaleNs;
+    }
+    return true;
+}
+
+bool FrameProcessor::runCannyMat(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2,
+                                 int64_t* stageNs, int levels, int radius, int* coverage) {
+    int64_t startTime = getTimeNs();
     
     try {
         // Convert to grayscale if needed
         cv::Mat grayFrame;
-        if (input.channels() == 3) {
-            cv::cvtColor(input, grayFrame, cv::COLOR_RGB2GRAY);
-        } else if (input.channels() == 4) {
-            cv::cvtColor(input, grayFrame, cv::COLOR_RGBA2GRAY);
-        } else {
-            grayFrame = input;
+        {
+            TRACE_SCOPE("cvtColor");
+            if (input.channels() == 3) {
+                grayFrame = region(grayMat, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+                cv::cvtColor(input, grayFrame, cv::COLOR_RGB2GRAY);
+            } else if (input.channels() == 4) {
+                grayFrame = region(grayMat, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+                cv::cvtColor(input, grayFrame, cv::COLOR_RGBA2GRAY);
+            } else {
+                grayFrame = input;
+            }
         }
+        int64_t convertEnd = getTimeNs();
         
         // Apply Gaussian blur to reduce noise
-        cv::GaussianBlur(grayFrame, workingMat2, cv::Size(5, 5), 1.4);
-        
-        // Apply Canny edge detection
-        cv::Canny(workingMat2, output, threshold1, threshold2);
+        cv::Mat blurred = region(workingMat2, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+        {
+            TRACE_SCOPE("GaussianBlur");
+            cv::GaussianBlur(grayFrame, blurred, cv::Size(5, 5), 1.4);
+        }
+        int64_t blurEnd = getTimeNs();
         
-        // Update statistics
-        processedFrameCount++;
-        lastProcessingTime = getTimeMs() - startTime;
+        // Apply Canny edge detection, coarse-to-fine in pyramid mode
+        {
+            TRACE_SCOPE("Canny");
+            int covered = levels > 0 ? runCannyPyramid(blurred, output, threshold1, threshold2, levels, radius) : -1;
+            if (covered < 0) {
+                cv::Canny(blurred, output, threshold1, threshold2);
+            }
+            if (coverage != nullptr) {
+                *coverage = covered;
+            }
+        }
+        int64_t cannyEnd = getTimeNs();
         
+        stageNs[STAGE_CONVERT] = convertEnd - startTime;
+        stageNs[STAGE_BLUR] = blurEnd - convertEnd;
+        stageNs[STAGE_CANNY] = cannyEnd - blurEnd;
         return true;
         
     } catch (const cv::Exception& e) {
@@ -79,13 +370,365 @@ bool FrameProcessor::processFrameCanny(const cv::Mat& input, cv::Mat& output, do
     }
 }
 
+int FrameProcessor::runCannyPyramid(const cv::Mat& blurred, cv::Mat& output, double threshold1, double threshold2,
+                                    int levels, int radius) {
+    int width = blurred.cols;
+    int height = blurred.rows;
+    int scale = 1 << levels;
+    if (width / scale < PYRAMID_BAND_ROWS || height / scale < PYRAMID_BAND_ROWS) {
+        return -1;
+    }
+    
+    // Coarse frame: each pyrDown halves the size, rounding up
+    cv::Mat coarse = blurred;
+    {
+        TRACE_SCOPE("pyrDown");
+        for (int level = 1; level <= levels; level++) {
+            int levelMaxWidth = (frameWidth + (1 << level) - 1) >> level;
+            int levelMaxHeight = (frameHeight + (1 << level) - 1) >> level;
+            cv::Mat next = region(pyramidLevelMats[level - 1], levelMaxWidth, levelMaxHeight,
+                                  (coarse.cols + 1) / 2, (coarse.rows + 1) / 2, CV_8UC1);
+            cv::pyrDown(coarse, next, next.size());
+            coarse = next;
+        }
+    }
+    int coarseMaxWidth = (frameWidth + scale - 1) >> levels;
+    int coarseMaxHeight = (frameHeight + scale - 1) >> levels;
+    
+    // Candidate mask: coarse edges grown by the dilation radius
+    cv::Mat edges = region(coarseEdges, coarseMaxWidth, coarseMaxHeight, coarse.cols, coarse.rows, CV_8UC1);
+    cv::Mat mask = region(candidateMask, coarseMaxWidth, coarseMaxHeight, coarse.cols, coarse.rows, CV_8UC1);
+    {
+        TRACE_SCOPE("coarseCanny");
+        cv::Canny(coarse, edges, threshold1 * PYRAMID_COARSE_THRESHOLD_SCALE,
+                  threshold2 * PYRAMID_COARSE_THRESHOLD_SCALE);
+        if (radius != kernelRadius) {
+            dilateKernel = cv::getStructuringElement(cv::MORPH_RECT, cv::Size(2 * radius + 1, 2 * radius + 1));
+            kernelRadius = radius;
+        }
+        if (radius > 0) {
+            cv::dilate(edges, mask, dilateKernel);
+        } else {
+            edges.copyTo(mask);
+        }
+    }
+    
+    // Regions: per band of coarse rows, the runs of columns the mask touches
+    bandRegions.clear();
+    bandColumns.resize(coarseMaxWidth);
+    int64_t coveredPixels = 0;
+    for (int bandTop = 0; bandTop < coarse.rows; bandTop += PYRAMID_BAND_ROWS) {
+        int bandBottom = std::min(bandTop + PYRAMID_BAND_ROWS, coarse.rows);
+        uint8_t* columns = bandColumns.data();
+        memset(columns, 0, coarse.cols);
+        for (int y = bandTop; y < bandBottom; y++) {
+            const uint8_t* row = mask.ptr<uint8_t>(y);
+            for (int x = 0; x < coarse.cols; x++) {
+                columns[x] |= row[x];
+            }
+        }
+        
+        int x = 0;
+        while (x < coarse.cols) {
+            while (x < coarse.cols && columns[x] == 0) {
+                x++;
+            }
+            if (x >= coarse.cols) {
+                break;
+            }
+            int runStart = x;
+            int runEnd = x;
+            while (x < coarse.cols && x - runEnd < PYRAMID_MERGE_GAP) {
+                if (columns[x] != 0) {
+                    runEnd = x + 1;
+                }
+                x++;
+            }
+            
+            int left = runStart * scale;
+            int top = bandTop * scale;
+            cv::Rect area(left, top, std::min(runEnd * scale, width) - left,
+                          std::min(bandBottom * scale, height) - top);
+            if (area.width > 0 && area.height > 0) {
+                bandRegions.push_back(area);
+                coveredPixels += static_cast<int64_t>(area.width) * area.height;
+            }
+        }
+    }
+    
+    int64_t framePixels = static_cast<int64_t>(width) * height;
+    if (coveredPixels > framePixels * PYRAMID_FULL_FRAME_FRACTION) {
+        cv::Canny(blurred, output, threshold1, threshold2);
+        return 1000;
+    }
+    
+    // Full resolution inside the regions only; each runs on a padded patch and
+    // keeps the interior
+    TRACE_SCOPE("fineCanny");
+    output.create(height, width, CV_8UC1);
+    output.setTo(cv::Scalar(0));
+    for (const cv::Rect& area : bandRegions) {
+        int padLeft = std::max(0, area.x - PYRAMID_REGION_PAD);
+        int padTop = std::max(0, area.y - PYRAMID_REGION_PAD);
+        int padRight = std::min(width, area.x + area.width + PYRAMID_REGION_PAD);
+        int padBottom = std::min(height, area.y + area.height + PYRAMID_REGION_PAD);
+        cv::Rect padded(padLeft, padTop, padRight - padLeft, padBottom - padTop);
+        
+        cv::Mat patch = region(bandEdges, frameWidth, frameHeight, padded.width, padded.height, CV_8UC1);
+        cv::Canny(blurred(padded), patch, threshold1, threshold2);
+        cv::Mat interior = output(area);
+        patch(cv::Rect(area.x - padLeft, area.y - padTop, area.width, area.height)).copyTo(interior);
+    }
+    return static_cast<int>(coveredPixels * 1000 / framePixels);
+}
+
+bool FrameProcessor::runCannyUMat(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2,
+                                  int64_t* stageNs) {
+    int64_t startTime = getTimeNs();
+    
+    try {
+        // The OpenCL switch is per thread in OpenCV; processing threads may differ from the caller of setBackend
+        if (!cv::ocl::useOpenCL()) {
+            cv::ocl::setUseOpenCL(true);
+        }
+        
+        // Upload and convert into ROIs of the device buffers
+        cv::UMat gray = region(umatGray, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+        {
+            TRACE_SCOPE("cvtColor");
+            if (input.channels() == 3 || input.channels() == 4) {
+                cv::UMat upload = region(umatInput, frameWidth, frameHeight, input.cols, input.rows, input.type());
+                input.copyTo(upload);
+                cv::cvtColor(upload, gray, input.channels() == 3 ? cv::COLOR_RGB2GRAY : cv::COLOR_RGBA2GRAY);
+            } else {
+                input.copyTo(gray);
+            }
+            // OpenCL work is asynchronous; wait so each stage time covers its own kernels
+            cv::ocl::finish();
+        }
+        int64_t convertEnd = getTimeNs();
+        
+        cv::UMat blurred = region(umatBlurred, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+        {
+            TRACE_SCOPE("GaussianBlur");
+            cv::GaussianBlur(gray, blurred, cv::Size(5, 5), 1.4);
+            cv::ocl::finish();
+        }
+        int64_t blurEnd = getTimeNs();
+        
+        // Canny plus the download of the edge map
+        {
+            TRACE_SCOPE("Canny");
+            cv::UMat edges = region(umatEdges, frameWidth, frameHeight, input.cols, input.rows, CV_8UC1);
+            cv::Canny(blurred, edges, threshold1, threshold2);
+            edges.copyTo(output);
+        }
+        int64_t cannyEnd = getTimeNs();
+        
+        stageNs[STAGE_CONVERT] = convertEnd - startTime;
+        stageNs[STAGE_BLUR] = blurEnd - convertEnd;
+        stageNs[STAGE_CANNY] = cannyEnd - blurEnd;
+        return true;
+        
+    } catch (const cv::Exception& e) {
+        LOGE("UMat Canny processing error: %s", e.what());
+        return false;
+    }
+}
+
+bool FrameProcessor::isOpenCLAvailable() {
+    try {
+        if (!cv::ocl::haveOpenCL()) {
+            return false;
+        }
+        cv::ocl::setUseOpenCL(true);
+        return cv::ocl::useOpenCL();
+    } catch (const cv::Exception& e) {
+        LOGE("OpenCL probe failed: %s", e.what());
+        return false;
+    }
+}
+
+void FrameProcessor::setThresholdMode(ThresholdMode mode) {
+    if (mode != getThresholdMode()) {
+        LOGI("Canny threshold mode: %s",
+             mode == THRESHOLD_MEDIAN ? "median" : mode == THRESHOLD_OTSU ? "Otsu" : "fixed");
+    }
+    thresholdMode.store(mode);
+}
+
+void FrameProcessor::setPyramidMode(int levels, int dilationRadius) {
+    levels = std::max(0, std::min(levels, PYRAMID_MAX_LEVELS));
+    dilationRadius = std::max(0, std::min(dilationRadius, PYRAMID_MAX_RADIUS));
+    if (levels != pyramidLevels || dilationRadius != pyramidRadius) {
+        if (levels > 0) {
+            LOGI("Pyramid Canny: %d levels, dilation radius %d", levels, dilationRadius);
+        } else {
+            LOGI("Pyramid Canny off");
+        }
+    }
+    pyramidRadius.store(dilationRadius);
+    pyramidLevels.store(levels);
+}
+
+void FrameProcessor::setAutoRoi(bool enabled, int fullFrameInterval) {
+    int interval = enabled ? std::max(1, fullFrameInterval) : 0;
+    if (interval != autoRoiInterval.load()) {
+        if (enabled) {
+            LOGI("Auto-ROI on, whole frame every %d frames", interval);
+        } else {
+            LOGI("Auto-ROI off");
+        }
+    }
+    autoRoiInterval.store(interval);
+}
+
+cv::Mat FrameProcessor::outputView(int width, int height) {
+    if (!initialized || !fits(width, height)) {
+        return cv::Mat();
+    }
+    return region(edgeMat, frameWidth, frameHeight, width, height, CV_8UC1);
+}
+
+cv::Mat FrameProcessor::region(cv::Mat& buffer, int maxWidth, int maxHeight, int width, int height, int type) {
+    if (buffer.empty() || buffer.type() != type) {
+        buffer.create(maxHeight, maxWidth, type);
+    }
+    // A header over the buffer's first rows keeps the view continuous for copy-out
+    return cv::Mat(height, width, type, buffer.data);
+}
+
+cv::UMat FrameProcessor::region(cv::UMat& buffer, int maxWidth, int maxHeight, int width, int height, int type) {
+    if (buffer.empty() || buffer.type() != type) {
+        buffer.create(maxHeight, maxWidth, type);
+    }
+    return buffer(cv::Rect(0, 0, width, height));
+}
+
+size_t FrameProcessor::releaseWorkingBuffers() {
+    size_t freed = 0;
+    cv::Mat* mats[] = { &grayMat, &workingMat2, &edgeMat, &scaledInput, &scaledOutput,
+                        &coarseEdges, &candidateMask, &bandEdges, &regionEdges };
+    for (cv::Mat* mat : mats) {
+        freed += mat->total() * mat->elemSize();
+        mat->release();
+    }
+    for (cv::Mat& level : pyramidLevelMats) {
+        freed += level.total() * level.elemSize();
+        level.release();
+    }
+    cv::UMat* umats[] = { &umatInput, &umatGray, &umatBlurred, &umatEdges };
+    for (cv::UMat* umat : umats) {
+        freed += umat->total() * umat->elemSize();
+        umat->release();
+    }
+    LOGI("Released %zu bytes of working buffers", freed);
+    return freed;
+}
+
+ProcessingBackend FrameProcessor::setBackend(ProcessingBackend requested) {
+    if (requested == BACKEND_UMAT && !isOpenCLAvailable()) {
+        LOGI("No OpenCL runtime, using Mat backend");
+        requested = BACKEND_MAT;
+    }
+    
+    if (requested == BACKEND_UMAT) {
+        try {
+            // Allocate once up front; per-frame calls then reuse these buffers
+            if (initialized) {
+                umatInput.create(frameHeight, frameWidth, CV_8UC3);
+                umatGray.create(frameHeight, frameWidth, CV_8UC1);
+                umatBlurred.create(frameHeight, frameWidth, CV_8UC1);
+                umatEdges.create(frameHeight, frameWidth, CV_8UC1);
+            }
+        } catch (const cv::Exception& e) {
+            LOGE("UMat allocation failed, using Mat backend: %s", e.what());
+            requested = BACKEND_MAT;
+        }
+    }
+    
+    if (requested == BACKEND_MAT) {
+        umatInput.release();
+        umatGray.release();
+        umatBlurred.release();
+        umatEdges.release();
+    }
+    
+    if (requested != backend) {
+        LOGI("Processing backend: %s", requested == BACKEND_UMAT ? "UMat (OpenCL)" : "Mat");
+    }
+    backend = requested;
+    return backend;
+}
+
+ProcessingBackend FrameProcessor::calibrateBackend(int frames) {
+    if (!initialized || frames <= 0) {
+        return backend;
+    }
+    if (!isOpenCLAvailable()) {
+        return setBackend(BACKEND_MAT);
+    }
+    
+    TRACE_SCOPE("FrameProcessor::calibrateBackend");
+    
+    // Rings over a noise floor: enough edges for Canny to do representative work
+    cv::Mat frame(frameHeight, frameWidth, CV_8UC3);
+    uint32_t seed = 12345;
+    for (int y = 0; y < frameHeight; y++) {
+        uint8_t* row = frame.ptr<uint8_t>(y);
+        for (int x = 0; x < frameWidth * 3; x++) {
+            seed = seed * 1664525u + 1013904223u;
+            int ring = ((x / 3 - frameWidth / 2) * (x / 3 - frameWidth / 2) + (y - frameHeight / 2) * (y - frameHeight / 2)) / 400;
+            row[x] = static_cast<uint8_t>((ring % 2 ? 200 : 50) + (seed >> 28));
+        }
+    }
+    
+    cv::Mat output;
+    int64_t stageNs[STAGE_COUNT];
+    std::vector<int64_t> samples(frames);
+    
+    // Median frame time, or -1 if the backend failed
+    auto measure = [&](bool useUMat) -> int64_t {
+        // The first UMat runs compile OpenCL kernels; keep them out of the timing
+        for (int i = 0; i < 2; i++) {
+            bool ok = useUMat ? runCannyUMat(frame, output, 50.0, 150.0, stageNs)
+                              : runCannyMat(frame, output, 50.0, 150.0, stageNs);
+            if (!ok) return -1;
+        }
+        for (int i = 0; i < frames; i++) {
+            int64_t start = getTimeNs();
+            bool ok = useUMat ? runCannyUMat(frame, output, 50.0, 150.0, stageNs)
+                              : runCannyMat(frame, output, 50.0, 150.0, stageNs);
+            if (!ok) return -1;
+            samples[i] = getTimeNs() - start;
+        }
+        std::nth_element(samples.begin(), samples.begin() + frames / 2, samples.end());
+        return samples[frames / 2];
+    };
+    
+    int64_t matNs = measure(false);
+    int64_t umatNs = setBackend(BACKEND_UMAT) == BACKEND_UMAT ? measure(true) : -1;
+    
+    ProcessingBackend chosen = (umatNs > 0 && (matNs < 0 || umatNs < matNs)) ? BACKEND_UMAT : BACKEND_MAT;
+    LOGI("Backend calibration at %dx%d: Mat %.2fms, UMat %.2fms -> %s",
+         frameWidth, frameHeight, matNs / 1e6, umatNs / 1e6, chosen == BACKEND_UMAT ? "UMat" : "Mat");
+    return setBackend(chosen);
+}
+
 bool FrameProcessor::processFrameGrayscale(const cv::Mat& input, cv::Mat& output) {
     if (!initialized || input.empty()) {
         LOGE("Processor not initialized or empty input frame");
         return false;
     }
     
-    int64_t startTime = getTimeMs();
+    if (!fits(input.cols, input.rows)) {
+        LOGE("Frame %dx%d exceeds the %dx%d buffers", input.cols, input.rows, frameWidth, frameHeight);
+        return false;
+    }
+    
+    TRACE_SCOPE("FrameProcessor::processFrameGrayscale");
+    affinity::applyToCurrentThread();
+    int64_t startTime = getTimeNs();
     
     try {
         if (input.channels() == 3) {
@@ -98,7 +741,11 @@ bool FrameProcessor::processFrameGrayscale(const cv::Mat& input, cv::Mat& output
         
         // Update statistics
         processedFrameCount++;
-        lastProcessingTime = getTimeMs() - startTime;
+        pendingStageNs[STAGE_CONVERT] = getTimeNs() - startTime;
+        pendingStageNs[STAGE_BLUR] = 0;
+        pendingStageNs[STAGE_CANNY] = 0;
+        pendingStageNs[STAGE_COPY_OUT] = 0;
+        commitFrameTimings();
         
         return true;
         
@@ -144,8 +791,133 @@ bool FrameProcessor::convertRGBToGray(const cv::Mat& input, cv::Mat& output) {
     }
 }
 
-int64_t FrameProcessor::getTimeMs() {
-    auto now = std::chrono::high_resolution_clock::now();
-    auto duration = now.time_since_epoch();
-    return std::chrono::duration_cast<std::chrono::milliseconds>(duration).count();
+void FrameProcessor::commitFrameTimings() {
+    affinity::ThreadPlacement current;
+    affinity::sampleCurrentThread(current);
+    
+    std::lock_guard<std::mutex> lock(statsMutex);
+    
+    if (placement.cpu >= 0 && current.threadId == placement.threadId && current.cpu != placement.cpu) {
+        cpuMigrations++;
+    }
+    placement = current;
+    
+    pendingStageNs[STAGE_TOTAL] = 0;
+    for (int stage = 0; stage < STAGE_TOTAL; stage++) {
+        pendingStageNs[STAGE_TOTAL] += pendingStageNs[stage];
+    }
+    
+    // Replace the oldest sample in the rolling window
+    for (int stage = 0; stage < STAGE_COUNT; stage++) {
+        stageWindowSum[stage] += pendingStageNs[stage] - stageWindow[stage][windowNext];
+        stageWindow[stage][windowNext] = pendingStageNs[stage];
+    }
+    windowNext = (windowNext + 1) % STATS_WINDOW;
+    if (windowCount < STATS_WINDOW) {
+        windowCount++;
+    }
+    
+    lastProcessingTime = pendingStageNs[STAGE_TOTAL] / 1e6;
+    lastThresholdLow = pendingThresholdLow;
+    lastThresholdHigh = pendingThresholdHigh;
+    lastThresholdNs = pendingThresholdNs;
+    lastPyramidLevels = pendingPyramidLevels;
+    lastPyramidCoverage = pendingPyramidCoverage;
+    lastRegionCount = pendingRegionCount;
+    lastRegionCoverage = pendingRegionCoverage;
+    for (int i = 0; i < pendingRegionCount; i++) {
+        lastRegions[i] = pendingRegions[i];
+    }
+}
+
+void FrameProcessor::recordCopyOut(int64_t copyNs) {
+    std::lock_guard<std::mutex> lock(statsMutex);
+    if (windowCount == 0) {
+        return;
+    }
+    
+    // Amend the most recently committed frame
+    int last = (windowNext + STATS_WINDOW - 1) % STATS_WINDOW;
+    int64_t delta = copyNs - stageWindow[STAGE_COPY_OUT][last];
+    stageWindow[STAGE_COPY_OUT][last] = copyNs;
+    stageWindow[STAGE_TOTAL][last] += delta;
+    stageWindowSum[STAGE_COPY_OUT] += delta;
+    stageWindowSum[STAGE_TOTAL] += delta;
+    pendingStageNs[STAGE_COPY_OUT] = copyNs;
+    pendingStageNs[STAGE_TOTAL] += delta;
+    
+    lastProcessingTime = pendingStageNs[STAGE_TOTAL] / 1e6;
+}
+
+int FrameProcessor::getStatsSnapshot(int64_t* out, int count) {
+    if (out == nullptr || count < STATS_SNAPSHOT_SIZE) {
+        return 0;
+    }
+    
+    std::lock_guard<std::mutex> lock(statsMutex);
+    out[0] = processedFrameCount;
+    out[1] = windowCount;
+    
+    int last = (windowNext + STATS_WINDOW - 1) % STATS_WINDOW;
+    for (int stage = 0; stage < STAGE_COUNT; stage++) {
+        int64_t* fields = out + STATS_HEADER_SIZE + stage * STATS_FIELDS_PER_STAGE;
+        if (windowCount == 0) {
+            memset(fields, 0, STATS_FIELDS_PER_STAGE * sizeof(int64_t));
+            continue;
+        }
+        
+        int64_t minNs = stageWindow[stage][0];
+        int64_t maxNs = stageWindow[stage][0];
+        for (int i = 1; i < windowCount; i++) {
+            int64_t v = stageWindow[stage][i];
+            if (v < minNs) minNs = v;
+            if (v > maxNs) maxNs = v;
+        }
+        fields[STATS_FIELD_LAST] = stageWindow[stage][last];
+        fields[STATS_FIELD_MIN] = minNs;
+        fields[STATS_FIELD_MEAN] = stageWindowSum[stage] / windowCount;
+        fields[STATS_FIELD_MAX] = maxNs;
+    }
+    
+    int64_t* where = out + STATS_PLACEMENT_OFFSET;
+    where[STATS_PLACEMENT_THREAD_ID] = placement.threadId;
+    where[STATS_PLACEMENT_CPU] = placement.cpu;
+    where[STATS_PLACEMENT_CLUSTER] = placement.cluster;
+    where[STATS_PLACEMENT_NICE] = placement.nice;
+    where[STATS_PLACEMENT_MIGRATIONS] = cpuMigrations;
+    
+    int64_t* thresholds = out + STATS_THRESHOLD_OFFSET;
+    thresholds[STATS_THRESHOLD_LOW] = static_cast<int64_t>(lastThresholdLow * 100.0 + 0.5);
+    thresholds[STATS_THRESHOLD_HIGH] = static_cast<int64_t>(lastThresholdHigh * 100.0 + 0.5);
+    thresholds[STATS_THRESHOLD_MODE] = thresholdMode.load();
+    thresholds[STATS_THRESHOLD_NS] = lastThresholdNs;
+    
+    int64_t* pyramid = out + STATS_PYRAMID_OFFSET;
+    pyramid[STATS_PYRAMID_LEVELS] = lastPyramidLevels;
+    pyramid[STATS_PYRAMID_COVERAGE] = lastPyramidCoverage;
+    
+    int64_t* roi = out + STATS_ROI_OFFSET;
+    roi[STATS_ROI_REGIONS] = lastRegionCount;
+    roi[STATS_ROI_COVERAGE] = lastRegionCoverage;
+    return STATS_SNAPSHOT_SIZE;
+}
+
+int FrameProcessor::getLastRegions(int32_t* out, int maxRegions) {
+    if (out == nullptr) {
+        return 0;
+    }
+    std::lock_guard<std::mutex> lock(statsMutex);
+    int count = std::min(lastRegionCount, maxRegions);
+    for (int i = 0; i < count; i++) {
+        out[i * 4] = lastRegions[i].x;
+        out[i * 4 + 1] = lastRegions[i].y;
+        out[i * 4 + 2] = lastRegions[i].width;
+        out[i * 4 + 3] = lastRegions[i].height;
+    }
+    return count;
+}
+
+int64_t FrameProcessor::getTimeNs() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+        std::chrono::steady_clock::now().time_since_epoch()).count();
 }
\ No newline at end of file
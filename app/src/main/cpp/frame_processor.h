@@ -2,48 +2,290 @@
 #define FRAME_PROCESSOR_H
 
 #include <opencv2/opencv.hpp>
-#include <android/log.h>
+#include "log_shim.h"
+#include "auto_threshold.h"
+#include "roi_tracker.h"
+#include "thread_affinity.h"
+#include <atomic>
+#include <cstdint>
+#include <mutex>
+#include <vector>
+
+// Layout of the stats snapshot filled by FrameProcessor::getStatsSnapshot.
+// Keep in sync with utils/NativeStats.java.
+//   [0] processed frame count
+//   [1] samples in the rolling window
+//   [2 + stage * 4 + field] per-stage nanoseconds, field = last, min, mean, max
+//   [22 + field]            placement of the thread that ran the last frame:
+//                           kernel tid, CPU, cluster (0 = slowest), nice, CPU migrations
+//   [27 + field]            Canny thresholds of the last frame in hundredths (low, high),
+//                           the threshold mode and the nanoseconds spent choosing them
+//   [31 + field]            pyramid mode of the last frame: levels (0 = off) and the
+//                           per-mille of the frame that ran full-resolution Canny
+//   [33 + field]            regions of interest of the last frame: how many were
+//                           processed and the per-mille of the frame they cover
+enum ProcessingStage {
+    STAGE_CONVERT = 0,  // Colour conversion to grayscale
+    STAGE_BLUR,         // Gaussian blur
+    STAGE_CANNY,        // Canny edge detection
+    STAGE_COPY_OUT,     // Copying the result back to the caller
+    STAGE_TOTAL,        // Whole frame, including copy-out
+    STAGE_COUNT
+};
+
+#define STATS_FIELD_LAST 0
+#define STATS_FIELD_MIN 1
+#define STATS_FIELD_MEAN 2
+#define STATS_FIELD_MAX 3
+#define STATS_FIELDS_PER_STAGE 4
+#define STATS_HEADER_SIZE 2
+#define STATS_PLACEMENT_OFFSET (STATS_HEADER_SIZE + STAGE_COUNT * STATS_FIELDS_PER_STAGE)
+#define STATS_PLACEMENT_THREAD_ID 0
+#define STATS_PLACEMENT_CPU 1
+#define STATS_PLACEMENT_CLUSTER 2
+#define STATS_PLACEMENT_NICE 3
+#define STATS_PLACEMENT_MIGRATIONS 4
+#define STATS_PLACEMENT_FIELDS 5
+#define STATS_THRESHOLD_OFFSET (STATS_PLACEMENT_OFFSET + STATS_PLACEMENT_FIELDS)
+#define STATS_THRESHOLD_LOW 0
+#define STATS_THRESHOLD_HIGH 1
+#define STATS_THRESHOLD_MODE 2
+#define STATS_THRESHOLD_NS 3
+#define STATS_THRESHOLD_FIELDS 4
+#define STATS_PYRAMID_OFFSET (STATS_THRESHOLD_OFFSET + STATS_THRESHOLD_FIELDS)
+#define STATS_PYRAMID_LEVELS 0
+#define STATS_PYRAMID_COVERAGE 1
+#define STATS_PYRAMID_FIELDS 2
+#define STATS_ROI_OFFSET (STATS_PYRAMID_OFFSET + STATS_PYRAMID_FIELDS)
+#define STATS_ROI_REGIONS 0
+#define STATS_ROI_COVERAGE 1
+#define STATS_ROI_FIELDS 2
+#define STATS_SNAPSHOT_SIZE (STATS_ROI_OFFSET + STATS_ROI_FIELDS)
+
+// Rolling window length for per-stage min/mean/max
+#define STATS_WINDOW 120
+
+// Pyramid mode limits: coarse pass at 1/2^levels, mask dilation in coarse pixels
+#define PYRAMID_MAX_LEVELS 4
+#define PYRAMID_MAX_RADIUS 16
+
+// Most regions of interest processed in one frame
+#define ROI_MAX_REGIONS 8
+
+// Where the Canny pipeline runs: cv::Mat on the CPU, or cv::UMat through
+// OpenCV's transparent API (OpenCL when a runtime and device are present)
+enum ProcessingBackend {
+    BACKEND_MAT = 0,
+    BACKEND_UMAT = 1
+};
 
 class FrameProcessor {
 public:
     FrameProcessor();
     ~FrameProcessor();
     
-    // Initialize the processor with frame dimensions
-    bool initialize(int width, int height);
+    // Allocate working buffers for frames up to maxWidth x maxHeight. Any smaller
+    // frame is processed through views of these buffers, so the frame size can
+    // change from one call to the next without allocating. Calling it again
+    // reallocates the buffers and keeps backend, settings and statistics.
+    bool initialize(int maxWidth, int maxHeight);
     
-    // Process frame with Canny edge detection
+    // Process frame with Canny edge detection. An output of the input's size is
+    // written in place; any other output is (re)allocated. Outside THRESHOLD_FIXED
+    // mode the thresholds passed in are replaced by the automatic ones.
     bool processFrameCanny(const cv::Mat& input, cv::Mat& output, double threshold1 = 50.0, double threshold2 = 150.0);
     
+    // Canny inside up to ROI_MAX_REGIONS rectangles only, clipped to the frame. The output
+    // keeps the input's size and is zero outside them. With no regions this is
+    // processFrameCanny, which uses the auto-ROI region when that is on.
+    bool processFrameCannyRegions(const cv::Mat& input, cv::Mat& output, const cv::Rect* regions, int regionCount,
+                                  double threshold1, double threshold2);
+    
     // Process frame with grayscale conversion
     bool processFrameGrayscale(const cv::Mat& input, cv::Mat& output);
     
+    // Continuous width x height view of the processor's own output buffer. Passing
+    // it as the output avoids allocating a result; it stays valid until the next call.
+    cv::Mat outputView(int width, int height);
+    
     // Convert YUV420 to RGB (for camera frames)
     bool convertYUV420ToRGB(const uint8_t* yuvData, cv::Mat& rgbOutput, int width, int height);
     
     // Convert RGB to grayscale
     bool convertRGBToGray(const cv::Mat& input, cv::Mat& output);
     
+    // Select the backend; UMat falls back to Mat without OpenCL. Returns the backend in use
+    ProcessingBackend setBackend(ProcessingBackend requested);
+    ProcessingBackend getBackend() const { return backend; }
+    
+    // Run Canny on a frame downscaled by this factor and scale the edges back
+    // up to the input size (1 = full resolution). Used for thermal throttling.
+    void setAnalysisDivisor(int divisor) { analysisDivisor = divisor > 1 ? divisor : 1; }
+    int getAnalysisDivisor() const { return analysisDivisor; }
+    
+    // Fixed thresholds, or automatic ones from the luma histogram
+    void setThresholdMode(ThresholdMode mode);
+    ThresholdMode getThresholdMode() const { return static_cast<ThresholdMode>(thresholdMode.load()); }
+    
+    // Coarse-to-fine Canny: detect at 1/2^levels of the frame, dilate the edges by
+    // dilationRadius coarse pixels and run full-resolution Canny only in the bands
+    // that mask covers; the rest of the output is zero. levels = 0 turns it off.
+    // The pyramid runs on the Mat pipeline whatever the backend.
+    void setPyramidMode(int levels, int dilationRadius);
+    int getPyramidLevels() const { return pyramidLevels; }
+    int getPyramidRadius() const { return pyramidRadius; }
+    
+    // Track a region of interest from where edges were found (see roi_tracker.h) and
+    // process only it; the whole frame is processed every fullFrameInterval frames
+    void setAutoRoi(bool enabled, int fullFrameInterval = RoiTracker::DEFAULT_FULL_FRAME_INTERVAL);
+    bool isAutoRoi() const { return autoRoiInterval.load() > 0; }
+    
+    // Copy the regions processed in the last frame to out as x, y, width, height;
+    // returns how many. A whole-frame run is one region covering the frame.
+    int getLastRegions(int32_t* out, int maxRegions);
+    
+    // Largest frame the buffers hold
+    int getMaxWidth() const { return frameWidth; }
+    int getMaxHeight() const { return frameHeight; }
+    
+    // True if a frame of this size fits the buffers
+    bool fits(int width, int height) const { return width <= frameWidth && height <= frameHeight; }
+    
+    // Free the working and device buffers; the next frame reallocates them.
+    // Must not run while a frame is being processed. Returns the bytes freed
+    size_t releaseWorkingBuffers();
+    
+    // Time both backends on a synthetic frame and keep the faster one
+    ProcessingBackend calibrateBackend(int frames = 10);
+    
+    // True if OpenCV can reach an OpenCL device
+    static bool isOpenCLAvailable();
+    
     // Get processing statistics
     double getLastProcessingTime() const { return lastProcessingTime; }
     int getProcessedFrameCount() const { return processedFrameCount; }
     
+    // Record the time spent copying the last result out (JNI side); completes the frame's timings
+    void recordCopyOut(int64_t copyNs);
+    
+    // Fill out[0..count) with the stats snapshot; returns the number of values written
+    int getStatsSnapshot(int64_t* out, int count);
+    
+    // Steady-clock nanoseconds
+    static int64_t getTimeNs();
+    
 private:
+    // Maximum frame size; the buffers below are allocated for it
     int frameWidth;
     int frameHeight;
     bool initialized;
     
+    // Size of the last frame, to log size changes
+    int activeWidth;
+    int activeHeight;
+    
     // Processing statistics
     double lastProcessingTime;
     int processedFrameCount;
     
-    // Working matrices to avoid repeated allocations
-    cv::Mat workingMat1;
-    cv::Mat workingMat2;
+    // Per-stage timings of the frame in progress and the rolling window of completed frames
+    int64_t pendingStageNs[STAGE_COUNT];
+    int64_t stageWindow[STAGE_COUNT][STATS_WINDOW];
+    int64_t stageWindowSum[STAGE_COUNT];
+    int windowCount;
+    int windowNext;
+    std::mutex statsMutex;
+    
+    // Where the last frame ran; CPU changes between frames count as migrations
+    affinity::ThreadPlacement placement;
+    int64_t cpuMigrations;
+    
+    void commitFrameTimings();
+    
+    ProcessingBackend backend;
+    std::atomic<int> analysisDivisor;
+    
+    // Automatic thresholds; the pending values are committed with the frame's timings
+    AutoThreshold autoThreshold;
+    std::atomic<int> thresholdMode;
+    ThresholdMode appliedThresholdMode;    // Processing thread only
+    double pendingThresholdLow;
+    double pendingThresholdHigh;
+    int64_t pendingThresholdNs;
+    double lastThresholdLow;
+    double lastThresholdHigh;
+    int64_t lastThresholdNs;
+    
+    // Pyramid mode; the kernel is rebuilt on the processing thread when the radius changes
+    std::atomic<int> pyramidLevels;
+    std::atomic<int> pyramidRadius;
+    int kernelRadius;                      // Processing thread only
+    cv::Mat dilateKernel;
+    int pendingPyramidLevels;
+    int pendingPyramidCoverage;
+    int lastPyramidLevels;
+    int lastPyramidCoverage;
+    
+    // Regions of interest; 0 = auto-ROI off, else the whole-frame interval
+    std::atomic<int> autoRoiInterval;
+    bool appliedAutoRoi;                   // Processing thread only
+    RoiTracker roiTracker;
+    cv::Rect pendingRegions[ROI_MAX_REGIONS];
+    int pendingRegionCount;
+    int pendingRegionCoverage;
+    cv::Rect lastRegions[ROI_MAX_REGIONS];
+    int lastRegionCount;
+    int lastRegionCoverage;
+    
+    // Analysis downscale and backend dispatch for one frame or region; coverage gets
+    // the pyramid per-mille as from runCannyMat
+    bool runCannyStages(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2,
+                        int64_t* stageNs, int* coverage);
+    
+    // Canny pipeline per backend; stage times go to stageNs, nothing is committed
+    // In pyramid mode (levels > 0) the Mat path reports the covered per-mille, -1 if it ran full-frame
+    bool runCannyMat(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2, int64_t* stageNs,
+                     int levels = 0, int radius = 0, int* coverage = nullptr);
+    bool runCannyUMat(const cv::Mat& input, cv::Mat& output, double threshold1, double threshold2, int64_t* stageNs);
+    
+    // Coarse-to-fine Canny of a blurred frame into an output of its size; returns the
+    // per-mille of the frame that ran at full resolution, or -1 if the frame is too small
+    int runCannyPyramid(const cv::Mat& blurred, cv::Mat& output, double threshold1, double threshold2,
+                        int levels, int radius);
+    
+    // Continuous width x height view over a buffer of maxWidth x maxHeight; the
+    // buffer is allocated only when empty or when the pixel type changes
+    static cv::Mat region(cv::Mat& buffer, int maxWidth, int maxHeight, int width, int height, int type);
+    // ROI of a device buffer, allocated on the same terms
+    static cv::UMat region(cv::UMat& buffer, int maxWidth, int maxHeight, int width, int height, int type);
+    
+    // Device buffers kept across frames so the UMat path does not allocate per frame
+    cv::UMat umatInput;
+    cv::UMat umatGray;
+    cv::UMat umatBlurred;
+    cv::UMat umatEdges;
+    
+    // Working matrices at the maximum size; frames use views of them
     cv::Mat grayMat;
+    cv::Mat workingMat2;
+    cv::Mat edgeMat;
+    
+    // Downscaled input and edges when the analysis divisor is above 1, at half the maximum size
+    cv::Mat scaledInput;
+    cv::Mat scaledOutput;
+    
+    // Pyramid mode: one downscaled frame per level, coarse edges, candidate mask,
+    // full-resolution Canny of one region, the columns a band's mask covers and the
+    // regions of the current frame. Allocated on first use.
+    cv::Mat pyramidLevelMats[PYRAMID_MAX_LEVELS];
+    cv::Mat coarseEdges;
+    cv::Mat candidateMask;
+    cv::Mat bandEdges;
+    std::vector<uint8_t> bandColumns;
+    std::vector<cv::Rect> bandRegions;
     
-    // Performance timing
-    int64_t getTimeMs();
+    // Edges of one padded region of interest
+    cv::Mat regionEdges;
 };
 
 #endif // FRAME_PROCESSOR_H
\ No newline at end of file
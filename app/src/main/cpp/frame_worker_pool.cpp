@@ -0,0 +1,193 @@
+#include "frame_worker_pool.h"
+
+#include <atomic>
+
+#define LOG_TAG "FrameWorkerPool"
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+
+FrameWorkerPool::FrameWorkerPool(int workerCount)
+    : running(0)
+    , stopping(false)
+    , frameWidth(0)
+    , frameHeight(0) {
+    if (workerCount <= 0) {
+        workerCount = static_cast<int>(std::thread::hardware_concurrency());
+        if (workerCount <= 0) workerCount = 1;
+    }
+
+    workers.resize(workerCount);
+    for (int i = 0; i < workerCount; i++) {
+        workers[i].processor.reset(new FrameProcessor());
+    }
+    for (int i = 0; i < workerCount; i++) {
+        workers[i].thread = std::thread(&FrameWorkerPool::workerLoop, this, i);
+    }
+    LOGI("Started %d workers", workerCount);
+}
+
+FrameWorkerPool::~FrameWorkerPool() {
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        stopping = true;
+    }
+    taskAvailable.notify_all();
+    for (Worker& worker : workers) {
+        if (worker.thread.joinable()) {
+            worker.thread.join();
+        }
+    }
+}
+
+bool FrameWorkerPool::initialize(int width, int height) {
+    waitIdle();
+
+    for (Worker& worker : workers) {
+        if (!worker.processor->initialize(width, height)) {
+            LOGE("Failed to initialize worker processor for %dx%d", width, height);
+            return false;
+        }
+    }
+    frameWidth = width;
+    frameHeight = height;
+    return true;
+}
+
+void FrameWorkerPool::submit(Task task) {
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        queue.push_back(std::move(task));
+    }
+    taskAvailable.notify_one();
+}
+
+void FrameWorkerPool::parallelFor(int count, const std::function<void(int, FrameProcessor&)>& fn) {
+    if (count <= 0) {
+        return;
+    }
+
+    // Workers claim indices from a shared counter so uneven frames balance out
+    std::atomic<int> next(0);
+    std::mutex doneMutex;
+    std::condition_variable doneCondition;
+    int remaining = getWorkerCount() < count ? getWorkerCount() : count;
+    int tasks = remaining;
+
+    // Counts a task as done however it exits, so a throwing fn cannot leave
+    // the caller waiting forever
+    struct DoneGuard {
+        std::mutex& mutex;
+        std::condition_variable& condition;
+        int& remaining;
+        ~DoneGuard() {
+            std::lock_guard<std::mutex> lock(mutex);
+            if (--remaining == 0) {
+                condition.notify_one();
+            }
+        }
+    };
+
+    for (int t = 0; t < tasks; t++) {
+        submit([&](FrameProcessor& processor, int) {
+            DoneGuard done = {doneMutex, doneCondition, remaining};
+            for (int index = next.fetch_add(1); index < count; index = next.fetch_add(1)) {
+                fn(index, processor);
+            }
+        });
+    }
+
+    std::unique_lock<std::mutex> lock(doneMutex);
+    doneCondition.wait(lock, [&] { return remaining == 0; });
+}
+
+void FrameWorkerPool::waitIdle() {
+    std::unique_lock<std::mutex> lock(mutex);
+    idle.wait(lock, [this] { return queue.empty() && running == 0; });
+}
+
+ProcessingBackend FrameWorkerPool::setBackend(ProcessingBackend backend) {
+    waitIdle();
+
+    ProcessingBackend result = backend;
+    for (Worker& worker : workers) {
+        if (worker.processor->setBackend(backend) != backend) {
+            result = BACKEND_MAT;
+        }
+    }
+    if (result != backend) {
+        // Keep the workers consistent if only some could switch
+        for (Worker& worker : workers) {
+            worker.processor->setBackend(result);
+        }
+    }
+    return result;
+}
+
+ProcessingBackend FrameWorkerPool::calibrateBackend(int frames) {
+    waitIdle();
+    if (workers.empty()) {
+        return BACKEND_MAT;
+    }
+    return setBackend(workers[0].processor->calibrateBackend(frames));
+}
+
+void FrameWorkerPool::setPyramidMode(int levels, int dilationRadius) {
+    for (Worker& worker : workers) {
+        worker.processor->setPyramidMode(levels, dilationRadius);
+    }
+}
+
+void FrameWorkerPool::setThresholdMode(ThresholdMode mode) {
+    for (Worker& worker : workers) {
+        worker.processor->setThresholdMode(mode);
+    }
+}
+
+void FrameWorkerPool::setAnalysisDivisor(int divisor) {
+    for (Worker& worker : workers) {
+        worker.processor->setAnalysisDivisor(divisor);
+    }
+}
+
+int FrameWorkerPool::getWorkerStats(int worker, int64_t* out, int count) {
+    if (worker < 0 || worker >= getWorkerCount()) {
+        return 0;
+    }
+    return workers[worker].processor->getStatsSnapshot(out, count);
+}
+
+void FrameWorkerPool::workerLoop(int index) {
+    FrameProcessor& processor = *workers[index].processor;
+
+    for (;;) {
+        Task task;
+        {
+            std::unique_lock<std::mutex> lock(mutex);
+            taskAvailable.wait(lock, [this] { return stopping || !queue.empty(); });
+            if (queue.empty()) {
+                return; // Stopping and drained
+            }
+            task = std::move(queue.front());
+            queue.pop_front();
+            running++;
+        }
+
+        // Config changes reach idle workers with their next task
+        affinity::applyToCurrentThread();
+        try {
+            task(processor, index);
+        } catch (const std::exception& e) {
+            LOGE("Worker %d task failed: %s", index, e.what());
+        } catch (...) {
+            LOGE("Worker %d task failed with an unknown exception", index);
+        }
+
+        {
+            std::lock_guard<std::mutex> lock(mutex);
+            running--;
+            if (running == 0 && queue.empty()) {
+                idle.notify_all();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+#ifndef FRAME_WORKER_POOL_H
+#define FRAME_WORKER_POOL_H
+
+#include "frame_processor.h"
+
+#include <condition_variable>
+#include <deque>
+#include <functional>
+#include <memory>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+// Fixed pool of worker threads, each owning its own FrameProcessor.
+//
+// FrameProcessor keeps per-frame working buffers and statistics, so it must
+// not be shared between threads; giving every worker a private instance lets
+// frames run fully in parallel without locking. Tasks receive the worker's
+// processor and its index.
+class FrameWorkerPool {
+public:
+    typedef std::function<void(FrameProcessor& processor, int worker)> Task;
+
+    // workerCount <= 0 uses one worker per hardware thread
+    explicit FrameWorkerPool(int workerCount = 0);
+    ~FrameWorkerPool();
+
+    FrameWorkerPool(const FrameWorkerPool&) = delete;
+    FrameWorkerPool& operator=(const FrameWorkerPool&) = delete;
+
+    // (Re)initialize every worker's processor for the given frame size
+    bool initialize(int width, int height);
+
+    int getWorkerCount() const { return static_cast<int>(workers.size()); }
+    int getWidth() const { return frameWidth; }
+    int getHeight() const { return frameHeight; }
+
+    // Queue a task for the next free worker
+    void submit(Task task);
+
+    // Run fn(index, processor) for every index in [0, count) and wait for all of them
+    void parallelFor(int count, const std::function<void(int index, FrameProcessor& processor)>& fn);
+
+    // Block until the queue is empty and no task is running
+    void waitIdle();
+
+    // Apply a backend to every worker; returns BACKEND_UMAT only if all workers got it
+    ProcessingBackend setBackend(ProcessingBackend backend);
+
+    // Calibrate on the first worker and apply the result to all of them
+    ProcessingBackend calibrateBackend(int frames = 10);
+
+    // Apply the pyramid Canny mode to every worker (levels = 0 turns it off)
+    void setPyramidMode(int levels, int dilationRadius);
+
+    // Apply the Canny threshold mode to every worker
+    void setThresholdMode(ThresholdMode mode);
+
+    // Apply the analysis downscale to every worker
+    void setAnalysisDivisor(int divisor);
+
+    // Stats snapshot of one worker's processor (see frame_processor.h for the layout)
+    int getWorkerStats(int worker, int64_t* out, int count);
+
+private:
+    struct Worker {
+        std::thread thread;
+        std::unique_ptr<FrameProcessor> processor;
+    };
+
+    std::vector<Worker> workers;
+    std::deque<Task> queue;
+    std::mutex mutex;
+    std::condition_variable taskAvailable;
+    std::condition_variable idle;
+    int running;
+    bool stopping;
+    int frameWidth;
+    int frameHeight;
+
+    void workerLoop(int index);
+};
+
+#endif // FRAME_WORKER_POOL_H
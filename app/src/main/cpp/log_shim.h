@@ -0,0 +1,41 @@
+#ifndef LOG_SHIM_H
+#define LOG_SHIM_H
+
+// Lets the processing sources log through __android_log_print on device and
+// build unchanged on a desktop host (tools/), where messages go to stderr.
+
+#ifdef __ANDROID__
+#include <android/log.h>
+#else
+#include <cstdarg>
+#include <cstdio>
+
+enum {
+    ANDROID_LOG_VERBOSE = 2,
+    ANDROID_LOG_DEBUG = 3,
+    ANDROID_LOG_INFO = 4,
+    ANDROID_LOG_WARN = 5,
+    ANDROID_LOG_ERROR = 6
+};
+
+// Messages below this priority are dropped on the host (default: warnings and errors)
+inline int& hostLogMinPriority() {
+    static int priority = ANDROID_LOG_WARN;
+    return priority;
+}
+
+inline int __android_log_print(int priority, const char* tag, const char* fmt, ...) {
+    if (priority < hostLogMinPriority()) {
+        return 0;
+    }
+    va_list args;
+    va_start(args, fmt);
+    fprintf(stderr, "%s: ", tag);
+    int written = vfprintf(stderr, fmt, args);
+    fputc('\n', stderr);
+    va_end(args);
+    return written;
+}
+#endif
+
+#endif // LOG_SHIM_H
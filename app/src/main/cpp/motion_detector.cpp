@@ -0,0 +1,81 @@
+#include "motion_detector.h"
+
+#include <cstdlib>
+
+// Samples per cell along each axis
+#define MOTION_SAMPLES 4
+
+MotionDetector::MotionDetector(int gridWidth, int gridHeight)
+    : gridWidth(gridWidth > 0 ? gridWidth : 64)
+    , gridHeight(gridHeight > 0 ? gridHeight : 36)
+    , cellThreshold(12)
+    , frameWidth(0)
+    , frameHeight(0)
+    , hasReference(false) {
+    reference.resize(this->gridWidth * this->gridHeight);
+    current.resize(this->gridWidth * this->gridHeight);
+}
+
+void MotionDetector::reset() {
+    hasReference = false;
+}
+
+float MotionDetector::update(const uint8_t* luma, int width, int height, int rowStride) {
+    if (luma == nullptr || width < gridWidth * MOTION_SAMPLES || height < gridHeight * MOTION_SAMPLES
+        || rowStride < width) {
+        return 1.0f;
+    }
+    if (width != frameWidth || height != frameHeight) {
+        frameWidth = width;
+        frameHeight = height;
+        hasReference = false;
+    }
+
+    sampleGrid(luma, width, height, rowStride);
+    if (!hasReference) {
+        reference.swap(current);
+        hasReference = true;
+        return 1.0f;
+    }
+
+    // Mean shift between the grids: global exposure change, not motion
+    int cells = gridWidth * gridHeight;
+    long long shift = 0;
+    for (int i = 0; i < cells; i++) {
+        shift += current[i] - reference[i];
+    }
+    int meanShift = static_cast<int>(shift / cells);
+
+    int changed = 0;
+    for (int i = 0; i < cells; i++) {
+        if (abs(current[i] - reference[i] - meanShift) > cellThreshold) {
+            changed++;
+        }
+    }
+
+    reference.swap(current);
+    return static_cast<float>(changed) / cells;
+}
+
+void MotionDetector::sampleGrid(const uint8_t* luma, int width, int height, int rowStride) {
+    int cellWidth = width / gridWidth;
+    int cellHeight = height / gridHeight;
+    int stepX = cellWidth / MOTION_SAMPLES > 0 ? cellWidth / MOTION_SAMPLES : 1;
+    int stepY = cellHeight / MOTION_SAMPLES > 0 ? cellHeight / MOTION_SAMPLES : 1;
+
+    for (int gy = 0; gy < gridHeight; gy++) {
+        // Start half a step in so samples sit inside the cell, not on its edges
+        const uint8_t* cellRow = luma + (gy * cellHeight + stepY / 2) * rowStride;
+        for (int gx = 0; gx < gridWidth; gx++) {
+            const uint8_t* cell = cellRow + gx * cellWidth + stepX / 2;
+            int sum = 0;
+            for (int sy = 0; sy < MOTION_SAMPLES; sy++) {
+                const uint8_t* row = cell + sy * stepY * rowStride;
+                for (int sx = 0; sx < MOTION_SAMPLES; sx++) {
+                    sum += row[sx * stepX];
+                }
+            }
+            current[gy * gridWidth + gx] = sum / (MOTION_SAMPLES * MOTION_SAMPLES);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+#ifndef MOTION_DETECTOR_H
+#define MOTION_DETECTOR_H
+
+#include <cstdint>
+#include <vector>
+
+// Cheap scene-change detector for the idle mode.
+//
+// The Y plane is reduced to a small grid (64x36 by default). Each cell is
+// the mean of a sparse 4x4 sample pattern inside it, so a 1080p frame costs
+// a few thousand reads instead of two million. Consecutive grids are
+// compared cell by cell after removing the mean brightness shift. That way
+// auto-exposure steps, including the one caused by changing the AE fps
+// range, do not count as motion. The score is the fraction of cells whose
+// change exceeds the threshold.
+class MotionDetector {
+public:
+    explicit MotionDetector(int gridWidth = 64, int gridHeight = 36);
+
+    // Score one frame's luma plane. Returns the changed-cell fraction in
+    // [0, 1]; the first frame after a reset or size change returns 1.
+    float update(const uint8_t* luma, int width, int height, int rowStride);
+
+    // Minimum per-cell luma change, after exposure compensation, that counts as motion
+    void setCellThreshold(int threshold) { cellThreshold = threshold > 0 ? threshold : 1; }
+    int getCellThreshold() const { return cellThreshold; }
+
+    // Forget the reference grid; the next frame scores as full motion
+    void reset();
+
+private:
+    int gridWidth;
+    int gridHeight;
+    int cellThreshold;
+    int frameWidth;
+    int frameHeight;
+    bool hasReference;
+
+    std::vector<int> reference;
+    std::vector<int> current;
+
+    void sampleGrid(const uint8_t* luma, int width, int height, int rowStride);
+};
+
+#endif // MOTION_DETECTOR_H
@@ -1,8 +1,18 @@
 #include <jni.h>
+#include <algorithm>
 #include <string>
+#include <cstring>
+#include <atomic>
+#include <mutex>
+#include <vector>
 #include <android/bitmap.h>
 #include <android/log.h>
 #include "frame_processor.h"
+#include "frame_worker_pool.h"
+#include "edge_codec.h"
+#include "motion_detector.h"
+#include "native_trace.h"
+#include "thread_affinity.h"
 
 #define LOG_TAG "EdgeDetectorJNI"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
@@ -11,6 +21,36 @@
 // Global frame processor instance
 static FrameProcessor* g_frameProcessor = nullptr;
 
+// Backend applied to the processor at initialization (set by calibration or the app)
+static std::atomic<int> g_preferredBackend(BACKEND_MAT);
+
+// Analysis downscale applied to the live processor, kept across re-initialization
+static std::atomic<int> g_analysisDivisor(1);
+
+// Canny threshold mode for the live processor, kept across re-initialisation
+static std::atomic<int> g_thresholdMode(THRESHOLD_FIXED);
+
+// Pyramid Canny levels (0 = off) and dilation radius, kept across re-initialisation
+static std::atomic<int> g_pyramidLevels(0);
+static std::atomic<int> g_pyramidRadius(2);
+
+// Auto-ROI whole-frame interval, 0 when off; kept across re-initialisation
+static std::atomic<int> g_autoRoiInterval(0);
+
+// Worker pool for batched processing, created on first use; one batch at a time
+static FrameWorkerPool* g_batchPool = nullptr;
+static std::mutex g_batchMutex;
+// Backend last requested for the pool, -1 to apply on the next batch; guarded by g_batchMutex
+static int g_batchPoolBackend = -1;
+
+// Edge map codec shared by export paths; encode order matters, so serialise access
+static EdgeCodec g_edgeCodec;
+static std::mutex g_edgeCodecMutex;
+
+// Motion scoring for the idle mode; runs on the camera thread, ahead of processing
+static MotionDetector g_motionDetector;
+static std::mutex g_motionMutex;
+
 extern "C" {
 
 JNIEXPORT jstring JNICALL
@@ -19,18 +59,51 @@ Java_com_assessment_edgedetector_NativeLib_stringFromJNI(JNIEnv *env, jobject th
     return env->NewStringUTF(hello.c_str());
 }
 
+JNIEXPORT jlong JNICALL
+Java_com_assessment_edgedetector_NativeLib_warmUp(JNIEnv *env, jobject thiz) {
+    // A throwaway processor: faults in OpenCV's code pages and starts its thread pool
+    int64_t start = FrameProcessor::getTimeNs();
+    try {
+        cv::Mat frame(240, 320, CV_8UC3);
+        cv::randu(frame, cv::Scalar::all(0), cv::Scalar::all(255));
+        cv::Mat edges;
+        FrameProcessor warm;
+        if (!warm.initialize(frame.cols, frame.rows) || !warm.processFrameCanny(frame, edges)) {
+            LOGE("Warm-up pass failed");
+        }
+    } catch (const cv::Exception& e) {
+        LOGE("Warm-up error: %s", e.what());
+    }
+    int64_t elapsed = FrameProcessor::getTimeNs() - start;
+    LOGI("OpenCV warm-up took %.2f ms", elapsed / 1e6);
+    return elapsed;
+}
+
 JNIEXPORT jboolean JNICALL
 Java_com_assessment_edgedetector_NativeLib_initializeProcessor(JNIEnv *env, jobject thiz,
                                                                jint width, jint height) {
-    LOGI("Initializing frame processor for %dx%d", width, height);
-    
-    if (g_frameProcessor != nullptr) {
-        delete g_frameProcessor;
+    // Sizes up to the buffers' maximum need no allocation; a warm restart or a
+    // smaller analysis size keeps the processor with its settings and statistics
+    if (g_frameProcessor != nullptr && g_frameProcessor->fits(width, height)) {
+        LOGI("Reusing frame processor (up to %dx%d) for %dx%d",
+             g_frameProcessor->getMaxWidth(), g_frameProcessor->getMaxHeight(), width, height);
+        return JNI_TRUE;
     }
     
-    g_frameProcessor = new FrameProcessor();
+    // Growing reallocates the buffers of the existing processor
+    if (g_frameProcessor == nullptr) {
+        g_frameProcessor = new FrameProcessor();
+    }
+    int maxWidth = std::max(static_cast<int>(width), g_frameProcessor->getMaxWidth());
+    int maxHeight = std::max(static_cast<int>(height), g_frameProcessor->getMaxHeight());
+    LOGI("Initializing frame processor for frames up to %dx%d", maxWidth, maxHeight);
     
-    if (g_frameProcessor->initialize(width, height)) {
+    if (g_frameProcessor->initialize(maxWidth, maxHeight)) {
+        g_frameProcessor->setBackend(static_cast<ProcessingBackend>(g_preferredBackend.load()));
+        g_frameProcessor->setAnalysisDivisor(g_analysisDivisor.load());
+        g_frameProcessor->setThresholdMode(static_cast<ThresholdMode>(g_thresholdMode.load()));
+        g_frameProcessor->setPyramidMode(g_pyramidLevels.load(), g_pyramidRadius.load());
+        g_frameProcessor->setAutoRoi(g_autoRoiInterval.load() > 0, g_autoRoiInterval.load());
         LOGI("Frame processor initialized successfully");
         return JNI_TRUE;
     } else {
@@ -41,14 +114,154 @@ Java_com_assessment_edgedetector_NativeLib_initializeProcessor(JNIEnv *env, jobj
     }
 }
 
-JNIEXPORT jbyteArray JNICALL
-Java_com_assessment_edgedetector_NativeLib_processFrameCanny(JNIEnv *env, jobject thiz,
-                                                             jbyteArray inputData, jint width, jint height) {
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_calibrateProcessingBackend(JNIEnv *env, jobject thiz,
+                                                                      jint width, jint height) {
+    // A private processor keeps the probe off the live one, which may be processing frames
+    FrameProcessor probe;
+    if (!probe.initialize(width, height)) {
+        return g_preferredBackend.load();
+    }
+    ProcessingBackend chosen = probe.calibrateBackend();
+    g_preferredBackend.store(chosen);
+    return chosen;
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setPreferredBackend(JNIEnv *env, jobject thiz, jint backend) {
+    g_preferredBackend.store(backend == BACKEND_UMAT ? BACKEND_UMAT : BACKEND_MAT);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_getProcessingBackend(JNIEnv *env, jobject thiz) {
+    return g_frameProcessor != nullptr ? g_frameProcessor->getBackend() : g_preferredBackend.load();
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setAnalysisDivisor(JNIEnv *env, jobject thiz, jint divisor) {
+    int clamped = divisor > 1 ? divisor : 1;
+    if (g_analysisDivisor.exchange(clamped) != clamped) {
+        LOGI("Analysis divisor set to %d", clamped);
+    }
+    if (g_frameProcessor != nullptr) {
+        g_frameProcessor->setAnalysisDivisor(clamped);
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setThresholdMode(JNIEnv *env, jobject thiz, jint mode) {
+    ThresholdMode checked = mode == THRESHOLD_MEDIAN || mode == THRESHOLD_OTSU
+        ? static_cast<ThresholdMode>(mode) : THRESHOLD_FIXED;
+    g_thresholdMode.store(checked);
+    if (g_frameProcessor != nullptr) {
+        g_frameProcessor->setThresholdMode(checked);
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setPyramidMode(JNIEnv *env, jobject thiz, jint levels,
+                                                          jint dilationRadius) {
+    int clampedLevels = std::max(0, std::min(static_cast<int>(levels), PYRAMID_MAX_LEVELS));
+    int clampedRadius = std::max(0, std::min(static_cast<int>(dilationRadius), PYRAMID_MAX_RADIUS));
+    g_pyramidLevels.store(clampedLevels);
+    g_pyramidRadius.store(clampedRadius);
+    if (g_frameProcessor != nullptr) {
+        g_frameProcessor->setPyramidMode(clampedLevels, clampedRadius);
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setAutoRoi(JNIEnv *env, jobject thiz, jboolean enabled,
+                                                      jint fullFrameInterval) {
+    int interval = enabled ? std::max(1, static_cast<int>(fullFrameInterval)) : 0;
+    g_autoRoiInterval.store(interval);
+    if (g_frameProcessor != nullptr) {
+        g_frameProcessor->setAutoRoi(interval > 0, interval);
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setOpenCvThreads(JNIEnv *env, jobject thiz, jint threads) {
+    // OpenCV treats a negative count as "restore the default"
+    cv::setNumThreads(threads > 0 ? threads : -1);
+    LOGI("OpenCV worker threads: %d", cv::getNumThreads());
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_getCpuClusters(JNIEnv *env, jobject thiz, jlongArray out) {
+    const std::vector<affinity::CpuCluster>& clusters = affinity::getClusters();
+    jint count = static_cast<jint>(clusters.size());
+    if (out != nullptr) {
+        jint capacity = env->GetArrayLength(out) / 2;
+        for (jint i = 0; i < count && i < capacity; i++) {
+            jlong pair[2] = {static_cast<jlong>(clusters[i].mask), clusters[i].maxFreqKhz};
+            env->SetLongArrayRegion(out, i * 2, 2, pair);
+        }
+    }
+    return count;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_assessment_edgedetector_NativeLib_setProcessingThreadConfig(JNIEnv *env, jobject thiz,
+                                                                     jlong cpuMask, jint nice) {
+    uint64_t known = 0;
+    for (const affinity::CpuCluster& cluster : affinity::getClusters()) {
+        known |= cluster.mask;
+    }
+    uint64_t mask = static_cast<uint64_t>(cpuMask);
+    if (mask != 0 && (mask & known) == 0) {
+        LOGE("CPU mask 0x%llx matches no detected CPU", static_cast<unsigned long long>(mask));
+        return JNI_FALSE;
+    }
+    if (nice != THREAD_NICE_DEFAULT && (nice < -20 || nice > 19)) {
+        LOGE("Nice value out of range: %d", nice);
+        return JNI_FALSE;
+    }
+    
+    affinity::ThreadConfig config = {mask, nice};
+    affinity::setConfig(config);
+    return JNI_TRUE;
+}
+
+// Canny over a frame, whole or inside regions; returns the full-size edge map
+static jbyteArray processCannyMat(JNIEnv *env, const cv::Mat& inputMat, const cv::Rect* regions,
+                                  int regionCount) {
+    try {
+        // Results go to the processor's own buffer; the copy to Java is the only one
+        cv::Mat outputMat = g_frameProcessor->outputView(inputMat.cols, inputMat.rows);
+        
+        // Process with Canny edge detection
+        if (!g_frameProcessor->processFrameCannyRegions(inputMat, outputMat, regions, regionCount, 50.0, 150.0)) {
+            LOGE("Canny processing failed");
+            return nullptr;
+        }
+        
+        // Create result byte array
+        int64_t copyStart = FrameProcessor::getTimeNs();
+        jsize outputLength = outputMat.total() * outputMat.elemSize();
+        jbyteArray result = env->NewByteArray(outputLength);
+        if (result != nullptr) {
+            env->SetByteArrayRegion(result, 0, outputLength, 
+                                   reinterpret_cast<const jbyte*>(outputMat.data));
+        }
+        g_frameProcessor->recordCopyOut(FrameProcessor::getTimeNs() - copyStart);
+        return result;
+    } catch (const std::exception& e) {
+        LOGE("Exception in processFrameCanny: %s", e.what());
+        return nullptr;
+    }
+}
+
+// Canny over an RGB frame from Java, whole or inside regions
+static jbyteArray processCanny(JNIEnv *env, jbyteArray inputData, jint width, jint height,
+                               const cv::Rect* regions, int regionCount) {
     if (g_frameProcessor == nullptr) {
         LOGE("Frame processor not initialized");
         return nullptr;
     }
     
+    TRACE_SCOPE("JNI processFrameCanny");
+    
     // Get input data
     jbyte* inputBytes = env->GetByteArrayElements(inputData, nullptr);
     if (inputBytes == nullptr) {
@@ -58,35 +271,77 @@ Java_com_assessment_edgedetector_NativeLib_processFrameCanny(JNIEnv *env, jobjec
     
     jsize inputLength = env->GetArrayLength(inputData);
     
-    try {
-        // Create OpenCV Mat from input data (assuming RGB format)
-        cv::Mat inputMat(height, width, CV_8UC3, inputBytes);
-        cv::Mat outputMat;
-        
-        // Process with Canny edge detection
-        if (g_frameProcessor->processFrameCanny(inputMat, outputMat)) {
-            // Create result byte array
-            jsize outputLength = outputMat.total() * outputMat.elemSize();
-            jbyteArray result = env->NewByteArray(outputLength);
-            
-            if (result != nullptr) {
-                env->SetByteArrayRegion(result, 0, outputLength, 
-                                       reinterpret_cast<const jbyte*>(outputMat.data));
-            }
-            
-            env->ReleaseByteArrayElements(inputData, inputBytes, JNI_ABORT);
-            return result;
-        } else {
-            LOGE("Canny processing failed");
-            env->ReleaseByteArrayElements(inputData, inputBytes, JNI_ABORT);
-            return nullptr;
+    // Create OpenCV Mat from input data (assuming RGB format)
+    cv::Mat inputMat(height, width, CV_8UC3, inputBytes);
+    jbyteArray result = processCannyMat(env, inputMat, regions, regionCount);
+    env->ReleaseByteArrayElements(inputData, inputBytes, JNI_ABORT);
+    return result;
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_assessment_edgedetector_NativeLib_processFrameCanny(JNIEnv *env, jobject thiz,
+                                                             jbyteArray inputData, jint width, jint height) {
+    return processCanny(env, inputData, width, height, nullptr, 0);
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_assessment_edgedetector_NativeLib_processFrameCannyRoi(JNIEnv *env, jobject thiz,
+                                                                jbyteArray inputData, jint width, jint height,
+                                                                jintArray regions, jint regionCount) {
+    // x, y, width, height per rectangle; anything past ROI_MAX_REGIONS is ignored
+    cv::Rect rects[ROI_MAX_REGIONS];
+    int count = 0;
+    if (regions != nullptr && regionCount > 0) {
+        count = std::min(static_cast<int>(regionCount), ROI_MAX_REGIONS);
+        count = std::min(count, static_cast<int>(env->GetArrayLength(regions) / 4));
+        jint values[ROI_MAX_REGIONS * 4];
+        env->GetIntArrayRegion(regions, 0, count * 4, values);
+        for (int i = 0; i < count; i++) {
+            rects[i] = cv::Rect(values[i * 4], values[i * 4 + 1], values[i * 4 + 2], values[i * 4 + 3]);
         }
-        
-    } catch (const std::exception& e) {
-        LOGE("Exception in processFrameCanny: %s", e.what());
-        env->ReleaseByteArrayElements(inputData, inputBytes, JNI_ABORT);
+    }
+    return processCanny(env, inputData, width, height, rects, count);
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_assessment_edgedetector_NativeLib_processFrameCannyDirect(JNIEnv *env, jobject thiz, jobject frameBuffer,
+                                                                   jint offset, jint width, jint height,
+                                                                   jint rowStride) {
+    if (g_frameProcessor == nullptr) {
+        LOGE("Frame processor not initialized");
         return nullptr;
     }
+    if (frameBuffer == nullptr || offset < 0 || width <= 0 || height <= 0 || rowStride < width) {
+        return nullptr;
+    }
+    uint8_t* base = static_cast<uint8_t*>(env->GetDirectBufferAddress(frameBuffer));
+    if (base == nullptr) {
+        LOGE("Direct processing needs a direct ByteBuffer");
+        return nullptr;
+    }
+    jlong capacity = env->GetDirectBufferCapacity(frameBuffer);
+    if (capacity < offset + static_cast<jlong>(rowStride) * (height - 1) + width) {
+        LOGE("Frame buffer too small for processing: %lld bytes for %dx%d (stride %d, offset %d)",
+             static_cast<long long>(capacity), width, height, rowStride, offset);
+        return nullptr;
+    }
+    
+    TRACE_SCOPE("JNI processFrameCannyDirect");
+    // Reads the luma plane of the shared camera frame in place; never written
+    cv::Mat inputMat(height, width, CV_8UC1, base + offset, static_cast<size_t>(rowStride));
+    return processCannyMat(env, inputMat, nullptr, 0);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_getProcessedRegions(JNIEnv *env, jobject thiz, jintArray out) {
+    if (out == nullptr || g_frameProcessor == nullptr) {
+        return 0;
+    }
+    int capacity = std::min(static_cast<int>(env->GetArrayLength(out) / 4), ROI_MAX_REGIONS);
+    jint values[ROI_MAX_REGIONS * 4];
+    int count = g_frameProcessor->getLastRegions(values, capacity);
+    env->SetIntArrayRegion(out, 0, count * 4, values);
+    return count;
 }
 
 JNIEXPORT jbyteArray JNICALL
@@ -107,7 +362,7 @@ Java_com_assessment_edgedetector_NativeLib_processFrameGrayscale(JNIEnv *env, jo
     try {
         // Create OpenCV Mat from input data
         cv::Mat inputMat(height, width, CV_8UC3, inputBytes);
-        cv::Mat outputMat;
+        cv::Mat outputMat = g_frameProcessor->outputView(width, height);
         
         // Process with grayscale conversion
         if (g_frameProcessor->processFrameGrayscale(inputMat, outputMat)) {
@@ -190,6 +445,68 @@ Java_com_assessment_edgedetector_NativeLib_processBitmapCanny(JNIEnv *env, jobje
     }
 }
 
+JNIEXPORT jfloat JNICALL
+Java_com_assessment_edgedetector_NativeLib_detectMotion(JNIEnv *env, jobject thiz, jbyteArray frameData,
+                                                        jint width, jint height, jint rowStride) {
+    if (frameData == nullptr || width <= 0 || height <= 0 || rowStride < width) {
+        return 1.0f;
+    }
+    jsize length = env->GetArrayLength(frameData);
+    if (length < static_cast<jlong>(rowStride) * (height - 1) + width) {
+        LOGE("Frame too small for motion detection: %d bytes for %dx%d (stride %d)",
+             length, width, height, rowStride);
+        return 1.0f;
+    }
+    
+    TRACE_SCOPE("JNI detectMotion");
+    std::lock_guard<std::mutex> lock(g_motionMutex);
+    // Only a few thousand sparse reads; the critical section stays short
+    void* luma = env->GetPrimitiveArrayCritical(frameData, nullptr);
+    if (luma == nullptr) {
+        return 1.0f;
+    }
+    float score = g_motionDetector.update(static_cast<const uint8_t*>(luma), width, height, rowStride);
+    env->ReleasePrimitiveArrayCritical(frameData, luma, JNI_ABORT);
+    return score;
+}
+
+JNIEXPORT jfloat JNICALL
+Java_com_assessment_edgedetector_NativeLib_detectMotionDirect(JNIEnv *env, jobject thiz, jobject frameBuffer,
+                                                              jint offset, jint width, jint height,
+                                                              jint rowStride) {
+    if (frameBuffer == nullptr || offset < 0 || width <= 0 || height <= 0 || rowStride < width) {
+        return 1.0f;
+    }
+    const uint8_t* base = static_cast<const uint8_t*>(env->GetDirectBufferAddress(frameBuffer));
+    if (base == nullptr) {
+        LOGE("Motion detection needs a direct ByteBuffer");
+        return 1.0f;
+    }
+    jlong capacity = env->GetDirectBufferCapacity(frameBuffer);
+    if (capacity < offset + static_cast<jlong>(rowStride) * (height - 1) + width) {
+        LOGE("Frame buffer too small for motion detection: %lld bytes for %dx%d (stride %d, offset %d)",
+             static_cast<long long>(capacity), width, height, rowStride, offset);
+        return 1.0f;
+    }
+    
+    TRACE_SCOPE("JNI detectMotionDirect");
+    // Reads the shared camera frame in place; no pinning or copy
+    std::lock_guard<std::mutex> lock(g_motionMutex);
+    return g_motionDetector.update(base + offset, width, height, rowStride);
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setMotionCellThreshold(JNIEnv *env, jobject thiz, jint threshold) {
+    std::lock_guard<std::mutex> lock(g_motionMutex);
+    g_motionDetector.setCellThreshold(threshold);
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_resetMotionDetector(JNIEnv *env, jobject thiz) {
+    std::lock_guard<std::mutex> lock(g_motionMutex);
+    g_motionDetector.reset();
+}
+
 JNIEXPORT jdouble JNICALL
 Java_com_assessment_edgedetector_NativeLib_getLastProcessingTime(JNIEnv *env, jobject thiz) {
     if (g_frameProcessor == nullptr) {
@@ -206,6 +523,215 @@ Java_com_assessment_edgedetector_NativeLib_getProcessedFrameCount(JNIEnv *env, j
     return g_frameProcessor->getProcessedFrameCount();
 }
 
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_processBatchCanny(JNIEnv *env, jobject thiz,
+                                                             jobject inputBuffer, jintArray inputOffsets,
+                                                             jint frameCount, jint width, jint height,
+                                                             jint channels, jobject outputBuffer,
+                                                             jintArray frameStatus) {
+    TRACE_SCOPE("JNI processBatchCanny");
+    
+    if (frameCount <= 0 || width <= 0 || height <= 0
+            || (channels != 1 && channels != 3 && channels != 4)) {
+        LOGE("Invalid batch: %d frames of %dx%dx%d", frameCount, width, height, channels);
+        return -1;
+    }
+    
+    uint8_t* input = static_cast<uint8_t*>(env->GetDirectBufferAddress(inputBuffer));
+    uint8_t* output = static_cast<uint8_t*>(env->GetDirectBufferAddress(outputBuffer));
+    if (input == nullptr || output == nullptr) {
+        LOGE("Batch buffers must be direct ByteBuffers");
+        return -1;
+    }
+    
+    size_t inputFrameBytes = static_cast<size_t>(width) * height * channels;
+    size_t outputFrameBytes = static_cast<size_t>(width) * height;
+    jlong inputCapacity = env->GetDirectBufferCapacity(inputBuffer);
+    jlong outputCapacity = env->GetDirectBufferCapacity(outputBuffer);
+    if (outputCapacity < static_cast<jlong>(outputFrameBytes * frameCount)
+            || env->GetArrayLength(inputOffsets) < frameCount
+            || (frameStatus != nullptr && env->GetArrayLength(frameStatus) < frameCount)) {
+        LOGE("Batch output buffer or tables too small for %d frames", frameCount);
+        return -1;
+    }
+    
+    // Validate the whole offsets table up front so workers never see a bad frame
+    std::vector<jint> offsets(frameCount);
+    env->GetIntArrayRegion(inputOffsets, 0, frameCount, offsets.data());
+    for (jint i = 0; i < frameCount; i++) {
+        if (offsets[i] < 0 || offsets[i] + static_cast<jlong>(inputFrameBytes) > inputCapacity) {
+            LOGE("Batch frame %d at offset %d overruns the input buffer", i, offsets[i]);
+            return -1;
+        }
+    }
+    
+    std::lock_guard<std::mutex> lock(g_batchMutex);
+    if (g_batchPool == nullptr) {
+        g_batchPool = new FrameWorkerPool();
+    }
+    // Workers process smaller frames in their existing buffers
+    if (g_batchPool->getWidth() < width || g_batchPool->getHeight() < height) {
+        if (!g_batchPool->initialize(std::max(width, g_batchPool->getWidth()),
+                                     std::max(height, g_batchPool->getHeight()))) {
+            return -1;
+        }
+        g_batchPoolBackend = -1;
+    }
+    
+    // Same settings as the live processor (see initializeProcessor), applied per batch
+    // so later changes reach the workers. Switching backend reallocates its buffers,
+    // so that only happens when the requested backend changes
+    int backend = g_preferredBackend.load();
+    if (backend != g_batchPoolBackend) {
+        g_batchPool->setBackend(static_cast<ProcessingBackend>(backend));
+        g_batchPoolBackend = backend;
+    }
+    g_batchPool->setAnalysisDivisor(g_analysisDivisor.load());
+    g_batchPool->setThresholdMode(static_cast<ThresholdMode>(g_thresholdMode.load()));
+    g_batchPool->setPyramidMode(g_pyramidLevels.load(), g_pyramidRadius.load());
+    
+    int cvType = channels == 1 ? CV_8UC1 : channels == 3 ? CV_8UC3 : CV_8UC4;
+    std::vector<jint> status(frameCount, -1);
+    
+    // Results land directly in the output buffer: Canny reuses a destination of the right size
+    g_batchPool->parallelFor(frameCount, [&](int i, FrameProcessor& processor) {
+        cv::Mat inputMat(height, width, cvType, input + offsets[i]);
+        cv::Mat outputMat(height, width, CV_8UC1, output + outputFrameBytes * i);
+        uint8_t* target = outputMat.data;
+        if (processor.processFrameCanny(inputMat, outputMat)) {
+            if (outputMat.data != target) {
+                memcpy(target, outputMat.data, outputFrameBytes);
+            }
+            status[i] = 0;
+        }
+    });
+    
+    jint processed = 0;
+    for (jint s : status) {
+        if (s == 0) processed++;
+    }
+    if (frameStatus != nullptr) {
+        env->SetIntArrayRegion(frameStatus, 0, frameCount, status.data());
+    }
+    return processed;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_getStatsSnapshot(JNIEnv *env, jobject thiz, jlongArray out) {
+    if (out == nullptr || env->GetArrayLength(out) < STATS_SNAPSHOT_SIZE) {
+        return 0;
+    }
+    
+    jlong snapshot[STATS_SNAPSHOT_SIZE] = {0};
+    if (g_frameProcessor != nullptr) {
+        g_frameProcessor->getStatsSnapshot(reinterpret_cast<int64_t*>(snapshot), STATS_SNAPSHOT_SIZE);
+    }
+    env->SetLongArrayRegion(out, 0, STATS_SNAPSHOT_SIZE, snapshot);
+    return STATS_SNAPSHOT_SIZE;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_getStatsSnapshotDirect(JNIEnv *env, jobject thiz, jobject buffer) {
+    // Written in native byte order; the Java side must view the buffer with ByteOrder.nativeOrder()
+    int64_t* out = static_cast<int64_t*>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (out == nullptr || capacity < static_cast<jlong>(STATS_SNAPSHOT_SIZE * sizeof(int64_t))) {
+        return 0;
+    }
+    
+    if (g_frameProcessor == nullptr) {
+        memset(out, 0, STATS_SNAPSHOT_SIZE * sizeof(int64_t));
+        return STATS_SNAPSHOT_SIZE;
+    }
+    return g_frameProcessor->getStatsSnapshot(out, STATS_SNAPSHOT_SIZE);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_assessment_edgedetector_NativeLib_encodeEdgeFrame(JNIEnv *env, jobject thiz,
+                                                           jbyteArray edgeData, jint width, jint height,
+                                                           jbyteArray outputData) {
+    if (edgeData == nullptr || outputData == nullptr) {
+        return -1;
+    }
+    
+    jsize inputLength = env->GetArrayLength(edgeData);
+    jsize outputLength = env->GetArrayLength(outputData);
+    if (width <= 0 || height <= 0 || inputLength < width * height) {
+        LOGE("Invalid edge frame: %dx%d with %d bytes", width, height, inputLength);
+        return -1;
+    }
+    
+    // Critical access avoids copying both arrays; nothing below calls back into the JVM
+    uint8_t* input = static_cast<uint8_t*>(env->GetPrimitiveArrayCritical(edgeData, nullptr));
+    if (input == nullptr) {
+        return -1;
+    }
+    uint8_t* output = static_cast<uint8_t*>(env->GetPrimitiveArrayCritical(outputData, nullptr));
+    if (output == nullptr) {
+        env->ReleasePrimitiveArrayCritical(edgeData, input, JNI_ABORT);
+        return -1;
+    }
+    
+    size_t encoded;
+    {
+        TRACE_SCOPE("EdgeCodec::encode");
+        std::lock_guard<std::mutex> lock(g_edgeCodecMutex);
+        encoded = g_edgeCodec.encode(input, width, height, width, output, outputLength);
+    }
+    
+    env->ReleasePrimitiveArrayCritical(outputData, output, 0);
+    env->ReleasePrimitiveArrayCritical(edgeData, input, JNI_ABORT);
+    
+    return encoded > 0 ? static_cast<jint>(encoded) : -1;
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_requestEdgeKeyframe(JNIEnv *env, jobject thiz) {
+    std::lock_guard<std::mutex> lock(g_edgeCodecMutex);
+    g_edgeCodec.forceKeyframe();
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setEdgeKeyframeInterval(JNIEnv *env, jobject thiz,
+                                                                   jint interval) {
+    std::lock_guard<std::mutex> lock(g_edgeCodecMutex);
+    g_edgeCodec.setKeyframeInterval(interval);
+}
+
+JNIEXPORT void JNICALL
+Java_com_assessment_edgedetector_NativeLib_setNativeTraceMode(JNIEnv *env, jobject thiz, jint mode) {
+    nativetrace::setMode(mode);
+}
+
+JNIEXPORT jstring JNICALL
+Java_com_assessment_edgedetector_NativeLib_getNativeTraceEvents(JNIEnv *env, jobject thiz) {
+    std::string events = nativetrace::dumpJson();
+    return env->NewStringUTF(events.c_str());
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_assessment_edgedetector_NativeLib_releaseWorkingMemory(JNIEnv *env, jobject thiz) {
+    size_t freed = 0;
+    if (g_frameProcessor != nullptr) {
+        freed += g_frameProcessor->releaseWorkingBuffers();
+    }
+    
+    // The batch pool is rebuilt by the next batch call
+    {
+        std::lock_guard<std::mutex> lock(g_batchMutex);
+        delete g_batchPool;
+        g_batchPool = nullptr;
+        g_batchPoolBackend = -1;
+    }
+    
+    // Drops the reference frame; the next encoded frame is a keyframe
+    std::lock_guard<std::mutex> lock(g_edgeCodecMutex);
+    g_edgeCodec.reset();
+    
+    LOGI("Released %zu bytes of processor buffers", freed);
+    return static_cast<jlong>(freed);
+}
+
 JNIEXPORT void JNICALL
 Java_com_assessment_edgedetector_NativeLib_cleanup(JNIEnv *env, jobject thiz) {
     LOGI("Cleaning up frame processor");
@@ -213,6 +739,16 @@ Java_com_assessment_edgedetector_NativeLib_cleanup(JNIEnv *env, jobject thiz) {
         delete g_frameProcessor;
         g_frameProcessor = nullptr;
     }
+    
+    {
+        std::lock_guard<std::mutex> lock(g_batchMutex);
+        delete g_batchPool;
+        g_batchPool = nullptr;
+        g_batchPoolBackend = -1;
+    }
+    
+    std::lock_guard<std::mutex> lock(g_edgeCodecMutex);
+    g_edgeCodec.reset();
 }
 
 } // extern "C"
\ No newline at end of file
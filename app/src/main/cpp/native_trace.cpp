@@ -0,0 +1,256 @@
+#include "native_trace.h"
+
+#include <chrono>
+#include <cinttypes>
+#include <cstdio>
+#include <mutex>
+#include <vector>
+#include <sys/prctl.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+
+#ifdef __ANDROID__
+#include <android/trace.h>
+#include <dlfcn.h>
+#endif
+
+namespace nativetrace {
+
+std::atomic<int> g_mode(0);
+
+namespace {
+
+const uint64_t BUFFER_CAPACITY = 1 << 12;   // Events per thread, power of two
+const size_t MAX_RETIRED_BUFFERS = 16;      // Buffers kept for threads that have exited
+
+struct Event {
+    int64_t timestampNs;
+    const char* name;
+    int64_t value;
+    char phase;
+};
+
+// Single-writer event ring. Only the owning thread writes; head is published
+// with a release store after each event is complete.
+struct ThreadBuffer {
+    int tid = 0;
+    char threadName[16] = {0};
+    bool retired = false;
+    int depth = 0;
+    std::atomic<uint64_t> head{0};
+    Event events[BUFFER_CAPACITY];
+
+    void add(char phase, const char* name, int64_t value) {
+        uint64_t index = head.load(std::memory_order_relaxed);
+        Event& e = events[index & (BUFFER_CAPACITY - 1)];
+        e.timestampNs = std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+        e.name = name;
+        e.value = value;
+        e.phase = phase;
+        head.store(index + 1, std::memory_order_release);
+    }
+};
+
+std::mutex g_registryMutex;
+std::vector<ThreadBuffer*> g_buffers;   // Registration order; never freed, only recycled
+
+ThreadBuffer* acquireBuffer() {
+    std::lock_guard<std::mutex> lock(g_registryMutex);
+
+    // Recycle the oldest exited thread's buffer once enough have piled up
+    size_t retired = 0;
+    size_t oldestRetired = g_buffers.size();
+    for (size_t i = 0; i < g_buffers.size(); i++) {
+        if (g_buffers[i]->retired) {
+            if (retired++ == 0) oldestRetired = i;
+        }
+    }
+
+    ThreadBuffer* buffer;
+    if (retired > MAX_RETIRED_BUFFERS) {
+        buffer = g_buffers[oldestRetired];
+        g_buffers.erase(g_buffers.begin() + oldestRetired);
+        buffer->head.store(0, std::memory_order_relaxed);
+        buffer->retired = false;
+        buffer->depth = 0;
+    } else {
+        buffer = new ThreadBuffer();
+    }
+
+    buffer->tid = static_cast<int>(syscall(SYS_gettid));
+    prctl(PR_GET_NAME, buffer->threadName, 0, 0, 0);
+    g_buffers.push_back(buffer);
+    return buffer;
+}
+
+// Marks the calling thread's buffer retired when the thread exits
+struct ThreadBufferHolder {
+    ThreadBuffer* buffer = nullptr;
+
+    ~ThreadBufferHolder() {
+        if (buffer) {
+            std::lock_guard<std::mutex> lock(g_registryMutex);
+            buffer->retired = true;
+        }
+    }
+};
+
+thread_local ThreadBufferHolder t_holder;
+
+inline ThreadBuffer* localBuffer() {
+    if (!t_holder.buffer) {
+        t_holder.buffer = acquireBuffer();
+    }
+    return t_holder.buffer;
+}
+
+#ifdef __ANDROID__
+// ATrace_setCounter is API 29; look it up at runtime so minSdk stays at 24
+typedef void (*ATraceSetCounterFn)(const char*, int64_t);
+ATraceSetCounterFn g_setCounter = nullptr;
+std::once_flag g_atraceOnce;
+
+void loadATrace() {
+    std::call_once(g_atraceOnce, [] {
+        g_setCounter = reinterpret_cast<ATraceSetCounterFn>(dlsym(RTLD_DEFAULT, "ATrace_setCounter"));
+    });
+}
+#endif
+
+void appendEscaped(std::string& out, const char* s) {
+    for (; *s; s++) {
+        char c = *s;
+        if (c == '"' || c == '\\') {
+            out += '\\';
+            out += c;
+        } else if (static_cast<unsigned char>(c) >= 0x20) {
+            out += c;
+        }
+    }
+}
+
+} // namespace
+
+void setMode(int mode) {
+#ifdef __ANDROID__
+    if (mode & MODE_SYSTEM_TRACE) {
+        loadATrace();
+    }
+#endif
+    g_mode.store(mode, std::memory_order_relaxed);
+}
+
+void beginSlow(const char* name) {
+    int mode = g_mode.load(std::memory_order_relaxed);
+    ThreadBuffer* buffer = localBuffer();
+    buffer->depth++;
+    if (mode & MODE_RECORD) {
+        buffer->add('B', name, 0);
+    }
+#ifdef __ANDROID__
+    if (mode & MODE_SYSTEM_TRACE) {
+        ATrace_beginSection(name);
+    }
+#endif
+}
+
+void endSlow() {
+    int mode = g_mode.load(std::memory_order_relaxed);
+    ThreadBuffer* buffer = localBuffer();
+    // A span opened before tracing was enabled has no begin to match
+    if (buffer->depth == 0) {
+        return;
+    }
+    buffer->depth--;
+    if (mode & MODE_RECORD) {
+        buffer->add('E', nullptr, 0);
+    }
+#ifdef __ANDROID__
+    if (mode & MODE_SYSTEM_TRACE) {
+        ATrace_endSection();
+    }
+#endif
+}
+
+void counterSlow(const char* name, int64_t value) {
+    int mode = g_mode.load(std::memory_order_relaxed);
+    if (mode & MODE_RECORD) {
+        localBuffer()->add('C', name, value);
+    }
+#ifdef __ANDROID__
+    if ((mode & MODE_SYSTEM_TRACE) && g_setCounter) {
+        g_setCounter(name, value);
+    }
+#endif
+}
+
+void flowSlow(char phase, const char* name, uint64_t id) {
+    if (g_mode.load(std::memory_order_relaxed) & MODE_RECORD) {
+        localBuffer()->add(phase, name, static_cast<int64_t>(id));
+    }
+}
+
+std::string dumpJson() {
+    std::lock_guard<std::mutex> lock(g_registryMutex);
+
+    int pid = static_cast<int>(getpid());
+    std::string out;
+    std::vector<Event> copy;
+    char prefix[128];
+
+    for (ThreadBuffer* buffer : g_buffers) {
+        uint64_t end = buffer->head.load(std::memory_order_acquire);
+        uint64_t start = end > BUFFER_CAPACITY ? end - BUFFER_CAPACITY : 0;
+        copy.resize(end - start);
+        for (uint64_t i = start; i < end; i++) {
+            copy[i - start] = buffer->events[i & (BUFFER_CAPACITY - 1)];
+        }
+
+        // Events the writer lapped during the copy are torn; skip them
+        uint64_t after = buffer->head.load(std::memory_order_acquire);
+        uint64_t firstValid = after + 1 > BUFFER_CAPACITY ? after + 1 - BUFFER_CAPACITY : 0;
+        if (firstValid < start) firstValid = start;
+
+        if (!out.empty()) out += ',';
+        snprintf(prefix, sizeof(prefix),
+                 "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":%d,\"tid\":%d,\"args\":{\"name\":\"",
+                 pid, buffer->tid);
+        out += prefix;
+        appendEscaped(out, buffer->threadName);
+        out += "\"}}";
+
+        for (uint64_t i = firstValid; i < end; i++) {
+            const Event& e = copy[i - start];
+            snprintf(prefix, sizeof(prefix),
+                     ",{\"ph\":\"%c\",\"pid\":%d,\"tid\":%d,\"ts\":%" PRId64 ".%03d",
+                     e.phase, pid, buffer->tid, e.timestampNs / 1000,
+                     static_cast<int>(e.timestampNs % 1000));
+            out += prefix;
+            if (e.name) {
+                out += ",\"name\":\"";
+                appendEscaped(out, e.name);
+                out += '"';
+            }
+            if (e.phase == 'C') {
+                snprintf(prefix, sizeof(prefix), ",\"args\":{\"value\":%" PRId64 "}", e.value);
+                out += prefix;
+            } else if (e.phase == 's' || e.phase == 't' || e.phase == 'f') {
+                snprintf(prefix, sizeof(prefix), ",\"cat\":\"flow\",\"id\":%" PRIu64 "%s",
+                         static_cast<uint64_t>(e.value), e.phase == 'f' ? ",\"bp\":\"e\"" : "");
+                out += prefix;
+            }
+            out += '}';
+        }
+    }
+    return out;
+}
+
+void clear() {
+    std::lock_guard<std::mutex> lock(g_registryMutex);
+    for (ThreadBuffer* buffer : g_buffers) {
+        buffer->head.store(0, std::memory_order_relaxed);
+    }
+}
+
+} // namespace nativetrace
@@ -0,0 +1,91 @@
+#ifndef NATIVE_TRACE_H
+#define NATIVE_TRACE_H
+
+#include <atomic>
+#include <cstdint>
+#include <string>
+
+// Native counterpart of utils/Tracer.java.
+//
+// Spans, counters and flow events go into a per-thread ring buffer owned by
+// the calling thread, so recording never takes a lock. Timestamps are
+// CLOCK_MONOTONIC nanoseconds (std::chrono::steady_clock), matching
+// System.nanoTime() on the Java side, and thread ids are kernel tids, so the
+// JSON from dumpJson() can be spliced into the Java trace unchanged.
+//
+// Event names must be string literals (or otherwise outlive the trace): only
+// the pointer is stored. When tracing is disabled every call is one relaxed
+// atomic load.
+
+namespace nativetrace {
+
+enum Mode {
+    MODE_RECORD = 1,        // Keep events in the in-process buffers
+    MODE_SYSTEM_TRACE = 2   // Forward to ATrace (systrace / Perfetto)
+};
+
+extern std::atomic<int> g_mode;
+
+void setMode(int mode);
+
+inline bool enabled() {
+    return g_mode.load(std::memory_order_relaxed) != 0;
+}
+
+void beginSlow(const char* name);
+void endSlow();
+void counterSlow(const char* name, int64_t value);
+void flowSlow(char phase, const char* name, uint64_t id);
+
+inline void begin(const char* name) {
+    if (enabled()) beginSlow(name);
+}
+
+inline void end() {
+    if (enabled()) endSlow();
+}
+
+inline void counter(const char* name, int64_t value) {
+    if (enabled()) counterSlow(name, value);
+}
+
+inline void flowStart(const char* name, uint64_t id) {
+    if (enabled()) flowSlow('s', name, id);
+}
+
+inline void flowStep(const char* name, uint64_t id) {
+    if (enabled()) flowSlow('t', name, id);
+}
+
+inline void flowEnd(const char* name, uint64_t id) {
+    if (enabled()) flowSlow('f', name, id);
+}
+
+// Comma-separated Chrome Trace events (no enclosing brackets) for all threads
+std::string dumpJson();
+
+// Drop recorded events; only safe while recording is off
+void clear();
+
+class ScopedSpan {
+public:
+    explicit ScopedSpan(const char* name) : active(enabled()) {
+        if (active) beginSlow(name);
+    }
+    ~ScopedSpan() {
+        if (active) endSlow();
+    }
+    ScopedSpan(const ScopedSpan&) = delete;
+    ScopedSpan& operator=(const ScopedSpan&) = delete;
+
+private:
+    bool active;
+};
+
+} // namespace nativetrace
+
+#define NATIVE_TRACE_CONCAT_(a, b) a##b
+#define NATIVE_TRACE_CONCAT(a, b) NATIVE_TRACE_CONCAT_(a, b)
+#define TRACE_SCOPE(name) nativetrace::ScopedSpan NATIVE_TRACE_CONCAT(traceSpan_, __LINE__)(name)
+
+#endif // NATIVE_TRACE_H
@@ -0,0 +1,120 @@
+#include "roi_tracker.h"
+
+#include <algorithm>
+#include <cstdint>
+
+// Fewer edge pixels than this means there is nothing to track
+#define ROI_MIN_EDGE_PIXELS 64
+// Margin around the edges' bounding box, as a fraction of the larger frame side
+#define ROI_MARGIN_FRACTION 0.05f
+#define ROI_MIN_MARGIN 16
+// Fraction of the remaining distance a side moves inwards per frame
+#define ROI_SHRINK_RATE 0.2f
+// Regions above this fraction of the frame are processed as the whole frame
+#define ROI_FULL_FRAME_AREA 0.8f
+
+RoiTracker::RoiTracker()
+    : fullFrameInterval(DEFAULT_FULL_FRAME_INTERVAL) {
+    reset();
+}
+
+void RoiTracker::setFullFrameInterval(int frames) {
+    fullFrameInterval = std::max(1, frames);
+}
+
+void RoiTracker::reset() {
+    framesSinceFull = 0;
+    frameWidth = 0;
+    frameHeight = 0;
+    tracking = false;
+    left = 0.0f;
+    top = 0.0f;
+    right = 0.0f;
+    bottom = 0.0f;
+}
+
+cv::Rect RoiTracker::next(int width, int height) {
+    cv::Rect full(0, 0, width, height);
+    if (width != frameWidth || height != frameHeight) {
+        reset();
+        frameWidth = width;
+        frameHeight = height;
+    }
+    if (!tracking || framesSinceFull + 1 >= fullFrameInterval) {
+        framesSinceFull = 0;
+        return full;
+    }
+
+    int x0 = std::max(0, static_cast<int>(left));
+    int y0 = std::max(0, static_cast<int>(top));
+    int x1 = std::min(width, static_cast<int>(right + 0.999f));
+    int y1 = std::min(height, static_cast<int>(bottom + 0.999f));
+    if (x1 <= x0 || y1 <= y0
+        || static_cast<float>(x1 - x0) * (y1 - y0) > ROI_FULL_FRAME_AREA * width * height) {
+        framesSinceFull = 0;
+        return full;
+    }
+    framesSinceFull++;
+    return cv::Rect(x0, y0, x1 - x0, y1 - y0);
+}
+
+void RoiTracker::update(const cv::Mat& edges, const cv::Rect& processed) {
+    if (edges.type() != CV_8UC1 || edges.cols != frameWidth || edges.rows != frameHeight) {
+        return;
+    }
+    int x0 = std::max(0, processed.x);
+    int y0 = std::max(0, processed.y);
+    int x1 = std::min(edges.cols, processed.x + processed.width);
+    int y1 = std::min(edges.rows, processed.y + processed.height);
+
+    // Bounding box of the edge pixels
+    int minX = x1;
+    int minY = y1;
+    int maxX = -1;
+    int maxY = -1;
+    long count = 0;
+    for (int y = y0; y < y1; y++) {
+        const uint8_t* row = edges.ptr<uint8_t>(y);
+        int first = -1;
+        int last = -1;
+        for (int x = x0; x < x1; x++) {
+            if (row[x]) {
+                if (first < 0) first = x;
+                last = x;
+                count++;
+            }
+        }
+        if (first >= 0) {
+            minX = std::min(minX, first);
+            maxX = std::max(maxX, last);
+            if (minY > y) minY = y;
+            maxY = y;
+        }
+    }
+    if (count < ROI_MIN_EDGE_PIXELS) {
+        tracking = false;
+        return;
+    }
+
+    float margin = std::max(static_cast<float>(ROI_MIN_MARGIN),
+                            ROI_MARGIN_FRACTION * std::max(frameWidth, frameHeight));
+    float targetLeft = std::max(0.0f, minX - margin);
+    float targetTop = std::max(0.0f, minY - margin);
+    float targetRight = std::min(static_cast<float>(frameWidth), maxX + 1 + margin);
+    float targetBottom = std::min(static_cast<float>(frameHeight), maxY + 1 + margin);
+
+    if (!tracking) {
+        left = targetLeft;
+        top = targetTop;
+        right = targetRight;
+        bottom = targetBottom;
+        tracking = true;
+        return;
+    }
+
+    // Grow at once, shrink gradually
+    left = targetLeft < left ? targetLeft : left + (targetLeft - left) * ROI_SHRINK_RATE;
+    top = targetTop < top ? targetTop : top + (targetTop - top) * ROI_SHRINK_RATE;
+    right = targetRight > right ? targetRight : right + (targetRight - right) * ROI_SHRINK_RATE;
+    bottom = targetBottom > bottom ? targetBottom : bottom + (targetBottom - bottom) * ROI_SHRINK_RATE;
+}
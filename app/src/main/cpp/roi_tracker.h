@@ -0,0 +1,54 @@
+#ifndef ROI_TRACKER_H
+#define ROI_TRACKER_H
+
+#include <opencv2/opencv.hpp>
+
+// Automatic region of interest that follows where edges were found.
+//
+// After each frame the bounding box of the edges inside the processed region,
+// plus a margin, becomes the target. The region grows to the target at once
+// and shrinks towards it by a fraction per frame, so a moving object stays
+// inside it and a briefly quiet scene does not collapse it. Edges can only be
+// found inside the region, so growing beyond it relies on the margin: edges
+// near its border push it outwards frame by frame.
+//
+// The whole frame is processed on the first frame, every fullFrameInterval
+// frames, after a frame with too few edges, and whenever the region would
+// cover most of the frame anyway. That catches objects appearing elsewhere.
+class RoiTracker {
+public:
+    static const int DEFAULT_FULL_FRAME_INTERVAL = 30;
+
+    RoiTracker();
+
+    // Frames between whole-frame passes (at least 1; 1 disables tracking)
+    void setFullFrameInterval(int frames);
+    int getFullFrameInterval() const { return fullFrameInterval; }
+
+    // Drop the tracked region; the next frame is processed whole
+    void reset();
+
+    // Region to process in the next width x height frame
+    cv::Rect next(int width, int height);
+
+    // Adjust the region from the edge map of the frame just processed; only
+    // pixels inside processed are read
+    void update(const cv::Mat& edges, const cv::Rect& processed);
+
+    bool isTracking() const { return tracking; }
+
+private:
+    int fullFrameInterval;
+    int framesSinceFull;
+    int frameWidth;
+    int frameHeight;
+    bool tracking;
+
+    // Smoothed region edges in pixels (right and bottom exclusive)
+    float left;
+    float top;
+    float right;
+    float bottom;
+};
+
+#endif // ROI_TRACKER_H
@@ -0,0 +1,260 @@
+#include "thread_affinity.h"
+#include "log_shim.h"
+
+#include <algorithm>
+#include <atomic>
+#include <cerrno>
+#include <cstdio>
+#include <cstring>
+#include <map>
+#include <mutex>
+#include <thread>
+#include <sched.h>
+#include <sys/resource.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+
+#define LOG_TAG "ThreadAffinity"
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+
+namespace affinity {
+
+namespace {
+
+const int MAX_CPUS = 64;
+
+std::mutex g_configMutex;
+ThreadConfig g_config = {0, THREAD_NICE_DEFAULT};
+// Bumped on every setConfig; generation 0 is the default config
+std::atomic<int> g_generation(0);
+
+thread_local int t_appliedGeneration = 0;
+thread_local bool t_niceChanged = false;
+thread_local int t_baselineNice = 0;
+thread_local int64_t t_threadId = 0;
+
+bool readLong(const char* path, int64_t& value) {
+    FILE* file = fopen(path, "r");
+    if (!file) {
+        return false;
+    }
+    long long v = 0;
+    bool ok = fscanf(file, "%lld", &v) == 1;
+    fclose(file);
+    value = v;
+    return ok;
+}
+
+// Parse a sysfs CPU list such as "0-3,6,8-9"
+uint64_t readCpuList(const char* path) {
+    FILE* file = fopen(path, "r");
+    if (!file) {
+        return 0;
+    }
+    char line[256] = {0};
+    bool ok = fgets(line, sizeof(line), file) != nullptr;
+    fclose(file);
+    if (!ok) {
+        return 0;
+    }
+
+    uint64_t mask = 0;
+    for (char* token = strtok(line, ",\n"); token != nullptr; token = strtok(nullptr, ",\n")) {
+        int first = 0;
+        int last = 0;
+        int parsed = sscanf(token, "%d-%d", &first, &last);
+        if (parsed < 1) continue;
+        if (parsed == 1) last = first;
+        for (int cpu = first; cpu <= last && cpu < MAX_CPUS; cpu++) {
+            if (cpu >= 0) mask |= 1ULL << cpu;
+        }
+    }
+    return mask;
+}
+
+uint64_t possibleCpuMask() {
+    uint64_t mask = readCpuList("/sys/devices/system/cpu/possible");
+    if (mask == 0) {
+        int count = static_cast<int>(std::thread::hardware_concurrency());
+        count = std::max(1, std::min(count, MAX_CPUS));
+        mask = count == MAX_CPUS ? ~0ULL : (1ULL << count) - 1;
+    }
+    return mask;
+}
+
+std::vector<CpuCluster> detectClusters() {
+    uint64_t possible = possibleCpuMask();
+
+    // Group by cpuinfo_max_freq; std::map keeps them ordered slowest first
+    std::map<int64_t, uint64_t> byFreq;
+    uint64_t unknown = 0;
+    for (int cpu = 0; cpu < MAX_CPUS; cpu++) {
+        if (!(possible & (1ULL << cpu))) continue;
+        char path[96];
+        snprintf(path, sizeof(path), "/sys/devices/system/cpu/cpu%d/cpufreq/cpuinfo_max_freq", cpu);
+        int64_t khz = 0;
+        if (readLong(path, khz) && khz > 0) {
+            byFreq[khz] |= 1ULL << cpu;
+        } else {
+            unknown |= 1ULL << cpu;
+        }
+    }
+
+    std::vector<CpuCluster> clusters;
+    if (byFreq.empty()) {
+        clusters.push_back(CpuCluster{possible, 0});
+    } else {
+        // CPUs without cpufreq are usually offline; they stay out of every cluster
+        for (const auto& entry : byFreq) {
+            clusters.push_back(CpuCluster{entry.second, entry.first});
+        }
+    }
+
+    for (size_t i = 0; i < clusters.size(); i++) {
+        LOGI("Cluster %zu: mask 0x%llx, max %lld kHz", i,
+             static_cast<unsigned long long>(clusters[i].mask),
+             static_cast<long long>(clusters[i].maxFreqKhz));
+    }
+    if (!byFreq.empty() && unknown != 0) {
+        LOGI("CPUs without cpufreq data: mask 0x%llx", static_cast<unsigned long long>(unknown));
+    }
+    return clusters;
+}
+
+bool readNice(int64_t tid, int& nice) {
+    // -1 is a valid nice value, so only errno tells a failure apart
+    errno = 0;
+    int value = getpriority(PRIO_PROCESS, static_cast<id_t>(tid));
+    if (value == -1 && errno != 0) {
+        return false;
+    }
+    nice = value;
+    return true;
+}
+
+bool applyMask(uint64_t mask) {
+    if (mask == 0) {
+        mask = possibleCpuMask();
+    }
+    cpu_set_t set;
+    CPU_ZERO(&set);
+    for (int cpu = 0; cpu < MAX_CPUS; cpu++) {
+        if (mask & (1ULL << cpu)) {
+            CPU_SET(cpu, &set);
+        }
+    }
+    // pid 0 is the calling thread, not the whole process
+    if (sched_setaffinity(0, sizeof(set), &set) != 0) {
+        LOGE("sched_setaffinity(0x%llx) failed: %s",
+             static_cast<unsigned long long>(mask), strerror(errno));
+        return false;
+    }
+    return true;
+}
+
+bool applyNice(int nice) {
+    int64_t tid = currentThreadId();
+    if (nice == THREAD_NICE_DEFAULT) {
+        if (!t_niceChanged) {
+            return true;
+        }
+        nice = t_baselineNice;
+    } else if (!t_niceChanged) {
+        if (!readNice(tid, t_baselineNice)) {
+            t_baselineNice = 0;
+        }
+    }
+
+    if (setpriority(PRIO_PROCESS, static_cast<id_t>(tid), nice) != 0) {
+        LOGE("setpriority(%d) on thread %lld failed: %s", nice,
+             static_cast<long long>(tid), strerror(errno));
+        return false;
+    }
+    t_niceChanged = nice != t_baselineNice;
+    return true;
+}
+
+} // namespace
+
+const std::vector<CpuCluster>& getClusters() {
+    static const std::vector<CpuCluster> clusters = detectClusters();
+    return clusters;
+}
+
+uint64_t bigCoreMask() {
+    return getClusters().back().mask;
+}
+
+uint64_t littleCoreMask() {
+    return getClusters().front().mask;
+}
+
+int clusterOfCpu(int cpu) {
+    if (cpu < 0 || cpu >= MAX_CPUS) {
+        return -1;
+    }
+    const std::vector<CpuCluster>& clusters = getClusters();
+    for (size_t i = 0; i < clusters.size(); i++) {
+        if (clusters[i].mask & (1ULL << cpu)) {
+            return static_cast<int>(i);
+        }
+    }
+    return -1;
+}
+
+void setConfig(const ThreadConfig& config) {
+    std::lock_guard<std::mutex> lock(g_configMutex);
+    g_config = config;
+    g_generation.fetch_add(1, std::memory_order_release);
+    if (config.nice == THREAD_NICE_DEFAULT) {
+        LOGI("Processing threads: mask 0x%llx, default priority",
+             static_cast<unsigned long long>(config.cpuMask));
+    } else {
+        LOGI("Processing threads: mask 0x%llx, nice %d",
+             static_cast<unsigned long long>(config.cpuMask), config.nice);
+    }
+}
+
+ThreadConfig getConfig() {
+    std::lock_guard<std::mutex> lock(g_configMutex);
+    return g_config;
+}
+
+bool applyToCurrentThread() {
+    int generation = g_generation.load(std::memory_order_acquire);
+    if (generation == t_appliedGeneration) {
+        return true;
+    }
+
+    ThreadConfig config;
+    {
+        std::lock_guard<std::mutex> lock(g_configMutex);
+        config = g_config;
+        generation = g_generation.load(std::memory_order_relaxed);
+    }
+    // Marked applied even on failure so a rejected config is not retried every frame
+    t_appliedGeneration = generation;
+
+    bool maskOk = applyMask(config.cpuMask);
+    bool niceOk = applyNice(config.nice);
+    return maskOk && niceOk;
+}
+
+void sampleCurrentThread(ThreadPlacement& out) {
+    out.threadId = currentThreadId();
+    out.cpu = sched_getcpu();
+    out.cluster = clusterOfCpu(out.cpu);
+    if (!readNice(out.threadId, out.nice)) {
+        out.nice = 0;
+    }
+}
+
+int64_t currentThreadId() {
+    if (t_threadId == 0) {
+        t_threadId = static_cast<int64_t>(syscall(SYS_gettid));
+    }
+    return t_threadId;
+}
+
+} // namespace affinity
@@ -0,0 +1,72 @@
+#ifndef THREAD_AFFINITY_H
+#define THREAD_AFFINITY_H
+
+#include <climits>
+#include <cstdint>
+#include <vector>
+
+// CPU placement of the processing threads.
+//
+// Clusters are detected once from /sys/devices/system/cpu/cpuN/cpufreq:
+// CPUs sharing a maximum frequency form a cluster, ordered from the slowest
+// (efficiency cores) to the fastest. Without cpufreq data (VMs, some
+// desktops) every CPU lands in a single cluster.
+//
+// The placement config is process-wide. Processing threads call
+// applyToCurrentThread() before each frame; it costs one relaxed atomic load
+// unless the config changed, in which case the thread re-applies its
+// affinity mask and nice value. sched_setaffinity and setpriority only act on
+// the calling thread here, which is why the threads apply it themselves.
+//
+// Masks are 64-bit: CPU n is bit n.
+
+namespace affinity {
+
+// Nice value meaning "leave the thread's own priority alone"
+#define THREAD_NICE_DEFAULT INT_MIN
+
+struct CpuCluster {
+    uint64_t mask;          // CPUs in the cluster
+    int64_t maxFreqKhz;     // cpuinfo_max_freq, 0 if unknown
+};
+
+struct ThreadConfig {
+    uint64_t cpuMask;       // 0 = every CPU
+    int nice;               // -20..19, THREAD_NICE_DEFAULT = unchanged
+};
+
+// Where the calling thread is running
+struct ThreadPlacement {
+    int64_t threadId;       // Kernel tid
+    int cpu;                // CPU of the last sample, -1 if unknown
+    int cluster;            // Index into getClusters(), -1 if unknown
+    int nice;
+};
+
+// Clusters from slowest to fastest (detected on first use)
+const std::vector<CpuCluster>& getClusters();
+
+// Mask of the fastest / slowest cluster; every CPU on single-cluster systems
+uint64_t bigCoreMask();
+uint64_t littleCoreMask();
+
+// Cluster index of a CPU, -1 if unknown
+int clusterOfCpu(int cpu);
+
+// Replace the config; threads pick it up before their next frame
+void setConfig(const ThreadConfig& config);
+ThreadConfig getConfig();
+
+// Apply the current config to the calling thread if it changed since the
+// last call. Returns false if the kernel rejected the mask or nice value.
+bool applyToCurrentThread();
+
+// Sample the calling thread's placement
+void sampleCurrentThread(ThreadPlacement& out);
+
+// Kernel tid of the calling thread
+int64_t currentThreadId();
+
+} // namespace affinity
+
+#endif // THREAD_AFFINITY_H
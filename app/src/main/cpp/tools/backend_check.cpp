@@ -0,0 +1,174 @@
+// Check of the Mat/UMat processing backends and the startup calibration.
+//
+// Runs a synthetic frame through FrameProcessor on the Mat backend, then
+// requests UMat. With an OpenCL runtime (on Linux a CPU one such as PoCL:
+// apt install pocl-opencl-icd) UMat must be granted and its edge map must
+// agree with Mat's; without one the request must fall back to Mat. Both
+// backends must then process a smaller frame through views of the same
+// buffers. Finally calibrateBackend() must settle on a backend that keeps
+// processing frames.
+//
+// Usage:
+//   backend_check [--size WxH] [--frames N] [--max-diff F] [-v]
+//
+// Options:
+//   --size WxH           frame size (default 640x480)
+//   --frames N           calibration frames per backend (default 10)
+//   --max-diff F         largest fraction of pixels the backends may disagree on (default 0.01)
+//   -v, --verbose        log processor messages
+//
+// Exits 0 when every check passes, 2 when one fails.
+
+#include "frame_processor.h"
+
+#include <algorithm>
+#include <cstdio>
+#include <cstdlib>
+#include <string>
+
+namespace {
+
+struct Options {
+    int width = 640;
+    int height = 480;
+    int frames = 10;
+    double maxDiff = 0.01;
+    bool verbose = false;
+};
+
+void usage(const char* argv0) {
+    fprintf(stderr, "Usage: %s [--size WxH] [--frames N] [--max-diff F] [-v]\n", argv0);
+}
+
+bool parseArgs(int argc, char** argv, Options& opts) {
+    for (int i = 1; i < argc; i++) {
+        std::string arg = argv[i];
+        bool hasValue = i + 1 < argc;
+        if (arg == "--size" && hasValue) {
+            if (sscanf(argv[++i], "%dx%d", &opts.width, &opts.height) != 2
+                    || opts.width < 16 || opts.height < 16) {
+                fprintf(stderr, "Bad --size: %s\n", argv[i]);
+                return false;
+            }
+        } else if (arg == "--frames" && hasValue) {
+            opts.frames = atoi(argv[++i]);
+        } else if (arg == "--max-diff" && hasValue) {
+            opts.maxDiff = atof(argv[++i]);
+        } else if (arg == "-v" || arg == "--verbose") {
+            opts.verbose = true;
+        } else {
+            fprintf(stderr, "Unknown or incomplete option: %s\n", arg.c_str());
+            return false;
+        }
+    }
+    return true;
+}
+
+// Filled shapes on a gradient: strong edges in every direction
+cv::Mat syntheticFrame(int width, int height) {
+    cv::Mat rgb(height, width, CV_8UC3);
+    for (int y = 0; y < height; y++) {
+        uint8_t* row = rgb.ptr<uint8_t>(y);
+        for (int x = 0; x < width; x++) {
+            uint8_t level = static_cast<uint8_t>(40 + 120 * x / width);
+            row[x * 3] = level;
+            row[x * 3 + 1] = level;
+            row[x * 3 + 2] = level;
+        }
+    }
+    cv::rectangle(rgb, cv::Point(width / 8, height / 8), cv::Point(width * 3 / 8, height / 2),
+                  cv::Scalar(240, 220, 60), cv::FILLED);
+    cv::circle(rgb, cv::Point(width * 2 / 3, height / 2), std::min(width, height) / 5,
+               cv::Scalar(20, 40, 200), cv::FILLED);
+    cv::line(rgb, cv::Point(0, height - 1), cv::Point(width - 1, height / 3),
+             cv::Scalar(255, 255, 255), 3);
+    return rgb;
+}
+
+int failures = 0;
+
+void check(bool ok, const char* what) {
+    printf("%s: %s\n", ok ? "ok  " : "FAIL", what);
+    if (!ok) failures++;
+}
+
+const char* backendName(ProcessingBackend backend) {
+    return backend == BACKEND_UMAT ? "UMat" : "Mat";
+}
+
+} // namespace
+
+int main(int argc, char** argv) {
+    Options opts;
+    if (!parseArgs(argc, argv, opts)) {
+        usage(argv[0]);
+        return 1;
+    }
+    if (opts.verbose) {
+        hostLogMinPriority() = ANDROID_LOG_INFO;
+    }
+
+    cv::Mat frame = syntheticFrame(opts.width, opts.height);
+    cv::Mat small = syntheticFrame(opts.width / 2, opts.height / 2);
+    bool openCL = FrameProcessor::isOpenCLAvailable();
+    printf("%dx%d, OpenCL runtime %s\n", opts.width, opts.height, openCL ? "available" : "not available");
+
+    FrameProcessor processor;
+    if (!processor.initialize(opts.width, opts.height)) {
+        fprintf(stderr, "Processor initialization failed\n");
+        return 1;
+    }
+
+    // Mat reference
+    cv::Mat matEdges;
+    check(processor.setBackend(BACKEND_MAT) == BACKEND_MAT, "Mat backend can always be selected");
+    check(processor.processFrameCanny(frame, matEdges), "Mat backend processes a frame");
+    int matCount = matEdges.empty() ? 0 : cv::countNonZero(matEdges);
+    check(matCount > 0, "Mat backend finds edges");
+
+    // UMat, or the fallback to Mat without a runtime
+    ProcessingBackend granted = processor.setBackend(BACKEND_UMAT);
+    printf("UMat requested, %s granted\n", backendName(granted));
+    check(granted == (openCL ? BACKEND_UMAT : BACKEND_MAT),
+          openCL ? "UMat is granted with an OpenCL runtime" : "UMat falls back to Mat without a runtime");
+    check(processor.getBackend() == granted, "getBackend() reports the granted backend");
+
+    cv::Mat umatEdges;
+    check(processor.processFrameCanny(frame, umatEdges), "Granted backend processes a frame");
+    if (!umatEdges.empty() && umatEdges.size() == matEdges.size()) {
+        cv::Mat differ = umatEdges != matEdges;
+        double diff = static_cast<double>(cv::countNonZero(differ)) / differ.total();
+        printf("Mat/%s disagreement: %.4f%% of pixels\n", backendName(granted), 100.0 * diff);
+        check(diff <= opts.maxDiff, "Backends agree on the edge map");
+    } else {
+        check(false, "Granted backend returns a full-size edge map");
+    }
+
+    // A smaller frame runs through views of the buffers allocated for the full size
+    cv::Mat smallEdges;
+    check(processor.processFrameCanny(small, smallEdges) && smallEdges.cols == small.cols
+              && smallEdges.rows == small.rows,
+          "Granted backend processes a smaller frame");
+    check(processor.setBackend(BACKEND_MAT) == BACKEND_MAT
+              && processor.processFrameCanny(small, smallEdges),
+          "Mat backend processes a smaller frame after switching back");
+
+    // Calibration picks a backend and leaves it applied
+    ProcessingBackend chosen = processor.calibrateBackend(opts.frames);
+    printf("Calibration chose %s\n", backendName(chosen));
+    check(processor.getBackend() == chosen, "Calibration applies the backend it returns");
+    check(openCL || chosen == BACKEND_MAT, "Calibration chooses Mat without a runtime");
+    bool steady = true;
+    for (int i = 0; i < 3 && steady; i++) {
+        cv::Mat edges;
+        steady = processor.processFrameCanny(frame, edges) && cv::countNonZero(edges) > 0;
+    }
+    check(steady, "Calibrated backend keeps processing frames");
+
+    if (failures > 0) {
+        printf("FAIL: %d check%s failed\n", failures, failures == 1 ? "" : "s");
+        return 2;
+    }
+    printf("PASS\n");
+    return 0;
+}
@@ -0,0 +1,676 @@
+// Headless batch edge detection over recorded footage.
+//
+// Runs the same FrameProcessor Canny pipeline as the app on a pool of worker
+// threads (one FrameProcessor per worker) and writes the results in input
+// order. See tools/CMakeLists.txt to build against a desktop OpenCV.
+//
+// Usage:
+//   edge_batch [options] <input>
+//
+// Input:
+//   video file or image sequence pattern (anything cv::VideoCapture opens), or
+//   a raw frame dump with --raw WxH [--format gray|rgb|rgba|i420|nv21]
+//
+// Options:
+//   -o, --output PATH    edge maps: .raw/.gray (concatenated 8-bit frames),
+//                        a printf pattern such as out/%06d.png, or a video file
+//   --vector PATH        contour polylines, one JSON object per frame per line
+//   -j, --threads N      worker count (default: hardware threads)
+//   --low T --high T     Canny thresholds (default 50 / 150)
+//   --window N           frames in flight (default 4 x threads)
+//   --max-frames N       stop after N frames
+//   --trace PATH         write a Chrome Trace JSON of the run
+//   --backend B          mat, umat (OpenCL, e.g. PoCL on a CPU) or auto to
+//                        pick the faster after a calibration run (default mat)
+//   --cores C            pin workers to big, little, all or a hex CPU mask
+//   --nice N             worker nice value (negative needs CAP_SYS_NICE)
+//   --pyramid L[:R]      coarse-to-fine Canny: detect at 1/2^L, dilate by R
+//                        coarse pixels (default 2), full resolution only there
+//   --compare            also run full-resolution Canny on every frame and
+//                        report the speedup and precision/recall against it
+//   --tolerance N        pixel distance that still counts as a match (default 1)
+//   -v, --verbose        log processor messages
+
+#include "frame_worker_pool.h"
+#include "native_trace.h"
+#include "thread_affinity.h"
+
+#include <algorithm>
+#include <chrono>
+#include <condition_variable>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <mutex>
+#include <string>
+#include <vector>
+
+namespace {
+
+typedef std::chrono::steady_clock Clock;
+
+enum RawFormat { RAW_GRAY, RAW_RGB, RAW_RGBA, RAW_I420, RAW_NV21 };
+
+struct Options {
+    std::string input;
+    std::string output;
+    std::string vectorPath;
+    std::string tracePath;
+    int rawWidth = 0;
+    int rawHeight = 0;
+    RawFormat rawFormat = RAW_GRAY;
+    int threads = 0;
+    int window = 0;
+    long maxFrames = -1;
+    double low = 50.0;
+    double high = 150.0;
+    std::string backend = "mat";
+    std::string cores;
+    int nice = THREAD_NICE_DEFAULT;
+    int pyramidLevels = 0;
+    int pyramidRadius = 2;
+    bool compare = false;
+    int tolerance = 1;
+    bool verbose = false;
+};
+
+// One frame against full-resolution Canny (--compare)
+struct Comparison {
+    long edgePixels = 0;         // Edge pixels of the processor's output
+    long referencePixels = 0;    // Edge pixels of the full-resolution reference
+    long matchedEdges = 0;       // Output edges with a reference edge within the tolerance
+    long matchedReference = 0;   // Reference edges with an output edge within the tolerance
+    int64_t cannyNs = 0;         // Processor Canny stage, coarse and fine passes included
+    int64_t referenceNs = 0;     // Full-resolution Canny
+    int64_t coverage = 1000;     // Per-mille of the frame that ran at full resolution
+};
+
+// One frame in flight. Slots are reused round-robin, so steady state allocates nothing.
+struct Slot {
+    std::vector<uint8_t> raw;   // Raw-dump bytes
+    cv::Mat frame;              // Decoded input (video) or a view over raw
+    int colorCode = -1;         // cvtColor code to grayscale, -1 if already gray
+    cv::Mat gray;
+    cv::Mat edges;
+    cv::Mat blurred;            // --compare: reference input and edges
+    cv::Mat reference;
+    Comparison comparison;
+    std::string vectors;
+    bool ok = false;
+    bool done = true;
+};
+
+void usage(const char* argv0) {
+    fprintf(stderr,
+            "Usage: %s [-o edges.raw|out/%%06d.png|edges.avi] [--vector out.jsonl] [-j N]\n"
+            "          [--low T] [--high T] [--window N] [--max-frames N] [--trace trace.json]\n"
+            "          [--backend mat|umat|auto] [--cores big|little|all|0xMASK] [--nice N]\n"
+            "          [--pyramid L[:R]] [--compare [--tolerance N]]\n"
+            "          [--raw WxH [--format gray|rgb|rgba|i420|nv21]] <input>\n", argv0);
+}
+
+bool parseArgs(int argc, char** argv, Options& opts) {
+    for (int i = 1; i < argc; i++) {
+        std::string arg = argv[i];
+        bool hasValue = i + 1 < argc;
+        if ((arg == "-o" || arg == "--output") && hasValue) {
+            opts.output = argv[++i];
+        } else if (arg == "--vector" && hasValue) {
+            opts.vectorPath = argv[++i];
+        } else if ((arg == "-j" || arg == "--threads") && hasValue) {
+            opts.threads = atoi(argv[++i]);
+        } else if (arg == "--low" && hasValue) {
+            opts.low = atof(argv[++i]);
+        } else if (arg == "--high" && hasValue) {
+            opts.high = atof(argv[++i]);
+        } else if (arg == "--window" && hasValue) {
+            opts.window = atoi(argv[++i]);
+        } else if (arg == "--max-frames" && hasValue) {
+            opts.maxFrames = atol(argv[++i]);
+        } else if (arg == "--trace" && hasValue) {
+            opts.tracePath = argv[++i];
+        } else if (arg == "--backend" && hasValue) {
+            opts.backend = argv[++i];
+            if (opts.backend != "mat" && opts.backend != "umat" && opts.backend != "auto") {
+                fprintf(stderr, "Unknown backend: %s\n", opts.backend.c_str());
+                return false;
+            }
+        } else if (arg == "--cores" && hasValue) {
+            opts.cores = argv[++i];
+            if (opts.cores != "big" && opts.cores != "little" && opts.cores != "all"
+                && strtoull(opts.cores.c_str(), nullptr, 16) == 0) {
+                fprintf(stderr, "Bad --cores value: %s\n", opts.cores.c_str());
+                return false;
+            }
+        } else if (arg == "--nice" && hasValue) {
+            opts.nice = atoi(argv[++i]);
+        } else if (arg == "--pyramid" && hasValue) {
+            int fields = sscanf(argv[++i], "%d:%d", &opts.pyramidLevels, &opts.pyramidRadius);
+            if (fields < 1 || opts.pyramidLevels < 1 || opts.pyramidLevels > PYRAMID_MAX_LEVELS
+                || opts.pyramidRadius < 0 || opts.pyramidRadius > PYRAMID_MAX_RADIUS) {
+                fprintf(stderr, "Bad --pyramid value: %s (levels 1-%d, radius 0-%d)\n",
+                        argv[i], PYRAMID_MAX_LEVELS, PYRAMID_MAX_RADIUS);
+                return false;
+            }
+        } else if (arg == "--compare") {
+            opts.compare = true;
+        } else if (arg == "--tolerance" && hasValue) {
+            opts.tolerance = std::max(0, atoi(argv[++i]));
+        } else if (arg == "--raw" && hasValue) {
+            if (sscanf(argv[++i], "%dx%d", &opts.rawWidth, &opts.rawHeight) != 2) {
+                fprintf(stderr, "Bad --raw size: %s\n", argv[i]);
+                return false;
+            }
+        } else if (arg == "--format" && hasValue) {
+            std::string f = argv[++i];
+            if (f == "gray") opts.rawFormat = RAW_GRAY;
+            else if (f == "rgb") opts.rawFormat = RAW_RGB;
+            else if (f == "rgba") opts.rawFormat = RAW_RGBA;
+            else if (f == "i420") opts.rawFormat = RAW_I420;
+            else if (f == "nv21") opts.rawFormat = RAW_NV21;
+            else {
+                fprintf(stderr, "Unknown raw format: %s\n", f.c_str());
+                return false;
+            }
+        } else if (arg == "-v" || arg == "--verbose") {
+            opts.verbose = true;
+        } else if (!arg.empty() && arg[0] != '-' && opts.input.empty()) {
+            opts.input = arg;
+        } else {
+            fprintf(stderr, "Unknown or incomplete option: %s\n", arg.c_str());
+            return false;
+        }
+    }
+    return !opts.input.empty();
+}
+
+bool endsWith(const std::string& s, const char* suffix) {
+    size_t n = strlen(suffix);
+    return s.size() >= n && s.compare(s.size() - n, n, suffix) == 0;
+}
+
+// Reads frames from a raw dump or anything cv::VideoCapture understands
+class FrameSource {
+public:
+    bool open(const Options& opts) {
+        if (opts.rawWidth > 0) {
+            rawFile = fopen(opts.input.c_str(), "rb");
+            if (!rawFile) {
+                fprintf(stderr, "Cannot open %s\n", opts.input.c_str());
+                return false;
+            }
+            width = opts.rawWidth;
+            height = opts.rawHeight;
+            format = opts.rawFormat;
+            size_t pixels = static_cast<size_t>(width) * height;
+            switch (format) {
+                case RAW_RGB: frameBytes = pixels * 3; break;
+                case RAW_RGBA: frameBytes = pixels * 4; break;
+                case RAW_I420:
+                case RAW_NV21: frameBytes = pixels * 3 / 2; break;
+                default: frameBytes = pixels; break;
+            }
+            return true;
+        }
+
+        if (!capture.open(opts.input) || !capture.isOpened()) {
+            fprintf(stderr, "Cannot open video %s\n", opts.input.c_str());
+            return false;
+        }
+        width = static_cast<int>(capture.get(cv::CAP_PROP_FRAME_WIDTH));
+        height = static_cast<int>(capture.get(cv::CAP_PROP_FRAME_HEIGHT));
+        return width > 0 && height > 0;
+    }
+
+    // Fill a slot with the next frame; returns the number of input bytes consumed, 0 at end
+    size_t read(Slot& slot) {
+        TRACE_SCOPE("FrameSource::read");
+        if (rawFile) {
+            slot.raw.resize(frameBytes);
+            if (fread(slot.raw.data(), 1, frameBytes, rawFile) != frameBytes) {
+                return 0;
+            }
+            switch (format) {
+                case RAW_RGB:
+                    slot.frame = cv::Mat(height, width, CV_8UC3, slot.raw.data());
+                    slot.colorCode = cv::COLOR_RGB2GRAY;
+                    break;
+                case RAW_RGBA:
+                    slot.frame = cv::Mat(height, width, CV_8UC4, slot.raw.data());
+                    slot.colorCode = cv::COLOR_RGBA2GRAY;
+                    break;
+                default:
+                    // Gray, or the Y plane at the start of a YUV 4:2:0 frame
+                    slot.frame = cv::Mat(height, width, CV_8UC1, slot.raw.data());
+                    slot.colorCode = -1;
+                    break;
+            }
+            return frameBytes;
+        }
+
+        if (!capture.read(slot.frame) || slot.frame.empty()) {
+            return 0;
+        }
+        slot.colorCode = slot.frame.channels() == 3 ? cv::COLOR_BGR2GRAY
+                       : slot.frame.channels() == 4 ? cv::COLOR_RGBA2GRAY : -1;
+        return slot.frame.total() * slot.frame.elemSize();
+    }
+
+    void close() {
+        if (rawFile) {
+            fclose(rawFile);
+            rawFile = nullptr;
+        }
+        capture.release();
+    }
+
+    int width = 0;
+    int height = 0;
+
+private:
+    FILE* rawFile = nullptr;
+    RawFormat format = RAW_GRAY;
+    size_t frameBytes = 0;
+    cv::VideoCapture capture;
+};
+
+// Writes edge maps as concatenated raw frames, an image sequence or a video
+class EdgeSink {
+public:
+    bool open(const std::string& path, int width, int height) {
+        if (path.empty()) {
+            return true;
+        }
+        this->path = path;
+        if (path.find('%') != std::string::npos) {
+            sequence = true;
+            return true;
+        }
+        if (endsWith(path, ".raw") || endsWith(path, ".gray")) {
+            rawFile = fopen(path.c_str(), "wb");
+            if (!rawFile) {
+                fprintf(stderr, "Cannot create %s\n", path.c_str());
+            }
+            return rawFile != nullptr;
+        }
+        int fourcc = endsWith(path, ".mp4") ? cv::VideoWriter::fourcc('m', 'p', '4', 'v')
+                                            : cv::VideoWriter::fourcc('M', 'J', 'P', 'G');
+        if (!writer.open(path, fourcc, 30.0, cv::Size(width, height), false)) {
+            fprintf(stderr, "Cannot create video %s\n", path.c_str());
+            return false;
+        }
+        return true;
+    }
+
+    // Returns bytes written
+    size_t write(const cv::Mat& edges, long index) {
+        TRACE_SCOPE("EdgeSink::write");
+        size_t bytes = edges.total() * edges.elemSize();
+        if (rawFile) {
+            for (int y = 0; y < edges.rows; y++) {
+                fwrite(edges.ptr(y), 1, edges.cols, rawFile);
+            }
+        } else if (sequence) {
+            char name[4096];
+            snprintf(name, sizeof(name), path.c_str(), index);
+            cv::imwrite(name, edges);
+        } else if (writer.isOpened()) {
+            writer.write(edges);
+        } else {
+            return 0;
+        }
+        return bytes;
+    }
+
+    void close() {
+        if (rawFile) {
+            fclose(rawFile);
+            rawFile = nullptr;
+        }
+        writer.release();
+    }
+
+private:
+    std::string path;
+    bool sequence = false;
+    FILE* rawFile = nullptr;
+    cv::VideoWriter writer;
+};
+
+// Contour polylines of an edge map as {"frame":N,"contours":[[x,y,x,y,...],...]}
+void buildVectorJson(const cv::Mat& edges, long index, std::string& out) {
+    TRACE_SCOPE("buildVectorJson");
+    std::vector<std::vector<cv::Point>> contours;
+    cv::Mat work = edges.clone();
+    cv::findContours(work, contours, cv::RETR_LIST, cv::CHAIN_APPROX_SIMPLE);
+
+    char number[32];
+    out.clear();
+    snprintf(number, sizeof(number), "%ld", index);
+    out += "{\"frame\":";
+    out += number;
+    out += ",\"contours\":[";
+    std::vector<cv::Point> poly;
+    bool firstContour = true;
+    for (const std::vector<cv::Point>& contour : contours) {
+        cv::approxPolyDP(contour, poly, 1.5, false);
+        if (poly.size() < 2) {
+            continue;
+        }
+        out += firstContour ? "[" : ",[";
+        firstContour = false;
+        for (size_t p = 0; p < poly.size(); p++) {
+            snprintf(number, sizeof(number), p == 0 ? "%d,%d" : ",%d,%d", poly[p].x, poly[p].y);
+            out += number;
+        }
+        out += ']';
+    }
+    out += "]}\n";
+}
+
+// Edge pixels in a, and how many of them have an edge in b within the tolerance
+void matchEdges(const cv::Mat& a, const cv::Mat& b, int tolerance, long& count, long& matched) {
+    count = 0;
+    matched = 0;
+    for (int y = 0; y < a.rows; y++) {
+        const uint8_t* row = a.ptr<uint8_t>(y);
+        for (int x = 0; x < a.cols; x++) {
+            if (!row[x]) continue;
+            count++;
+            bool found = false;
+            for (int yy = std::max(0, y - tolerance); yy <= std::min(b.rows - 1, y + tolerance) && !found; yy++) {
+                const uint8_t* other = b.ptr<uint8_t>(yy);
+                for (int xx = std::max(0, x - tolerance); xx <= std::min(b.cols - 1, x + tolerance); xx++) {
+                    if (other[xx]) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+            if (found) matched++;
+        }
+    }
+}
+
+// Run full-resolution Canny on the processor's input and score the processor's edges against it
+void compareFrame(FrameProcessor& processor, const cv::Mat& input, Slot& slot, double low, double high,
+                  int tolerance) {
+    TRACE_SCOPE("compareFrame");
+    Comparison& result = slot.comparison;
+    int64_t snapshot[STATS_SNAPSHOT_SIZE];
+    if (processor.getStatsSnapshot(snapshot, STATS_SNAPSHOT_SIZE) > 0) {
+        result.cannyNs = snapshot[STATS_HEADER_SIZE + STAGE_CANNY * STATS_FIELDS_PER_STAGE + STATS_FIELD_LAST];
+        result.coverage = snapshot[STATS_PYRAMID_OFFSET + STATS_PYRAMID_COVERAGE];
+    }
+
+    // Same blur as the processor's Mat pipeline; only the Canny call is timed
+    cv::GaussianBlur(input, slot.blurred, cv::Size(5, 5), 1.4);
+    int64_t start = FrameProcessor::getTimeNs();
+    cv::Canny(slot.blurred, slot.reference, low, high);
+    result.referenceNs = FrameProcessor::getTimeNs() - start;
+
+    matchEdges(slot.edges, slot.reference, tolerance, result.edgePixels, result.matchedEdges);
+    matchEdges(slot.reference, slot.edges, tolerance, result.referencePixels, result.matchedReference);
+}
+
+void writeTrace(const std::string& path) {
+    FILE* f = fopen(path.c_str(), "w");
+    if (!f) {
+        fprintf(stderr, "Cannot create %s\n", path.c_str());
+        return;
+    }
+    std::string events = nativetrace::dumpJson();
+    fprintf(f, "{\"displayTimeUnit\":\"ns\",\"traceEvents\":[%s]}\n", events.c_str());
+    fclose(f);
+}
+
+} // namespace
+
+int main(int argc, char** argv) {
+    Options opts;
+    if (!parseArgs(argc, argv, opts)) {
+        usage(argv[0]);
+        return 1;
+    }
+    if (opts.verbose) {
+        hostLogMinPriority() = ANDROID_LOG_INFO;
+    }
+    if (!opts.tracePath.empty()) {
+        nativetrace::setMode(nativetrace::MODE_RECORD);
+    }
+
+    // Parallelism comes from the worker pool; OpenCV's own threads would only contend with it
+    cv::setNumThreads(1);
+
+    FrameSource source;
+    if (!source.open(opts)) {
+        return 1;
+    }
+
+    // Workers apply the placement themselves before their first task
+    if (!opts.cores.empty() || opts.nice != THREAD_NICE_DEFAULT) {
+        uint64_t mask = 0;
+        if (opts.cores == "big") mask = affinity::bigCoreMask();
+        else if (opts.cores == "little") mask = affinity::littleCoreMask();
+        else if (!opts.cores.empty() && opts.cores != "all") mask = strtoull(opts.cores.c_str(), nullptr, 16);
+        affinity::ThreadConfig config = {mask, opts.nice};
+        affinity::setConfig(config);
+    }
+
+    FrameWorkerPool pool(opts.threads);
+    if (!pool.initialize(source.width, source.height)) {
+        return 1;
+    }
+    int window = opts.window > 0 ? opts.window : pool.getWorkerCount() * 4;
+
+    // UMat quietly becomes Mat when no OpenCL runtime is installed
+    ProcessingBackend backend = BACKEND_MAT;
+    if (opts.backend == "umat") {
+        backend = pool.setBackend(BACKEND_UMAT);
+    } else if (opts.backend == "auto") {
+        backend = pool.calibrateBackend();
+    }
+    if (opts.backend != "mat") {
+        fprintf(stderr, "Backend: %s%s\n", backend == BACKEND_UMAT ? "UMat (OpenCL)" : "Mat",
+                FrameProcessor::isOpenCLAvailable() ? "" : " (no OpenCL runtime)");
+    }
+
+    if (opts.pyramidLevels > 0) {
+        pool.setPyramidMode(opts.pyramidLevels, opts.pyramidRadius);
+    }
+
+    EdgeSink sink;
+    if (!sink.open(opts.output, source.width, source.height)) {
+        return 1;
+    }
+    FILE* vectorFile = nullptr;
+    if (!opts.vectorPath.empty()) {
+        vectorFile = fopen(opts.vectorPath.c_str(), "w");
+        if (!vectorFile) {
+            fprintf(stderr, "Cannot create %s\n", opts.vectorPath.c_str());
+            return 1;
+        }
+    }
+
+    std::vector<Slot> slots(window);
+    std::mutex slotMutex;
+    std::condition_variable slotDone;
+    bool wantVectors = vectorFile != nullptr;
+    bool compare = opts.compare;
+    int tolerance = opts.tolerance;
+    double low = opts.low;
+    double high = opts.high;
+
+    // --compare totals over all frames; the worst frame is the one with the lowest recall
+    Comparison totals;
+    int64_t coverageSum = 0;
+    long compared = 0;
+    double worstRecall = 1.0;
+    long worstFrame = -1;
+
+    long submitted = 0;
+    long written = 0;
+    long failed = 0;
+    size_t bytesIn = 0;
+    size_t bytesOut = 0;
+    Clock::time_point start = Clock::now();
+
+    // Write the oldest frame once its worker is done; this keeps output in input order
+    auto emitOldest = [&]() {
+        Slot& slot = slots[written % window];
+        {
+            std::unique_lock<std::mutex> lock(slotMutex);
+            slotDone.wait(lock, [&slot] { return slot.done; });
+        }
+        if (slot.ok) {
+            if (compare) {
+                const Comparison& c = slot.comparison;
+                totals.edgePixels += c.edgePixels;
+                totals.referencePixels += c.referencePixels;
+                totals.matchedEdges += c.matchedEdges;
+                totals.matchedReference += c.matchedReference;
+                totals.cannyNs += c.cannyNs;
+                totals.referenceNs += c.referenceNs;
+                coverageSum += c.coverage;
+                compared++;
+                double recall = c.referencePixels > 0 ? static_cast<double>(c.matchedReference) / c.referencePixels : 1.0;
+                if (recall < worstRecall) {
+                    worstRecall = recall;
+                    worstFrame = written;
+                }
+            }
+            bytesOut += sink.write(slot.edges, written);
+            if (vectorFile) {
+                fwrite(slot.vectors.data(), 1, slot.vectors.size(), vectorFile);
+                bytesOut += slot.vectors.size();
+            }
+        } else {
+            failed++;
+        }
+        written++;
+    };
+
+    for (;;) {
+        if (opts.maxFrames >= 0 && submitted >= opts.maxFrames) {
+            break;
+        }
+        if (submitted - written == window) {
+            emitOldest();
+        }
+
+        Slot& slot = slots[submitted % window];
+        size_t bytes = source.read(slot);
+        if (bytes == 0) {
+            break;
+        }
+        bytesIn += bytes;
+        slot.done = false;
+
+        long index = submitted++;
+        Slot* target = &slot;
+        pool.submit([target, index, low, high, wantVectors, compare, tolerance, &slotMutex, &slotDone](
+                FrameProcessor& processor, int) {
+            TRACE_SCOPE("edge_batch frame");
+            const cv::Mat* input = &target->frame;
+            if (target->colorCode >= 0) {
+                cv::cvtColor(target->frame, target->gray, target->colorCode);
+                input = &target->gray;
+            }
+            bool ok = processor.processFrameCanny(*input, target->edges, low, high);
+            if (ok && compare) {
+                compareFrame(processor, *input, *target, low, high, tolerance);
+            }
+            if (ok && wantVectors) {
+                buildVectorJson(target->edges, index, target->vectors);
+            }
+
+            std::lock_guard<std::mutex> lock(slotMutex);
+            target->ok = ok;
+            target->done = true;
+            slotDone.notify_all();
+        });
+    }
+    while (written < submitted) {
+        emitOldest();
+    }
+
+    double seconds = std::chrono::duration<double>(Clock::now() - start).count();
+    source.close();
+    sink.close();
+    if (vectorFile) {
+        fclose(vectorFile);
+    }
+
+    // Per-stage means averaged over the workers' rolling windows
+    double stageMeanMs[STAGE_COUNT] = {0};
+    int reporting = 0;
+    int64_t snapshot[STATS_SNAPSHOT_SIZE];
+    std::string placement;
+    for (int w = 0; w < pool.getWorkerCount(); w++) {
+        if (pool.getWorkerStats(w, snapshot, STATS_SNAPSHOT_SIZE) && snapshot[1] > 0) {
+            const int64_t* where = snapshot + STATS_PLACEMENT_OFFSET;
+            char line[160];
+            snprintf(line, sizeof(line),
+                     "             worker %d: tid %lld, cpu %lld (cluster %lld), nice %lld, %lld migrations\n",
+                     w, static_cast<long long>(where[STATS_PLACEMENT_THREAD_ID]),
+                     static_cast<long long>(where[STATS_PLACEMENT_CPU]),
+                     static_cast<long long>(where[STATS_PLACEMENT_CLUSTER]),
+                     static_cast<long long>(where[STATS_PLACEMENT_NICE]),
+                     static_cast<long long>(where[STATS_PLACEMENT_MIGRATIONS]));
+            placement += line;
+            reporting++;
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                stageMeanMs[stage] += snapshot[STATS_HEADER_SIZE + stage * STATS_FIELDS_PER_STAGE
+                                               + STATS_FIELD_MEAN] / 1e6;
+            }
+        }
+    }
+
+    double mb = 1024.0 * 1024.0;
+    printf("Frames:      %ld (%dx%d), failed: %ld\n", written, source.width, source.height, failed);
+    printf("Workers:     %d, window: %d\n", pool.getWorkerCount(), window);
+    printf("Wall time:   %.3f s\n", seconds);
+    printf("Throughput:  %.1f frames/s, %.1f MB/s in, %.1f MB/s out\n",
+           written / seconds, bytesIn / mb / seconds, bytesOut / mb / seconds);
+    if (reporting > 0) {
+        printf("Per frame:   convert %.2f ms, blur %.2f ms, canny %.2f ms (mean per worker)\n",
+               stageMeanMs[STAGE_CONVERT] / reporting, stageMeanMs[STAGE_BLUR] / reporting,
+               stageMeanMs[STAGE_CANNY] / reporting);
+    }
+    if (opts.pyramidLevels > 0) {
+        printf("Pyramid:     %d levels (1/%d), dilation radius %d", opts.pyramidLevels,
+               1 << opts.pyramidLevels, opts.pyramidRadius);
+        if (compared > 0) {
+            printf(", %.1f%% of each frame at full resolution (mean)", coverageSum / 10.0 / compared);
+        }
+        printf("\n");
+    }
+    if (compared > 0) {
+        double cannyMs = totals.cannyNs / 1e6 / compared;
+        double referenceMs = totals.referenceNs / 1e6 / compared;
+        double precision = totals.edgePixels > 0
+            ? static_cast<double>(totals.matchedEdges) / totals.edgePixels : 1.0;
+        double recall = totals.referencePixels > 0
+            ? static_cast<double>(totals.matchedReference) / totals.referencePixels : 1.0;
+        double f1 = precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0.0;
+        printf("Canny:       %.2f ms vs %.2f ms at full resolution, %.2fx (mean per frame)\n",
+               cannyMs, referenceMs, cannyMs > 0 ? referenceMs / cannyMs : 0.0);
+        printf("Quality:     precision %.4f, recall %.4f, F1 %.4f against full resolution (tolerance %dpx)\n",
+               precision, recall, f1, tolerance);
+        printf("             edge pixels %ld vs %ld; lowest recall %.4f at frame %ld\n",
+               totals.edgePixels, totals.referencePixels, worstRecall, worstFrame);
+    }
+    const std::vector<affinity::CpuCluster>& clusters = affinity::getClusters();
+    printf("Clusters:   ");
+    for (size_t i = 0; i < clusters.size(); i++) {
+        printf(" %zu: 0x%llx @ %lld MHz", i, static_cast<unsigned long long>(clusters[i].mask),
+               static_cast<long long>(clusters[i].maxFreqKhz / 1000));
+    }
+    printf("\nPlacement:   last frame per worker\n%s", placement.c_str());
+
+    if (!opts.tracePath.empty()) {
+        writeTrace(opts.tracePath);
+        printf("Trace:       %s\n", opts.tracePath.c_str());
+    }
+    return failed > 0 ? 2 : 0;
+}
@@ -0,0 +1,143 @@
+// Host-side benchmark for EdgeCodec.
+//
+// Build (Linux/macOS, no OpenCV or NDK needed):
+//   g++ -O2 -std=c++14 -I.. edge_codec_bench.cpp ../edge_codec.cpp -o edge_codec_bench
+//
+// Usage:
+//   edge_codec_bench <width> <height> <edge_maps.raw> [keyframe_interval]
+//   edge_codec_bench <width> <height> --synthetic <frames> [keyframe_interval]
+//
+// The raw file is a plain concatenation of width*height 8-bit edge maps, as
+// written by dumping FrameProcessor::processFrameCanny output frame by frame.
+
+#include "edge_codec.h"
+
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <vector>
+
+namespace {
+
+typedef std::chrono::steady_clock Clock;
+
+bool readFrames(const char* path, size_t frameSize, std::vector<std::vector<uint8_t>>& frames) {
+    FILE* f = fopen(path, "rb");
+    if (!f) {
+        fprintf(stderr, "Cannot open %s\n", path);
+        return false;
+    }
+    std::vector<uint8_t> frame(frameSize);
+    while (fread(frame.data(), 1, frameSize, f) == frameSize) {
+        frames.push_back(frame);
+    }
+    fclose(f);
+    return !frames.empty();
+}
+
+// Slowly moving circles and lines over a static grid, roughly the density of
+// a Canny map of an indoor scene
+void makeSyntheticFrames(int width, int height, int count, std::vector<std::vector<uint8_t>>& frames) {
+    for (int i = 0; i < count; i++) {
+        std::vector<uint8_t> frame(static_cast<size_t>(width) * height, 0);
+        for (int y = 0; y < height; y += 40) {
+            memset(&frame[static_cast<size_t>(y) * width], 0xFF, width);
+        }
+        for (int x = 0; x < width; x += 60) {
+            for (int y = 0; y < height; y++) {
+                frame[static_cast<size_t>(y) * width + x] = 0xFF;
+            }
+        }
+        double cx = width / 2.0 + std::sin(i * 0.05) * width / 4.0;
+        double cy = height / 2.0 + std::cos(i * 0.03) * height / 4.0;
+        for (int r = 30; r <= 90; r += 30) {
+            for (int a = 0; a < 720; a++) {
+                int x = static_cast<int>(cx + r * std::cos(a * M_PI / 360.0));
+                int y = static_cast<int>(cy + r * std::sin(a * M_PI / 360.0));
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    frame[static_cast<size_t>(y) * width + x] = 0xFF;
+                }
+            }
+        }
+        frames.push_back(frame);
+    }
+}
+
+} // namespace
+
+int main(int argc, char** argv) {
+    if (argc < 4) {
+        fprintf(stderr, "Usage: %s <width> <height> <edge_maps.raw | --synthetic N> [keyframe_interval]\n", argv[0]);
+        return 1;
+    }
+
+    int width = atoi(argv[1]);
+    int height = atoi(argv[2]);
+    bool synthetic = strcmp(argv[3], "--synthetic") == 0;
+    int argNext = synthetic ? 5 : 4;
+    int keyframeInterval = argc > argNext ? atoi(argv[argNext]) : 30;
+    size_t pixels = static_cast<size_t>(width) * height;
+
+    std::vector<std::vector<uint8_t>> frames;
+    if (synthetic) {
+        makeSyntheticFrames(width, height, argc > 4 ? atoi(argv[4]) : 300, frames);
+    } else if (!readFrames(argv[3], pixels, frames)) {
+        fprintf(stderr, "No complete %dx%d frames found\n", width, height);
+        return 1;
+    }
+
+    EdgeCodec codec(keyframeInterval);
+    EdgeDecoder decoder;
+    std::vector<uint8_t> encoded(EdgeCodec::maxEncodedSize(width, height));
+    std::vector<uint8_t> decoded(pixels);
+
+    size_t totalEncoded = 0;
+    size_t keyframes = 0;
+    size_t maxFrameBytes = 0;
+    double encodeNs = 0;
+    double decodeNs = 0;
+
+    for (size_t i = 0; i < frames.size(); i++) {
+        bool keyframe = false;
+        Clock::time_point t0 = Clock::now();
+        size_t size = codec.encode(frames[i].data(), width, height, width,
+                                   encoded.data(), encoded.size(), &keyframe);
+        Clock::time_point t1 = Clock::now();
+        if (size == 0) {
+            fprintf(stderr, "Encode failed at frame %zu\n", i);
+            return 1;
+        }
+        bool ok = decoder.decode(encoded.data(), size, decoded.data(), width, height);
+        Clock::time_point t2 = Clock::now();
+
+        for (size_t p = 0; ok && p < pixels; p++) {
+            ok = (decoded[p] != 0) == (frames[i][p] != 0);
+        }
+        if (!ok) {
+            fprintf(stderr, "Round trip mismatch at frame %zu\n", i);
+            return 1;
+        }
+
+        encodeNs += std::chrono::duration<double, std::nano>(t1 - t0).count();
+        decodeNs += std::chrono::duration<double, std::nano>(t2 - t1).count();
+        totalEncoded += size;
+        keyframes += keyframe ? 1 : 0;
+        if (size > maxFrameBytes) maxFrameBytes = size;
+    }
+
+    double totalPixels = static_cast<double>(pixels) * frames.size();
+    double rawBytes = totalPixels;
+    double packedBytes = totalPixels / 8.0;
+
+    printf("Frames:              %zu (%dx%d), keyframes: %zu\n", frames.size(), width, height, keyframes);
+    printf("Raw 8bpp:            %.0f bytes\n", rawBytes);
+    printf("Encoded:             %zu bytes (avg %.0f, max %zu per frame)\n",
+           totalEncoded, static_cast<double>(totalEncoded) / frames.size(), maxFrameBytes);
+    printf("Ratio vs 8bpp:       %.1fx\n", rawBytes / totalEncoded);
+    printf("Ratio vs bit-packed: %.1fx\n", packedBytes / totalEncoded);
+    printf("Encode:              %.3f ns/pixel\n", encodeNs / totalPixels);
+    printf("Decode:              %.3f ns/pixel\n", decodeNs / totalPixels);
+    return 0;
+}
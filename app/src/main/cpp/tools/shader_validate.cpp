@@ -0,0 +1,446 @@
+// Headless check of the GPU shader edge pipeline against the OpenCV path.
+//
+// Creates an EGL pbuffer context (no window system needed; Mesa's llvmpipe
+// works, e.g. EGL_PLATFORM=surfaceless LIBGL_ALWAYS_SOFTWARE=1), runs the
+// shaders from app/src/main/assets/shaders with the same pass order as
+// ShaderEdgePipeline.java, reads the result back and compares it with
+// FrameProcessor::processFrameCanny on the same image.
+//
+// Usage:
+//   shader_validate [options] [image]
+//
+// Without an image a synthetic pattern (rings, bars and a gradient) is used.
+//
+// Options:
+//   --shaders DIR        shader directory (default: the source tree's assets/shaders)
+//   --size WxH           synthetic pattern size (default 640x480)
+//   --low T --high T     thresholds for both paths (default 50 / 150)
+//   --tolerance N        match edges within N pixels (default 1)
+//   --border N           ignore N pixels at the image border (default 4)
+//   --min-f1 F           exit non-zero below this F1 score (default 0.85)
+//   --dump PREFIX        write PREFIX_gpu.png and PREFIX_cpu.png
+//   -v, --verbose        log processor messages
+
+#include "frame_processor.h"
+
+#include <EGL/egl.h>
+#include <GLES2/gl2.h>
+
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <fstream>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#ifndef SHADER_DIR
+#define SHADER_DIR "app/src/main/assets/shaders"
+#endif
+
+namespace {
+
+struct Options {
+    std::string input;
+    std::string shaderDir = SHADER_DIR;
+    std::string dumpPrefix;
+    int width = 640;
+    int height = 480;
+    double low = 50.0;
+    double high = 150.0;
+    int tolerance = 1;
+    int border = 4;
+    double minF1 = 0.85;
+    bool verbose = false;
+};
+
+void usage(const char* argv0) {
+    fprintf(stderr,
+            "Usage: %s [--shaders DIR] [--size WxH] [--low T] [--high T] [--tolerance N]\n"
+            "          [--border N] [--min-f1 F] [--dump PREFIX] [image]\n", argv0);
+}
+
+bool parseArgs(int argc, char** argv, Options& opts) {
+    for (int i = 1; i < argc; i++) {
+        std::string arg = argv[i];
+        bool hasValue = i + 1 < argc;
+        if (arg == "--shaders" && hasValue) {
+            opts.shaderDir = argv[++i];
+        } else if (arg == "--size" && hasValue) {
+            if (sscanf(argv[++i], "%dx%d", &opts.width, &opts.height) != 2) {
+                fprintf(stderr, "Bad --size: %s\n", argv[i]);
+                return false;
+            }
+        } else if (arg == "--low" && hasValue) {
+            opts.low = atof(argv[++i]);
+        } else if (arg == "--high" && hasValue) {
+            opts.high = atof(argv[++i]);
+        } else if (arg == "--tolerance" && hasValue) {
+            opts.tolerance = atoi(argv[++i]);
+        } else if (arg == "--border" && hasValue) {
+            opts.border = atoi(argv[++i]);
+        } else if (arg == "--min-f1" && hasValue) {
+            opts.minF1 = atof(argv[++i]);
+        } else if (arg == "--dump" && hasValue) {
+            opts.dumpPrefix = argv[++i];
+        } else if (arg == "-v" || arg == "--verbose") {
+            opts.verbose = true;
+        } else if (!arg.empty() && arg[0] != '-' && opts.input.empty()) {
+            opts.input = arg;
+        } else {
+            fprintf(stderr, "Unknown or incomplete option: %s\n", arg.c_str());
+            return false;
+        }
+    }
+    return true;
+}
+
+// Rings, bars and a horizontal gradient: edges in every direction plus a
+// region whose gradient sits between the thresholds
+cv::Mat syntheticPattern(int width, int height) {
+    cv::Mat rgb(height, width, CV_8UC3);
+    double cx = width * 0.35;
+    double cy = height * 0.5;
+    for (int y = 0; y < height; y++) {
+        uint8_t* row = rgb.ptr<uint8_t>(y);
+        for (int x = 0; x < width; x++) {
+            uint8_t r, g, b;
+            double dist = std::sqrt((x - cx) * (x - cx) + (y - cy) * (y - cy));
+            if (x < width * 0.7) {
+                bool ring = static_cast<int>(dist / 18.0) % 2 == 0;
+                r = ring ? 220 : 40;
+                g = ring ? 200 : 60;
+                b = ring ? 90 : 150;
+            } else if (y < height / 2) {
+                bool bar = (x / 12) % 2 == 0;
+                r = g = b = bar ? 240 : 20;
+            } else {
+                r = g = b = static_cast<uint8_t>(255.0 * (x - width * 0.7) / (width * 0.3));
+            }
+            row[x * 3] = r;
+            row[x * 3 + 1] = g;
+            row[x * 3 + 2] = b;
+        }
+    }
+    return rgb;
+}
+
+bool readFile(const std::string& path, std::string& out) {
+    std::ifstream in(path);
+    if (!in) {
+        fprintf(stderr, "Cannot read %s\n", path.c_str());
+        return false;
+    }
+    std::stringstream ss;
+    ss << in.rdbuf();
+    out = ss.str();
+    return true;
+}
+
+GLuint compileShader(GLenum type, const std::string& source, const char* name) {
+    GLuint shader = glCreateShader(type);
+    const char* text = source.c_str();
+    glShaderSource(shader, 1, &text, nullptr);
+    glCompileShader(shader);
+
+    GLint status = GL_FALSE;
+    glGetShaderiv(shader, GL_COMPILE_STATUS, &status);
+    if (status != GL_TRUE) {
+        char log[2048];
+        glGetShaderInfoLog(shader, sizeof(log), nullptr, log);
+        fprintf(stderr, "%s: compile failed:\n%s\n", name, log);
+        glDeleteShader(shader);
+        return 0;
+    }
+    return shader;
+}
+
+GLuint buildProgram(const std::string& vertex, const std::string& fragment, const char* name) {
+    GLuint vs = compileShader(GL_VERTEX_SHADER, vertex, "edge_pass.vert");
+    GLuint fs = compileShader(GL_FRAGMENT_SHADER, fragment, name);
+    if (!vs || !fs) {
+        return 0;
+    }
+    GLuint program = glCreateProgram();
+    glAttachShader(program, vs);
+    glAttachShader(program, fs);
+    glLinkProgram(program);
+    glDeleteShader(vs);
+    glDeleteShader(fs);
+
+    GLint status = GL_FALSE;
+    glGetProgramiv(program, GL_LINK_STATUS, &status);
+    if (status != GL_TRUE) {
+        char log[2048];
+        glGetProgramInfoLog(program, sizeof(log), nullptr, log);
+        fprintf(stderr, "%s: link failed:\n%s\n", name, log);
+        glDeleteProgram(program);
+        return 0;
+    }
+    return program;
+}
+
+GLuint createTexture(int width, int height, GLenum format, const void* pixels) {
+    GLuint texture;
+    glGenTextures(1, &texture);
+    glBindTexture(GL_TEXTURE_2D, texture);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    glTexImage2D(GL_TEXTURE_2D, 0, format, width, height, 0, format, GL_UNSIGNED_BYTE, pixels);
+    return texture;
+}
+
+// Pbuffer-backed ES 2.0 context; no window system required
+class HeadlessContext {
+public:
+    ~HeadlessContext() {
+        if (display != EGL_NO_DISPLAY) {
+            eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+            if (context != EGL_NO_CONTEXT) eglDestroyContext(display, context);
+            if (surface != EGL_NO_SURFACE) eglDestroySurface(display, surface);
+            eglTerminate(display);
+        }
+    }
+
+    bool create() {
+        display = eglGetDisplay(EGL_DEFAULT_DISPLAY);
+        EGLint major, minor;
+        if (display == EGL_NO_DISPLAY || !eglInitialize(display, &major, &minor)) {
+            fprintf(stderr, "eglInitialize failed: 0x%x\n", eglGetError());
+            return false;
+        }
+
+        const EGLint configAttribs[] = {
+            EGL_SURFACE_TYPE, EGL_PBUFFER_BIT,
+            EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+            EGL_RED_SIZE, 8, EGL_GREEN_SIZE, 8, EGL_BLUE_SIZE, 8, EGL_ALPHA_SIZE, 8,
+            EGL_NONE
+        };
+        EGLConfig config;
+        EGLint numConfigs = 0;
+        if (!eglChooseConfig(display, configAttribs, &config, 1, &numConfigs) || numConfigs == 0) {
+            fprintf(stderr, "No ES2 pbuffer config\n");
+            return false;
+        }
+
+        const EGLint surfaceAttribs[] = {EGL_WIDTH, 1, EGL_HEIGHT, 1, EGL_NONE};
+        surface = eglCreatePbufferSurface(display, config, surfaceAttribs);
+        eglBindAPI(EGL_OPENGL_ES_API);
+        const EGLint contextAttribs[] = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL_NONE};
+        context = eglCreateContext(display, config, EGL_NO_CONTEXT, contextAttribs);
+        if (surface == EGL_NO_SURFACE || context == EGL_NO_CONTEXT
+                || !eglMakeCurrent(display, surface, surface, context)) {
+            fprintf(stderr, "Failed to create ES2 context: 0x%x\n", eglGetError());
+            return false;
+        }
+
+        printf("EGL %d.%d, GL_RENDERER: %s\n", major, minor,
+               reinterpret_cast<const char*>(glGetString(GL_RENDERER)));
+        return true;
+    }
+
+private:
+    EGLDisplay display = EGL_NO_DISPLAY;
+    EGLSurface surface = EGL_NO_SURFACE;
+    EGLContext context = EGL_NO_CONTEXT;
+};
+
+// Mirrors ShaderEdgePipeline.java, with a sampler2D input instead of the camera's OES texture
+class ShaderPipeline {
+public:
+    bool load(const std::string& dir) {
+        std::string vertex, common, luma, blur, sobel, nms, threshold;
+        if (!readFile(dir + "/edge_pass.vert", vertex) || !readFile(dir + "/edge_common.glsl", common)
+                || !readFile(dir + "/edge_luma.frag", luma) || !readFile(dir + "/edge_blur.frag", blur)
+                || !readFile(dir + "/edge_sobel.frag", sobel) || !readFile(dir + "/edge_nms.frag", nms)
+                || !readFile(dir + "/edge_threshold.frag", threshold)) {
+            return false;
+        }
+        lumaProgram = buildProgram(vertex, luma, "edge_luma.frag");
+        blurProgram = buildProgram(vertex, blur, "edge_blur.frag");
+        sobelProgram = buildProgram(vertex, common + sobel, "edge_sobel.frag");
+        nmsProgram = buildProgram(vertex, common + nms, "edge_nms.frag");
+        thresholdProgram = buildProgram(vertex, common + threshold, "edge_threshold.frag");
+        return lumaProgram && blurProgram && sobelProgram && nmsProgram && thresholdProgram;
+    }
+
+    // rgb: CV_8UC3 in RGB order; returns CV_8UC1 edges (0 / 255)
+    cv::Mat run(const cv::Mat& rgb, float low, float high) {
+        int width = rgb.cols;
+        int height = rgb.rows;
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        GLuint input = createTexture(width, height, GL_RGB, rgb.data);
+
+        GLuint textures[2];
+        GLuint framebuffers[2];
+        glGenFramebuffers(2, framebuffers);
+        for (int i = 0; i < 2; i++) {
+            textures[i] = createTexture(width, height, GL_RGBA, nullptr);
+            glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[i]);
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textures[i], 0);
+        }
+        glViewport(0, 0, width, height);
+        float texelX = 1.0f / width;
+        float texelY = 1.0f / height;
+
+        runPass(lumaProgram, input, framebuffers[0]);
+        glUseProgram(blurProgram);
+        glUniform2f(glGetUniformLocation(blurProgram, "uStep"), texelX, 0.0f);
+        runPass(blurProgram, textures[0], framebuffers[1]);
+        glUseProgram(blurProgram);
+        glUniform2f(glGetUniformLocation(blurProgram, "uStep"), 0.0f, texelY);
+        runPass(blurProgram, textures[1], framebuffers[0]);
+
+        setTexelSize(sobelProgram, texelX, texelY);
+        runPass(sobelProgram, textures[0], framebuffers[1]);
+        setTexelSize(nmsProgram, texelX, texelY);
+        runPass(nmsProgram, textures[1], framebuffers[0]);
+        setTexelSize(thresholdProgram, texelX, texelY);
+        glUniform1f(glGetUniformLocation(thresholdProgram, "uLowThreshold"), low);
+        glUniform1f(glGetUniformLocation(thresholdProgram, "uHighThreshold"), high);
+        runPass(thresholdProgram, textures[0], framebuffers[1]);
+
+        // Row 0 of the framebuffer is row 0 of the source image
+        std::vector<uint8_t> rgba(static_cast<size_t>(width) * height * 4);
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[1]);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, rgba.data());
+
+        cv::Mat edges(height, width, CV_8UC1);
+        for (int i = 0; i < width * height; i++) {
+            edges.data[i] = rgba[i * 4] > 127 ? 255 : 0;
+        }
+
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glDeleteFramebuffers(2, framebuffers);
+        glDeleteTextures(2, textures);
+        glDeleteTextures(1, &input);
+        return edges;
+    }
+
+private:
+    GLuint lumaProgram = 0;
+    GLuint blurProgram = 0;
+    GLuint sobelProgram = 0;
+    GLuint nmsProgram = 0;
+    GLuint thresholdProgram = 0;
+
+    void setTexelSize(GLuint program, float texelX, float texelY) {
+        glUseProgram(program);
+        glUniform2f(glGetUniformLocation(program, "uTexelSize"), texelX, texelY);
+    }
+
+    void runPass(GLuint program, GLuint inputTexture, GLuint framebuffer) {
+        static const float quad[] = {-1.f, -1.f, 1.f, -1.f, -1.f, 1.f, 1.f, 1.f};
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glUseProgram(program);
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, inputTexture);
+        glUniform1i(glGetUniformLocation(program, "uTexture"), 0);
+
+        GLint position = glGetAttribLocation(program, "aPosition");
+        glEnableVertexAttribArray(position);
+        glVertexAttribPointer(position, 2, GL_FLOAT, GL_FALSE, 0, quad);
+        glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
+        glDisableVertexAttribArray(position);
+    }
+};
+
+// Fraction of edge pixels in a that have an edge in b within the tolerance
+double matchedFraction(const cv::Mat& a, const cv::Mat& b, int tolerance, int border, long& count) {
+    long total = 0;
+    long matched = 0;
+    for (int y = border; y < a.rows - border; y++) {
+        for (int x = border; x < a.cols - border; x++) {
+            if (!a.at<uint8_t>(y, x)) continue;
+            total++;
+            bool found = false;
+            for (int dy = -tolerance; dy <= tolerance && !found; dy++) {
+                for (int dx = -tolerance; dx <= tolerance && !found; dx++) {
+                    int yy = y + dy;
+                    int xx = x + dx;
+                    if (yy >= 0 && yy < b.rows && xx >= 0 && xx < b.cols && b.at<uint8_t>(yy, xx)) {
+                        found = true;
+                    }
+                }
+            }
+            if (found) matched++;
+        }
+    }
+    count = total;
+    return total > 0 ? static_cast<double>(matched) / total : 1.0;
+}
+
+} // namespace
+
+int main(int argc, char** argv) {
+    Options opts;
+    if (!parseArgs(argc, argv, opts)) {
+        usage(argv[0]);
+        return 1;
+    }
+    if (opts.verbose) {
+        hostLogMinPriority() = ANDROID_LOG_INFO;
+    }
+
+    cv::Mat rgb;
+    if (opts.input.empty()) {
+        rgb = syntheticPattern(opts.width, opts.height);
+    } else {
+        cv::Mat bgr = cv::imread(opts.input, cv::IMREAD_COLOR);
+        if (bgr.empty()) {
+            fprintf(stderr, "Cannot read image %s\n", opts.input.c_str());
+            return 1;
+        }
+        cv::cvtColor(bgr, rgb, cv::COLOR_BGR2RGB);
+    }
+
+    HeadlessContext context;
+    ShaderPipeline pipeline;
+    if (!context.create() || !pipeline.load(opts.shaderDir)) {
+        return 1;
+    }
+    cv::Mat gpuEdges = pipeline.run(rgb, static_cast<float>(opts.low), static_cast<float>(opts.high));
+
+    FrameProcessor processor;
+    cv::Mat cpuEdges;
+    if (!processor.initialize(rgb.cols, rgb.rows)
+            || !processor.processFrameCanny(rgb, cpuEdges, opts.low, opts.high)) {
+        fprintf(stderr, "OpenCV reference failed\n");
+        return 1;
+    }
+
+    long exact = 0;
+    long compared = 0;
+    for (int y = opts.border; y < rgb.rows - opts.border; y++) {
+        for (int x = opts.border; x < rgb.cols - opts.border; x++) {
+            compared++;
+            if (gpuEdges.at<uint8_t>(y, x) == cpuEdges.at<uint8_t>(y, x)) exact++;
+        }
+    }
+    long gpuCount = 0;
+    long cpuCount = 0;
+    double precision = matchedFraction(gpuEdges, cpuEdges, opts.tolerance, opts.border, gpuCount);
+    double recall = matchedFraction(cpuEdges, gpuEdges, opts.tolerance, opts.border, cpuCount);
+    double f1 = precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0.0;
+
+    printf("%dx%d, thresholds %.0f/%.0f, tolerance %dpx, border %dpx\n",
+           rgb.cols, rgb.rows, opts.low, opts.high, opts.tolerance, opts.border);
+    printf("edge pixels: gpu %ld, opencv %ld\n", gpuCount, cpuCount);
+    printf("pixel agreement %.2f%%, precision %.3f, recall %.3f, F1 %.3f\n",
+           100.0 * exact / (compared > 0 ? compared : 1), precision, recall, f1);
+
+    if (!opts.dumpPrefix.empty()) {
+        cv::imwrite(opts.dumpPrefix + "_gpu.png", gpuEdges);
+        cv::imwrite(opts.dumpPrefix + "_cpu.png", cpuEdges);
+    }
+
+    if (f1 < opts.minF1) {
+        printf("FAIL: F1 below %.2f\n", opts.minF1);
+        return 2;
+    }
+    printf("PASS\n");
+    return 0;
+}
@@ -2,10 +2,10 @@ package com.assessment.edgedetector;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.SurfaceTexture;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 import android.util.Size;
 import android.widget.Button;
@@ -17,16 +17,76 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.assessment.edgedetector.camera.CameraManager;
+import com.assessment.edgedetector.camera.Frame;
+import com.assessment.edgedetector.camera.SessionManager;
+import com.assessment.edgedetector.codec.EdgeFrameDecoder;
 import com.assessment.edgedetector.gl.CameraGLSurfaceView;
+import com.assessment.edgedetector.processing.AndroidThermalProvider;
+import com.assessment.edgedetector.processing.FrameData;
+import com.assessment.edgedetector.processing.FrameScheduler;
+import com.assessment.edgedetector.processing.IdleController;
+import com.assessment.edgedetector.processing.ThermalPolicy;
+import com.assessment.edgedetector.reactive.FrameEmitter;
+import com.assessment.edgedetector.stream.FrameStreamServer;
 import com.assessment.edgedetector.utils.FPSCounter;
+import com.assessment.edgedetector.utils.FlightRecorder;
+import com.assessment.edgedetector.utils.FrameLatencyTracker;
+import com.assessment.edgedetector.utils.NativeStats;
+import com.assessment.edgedetector.utils.NanoClock;
+import com.assessment.edgedetector.utils.PerformanceMonitor;
+import com.assessment.edgedetector.utils.StartupMetrics;
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main activity for the Edge Detection app
  * Integrates Camera2, OpenGL ES, and OpenCV processing
  */
-public class MainActivity extends AppCompatActivity implements CameraManager.FrameProcessingCallback {
+public class MainActivity extends AppCompatActivity implements CameraManager.FrameSubscriber,
+        CameraManager.ErrorListener {
     private static final String TAG = "MainActivity";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 200;
+    // Matches Process.THREAD_PRIORITY_DISPLAY
+    private static final int PROCESSING_THREAD_NICE = -4;
+    // Native load, camera open and processor init can all be in flight at once
+    private static final int STARTUP_THREADS = 3;
+    // Idle mode: static scene timeout and processing period while idle
+    private static final long IDLE_STATIC_TIMEOUT_MS = 10_000;
+    private static final long IDLE_PROCESS_INTERVAL_MS = 500;
+    
+    // Viewer stats are sampled from the edge stream at 10 Hz
+    private static final long STATS_PUBLISH_PERIOD_NS = 100_000_000L;
+    
+    // Viewers are not authenticated: the stream server listens on loopback only
+    // (adb forward tcp:8765 tcp:8765) unless LAN viewers are allowed here
+    private static final boolean STREAM_TO_LAN = false;
+    
+    // Flight recorder: memory cap for the ring, how far back a spill reaches,
+    // and whether to compress (more frames per byte, more CPU per frame). The
+    // ring is sized for the window at 30 fps up to the cap: at 1080p the cap
+    // holds about 1 s uncompressed or 3 s compressed, and the shortfall is logged.
+    private static final long FLIGHT_RECORDER_BUDGET_BYTES = 128L * 1024 * 1024;
+    private static final long FLIGHT_RECORDER_WINDOW_MS = 5_000;
+    private static final boolean FLIGHT_RECORDER_COMPRESSION = false;
+    
+    // Canny thresholds follow the scene's luma distribution instead of a fixed 50/150
+    private static final int CANNY_THRESHOLD_MODE = NativeLib.THRESHOLD_MEDIAN;
+    
+    // Coarse-to-fine Canny (levels, dilation radius); 0 levels runs every frame at full resolution.
+    // edge_batch --pyramid --compare measures the speed and quality of a setting on recorded footage
+    private static final int PYRAMID_LEVELS = 0;
+    private static final int PYRAMID_DILATION_RADIUS = 2;
+    
+    // Process only the part of the frame where edges were recently found; off by default
+    private static final boolean AUTO_ROI = false;
     
     // UI components
     private CameraGLSurfaceView glSurfaceView;
@@ -36,17 +96,53 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
     
     // Core components
     private CameraManager cameraManager;
-    private NativeLib nativeLib;
+    private SessionManager sessionManager;
+    private volatile NativeLib nativeLib;
     private Handler mainHandler;
     private FPSCounter fpsCounter;
+    private PerformanceMonitor performanceMonitor;
+    private FrameScheduler<Frame> frameScheduler;
+    private final IdleController idleController = new IdleController();
+    private final NativeStats nativeStats = new NativeStats();
+    // Regions of the last processed frame; frame scheduler thread only
+    private final int[] processedRegions = new int[NativeLib.MAX_ROI_REGIONS * 4];
+    private final FlightRecorder flightRecorder =
+        new FlightRecorder(FLIGHT_RECORDER_BUDGET_BYTES, FLIGHT_RECORDER_WINDOW_MS);
+    // Trace and latency files are written here, off the main thread
+    private final ExecutorService traceWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TraceWriter");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private boolean traceWritePending = false;   // Main thread only
+    private FrameStreamServer streamServer;
+    private final Object streamLock = new Object();
+    private final FrameEmitter<FrameData> edgeResults = new FrameEmitter<>();
+    private byte[] encodedFrameBuffer;
+    
+    // Startup: independent tasks run in parallel and join on explicit dependencies
+    private StartupMetrics startupMetrics;
+    private ExecutorService startupExecutor;
+    private CompletableFuture<NativeLib> nativeReady;
+    private volatile boolean processorReady = false;
+    
+    // Thermal throttling: level changes set the analysis downscale, OpenCV
+    // threads and this minimum gap between processed frames
+    private ThermalPolicy thermalPolicy;
+    private volatile long minFrameIntervalNs = 0;
+    private long lastSubmittedNs = Long.MIN_VALUE / 2;   // Camera thread only
     
     // Processing state
     private boolean isProcessingEnabled = false;
+    private volatile boolean useGpuEdges = false;
     private double lastProcessingTime = 0.0;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startupMetrics = new StartupMetrics(NanoClock.ELAPSED_REALTIME,
+            Process.getStartElapsedRealtime() * 1_000_000L);
+        startupMetrics.mark(StartupMetrics.ACTIVITY_CREATED);
         setContentView(R.layout.activity_main);
         
         Log.d(TAG, "MainActivity created");
@@ -74,26 +170,130 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
         // Set up toggle button
         toggleButton.setOnClickListener(v -> toggleProcessingMode());
         
+        // Long-press switches edge detection between the CPU (OpenCV) and GPU shader paths
+        toggleButton.setOnLongClickListener(v -> {
+            toggleGpuEdgeMode();
+            return true;
+        });
+        
+        // Long-press the FPS counter to start/stop a pipeline trace capture
+        fpsCounterText.setOnLongClickListener(v -> {
+            toggleTracing();
+            return true;
+        });
+        
+        // Long-press the status line to save the last seconds of frames
+        statusText.setOnLongClickListener(v -> {
+            spillFlightRecording();
+            return true;
+        });
+        
         Log.d(TAG, "UI components initialized");
     }
     
     private void initializeComponents() {
         mainHandler = new Handler(Looper.getMainLooper());
+        startupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS, r -> new Thread(r, "Startup"));
+        startupMetrics.setListener(this::onStartupComplete);
         
-        // Initialize native library
-        nativeLib = new NativeLib();
-        
-        // Test JNI connection
-        String jniTest = nativeLib.stringFromJNI();
-        Log.d(TAG, "JNI test: " + jniTest);
+        // Loading the library pulls in OpenCV; nothing else needs it until the processor is set up
+        nativeReady = CompletableFuture.supplyAsync(this::loadNativeLibrary, startupExecutor);
         
         // Initialize FPS counter
         fpsCounter = new FPSCounter(30);
         fpsCounter.setCallback(this::onFPSUpdate);
+        performanceMonitor = new PerformanceMonitor();
+        thermalPolicy = new ThermalPolicy(new AndroidThermalProvider(this), performanceMonitor);
+        thermalPolicy.setListener((level, settings, reason) -> {
+            applyThrottleSettings(settings);
+            updateStatus("Throttle level " + level + ": " + settings);
+        });
+        
+        // Start frame streaming server for web viewers
+        streamServer = STREAM_TO_LAN
+            ? new FrameStreamServer(null, FrameStreamServer.DEFAULT_PORT)
+            : new FrameStreamServer();
+        startupExecutor.execute(() -> {
+            try {
+                streamServer.start();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start frame stream server", e);
+            }
+        });
+        
+        // Viewers get every edge map and stats sampled from the same stream
+        edgeResults.subscribe(result -> streamEdgeFrame(result.data, result.width, result.height, result.timestampNs));
+        edgeResults.sample(STATS_PUBLISH_PERIOD_NS, FrameData::getTimestampNs)
+            .subscribe(result -> streamServer.publishStats(performanceMonitor, result.timestampNs));
         
         // Initialize camera manager
         cameraManager = new CameraManager(this);
-        cameraManager.setFrameProcessingCallback(this);
+        cameraManager.setErrorListener(this);
+        cameraManager.addFrameSubscriber(this);
+        cameraManager.setStartupMetrics(startupMetrics);
+        
+        // Pause keeps the camera configuration, frame pool and native buffers for a warm resume
+        sessionManager = new SessionManager(cameraManager);
+        sessionManager.addParticipant(new SessionManager.Participant() {
+            @Override
+            public void onSessionPaused() {
+                // Finishes the in-flight frame, so native buffers are idle while paused
+                frameScheduler.stop();
+            }
+            
+            @Override
+            public void onSessionResumed() {
+                frameScheduler.start();
+            }
+            
+            @Override
+            public void onTrimMemory(int level) {
+                NativeLib lib = nativeLib;
+                if (lib != null) {
+                    lib.releaseWorkingMemory();
+                }
+                flightRecorder.reset();
+            }
+        });
+        
+        // Share one latency tracker across capture, processing and display
+        FrameLatencyTracker latencyTracker = performanceMonitor.getLatencyTracker();
+        cameraManager.setLatencyTracker(latencyTracker);
+        glSurfaceView.getFrameRenderer().setLatencyTracker(latencyTracker);
+        
+        // GL setup runs on the GL thread; the camera starts its session once the texture exists
+        glSurfaceView.getFrameRenderer().setStartupMetrics(startupMetrics);
+        // Called again with a new texture if the GL context was lost while paused
+        glSurfaceView.getFrameRenderer().setSurfaceTextureListener(texture -> {
+            startupMetrics.mark(StartupMetrics.GL_READY);
+            cameraManager.setSurfaceTexture(texture);
+        });
+        
+        // Process the newest frame on one worker; frames past their deadline are skipped
+        frameScheduler = new FrameScheduler<>(latencyTracker::now, this::processFrame);
+        float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        frameScheduler.setRefreshRate(refreshRate);
+        glSurfaceView.getRenderScheduler().setRefreshRate(refreshRate);
+        frameScheduler.setDropListener((timestamp, reason) -> latencyTracker.abandon(timestamp));
+        frameScheduler.start();
+        flightRecorder.setCompression(FLIGHT_RECORDER_COMPRESSION);
+        
+        // Static scenes drop to a low processing rate and a lower AE fps range
+        idleController.setStaticTimeoutMs(IDLE_STATIC_TIMEOUT_MS);
+        idleController.setIdleIntervalMs(IDLE_PROCESS_INTERVAL_MS);
+        idleController.setListener(new IdleController.Listener() {
+            @Override
+            public void onIdleEntered(long timestampNs, long staticNs) {
+                cameraManager.setIdleCapture(true);
+                updateStatus("Idle - scene static");
+            }
+            
+            @Override
+            public void onIdleExited(long timestampNs, long idleNs, float motionScore) {
+                cameraManager.setIdleCapture(false);
+                updateStatus(getString(isProcessingEnabled ? R.string.status_processing : R.string.status_ready));
+            }
+        });
         
         Log.d(TAG, "Core components initialized");
     }
@@ -109,44 +309,116 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
             CAMERA_PERMISSION_REQUEST_CODE);
     }
     
+    /**
+     * Keep native processing on the fastest cluster at display priority, so
+     * big.LITTLE scheduling does not park frames on efficiency cores
+     */
+    private void configureProcessingThreads(NativeLib lib) {
+        int count = lib.getCpuClusters(null);
+        if (count <= 1) {
+            Log.i(TAG, "Single CPU cluster, leaving processing thread affinity alone");
+            lib.setProcessingThreadConfig(0, PROCESSING_THREAD_NICE);
+            return;
+        }
+        long[] clusters = new long[count * 2];
+        lib.getCpuClusters(clusters);
+        int fastest = count - 1;
+        long mask = clusters[fastest * 2];
+        Log.i(TAG, "Pinning processing to cluster " + fastest + ": mask 0x" + Long.toHexString(mask)
+            + ", max " + clusters[fastest * 2 + 1] / 1000 + " MHz");
+        lib.setProcessingThreadConfig(mask, PROCESSING_THREAD_NICE);
+    }
+    
+    /**
+     * Load the native library and warm OpenCV up; runs on a startup thread
+     */
+    private NativeLib loadNativeLibrary() {
+        NativeLib lib = new NativeLib();
+        startupMetrics.mark(StartupMetrics.NATIVE_LOADED);
+        lib.warmUp();
+        startupMetrics.mark(StartupMetrics.OPENCV_WARM);
+        configureProcessingThreads(lib);
+        nativeLib = lib;
+        return lib;
+    }
+    
+    /**
+     * Open the camera as soon as permission is granted. It runs alongside the
+     * native load and GL setup; the processor is set up once both the library
+     * and the preview size are available.
+     */
     private void setupCamera() {
         updateStatus("Initializing camera...");
         
-        // Get surface texture from OpenGL renderer
-        glSurfaceView.queueEvent(() -> {
-            SurfaceTexture surfaceTexture = glSurfaceView.getSurfaceTexture();
-            if (surfaceTexture != null) {
-                cameraManager.setSurfaceTexture(surfaceTexture);
-                
-                // Open camera on background thread
-                new Thread(() -> {
-                    if (cameraManager.openCamera()) {
-                        mainHandler.post(() -> {
-                            Size previewSize = cameraManager.getPreviewSize();
-                            if (previewSize != null) {
-                                // Initialize native processor with preview size
-                                boolean initialized = nativeLib.initializeProcessor(
-                                    previewSize.getWidth(), previewSize.getHeight());
-                                    
-                                if (initialized) {
-                                    updateStatus("Camera ready - " + previewSize.getWidth() + "x" + previewSize.getHeight());
-                                    Log.d(TAG, "Camera and processor initialized successfully");
-                                } else {
-                                    updateStatus("Failed to initialize processor");
-                                    Log.e(TAG, "Failed to initialize native processor");
-                                }
-                            }
-                        });
-                    } else {
-                        mainHandler.post(() -> {
-                            updateStatus("Failed to open camera");
-                            Log.e(TAG, "Failed to open camera");
-                        });
-                    }
-                }).start();
-            } else {
-                Log.e(TAG, "Surface texture not available");
-                updateStatus("OpenGL initialization failed");
+        CompletableFuture<Size> cameraOpened = CompletableFuture.supplyAsync(() -> {
+            if (!sessionManager.start() || cameraManager.getPreviewSize() == null) {
+                throw new CompletionException(new IllegalStateException("Failed to open camera"));
+            }
+            return cameraManager.getPreviewSize();
+        }, startupExecutor);
+        
+        cameraOpened.thenAccept(size -> glSurfaceView.setGpuEdgeSize(size.getWidth(), size.getHeight()));
+        
+        nativeReady.thenCombineAsync(cameraOpened, this::initializeProcessor, startupExecutor)
+            .whenComplete((previewSize, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                    updateStatus(cause.getMessage());
+                    Log.e(TAG, "Startup failed", cause);
+                    return;
+                }
+                updateStatus("Camera ready - " + previewSize.getWidth() + "x" + previewSize.getHeight());
+                Log.d(TAG, "Camera and processor initialized successfully");
+            });
+    }
+    
+    /**
+     * Calibrate the backend and size the native processor for the preview; runs on a startup thread
+     */
+    private Size initializeProcessor(NativeLib lib, Size previewSize) {
+        // Pick Mat or UMat (OpenCL) from a short calibration run before processing starts
+        int backend = lib.calibrateProcessingBackend(previewSize.getWidth(), previewSize.getHeight());
+        Log.i(TAG, "Processing backend: " + (backend == NativeLib.BACKEND_UMAT ? "UMat (OpenCL)" : "Mat"));
+        
+        // Buffers for the largest preview size: smaller or changed sizes then need no reallocation
+        int maxWidth = Math.max(previewSize.getWidth(), CameraManager.MAX_PREVIEW_WIDTH);
+        int maxHeight = Math.max(previewSize.getHeight(), CameraManager.MAX_PREVIEW_HEIGHT);
+        lib.setThresholdMode(CANNY_THRESHOLD_MODE);
+        lib.setPyramidMode(PYRAMID_LEVELS, PYRAMID_DILATION_RADIUS);
+        lib.setAutoRoi(AUTO_ROI, NativeLib.AUTO_ROI_FULL_FRAME_INTERVAL);
+        if (!lib.initializeProcessor(maxWidth, maxHeight)) {
+            throw new CompletionException(new IllegalStateException("Failed to initialize processor"));
+        }
+        processorReady = true;
+        startupMetrics.mark(StartupMetrics.PROCESSOR_READY);
+        return previewSize;
+    }
+    
+    /**
+     * Both first frames are out: log the cold-start timeline and append it to
+     * startup_metrics.csv so launches can be compared across builds
+     */
+    private void onStartupComplete(StartupMetrics metrics) {
+        Log.i(TAG, metrics.toString());
+        long wallClockMs = System.currentTimeMillis();
+        if (startupExecutor.isShutdown()) {
+            return;
+        }
+        startupExecutor.execute(() -> {
+            File dir = getExternalFilesDir(null);
+            if (dir == null) {
+                dir = getFilesDir();
+            }
+            File csvFile = new File(dir, "startup_metrics.csv");
+            boolean writeHeader = !csvFile.exists();
+            try (Writer writer = new FileWriter(csvFile, true)) {
+                if (writeHeader) {
+                    StartupMetrics.writeCsvHeader(writer);
+                }
+                metrics.writeCsvRow(writer, wallClockMs);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write startup metrics", e);
             }
         });
     }
@@ -155,12 +427,11 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
         isProcessingEnabled = !isProcessingEnabled;
         
         // Update UI
-        String buttonText = isProcessingEnabled ? 
-            getString(R.string.processing_edge) : getString(R.string.processing_raw);
-        toggleButton.setText(buttonText);
+        updateToggleButton();
         
         // Update OpenGL renderer
         glSurfaceView.toggleProcessingMode(isProcessingEnabled);
+        glSurfaceView.setGpuEdgeMode(isProcessingEnabled && useGpuEdges);
         
         // Update status
         String statusMsg = isProcessingEnabled ? 
@@ -170,34 +441,142 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
         Log.d(TAG, "Processing mode toggled: " + (isProcessingEnabled ? "ON" : "OFF"));
     }
     
+    /**
+     * Switch edge detection between the OpenCV path and the GPU shader pipeline
+     */
+    private void toggleGpuEdgeMode() {
+        if (!glSurfaceView.getFrameRenderer().isGpuEdgeModeAvailable()) {
+            return;
+        }
+        useGpuEdges = !useGpuEdges;
+        glSurfaceView.setGpuEdgeMode(isProcessingEnabled && useGpuEdges);
+        updateToggleButton();
+        Log.d(TAG, "Edge path: " + (useGpuEdges ? "GPU shaders" : "OpenCV"));
+    }
+    
+    private void updateToggleButton() {
+        if (!isProcessingEnabled) {
+            toggleButton.setText(getString(R.string.processing_raw));
+        } else {
+            toggleButton.setText(getString(useGpuEdges ? R.string.processing_gpu_edge : R.string.processing_edge));
+        }
+    }
+    
     @Override
-    public void onFrameAvailable(byte[] frameData, int width, int height, long timestamp) {
-        // Process frame if processing is enabled
-        if (isProcessingEnabled && frameData != null) {
-            // Process frame in background thread to avoid blocking camera
-            new Thread(() -> {
-                try {
-                    // Convert YUV to RGB first (simplified - in real implementation, 
-                    // you'd handle the actual YUV420 format properly)
-                    byte[] processedData = nativeLib.processFrameCanny(frameData, width, height);
-                    
-                    if (processedData != null) {
-                        // Update OpenGL renderer with processed frame
-                        glSurfaceView.updateProcessedFrame(processedData, width, height);
-                        
-                        // Update FPS counter
-                        updateFpsCounter(timestamp);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing frame", e);
-                }
-            }).start();
+    public void onFrame(Frame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        long timestamp = frame.getTimestampNs();
+        
+        // Score motion on every frame so idle mode is left on the first frame that moves.
+        // Reads the luma plane in place; no copy.
+        boolean process = true;
+        NativeLib lib = nativeLib;
+        if (lib != null) {
+            Frame.Plane luma = frame.getPlane(0);
+            float motion = lib.detectMotionDirect(frame.getBuffer(), luma.getOffset(),
+                width, height, luma.getRowStride());
+            process = idleController.onFrame(motion, timestamp);
+        }
+        
+        // Hand the frame to the scheduler; it replaces any frame still waiting.
+        // The GPU edge path works on the camera texture and needs no CPU frames.
+        // Until the first edge map exists one frame goes through regardless, so
+        // time-to-first-edge is measured and the native path is warm.
+        boolean wantEdges = isProcessingEnabled && !useGpuEdges;
+        // Thermal throttling caps the processing rate.
+        if (process && processorReady && timestamp - lastSubmittedNs >= minFrameIntervalNs
+                && (wantEdges || !startupMetrics.isMarked(StartupMetrics.FIRST_EDGE_FRAME))) {
+            // The scheduler holds the frame past this call and releases it when done
+            frameScheduler.submit(frame.retain(), width, height, timestamp);
+            lastSubmittedNs = timestamp;
         }
         
         // Always record frame for FPS calculation
         fpsCounter.recordFrame(lastProcessingTime);
     }
     
+    /**
+     * Run edge detection on the luma plane of one frame, in place, on the scheduler's worker thread
+     */
+    private boolean processFrame(Frame frame, int width, int height, long timestamp) {
+        Tracer.begin("MainActivity.processFrame");
+        Tracer.flowStep("frame", timestamp);
+        try {
+            FrameLatencyTracker latency = performanceMonitor.getLatencyTracker();
+            latency.mark(timestamp, FrameLatencyTracker.STAGE_PROCESS_START);
+            Frame.Plane luma = frame.getPlane(0);
+            byte[] processedData = nativeLib.processFrameCannyDirect(frame.getBuffer(), luma.getOffset(),
+                width, height, luma.getRowStride());
+            latency.mark(timestamp, FrameLatencyTracker.STAGE_PROCESS_END);
+            int regionCount = nativeLib.getProcessedRegions(processedRegions);
+            synchronized (nativeStats) {
+                nativeLib.getStatsSnapshot(nativeStats.values);
+                lastProcessingTime = nativeStats.getLastTotalMs();
+                performanceMonitor.recordCannyThresholds(nativeStats.getThresholdLow(),
+                    nativeStats.getThresholdHigh());
+            }
+            performanceMonitor.recordFrameProcessing(lastProcessingTime, processedData != null);
+            
+            if (processedData == null) {
+                latency.abandon(timestamp);
+                return false;
+            }
+            startupMetrics.mark(StartupMetrics.FIRST_EDGE_FRAME);
+            
+            // Keep the last few seconds for a spill when something looks wrong
+            flightRecorder.record(frame.getBuffer(), luma.getOffset(), luma.getRowStride(), processedData,
+                width, height, timestamp);
+            
+            // The startup frame is not shown unless edge display is on
+            if (!isProcessingEnabled || useGpuEdges) {
+                latency.abandon(timestamp);
+                return true;
+            }
+            
+            // Update OpenGL renderer with processed frame; with auto-ROI only its region is drawn
+            glSurfaceView.updateProcessedFrame(processedData, width, height, timestamp,
+                processedRegions, regionCount);
+            
+            // Push to stream subscribers (web viewers)
+            if (edgeResults.hasDemand()) {
+                edgeResults.emit(new FrameData(processedData, width, height, timestamp));
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing frame", e);
+            return false;
+        } finally {
+            Tracer.end();
+        }
+    }
+    
+    /**
+     * Delta-encode an edge map and push it to connected web viewers
+     */
+    private void streamEdgeFrame(byte[] edges, int width, int height, long timestamp) {
+        if (!streamServer.hasClients()) {
+            return;
+        }
+        
+        // Encode and publish under one lock so viewers receive frames in codec order
+        synchronized (streamLock) {
+            int capacity = EdgeFrameDecoder.maxEncodedSize(width, height);
+            if (encodedFrameBuffer == null || encodedFrameBuffer.length < capacity) {
+                encodedFrameBuffer = new byte[capacity];
+            }
+            
+            int length = nativeLib.encodeEdgeFrame(edges, width, height, encodedFrameBuffer);
+            if (length > 0) {
+                streamServer.publishEncodedEdgeFrame(encodedFrameBuffer, length, width, height, timestamp);
+            } else {
+                // Fall back to plain bit-packing and restart the delta chain
+                streamServer.publishEdgeFrame(edges, width, height, timestamp);
+                nativeLib.requestEdgeKeyframe();
+            }
+        }
+    }
+    
     @Override
     public void onError(String error) {
         mainHandler.post(() -> {
@@ -213,14 +592,149 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
     private void onFPSUpdate(double fps, long frameCount, double avgProcessingTime) {
         String fpsText = String.format("FPS: %.1f", fps);
         fpsCounterText.setText(fpsText);
+        performanceMonitor.updateFPS(fps);
+        
+        // Rate-limited to one provider read per second inside the policy
+        if (nativeLib != null) {
+            thermalPolicy.evaluate(System.nanoTime());
+        }
         
         // Log performance statistics periodically
         if (frameCount % 100 == 0) {
             FPSCounter.PerformanceStats stats = fpsCounter.getStats();
             Log.i(TAG, "Performance: " + stats.toString());
+            synchronized (nativeStats) {
+                Log.i(TAG, nativeStats.toString());
+            }
+            Log.i(TAG, frameScheduler.getStats().toString());
+            Log.i(TAG, glSurfaceView.getRenderScheduler().getStats().toString());
+            Log.i(TAG, idleController.getStats().toString());
+            Log.i(TAG, cameraManager.getFramePool().toString());
+            Log.i(TAG, flightRecorder.toString());
+            Log.i(TAG, thermalPolicy.toString());
+            Log.i(TAG, sessionManager.toString());
+        }
+    }
+    
+    /**
+     * Start recording a trace, or stop and write it as Chrome Trace JSON
+     * (open in ui.perfetto.dev or chrome://tracing)
+     */
+    private void toggleTracing() {
+        if (nativeLib == null) {
+            return;
+        }
+        if (!Tracer.isEnabled()) {
+            if (traceWritePending) {
+                // Clearing now would change the buffers under the writer
+                Toast.makeText(this, "Still saving the last trace", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            double disabledNs = Tracer.measureSpanOverheadNs(100000);
+            Tracer.clear();
+            int mode = Tracer.MODE_RECORD | Tracer.MODE_SYSTEM_TRACE;
+            Tracer.setMode(mode);
+            nativeLib.setNativeTraceMode(mode);
+            Log.i(TAG, String.format("Tracing started (disabled span overhead %.1fns)", disabledNs));
+            Toast.makeText(this, "Tracing started", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        Tracer.setMode(0);
+        nativeLib.setNativeTraceMode(0);
+        
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        File traceFile = new File(dir, "edge_trace.json");
+        String nativeEvents = nativeLib.getNativeTraceEvents();
+        traceWritePending = true;
+        traceWriter.execute(() -> {
+            boolean written = false;
+            try (Writer writer = new FileWriter(traceFile)) {
+                Tracer.writeChromeTrace(writer, nativeEvents);
+                written = true;
+                Log.i(TAG, "Trace written to " + traceFile.getAbsolutePath());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write trace", e);
+            }
+            boolean saved = written;
+            mainHandler.post(() -> {
+                traceWritePending = false;
+                Toast.makeText(MainActivity.this, saved ? "Trace saved: " + traceFile.getName()
+                    : "Trace not saved", Toast.LENGTH_SHORT).show();
+            });
+        });
+    }
+    
+    /**
+     * Apply the knobs of a thermal throttle level; called on the main thread
+     */
+    private void applyThrottleSettings(ThermalPolicy.Settings settings) {
+        minFrameIntervalNs = settings.minFrameIntervalNs;
+        NativeLib lib = nativeLib;
+        if (lib != null) {
+            lib.setAnalysisDivisor(settings.analysisDivisor);
+            lib.setOpenCvThreads(settings.workerThreads);
         }
     }
     
+    /**
+     * Write the flight recorder's window to app-specific storage in the background
+     * (pull with: adb pull /sdcard/Android/data/<package>/files/flight_<time>.edfr)
+     */
+    private void spillFlightRecording() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        File file = new File(dir, "flight_" + System.currentTimeMillis() + ".edfr");
+        boolean started = flightRecorder.spill(file, new FlightRecorder.SpillListener() {
+            @Override
+            public void onSpillComplete(File spilled, int frames, long bytes, long elapsedNs) {
+                mainHandler.post(() -> Toast.makeText(MainActivity.this,
+                    "Saved " + frames + " frames: " + spilled.getName(), Toast.LENGTH_SHORT).show());
+            }
+            
+            @Override
+            public void onSpillFailed(File spilled, String error) {
+                mainHandler.post(() -> Toast.makeText(MainActivity.this,
+                    "Recording not saved: " + error, Toast.LENGTH_SHORT).show());
+            }
+        });
+        if (!started) {
+            Toast.makeText(this, "Nothing to save yet", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    /**
+     * Write recent per-frame latency stages to app-specific storage in the background
+     * (pull with: adb pull /sdcard/Android/data/<package>/files/latency_trace.csv)
+     */
+    private void exportLatencyTrace() {
+        if (performanceMonitor == null
+                || performanceMonitor.getLatencyTracker().getCompletedFrameCount() == 0) {
+            return;
+        }
+        
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        File traceFile = new File(dir, "latency_trace.csv");
+        PerformanceMonitor monitor = performanceMonitor;
+        traceWriter.execute(() -> {
+            try (Writer writer = new FileWriter(traceFile)) {
+                monitor.exportLatencyTrace(writer);
+                Log.i(TAG, "Latency trace written to " + traceFile.getAbsolutePath()
+                    + " - " + monitor.getLatencyStats());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write latency trace", e);
+            }
+        });
+    }
+    
     private void updateStatus(String status) {
         mainHandler.post(() -> {
             statusText.setText(status);
@@ -252,25 +766,58 @@ public class MainActivity extends AppCompatActivity implements CameraManager.Fra
         if (glSurfaceView != null) {
             glSurfaceView.onResume();
         }
+        if (sessionManager != null) {
+            sessionManager.resume();
+        }
         Log.d(TAG, "Activity resumed");
     }
     
     @Override
     protected void onPause() {
+        if (sessionManager != null) {
+            sessionManager.pause();
+        }
         if (glSurfaceView != null) {
             glSurfaceView.onPause();
         }
+        exportLatencyTrace();
         super.onPause();
         Log.d(TAG, "Activity paused");
     }
     
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (sessionManager != null) {
+            sessionManager.onTrimMemory(level);
+        }
+    }
+    
     @Override
     protected void onDestroy() {
+        // Disconnect web viewers
+        if (streamServer != null) {
+            streamServer.stop();
+        }
+        
         // Cleanup camera
-        if (cameraManager != null) {
-            cameraManager.closeCamera();
+        if (sessionManager != null) {
+            sessionManager.stop();
         }
         
+        // Finish the in-flight frame before native resources go away
+        if (frameScheduler != null) {
+            frameScheduler.stop();
+        }
+        
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
+        }
+        
+        // Lets a spill or trace write in progress finish writing its file
+        flightRecorder.shutdown();
+        traceWriter.shutdown();
+        
         // Cleanup native resources
         if (nativeLib != null) {
             nativeLib.cleanup();
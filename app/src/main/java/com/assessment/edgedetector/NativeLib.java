@@ -2,14 +2,46 @@ package com.assessment.edgedetector;
 
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+
 /**
  * Native library wrapper for OpenCV processing
  */
 public class NativeLib {
 
-    // Load the native library
-    static {
-        System.loadLibrary("edgedetector");
+    // Processing backends (see ProcessingBackend in frame_processor.h)
+    public static final int BACKEND_MAT = 0;
+    public static final int BACKEND_UMAT = 1;
+
+    // Canny threshold modes (see ThresholdMode in auto_threshold.h)
+    public static final int THRESHOLD_FIXED = 0;
+    public static final int THRESHOLD_MEDIAN = 1;
+    public static final int THRESHOLD_OTSU = 2;
+
+    // Most regions of interest per frame (ROI_MAX_REGIONS in frame_processor.h)
+    public static final int MAX_ROI_REGIONS = 8;
+
+    // Default frames between whole-frame passes in auto-ROI mode
+    public static final int AUTO_ROI_FULL_FRAME_INTERVAL = 30;
+
+    // Nice value that leaves processing threads at their own priority (THREAD_NICE_DEFAULT)
+    public static final int NICE_DEFAULT = Integer.MIN_VALUE;
+
+    private static boolean loaded = false;
+
+    /**
+     * Load libedgedetector, which pulls in OpenCV. Slow on a cold start, so call
+     * it off the main thread; constructing a NativeLib loads it if needed.
+     */
+    public static synchronized void load() {
+        if (!loaded) {
+            System.loadLibrary("edgedetector");
+            loaded = true;
+        }
+    }
+
+    public NativeLib() {
+        load();
     }
 
     /**
@@ -18,13 +50,63 @@ public class NativeLib {
     public native String stringFromJNI();
 
     /**
-     * Initialize the native frame processor
-     * @param width Frame width
-     * @param height Frame height
+     * Run a small colour conversion, blur and Canny pass so OpenCV's code, thread
+     * pool and allocator are warm before the first camera frame arrives
+     * @return Time taken in nanoseconds
+     */
+    public native long warmUp();
+
+    /**
+     * Initialize the native frame processor for frames up to width x height.
+     * Smaller frames are processed in views of the same buffers, so the frame
+     * size passed to processFrameCanny may change per call without allocating.
+     * An existing processor that already fits is kept along with its settings.
+     * @param width Maximum frame width
+     * @param height Maximum frame height
      * @return true if initialization successful
      */
     public native boolean initializeProcessor(int width, int height);
 
+    /**
+     * Time the Mat and UMat (OpenCL) backends on a synthetic frame and prefer the faster.
+     * Runs on a private processor, so it is safe while frames are being processed;
+     * the result applies from the next initializeProcessor call.
+     * @param width Frame width
+     * @param height Frame height
+     * @return The preferred backend, BACKEND_MAT when no OpenCL runtime is available
+     */
+    public native int calibrateProcessingBackend(int width, int height);
+
+    /**
+     * Set the backend used from the next initializeProcessor call
+     * @param backend BACKEND_MAT or BACKEND_UMAT (falls back to Mat without OpenCL)
+     */
+    public native void setPreferredBackend(int backend);
+
+    /**
+     * Get the backend the processor is currently using
+     * @return BACKEND_MAT or BACKEND_UMAT
+     */
+    public native int getProcessingBackend();
+
+    /**
+     * Get the CPU clusters detected from /sys/devices/system/cpu frequency data,
+     * ordered from the slowest (efficiency) cluster to the fastest
+     * @param out Receives (cpu mask, max frequency in kHz) pairs, may be null
+     * @return Number of clusters (may exceed out.length / 2)
+     */
+    public native int getCpuClusters(long[] out);
+
+    /**
+     * Pin and prioritise the native processing threads: the worker pool and any
+     * thread that calls the process methods. Each thread applies the config
+     * before its next frame.
+     * @param cpuMask CPUs to run on (bit n = CPU n), 0 for all CPUs
+     * @param nice Nice value from -20 to 19, or NICE_DEFAULT to keep the thread's own
+     * @return false if the mask matches no CPU or the nice value is out of range
+     */
+    public native boolean setProcessingThreadConfig(long cpuMask, int nice);
+
     /**
      * Process frame data with Canny edge detection
      * @param inputData Input frame data (RGB format)
@@ -34,6 +116,35 @@ public class NativeLib {
      */
     public native byte[] processFrameCanny(byte[] inputData, int width, int height);
 
+    /**
+     * processFrameCanny on the luma plane of a direct buffer, read in place
+     * (e.g. a shared camera Frame)
+     * @param frameBuffer Direct buffer holding the luma plane
+     * @param offset Byte offset of the luma plane in the buffer
+     * @return Processed frame data (grayscale, width * height), or null on failure
+     */
+    public native byte[] processFrameCannyDirect(ByteBuffer frameBuffer, int offset, int width, int height,
+                                                 int rowStride);
+
+    /**
+     * Canny edge detection inside regions of interest only
+     * @param inputData Input frame data (RGB format)
+     * @param regions x, y, width, height per rectangle in frame pixels; clipped to the
+     *                frame, at most MAX_ROI_REGIONS are used
+     * @param regionCount Rectangles in regions; 0 behaves like processFrameCanny
+     * @return Edge map of the whole frame, zero outside the regions
+     */
+    public native byte[] processFrameCannyRoi(byte[] inputData, int width, int height,
+                                              int[] regions, int regionCount);
+
+    /**
+     * Regions the last frame was processed in, as x, y, width, height; a whole-frame
+     * run reports one region covering the frame
+     * @param out Room for up to MAX_ROI_REGIONS * 4 ints
+     * @return Number of regions written
+     */
+    public native int getProcessedRegions(int[] out);
+
     /**
      * Process frame data with grayscale conversion
      * @param inputData Input frame data (RGB format)
@@ -50,9 +161,89 @@ public class NativeLib {
      */
     public native void processBitmapCanny(Bitmap inputBitmap, Bitmap outputBitmap);
 
+    /**
+     * Process a batch of same-sized frames with Canny edge detection in one JNI call.
+     * Frames are processed in parallel on a native worker pool and written straight
+     * into the output buffer, frame i at offset i * width * height.
+     * @param input Direct buffer holding all input frames
+     * @param inputOffsets Byte offset of each frame in the input buffer
+     * @param frameCount Number of frames in the batch
+     * @param width Frame width
+     * @param height Frame height
+     * @param channels Bytes per pixel of the input (1, 3 or 4)
+     * @param output Direct buffer of at least frameCount * width * height bytes
+     * @param frameStatus Optional per-frame result (0 = processed, -1 = failed), may be null
+     * @return Number of frames processed, or -1 if the batch was rejected
+     */
+    public native int processBatchCanny(ByteBuffer input, int[] inputOffsets, int frameCount,
+                                        int width, int height, int channels,
+                                        ByteBuffer output, int[] frameStatus);
+
+    /**
+     * Score scene change against the previous frame on a heavily downscaled luma grid
+     * @param frameData Frame whose first plane is 8-bit luma (Y of YUV_420_888)
+     * @param width Frame width
+     * @param height Frame height
+     * @param rowStride Bytes per luma row
+     * @return Fraction of grid cells that changed, 0 to 1 (1 for the first frame)
+     */
+    public native float detectMotion(byte[] frameData, int width, int height, int rowStride);
+
+    /**
+     * detectMotion on a direct buffer, read in place (e.g. a shared camera Frame)
+     * @param frameBuffer Direct buffer holding the luma plane
+     * @param offset Byte offset of the luma plane in the buffer
+     * @return Fraction of grid cells that changed, 0 to 1 (1 for the first frame)
+     */
+    public native float detectMotionDirect(ByteBuffer frameBuffer, int offset, int width, int height, int rowStride);
+
+    /**
+     * Minimum per-cell luma change (0-255, after exposure compensation) that counts as motion
+     */
+    public native void setMotionCellThreshold(int threshold);
+
+    /**
+     * Drop the motion reference frame; the next frame scores as full motion
+     */
+    public native void resetMotionDetector();
+
+    /**
+     * Run edge detection on the frame downscaled by this factor; edge maps keep
+     * the input size. 1 restores full resolution.
+     */
+    public native void setAnalysisDivisor(int divisor);
+
+    /**
+     * Choose Canny thresholds per frame from a subsampled, temporally smoothed
+     * luma histogram (THRESHOLD_MEDIAN or THRESHOLD_OTSU), or use the fixed
+     * 50/150 (THRESHOLD_FIXED). The thresholds in use are in the stats snapshot.
+     */
+    public native void setThresholdMode(int mode);
+
+    /**
+     * Coarse-to-fine Canny: detect at 1/2^levels of the frame, dilate those
+     * edges by dilationRadius coarse pixels and run full-resolution Canny only
+     * where they reach. Trades a little recall on faint isolated edges for less
+     * work on frames with few edges. levels = 0 (the default) turns it off.
+     */
+    public native void setPyramidMode(int levels, int dilationRadius);
+
+    /**
+     * Process only a region that follows where edges were found in recent frames.
+     * The whole frame is processed every fullFrameInterval frames and whenever
+     * the scene has too few edges to track. Explicit regions passed to
+     * processFrameCannyRoi take precedence.
+     */
+    public native void setAutoRoi(boolean enabled, int fullFrameInterval);
+
+    /**
+     * Threads OpenCV may use inside one frame; 0 restores the default
+     */
+    public native void setOpenCvThreads(int threads);
+
     /**
      * Get the processing time of the last frame
-     * @return Processing time in milliseconds
+     * @return Processing time in milliseconds (sub-millisecond resolution)
      */
     public native double getLastProcessingTime();
 
@@ -62,6 +253,58 @@ public class NativeLib {
      */
     public native int getProcessedFrameCount();
 
+    /**
+     * Fill a caller-owned array with the native stats snapshot (see NativeStats for the layout)
+     * @param out At least NativeStats.SNAPSHOT_SIZE longs
+     * @return Number of values written, or 0 if the array is too small
+     */
+    public native int getStatsSnapshot(long[] out);
+
+    /**
+     * Fill a direct buffer with the native stats snapshot as native-order int64 values
+     * @param out Direct buffer of at least NativeStats.SNAPSHOT_SIZE * 8 bytes
+     * @return Number of values written, or 0 if the buffer is unusable
+     */
+    public native int getStatsSnapshotDirect(ByteBuffer out);
+
+    /**
+     * Encode an edge map with the temporal delta + run-length codec
+     * @param edgeData Edge map (width*height bytes, non-zero = edge)
+     * @param width Frame width
+     * @param height Frame height
+     * @param output Destination, at least EdgeFrameDecoder.maxEncodedSize(width, height) bytes
+     * @return Number of bytes written, or -1 on failure
+     */
+    public native int encodeEdgeFrame(byte[] edgeData, int width, int height, byte[] output);
+
+    /**
+     * Make the next encoded edge frame a keyframe
+     */
+    public native void requestEdgeKeyframe();
+
+    /**
+     * Set the maximum number of frames between edge codec keyframes
+     */
+    public native void setEdgeKeyframeInterval(int interval);
+
+    /**
+     * Set the native tracer mode (Tracer.MODE_RECORD | Tracer.MODE_SYSTEM_TRACE, 0 disables)
+     */
+    public native void setNativeTraceMode(int mode);
+
+    /**
+     * Get recorded native trace events as comma-separated Chrome Trace JSON objects
+     */
+    public native String getNativeTraceEvents();
+
+    /**
+     * Free the processor's working buffers, the batch pool and the edge codec
+     * reference; they are rebuilt on next use. Call only while no frame is
+     * being processed.
+     * @return Bytes freed from processor buffers
+     */
+    public native long releaseWorkingMemory();
+
     /**
      * Cleanup native resources
      */
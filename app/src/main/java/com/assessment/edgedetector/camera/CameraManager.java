@@ -13,14 +13,23 @@ import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 import androidx.core.app.ActivityCompat;
 
-import java.nio.ByteBuffer;
+import com.assessment.edgedetector.reactive.FrameEmitter;
+import com.assessment.edgedetector.reactive.FrameStream;
+import com.assessment.edgedetector.utils.FrameLatencyTracker;
+import com.assessment.edgedetector.utils.NanoClock;
+import com.assessment.edgedetector.utils.StartupMetrics;
+import com.assessment.edgedetector.utils.Tracer;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -30,30 +39,84 @@ import java.util.concurrent.TimeUnit;
 public class CameraManager {
     private static final String TAG = "CameraManager";
     
-    private static final int MAX_PREVIEW_WIDTH = 1920;
-    private static final int MAX_PREVIEW_HEIGHT = 1080;
+    // Largest preview size chosen; the native processor is sized for it
+    public static final int MAX_PREVIEW_WIDTH = 1920;
+    public static final int MAX_PREVIEW_HEIGHT = 1080;
+    
+    // Frames in flight across all subscribers; the reader itself holds 2 images
+    private static final int FRAME_POOL_SIZE = 4;
     
     private Context context;
     private android.hardware.camera2.CameraManager cameraManager;
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
+    private boolean sessionRequested = false;
+    private SurfaceTexture sessionTexture;
     private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
+    private volatile Handler backgroundHandler;
     
     private Size previewSize;
     private String cameraId;
     private ImageReader imageReader;
     private final Semaphore cameraOpenCloseLock = new Semaphore(1);
+    private boolean timestampRealtime = false;
+    
+    // Shared frames handed to every subscriber
+    private final FramePool framePool = new FramePool(FRAME_POOL_SIZE);
+    private final List<FrameSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private FrameSubscriber legacySubscriber;
+    private final FrameEmitter<Frame> frameEmitter = new FrameEmitter<>();
+    private long frameSequence = 0;
+    
+    // AE target fps ranges for normal streaming and for idle mode on static scenes
+    private Range<Integer> fullFpsRange;
+    private Range<Integer> idleFpsRange;
+    private CaptureRequest.Builder previewRequestBuilder;
+    private volatile boolean idleCapture = false;
+    
+    // Paused capture keeps the reader, the thread and the configuration; camera thread only
+    private boolean paused = false;
+    private boolean deviceReopened = false;
+    private volatile boolean firstFramePending = false;
+    private final Runnable closeDeviceRunnable = this::closeDevice;
     
     // Callbacks
-    private SurfaceTexture surfaceTexture;
-    private FrameProcessingCallback frameCallback;
+    private volatile SurfaceTexture surfaceTexture;
+    private volatile ErrorListener errorListener;
+    private volatile FirstFrameListener firstFrameListener;
+    private FrameLatencyTracker latencyTracker;
+    private StartupMetrics startupMetrics;
     
-    public interface FrameProcessingCallback {
-        void onFrameAvailable(byte[] frameData, int width, int height, long timestamp);
+    public interface ErrorListener {
         void onError(String error);
     }
     
+    /**
+     * Receives every captured frame on the camera thread. The frame is valid
+     * for the duration of the call; retain() it to keep it longer.
+     */
+    public interface FrameSubscriber {
+        void onFrame(Frame frame);
+    }
+    
+    /**
+     * Told on the camera thread about the first capture after the camera is
+     * opened or resumed, before any copy
+     */
+    public interface FirstFrameListener {
+        /**
+         * @param deviceOpened Whether the camera device had to be opened for this frame
+         */
+        void onFirstFrame(long timestampNs, boolean deviceOpened);
+    }
+    
+    /**
+     * Heap-array variant kept for older consumers; costs one extra copy per frame
+     */
+    public interface FrameProcessingCallback extends ErrorListener {
+        void onFrameAvailable(byte[] frameData, int width, int height, long timestamp);
+    }
+    
     // Camera state callbacks
     private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
         @Override
@@ -61,6 +124,8 @@ public class CameraManager {
             Log.d(TAG, "Camera opened successfully");
             cameraOpenCloseLock.release();
             cameraDevice = camera;
+            deviceReopened = true;
+            markStartup(StartupMetrics.CAMERA_OPENED);
             createCameraPreviewSession();
         }
         
@@ -70,6 +135,10 @@ public class CameraManager {
             cameraOpenCloseLock.release();
             camera.close();
             cameraDevice = null;
+            // Another client took the camera; resumeCamera() opens it again
+            captureSession = null;
+            sessionRequested = false;
+            previewRequestBuilder = null;
         }
         
         @Override
@@ -78,9 +147,7 @@ public class CameraManager {
             cameraOpenCloseLock.release();
             camera.close();
             cameraDevice = null;
-            if (frameCallback != null) {
-                frameCallback.onError("Camera error: " + error);
-            }
+            reportError("Camera error: " + error);
         }
     };
     
@@ -90,37 +157,42 @@ public class CameraManager {
         public void onConfigured(CameraCaptureSession session) {
             Log.d(TAG, "Capture session configured");
             if (cameraDevice == null) return;
+            if (sessionTexture != surfaceTexture) {
+                // The texture was replaced while the session was being configured
+                session.close();
+                sessionRequested = false;
+                createCameraPreviewSession();
+                return;
+            }
             
             captureSession = session;
             try {
                 // Create capture request
                 CaptureRequest.Builder requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-                requestBuilder.addTarget(new Surface(surfaceTexture));
+                requestBuilder.addTarget(new Surface(sessionTexture));
                 requestBuilder.addTarget(imageReader.getSurface());
                 
                 // Set auto-focus mode
                 requestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
                 
                 // Start repeating capture
-                CaptureRequest captureRequest = requestBuilder.build();
-                captureSession.setRepeatingRequest(captureRequest, null, backgroundHandler);
+                previewRequestBuilder = requestBuilder;
+                applyFpsRange();
                 
                 Log.d(TAG, "Camera preview started");
+                markStartup(StartupMetrics.PREVIEW_STARTED);
                 
             } catch (CameraAccessException e) {
                 Log.e(TAG, "Failed to start camera preview", e);
-                if (frameCallback != null) {
-                    frameCallback.onError("Failed to start camera preview: " + e.getMessage());
-                }
+                reportError("Failed to start camera preview: " + e.getMessage());
             }
         }
         
         @Override
         public void onConfigureFailed(CameraCaptureSession session) {
             Log.e(TAG, "Capture session configuration failed");
-            if (frameCallback != null) {
-                frameCallback.onError("Capture session configuration failed");
-            }
+            sessionRequested = false;
+            reportError("Capture session configuration failed");
         }
     };
     
@@ -128,19 +200,45 @@ public class CameraManager {
     private final ImageReader.OnImageAvailableListener imageAvailableListener = new ImageReader.OnImageAvailableListener() {
         @Override
         public void onImageAvailable(ImageReader reader) {
+            Tracer.begin("Camera.onImageAvailable");
             Image image = reader.acquireLatestImage();
-            if (image == null) return;
+            if (image == null) {
+                Tracer.end();
+                return;
+            }
             
             try {
-                // Convert Image to byte array
-                byte[] frameData = convertImageToByteArray(image);
-                if (frameData != null && frameCallback != null) {
-                    frameCallback.onFrameAvailable(frameData, image.getWidth(), image.getHeight(), image.getTimestamp());
+                long timestamp = image.getTimestamp();
+                if (firstFramePending) {
+                    firstFramePending = false;
+                    notifyFirstFrame(timestamp);
+                }
+                if (subscribers.isEmpty() && !frameEmitter.hasDemand()) {
+                    // Nobody asked for this frame: hand the Image straight back
+                    frameSequence++;
+                    frameEmitter.skip();
+                    return;
+                }
+                markLatency(timestamp, FrameLatencyTracker.STAGE_ACQUIRED);
+                Tracer.flowStart("frame", timestamp);
+                
+                // The only copy: the Image must go back to the reader right away
+                Tracer.begin("Camera.copyYuv");
+                Frame frame = copyImageToFrame(image);
+                Tracer.end();
+                markLatency(timestamp, FrameLatencyTracker.STAGE_COPIED);
+                if (frame != null) {
+                    try {
+                        dispatchFrame(frame);
+                    } finally {
+                        frame.release();
+                    }
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error processing frame", e);
             } finally {
                 image.close();
+                Tracer.end();
             }
         }
     };
@@ -150,12 +248,165 @@ public class CameraManager {
         this.cameraManager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
     }
     
+    /**
+     * Set the preview target. The camera may already be open: the capture
+     * session is created as soon as both the device and the texture exist,
+     * so opening the camera does not have to wait for GL setup. A new texture
+     * (after the GL context was lost) replaces the session but keeps the device.
+     */
     public void setSurfaceTexture(SurfaceTexture surfaceTexture) {
         this.surfaceTexture = surfaceTexture;
+        Handler handler = backgroundHandler;
+        if (handler != null) {
+            handler.post(() -> {
+                if (captureSession != null && sessionTexture != this.surfaceTexture) {
+                    Log.d(TAG, "Preview texture replaced, recreating capture session");
+                    captureSession.close();
+                    captureSession = null;
+                    sessionRequested = false;
+                    previewRequestBuilder = null;
+                }
+                createCameraPreviewSession();
+            });
+        }
+    }
+    
+    public void setFirstFrameListener(FirstFrameListener listener) {
+        this.firstFrameListener = listener;
     }
     
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener;
+    }
+    
+    /**
+     * Register a consumer of shared frames. Subscribers are called in
+     * registration order on the camera thread and must not block it.
+     */
+    public void addFrameSubscriber(FrameSubscriber subscriber) {
+        if (subscriber != null && !subscribers.contains(subscriber)) {
+            subscribers.add(subscriber);
+        }
+    }
+    
+    public void removeFrameSubscriber(FrameSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+    
+    /**
+     * Receive errors and a private byte[] copy of each frame. Replaces the
+     * previous callback; null removes it.
+     */
     public void setFrameProcessingCallback(FrameProcessingCallback callback) {
-        this.frameCallback = callback;
+        if (legacySubscriber != null) {
+            subscribers.remove(legacySubscriber);
+            legacySubscriber = null;
+        }
+        this.errorListener = callback;
+        if (callback != null) {
+            legacySubscriber = frame -> callback.onFrameAvailable(frame.copyTo(null),
+                frame.getWidth(), frame.getHeight(), frame.getTimestampNs());
+            subscribers.add(legacySubscriber);
+        }
+    }
+    
+    /**
+     * Captured frames as a stream with demand. Frames are only copied out of
+     * the ImageReader while some stream subscriber has outstanding demand (or a
+     * FrameSubscriber is registered); the rest are closed without a copy.
+     * Delivered frames are valid during onNext and must be retained to keep.
+     */
+    public FrameStream<Frame> frames() {
+        return frameEmitter;
+    }
+    
+    /**
+     * Pool backing the shared frames, for occupancy and drop counts
+     */
+    public FramePool getFramePool() {
+        return framePool;
+    }
+    
+    private void reportError(String error) {
+        ErrorListener listener = errorListener;
+        if (listener != null) {
+            listener.onError(error);
+        }
+    }
+    
+    /**
+     * Set the tracker that capture stages are marked on; its clock is switched
+     * to the camera's timestamp base when the camera opens
+     */
+    public void setLatencyTracker(FrameLatencyTracker tracker) {
+        this.latencyTracker = tracker;
+    }
+    
+    /**
+     * Switch the repeating request between the full and the idle AE fps range.
+     * Takes effect within a few frames; safe to call from any thread.
+     */
+    public void setIdleCapture(boolean idle) {
+        if (idleCapture == idle) {
+            return;
+        }
+        idleCapture = idle;
+        Handler handler = backgroundHandler;
+        if (handler != null) {
+            handler.post(() -> {
+                try {
+                    applyFpsRange();
+                } catch (CameraAccessException e) {
+                    Log.e(TAG, "Failed to change capture rate", e);
+                }
+            });
+        }
+    }
+    
+    public boolean isIdleCapture() {
+        return idleCapture;
+    }
+    
+    // Camera thread: re-issue the repeating request with the range for the current mode
+    private void applyFpsRange() throws CameraAccessException {
+        if (captureSession == null || previewRequestBuilder == null || paused) {
+            return;
+        }
+        Range<Integer> range = idleCapture ? idleFpsRange : fullFpsRange;
+        if (range != null) {
+            previewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, range);
+        }
+        captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
+        Log.d(TAG, "Repeating request at " + (range != null ? range : "default") + " fps"
+            + (idleCapture ? " (idle)" : ""));
+    }
+    
+    /**
+     * Record camera-open and preview-start milestones of a cold start
+     */
+    public void setStartupMetrics(StartupMetrics metrics) {
+        this.startupMetrics = metrics;
+    }
+    
+    private void markStartup(int milestone) {
+        if (startupMetrics != null) {
+            startupMetrics.mark(milestone);
+        }
+    }
+    
+    private void markLatency(long timestamp, int stage) {
+        if (latencyTracker != null) {
+            latencyTracker.mark(timestamp, stage);
+        }
+    }
+    
+    private void notifyFirstFrame(long timestamp) {
+        FirstFrameListener listener = firstFrameListener;
+        boolean opened = deviceReopened;
+        deviceReopened = false;
+        if (listener != null) {
+            listener.onFirstFrame(timestamp, opened);
+        }
     }
     
     @SuppressLint("MissingPermission")
@@ -166,6 +417,9 @@ public class CameraManager {
         }
         
         startBackgroundThread();
+        frameSequence = 0;
+        paused = false;
+        firstFramePending = true;
         
         try {
             // Get camera ID (back camera)
@@ -179,6 +433,16 @@ public class CameraManager {
             CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
             StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             
+            // Sensor timestamps are either CLOCK_BOOTTIME (REALTIME) or CLOCK_MONOTONIC (UNKNOWN)
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            timestampRealtime = timestampSource != null
+                && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            if (latencyTracker != null) {
+                latencyTracker.setClock(timestampRealtime ? NanoClock.ELAPSED_REALTIME : NanoClock.MONOTONIC);
+            }
+            
+            chooseFpsRanges(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES));
+            
             // Choose optimal preview size
             previewSize = chooseOptimalSize(map.getOutputSizes(ImageFormat.YUV_420_888));
             Log.d(TAG, "Selected preview size: " + previewSize.getWidth() + "x" + previewSize.getHeight());
@@ -188,9 +452,6 @@ public class CameraManager {
                 ImageFormat.YUV_420_888, 2);
             imageReader.setOnImageAvailableListener(imageAvailableListener, backgroundHandler);
             
-            // Configure surface texture
-            surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            
             // Acquire camera open/close lock
             if (!cameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
                 Log.e(TAG, "Time out waiting to lock camera opening");
@@ -218,6 +479,8 @@ public class CameraManager {
                 captureSession.close();
                 captureSession = null;
             }
+            sessionRequested = false;
+            previewRequestBuilder = null;
             
             if (cameraDevice != null) {
                 cameraDevice.close();
@@ -239,10 +502,129 @@ public class CameraManager {
         Log.d(TAG, "Camera closed");
     }
     
+    /**
+     * Stop capture but keep the ImageReader, the camera thread and the chosen
+     * size and fps ranges. The device stays open for closeDelayMs, so a quick
+     * return only restarts the repeating request; after that it is closed and
+     * other apps can use the camera.
+     */
+    public void pauseCamera(long closeDelayMs) {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(() -> {
+            paused = true;
+            if (captureSession != null) {
+                try {
+                    captureSession.stopRepeating();
+                } catch (CameraAccessException | IllegalStateException e) {
+                    Log.w(TAG, "Failed to stop repeating request", e);
+                }
+            }
+            handler.removeCallbacks(closeDeviceRunnable);
+            handler.postDelayed(closeDeviceRunnable, Math.max(0, closeDelayMs));
+            Log.d(TAG, "Capture paused, closing device in " + closeDelayMs + " ms");
+        });
+    }
+    
+    /**
+     * Restart capture after pauseCamera(). Restarts the repeating request if the
+     * device is still open, otherwise reopens it with the kept configuration;
+     * after closeCamera() this is a full openCamera().
+     * @return false if the camera could not be opened
+     */
+    public boolean resumeCamera() {
+        Handler handler = backgroundHandler;
+        if (handler == null || imageReader == null || cameraId == null) {
+            return openCamera();
+        }
+        firstFramePending = true;
+        handler.removeCallbacks(closeDeviceRunnable);
+        handler.post(this::resumeCapture);
+        return true;
+    }
+    
+    /**
+     * Release free frame buffers; the camera keeps running
+     * @return Bytes released
+     */
+    public long trimMemory() {
+        return framePool.trim();
+    }
+    
+    // Camera thread
+    @SuppressLint("MissingPermission")
+    private void resumeCapture() {
+        paused = false;
+        if (cameraDevice != null) {
+            if (captureSession == null) {
+                createCameraPreviewSession();
+                return;
+            }
+            try {
+                applyFpsRange();
+                Log.d(TAG, "Capture resumed on open device");
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "Failed to resume capture", e);
+                reportError("Failed to resume capture: " + e.getMessage());
+            }
+            return;
+        }
+        if (!cameraOpenCloseLock.tryAcquire()) {
+            // An open is already in flight; onOpened starts the session
+            return;
+        }
+        try {
+            cameraManager.openCamera(cameraId, stateCallback, backgroundHandler);
+        } catch (CameraAccessException | SecurityException e) {
+            cameraOpenCloseLock.release();
+            Log.e(TAG, "Failed to reopen camera", e);
+            reportError("Failed to reopen camera: " + e.getMessage());
+        }
+    }
+    
+    // Camera thread: close the session and device left open by pauseCamera()
+    private void closeDevice() {
+        if (!paused) {
+            return;
+        }
+        if (!cameraOpenCloseLock.tryAcquire()) {
+            // The release comes from a callback on this thread; try again once it has run
+            backgroundHandler.postDelayed(closeDeviceRunnable, 100);
+            return;
+        }
+        try {
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            sessionRequested = false;
+            previewRequestBuilder = null;
+            if (cameraDevice != null) {
+                cameraDevice.close();
+                cameraDevice = null;
+            }
+        } finally {
+            cameraOpenCloseLock.release();
+        }
+        Log.d(TAG, "Camera device closed while paused");
+    }
+    
+    // Runs on the camera thread once the device is open and again when the texture arrives
     private void createCameraPreviewSession() {
+        SurfaceTexture texture = surfaceTexture;
+        if (cameraDevice == null || texture == null || captureSession != null || sessionRequested) {
+            return;
+        }
+        sessionRequested = true;
+        sessionTexture = texture;
+        
         try {
+            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+            
             // Create surfaces
-            Surface previewSurface = new Surface(surfaceTexture);
+            Surface previewSurface = new Surface(texture);
             Surface readerSurface = imageReader.getSurface();
             
             // Create capture session
@@ -251,9 +633,7 @@ public class CameraManager {
                 
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to create camera preview session", e);
-            if (frameCallback != null) {
-                frameCallback.onError("Failed to create camera preview session: " + e.getMessage());
-            }
+            reportError("Failed to create camera preview session: " + e.getMessage());
         }
     }
     
@@ -292,28 +672,74 @@ public class CameraManager {
         }
     }
     
-    private byte[] convertImageToByteArray(Image image) {
+    /**
+     * Full rate: the highest maximum, preferring a fixed range. Idle: the lowest
+     * maximum, preferring the lowest minimum so AE may stretch exposure.
+     */
+    private void chooseFpsRanges(Range<Integer>[] ranges) {
+        fullFpsRange = null;
+        idleFpsRange = null;
+        if (ranges == null) {
+            return;
+        }
+        for (Range<Integer> range : ranges) {
+            if (fullFpsRange == null
+                    || range.getUpper() > fullFpsRange.getUpper()
+                    || (range.getUpper().equals(fullFpsRange.getUpper())
+                        && range.getLower() > fullFpsRange.getLower())) {
+                fullFpsRange = range;
+            }
+            if (idleFpsRange == null
+                    || range.getUpper() < idleFpsRange.getUpper()
+                    || (range.getUpper().equals(idleFpsRange.getUpper())
+                        && range.getLower() < idleFpsRange.getLower())) {
+                idleFpsRange = range;
+            }
+        }
+        Log.d(TAG, "AE fps ranges: full " + fullFpsRange + ", idle " + idleFpsRange);
+    }
+    
+    private Frame copyImageToFrame(Image image) {
         if (image.getFormat() != ImageFormat.YUV_420_888) {
             Log.e(TAG, "Unsupported image format: " + image.getFormat());
             return null;
         }
         
         Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-        
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-        
-        byte[] data = new byte[ySize + uSize + vSize];
+        int size = 0;
+        for (Image.Plane plane : planes) {
+            size += plane.getBuffer().remaining();
+        }
         
-        yBuffer.get(data, 0, ySize);
-        uBuffer.get(data, ySize, uSize);
-        vBuffer.get(data, ySize + uSize, vSize);
+        // Sequence advances for dropped captures too, so subscribers can see the gap
+        long sequence = frameSequence++;
+        Frame frame = framePool.acquire(size, image.getWidth(), image.getHeight(),
+            image.getFormat(), image.getTimestamp(), sequence);
+        if (frame == null) {
+            Log.w(TAG, "No free frame, dropping capture " + sequence + " (" + framePool + ")");
+            return null;
+        }
         
-        return data;
+        for (Image.Plane plane : planes) {
+            if (!frame.appendPlane(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride())) {
+                Log.e(TAG, "Image plane does not fit frame buffer");
+                frame.release();
+                return null;
+            }
+        }
+        return frame;
+    }
+    
+    private void dispatchFrame(Frame frame) {
+        for (FrameSubscriber subscriber : subscribers) {
+            try {
+                subscriber.onFrame(frame);
+            } catch (RuntimeException e) {
+                // One failing consumer must not starve the others
+                Log.e(TAG, "Frame subscriber failed", e);
+            }
+        }
+        frameEmitter.emit(frame);
     }
     
     private void startBackgroundThread() {
@@ -339,6 +765,13 @@ public class CameraManager {
         return previewSize;
     }
     
+    /**
+     * Whether sensor timestamps are on SystemClock.elapsedRealtimeNanos() rather than System.nanoTime()
+     */
+    public boolean isTimestampRealtime() {
+        return timestampRealtime;
+    }
+    
     // Comparator for choosing optimal size
     private static class CompareSizesByArea implements Comparator<Size> {
         @Override
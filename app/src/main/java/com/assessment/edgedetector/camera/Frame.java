@@ -0,0 +1,208 @@
+package com.assessment.edgedetector.camera;
+
+import com.assessment.edgedetector.reactive.RefCounted;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One captured camera frame in pooled direct memory, shared by every subscriber
+ *
+ * The planes are stored back to back in a single direct buffer, in the same
+ * layout and with the same strides as the Image they were copied from. The
+ * frame is reference counted: the camera holds one reference while it
+ * dispatches to subscribers, and a subscriber that keeps the frame past its
+ * callback calls {@link #retain()} and later {@link #release()}. When the
+ * count drops to zero the buffer goes back to its {@link FramePool}.
+ *
+ * The buffer is shared, so consumers read it through {@link #getBuffer()}
+ * with absolute indexing and never write to it.
+ */
+public final class Frame implements RefCounted {
+    public static final int MAX_PLANES = 3;
+
+    /**
+     * Location and layout of one plane inside the frame buffer
+     */
+    public static final class Plane {
+        int offset;
+        int size;
+        int rowStride;
+        int pixelStride;
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        public int getPixelStride() {
+            return pixelStride;
+        }
+    }
+
+    private final FramePool pool;
+    private final ByteBuffer buffer;
+    private final ByteBuffer readOnlyBuffer;
+    private final Plane[] planes = new Plane[MAX_PLANES];
+    private final AtomicInteger refCount = new AtomicInteger(0);
+
+    private int planeCount;
+    private int width;
+    private int height;
+    private int format;
+    private long timestampNs;
+    private long sequence;
+
+    Frame(FramePool pool, int capacity) {
+        this.pool = pool;
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        // One read-only view per pooled buffer, so handing it out allocates nothing
+        this.readOnlyBuffer = buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        for (int i = 0; i < MAX_PLANES; i++) {
+            planes[i] = new Plane();
+        }
+    }
+
+    /**
+     * Called by the pool when the frame is handed out: one reference, no planes
+     */
+    void reset(int width, int height, int format, long timestampNs, long sequence) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.timestampNs = timestampNs;
+        this.sequence = sequence;
+        this.planeCount = 0;
+        buffer.clear();
+        refCount.set(1);
+    }
+
+    /**
+     * Append a plane from the camera; the source is consumed
+     * @return false if the plane does not fit
+     */
+    boolean appendPlane(ByteBuffer source, int rowStride, int pixelStride) {
+        int size = source.remaining();
+        if (planeCount == MAX_PLANES || size > buffer.remaining()) {
+            return false;
+        }
+        Plane plane = planes[planeCount++];
+        plane.offset = buffer.position();
+        plane.size = size;
+        plane.rowStride = rowStride;
+        plane.pixelStride = pixelStride;
+        buffer.put(source);
+        return true;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Take an extra reference; pair every call with {@link #release()}
+     */
+    @Override
+    public Frame retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame " + sequence + " retained after release");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drop a reference; the last one returns the buffer to the pool
+     */
+    @Override
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame " + sequence + " released too many times");
+        }
+    }
+
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Read-only view over all planes; use absolute gets with the plane offsets
+     */
+    public ByteBuffer getBuffer() {
+        return readOnlyBuffer;
+    }
+
+    /**
+     * Total bytes of plane data
+     */
+    public int getSize() {
+        return buffer.position();
+    }
+
+    public int getPlaneCount() {
+        return planeCount;
+    }
+
+    public Plane getPlane(int index) {
+        if (index < 0 || index >= planeCount) {
+            throw new IndexOutOfBoundsException("Plane " + index + " of " + planeCount);
+        }
+        return planes[index];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * ImageFormat of the source image (YUV_420_888 for the preview stream)
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    /**
+     * Capture order, starting at 0 when the camera opens; gaps mean frames were dropped
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Copy all planes, back to back, into a heap array for consumers that need one
+     * @param out Destination of at least getSize() bytes, or null to allocate
+     * @return The array holding the copy
+     */
+    public byte[] copyTo(byte[] out) {
+        int size = getSize();
+        if (out == null || out.length < size) {
+            out = new byte[size];
+        }
+        ByteBuffer view = readOnlyBuffer.duplicate();
+        view.position(0).limit(size);
+        view.get(out, 0, size);
+        return out;
+    }
+}
@@ -0,0 +1,105 @@
+package com.assessment.edgedetector.camera;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Fixed-size pool of direct-memory frames
+ *
+ * At most maxFrames buffers exist at once. When every frame is still held by
+ * a consumer, acquire() returns null and the camera drops the capture
+ * instead of allocating. A slow subscriber therefore costs frames, not
+ * memory. Recycled frames smaller than a request are replaced, so a
+ * resolution change reallocates once per buffer.
+ */
+public class FramePool {
+    private static final String TAG = "FramePool";
+
+    private final int maxFrames;
+    private final ArrayDeque<Frame> free = new ArrayDeque<>();
+
+    // Guarded by this
+    private int allocated = 0;
+    private int inUse = 0;
+    private long exhausted = 0;
+
+    public FramePool(int maxFrames) {
+        this.maxFrames = Math.max(1, maxFrames);
+    }
+
+    /**
+     * Hand out a frame holding one reference
+     * @return null if every frame is in use
+     */
+    public Frame acquire(int capacity, int width, int height, int format, long timestampNs, long sequence) {
+        Frame frame;
+        synchronized (this) {
+            frame = free.poll();
+            if (frame != null && frame.getCapacity() < capacity) {
+                // Too small for the new size; replace it
+                allocated--;
+                frame = null;
+            }
+            if (frame == null) {
+                if (allocated == maxFrames) {
+                    exhausted++;
+                    return null;
+                }
+                allocated++;
+            }
+            inUse++;
+        }
+        if (frame == null) {
+            frame = new Frame(this, capacity);
+            Log.d(TAG, "Allocated frame buffer of " + capacity + " bytes");
+        }
+        frame.reset(width, height, format, timestampNs, sequence);
+        return frame;
+    }
+
+    void recycle(Frame frame) {
+        synchronized (this) {
+            inUse--;
+            free.push(frame);
+        }
+    }
+
+    /**
+     * Drop the free frames so their buffers can be collected. Frames held by
+     * consumers are kept; the pool reallocates on demand afterwards.
+     * @return Bytes released
+     */
+    public long trim() {
+        long released = 0;
+        synchronized (this) {
+            for (Frame frame : free) {
+                released += frame.getCapacity();
+            }
+            allocated -= free.size();
+            free.clear();
+        }
+        if (released > 0) {
+            Log.d(TAG, "Trimmed " + released + " bytes of free frames");
+        }
+        return released;
+    }
+
+    public synchronized int getInUseCount() {
+        return inUse;
+    }
+
+    /**
+     * Number of captures dropped because no frame was free
+     */
+    public synchronized long getExhaustedCount() {
+        return exhausted;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "FramePool{allocated=%d/%d, inUse=%d, exhausted=%d}",
+            allocated, maxFrames, inUse, exhausted);
+    }
+}
@@ -0,0 +1,224 @@
+package com.assessment.edgedetector.camera;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Activity lifecycle driver for the camera pipeline
+ *
+ * Pausing keeps everything that is slow to rebuild: the ImageReader, the
+ * camera thread, the chosen configuration, native buffers and the frame pool.
+ * The camera device itself stays open for a short grace period and is then
+ * closed, so a quick return restarts capture without reopening it.
+ * Retained memory is only given back when the system asks through
+ * onTrimMemory(), and native buffers only while paused, when no frame is
+ * being processed.
+ *
+ * The time from resume() to the first captured frame is measured on every
+ * resume and logged.
+ *
+ * start() may run on a background thread. A pause() that arrives before it
+ * finishes is remembered, and start() then leaves the session paused until
+ * the next resume().
+ */
+public class SessionManager implements CameraManager.FirstFrameListener {
+    private static final String TAG = "SessionManager";
+
+    public static final long DEFAULT_CLOSE_DELAY_MS = 3000;
+
+    private static final int STATE_STOPPED = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_PAUSED = 2;
+
+    /**
+     * Pipeline stage that follows the session, called on the lifecycle thread
+     */
+    public interface Participant {
+        void onSessionPaused();
+
+        void onSessionResumed();
+
+        /**
+         * Free memory that is rebuilt lazily; only called while paused
+         * @param level ComponentCallbacks2.TRIM_MEMORY_* level
+         */
+        void onTrimMemory(int level);
+    }
+
+    private final CameraManager cameraManager;
+    private final List<Participant> participants = new CopyOnWriteArrayList<>();
+    private volatile long closeDelayMs = DEFAULT_CLOSE_DELAY_MS;
+
+    // Guarded by this
+    private int state = STATE_STOPPED;
+    private boolean hostPaused = false;   // Between pause() and resume(), whatever the state
+    private long resumeStartNs = -1;
+    private long lastResumeNs = 0;
+    private long totalResumeNs = 0;
+    private int resumeCount = 0;
+    private int warmResumeCount = 0;
+
+    public SessionManager(CameraManager cameraManager) {
+        this.cameraManager = cameraManager;
+        cameraManager.setFirstFrameListener(this);
+    }
+
+    public void addParticipant(Participant participant) {
+        if (participant != null && !participants.contains(participant)) {
+            participants.add(participant);
+        }
+    }
+
+    /**
+     * How long the camera device stays open after pause()
+     */
+    public void setCloseDelayMs(long delayMs) {
+        this.closeDelayMs = Math.max(0, delayMs);
+    }
+
+    /**
+     * Cold start: open the camera with a fresh configuration
+     * @return false if the camera could not be opened
+     */
+    public boolean start() {
+        if (!cameraManager.openCamera()) {
+            return false;
+        }
+        boolean pausedMeanwhile;
+        synchronized (this) {
+            pausedMeanwhile = hostPaused;
+            state = pausedMeanwhile ? STATE_PAUSED : STATE_RUNNING;
+        }
+        if (pausedMeanwhile) {
+            // pause() came while the camera was opening; resume() restarts capture
+            for (Participant participant : participants) {
+                participant.onSessionPaused();
+            }
+            cameraManager.pauseCamera(closeDelayMs);
+            Log.d(TAG, "Session started paused");
+        }
+        return true;
+    }
+
+    public void pause() {
+        synchronized (this) {
+            hostPaused = true;
+            if (state != STATE_RUNNING) {
+                return;
+            }
+            state = STATE_PAUSED;
+            resumeStartNs = -1;
+        }
+        for (Participant participant : participants) {
+            participant.onSessionPaused();
+        }
+        cameraManager.pauseCamera(closeDelayMs);
+        Log.d(TAG, "Session paused");
+    }
+
+    /**
+     * Restart capture after pause(); does nothing before start()
+     * @return false if the camera could not be reopened
+     */
+    public boolean resume() {
+        synchronized (this) {
+            hostPaused = false;
+            if (state != STATE_PAUSED) {
+                return state == STATE_RUNNING;
+            }
+            state = STATE_RUNNING;
+            resumeStartNs = System.nanoTime();
+        }
+        for (Participant participant : participants) {
+            participant.onSessionResumed();
+        }
+        if (!cameraManager.resumeCamera()) {
+            Log.e(TAG, "Failed to resume camera");
+            synchronized (this) {
+                resumeStartNs = -1;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Close the camera and release everything it holds
+     */
+    public void stop() {
+        synchronized (this) {
+            state = STATE_STOPPED;
+            resumeStartNs = -1;
+        }
+        cameraManager.closeCamera();
+    }
+
+    /**
+     * Forward of Activity.onTrimMemory(). While running only free pool frames
+     * are dropped. While paused, UI_HIDDEN and above also trims the participants,
+     * and BACKGROUND and above closes the camera, so the next resume is cold.
+     */
+    public void onTrimMemory(int level) {
+        boolean paused;
+        synchronized (this) {
+            paused = state == STATE_PAUSED;
+        }
+        if (!paused) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                cameraManager.trimMemory();
+            }
+            return;
+        }
+        if (level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        long released = cameraManager.trimMemory();
+        for (Participant participant : participants) {
+            participant.onTrimMemory(level);
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            cameraManager.closeCamera();
+        }
+        Log.i(TAG, "Trimmed for level " + level + ": " + released + " bytes of frames"
+            + (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ? ", camera closed" : ""));
+    }
+
+    @Override
+    public void onFirstFrame(long timestampNs, boolean deviceOpened) {
+        long latencyNs;
+        synchronized (this) {
+            if (resumeStartNs < 0) {
+                return;
+            }
+            latencyNs = System.nanoTime() - resumeStartNs;
+            resumeStartNs = -1;
+            lastResumeNs = latencyNs;
+            totalResumeNs += latencyNs;
+            resumeCount++;
+            if (!deviceOpened) {
+                warmResumeCount++;
+            }
+        }
+        Log.i(TAG, String.format(Locale.US, "Resume to first frame: %.1f ms (%s)",
+            latencyNs / 1e6, deviceOpened ? "device reopened" : "device kept open"));
+    }
+
+    /**
+     * Resume-to-first-frame time of the last resume, 0 before the first
+     */
+    public synchronized long getLastResumeNs() {
+        return lastResumeNs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+            "SessionManager{resumes=%d, warm=%d, lastResume=%.1fms, avgResume=%.1fms}",
+            resumeCount, warmResumeCount, lastResumeNs / 1e6,
+            resumeCount > 0 ? totalResumeNs / 1e6 / resumeCount : 0.0);
+    }
+}
@@ -0,0 +1,124 @@
+package com.assessment.edgedetector.codec;
+
+/**
+ * Java decoder for the native temporal delta + run-length edge map codec (edge_codec.cpp)
+ *
+ * Encoded frame layout:
+ * <pre>
+ *  u8      flags (FLAG_KEYFRAME)
+ *  u16 BE  width
+ *  u16 BE  height
+ *  varint  run lengths (LEB128), alternating clear/set bits, starting with clear
+ * </pre>
+ * Keyframes hold the edge bits directly; delta frames hold the XOR against the
+ * most recent keyframe. Not thread-safe: use one decoder per stream.
+ */
+public class EdgeFrameDecoder {
+    public static final int HEADER_SIZE = 5;
+    public static final int FLAG_KEYFRAME = 0x01;
+
+    private byte[] reference;
+    private int refWidth;
+    private int refHeight;
+
+    /**
+     * Upper bound on the encoded size of a width x height edge map
+     */
+    public static int maxEncodedSize(int width, int height) {
+        return HEADER_SIZE + width * height + 1;
+    }
+
+    public static boolean isKeyframe(byte[] data, int offset, int length) {
+        return length >= HEADER_SIZE && (data[offset] & FLAG_KEYFRAME) != 0;
+    }
+
+    public static int readWidth(byte[] data, int offset) {
+        return ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+    }
+
+    public static int readHeight(byte[] data, int offset) {
+        return ((data[offset + 3] & 0xFF) << 8) | (data[offset + 4] & 0xFF);
+    }
+
+    /**
+     * Decode one frame into a 0/255 edge map of width*height bytes
+     * @return false if the data is malformed or is a delta without its keyframe
+     */
+    public boolean decode(byte[] data, int offset, int length, byte[] out) {
+        if (length < HEADER_SIZE) {
+            return false;
+        }
+
+        int width = readWidth(data, offset);
+        int height = readHeight(data, offset);
+        int pixels = width * height;
+        boolean keyframe = isKeyframe(data, offset, length);
+        if (out.length < pixels) {
+            return false;
+        }
+        if (!keyframe && (reference == null || refWidth != width || refHeight != height)) {
+            return false;
+        }
+
+        byte[] ref = keyframe ? null : reference;
+        int p = offset + HEADER_SIZE;
+        int end = offset + length;
+        int pos = 0;
+        boolean set = false;
+
+        while (pos < pixels) {
+            // LEB128 varint
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (p >= end || shift > 28) {
+                    return false;
+                }
+                b = data[p++] & 0xFF;
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            if (run < 0 || run > pixels - pos) {
+                return false;
+            }
+
+            int runEnd = pos + run;
+            if (ref == null) {
+                byte value = set ? (byte) 0xFF : 0;
+                for (int i = pos; i < runEnd; i++) {
+                    out[i] = value;
+                }
+            } else if (set) {
+                for (int i = pos; i < runEnd; i++) {
+                    out[i] = (byte) ~ref[i];
+                }
+            } else {
+                System.arraycopy(ref, pos, out, pos, run);
+            }
+
+            pos = runEnd;
+            set = !set;
+        }
+
+        if (keyframe) {
+            if (reference == null || reference.length != pixels) {
+                reference = new byte[pixels];
+            }
+            System.arraycopy(out, 0, reference, 0, pixels);
+            refWidth = width;
+            refHeight = height;
+        }
+        return true;
+    }
+
+    /**
+     * Forget the current keyframe
+     */
+    public void reset() {
+        reference = null;
+        refWidth = 0;
+        refHeight = 0;
+    }
+}
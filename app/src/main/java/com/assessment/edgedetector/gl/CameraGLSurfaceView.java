@@ -13,6 +13,7 @@ public class CameraGLSurfaceView extends GLSurfaceView {
     private static final String TAG = "CameraGLSurfaceView";
     
     private FrameRenderer renderer;
+    private RenderScheduler renderScheduler;
     private boolean rendererSet = false;
 
     public CameraGLSurfaceView(Context context) {
@@ -29,12 +30,17 @@ public class CameraGLSurfaceView extends GLSurfaceView {
         // Set OpenGL ES 2.0 context
         setEGLContextClientVersion(2);
         
+        // Keep shaders, textures and the camera SurfaceTexture across pause where the device allows
+        setPreserveEGLContextOnPause(true);
+        
         // Create and set renderer
-        renderer = new FrameRenderer();
+        renderer = new FrameRenderer(getContext().getAssets());
         setRenderer(renderer);
         
-        // Only render when there's a change
+        // Only render when there's a change, at most once per vsync
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        renderScheduler = new RenderScheduler(this);
+        renderer.setRenderScheduler(renderScheduler);
         
         rendererSet = true;
         Log.d(TAG, "CameraGLSurfaceView initialized");
@@ -44,27 +50,65 @@ public class CameraGLSurfaceView extends GLSurfaceView {
         return renderer;
     }
 
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
     public SurfaceTexture getSurfaceTexture() {
         return renderer != null ? renderer.getSurfaceTexture() : null;
     }
 
     public void updateProcessedFrame(byte[] data, int width, int height) {
+        updateProcessedFrame(data, width, height, 0);
+    }
+
+    public void updateProcessedFrame(byte[] data, int width, int height, long sensorTimestamp) {
+        if (renderer != null) {
+            renderer.setProcessedFrame(data, width, height, sensorTimestamp);
+        }
+    }
+
+    /**
+     * Display a frame that was processed inside regions only; the camera feed shows
+     * around them
+     * @param regions x, y, width, height per region in frame pixels
+     */
+    public void updateProcessedFrame(byte[] data, int width, int height, long sensorTimestamp,
+                                     int[] regions, int regionCount) {
         if (renderer != null) {
-            renderer.setProcessedFrame(data, width, height);
-            requestRender();
+            renderer.setProcessedRegions(sensorTimestamp, regions, regionCount, width, height);
+            renderer.setProcessedFrame(data, width, height, sensorTimestamp);
         }
     }
 
     public void toggleProcessingMode(boolean useProcessed) {
         if (renderer != null) {
             renderer.toggleProcessingMode(useProcessed);
-            requestRender();
+            renderScheduler.markProcessedDirty();
+        }
+    }
+
+    /**
+     * Render edges with the GPU shader pipeline instead of the CPU (OpenCV) path
+     */
+    public void setGpuEdgeMode(boolean enabled) {
+        if (renderer != null) {
+            renderer.setGpuEdgeMode(enabled);
+            renderScheduler.markProcessedDirty();
+        }
+    }
+
+    public void setGpuEdgeSize(int width, int height) {
+        if (renderer != null) {
+            renderer.setGpuEdgeSize(width, height);
         }
     }
 
     @Override
     public void onPause() {
         if (rendererSet) {
+            renderScheduler.stop();
+            renderer.stopUploader();
             super.onPause();
         }
     }
@@ -73,6 +117,7 @@ public class CameraGLSurfaceView extends GLSurfaceView {
     public void onResume() {
         if (rendererSet) {
             super.onResume();
+            renderScheduler.start();
         }
     }
 }
\ No newline at end of file
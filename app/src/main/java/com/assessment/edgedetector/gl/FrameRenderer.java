@@ -1,5 +1,6 @@
 package com.assessment.edgedetector.gl;
 
+import android.content.res.AssetManager;
 import android.graphics.SurfaceTexture;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
@@ -7,6 +8,10 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.util.Log;
 
+import com.assessment.edgedetector.utils.FrameLatencyTracker;
+import com.assessment.edgedetector.utils.StartupMetrics;
+import com.assessment.edgedetector.utils.Tracer;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -61,8 +66,15 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
     private static final int COORDS_PER_VERTEX = 3;
     private static final int TEX_COORDS_PER_VERTEX = 2;
     private static final int VERTEX_STRIDE = (COORDS_PER_VERTEX + TEX_COORDS_PER_VERTEX) * 4;
+    private static final int VERTICES_PER_QUAD = 4;
+    
+    // Regions of interest: most rectangles per frame, and how many recent frames' regions
+    // are kept so each uploaded frame is drawn with its own (uploads trail by up to 3 frames)
+    public static final int MAX_REGIONS = 8;
+    private static final int REGION_HISTORY = 4;
 
     private FloatBuffer vertexBuffer;
+    private FloatBuffer regionVertexBuffer;
     private int programExternal, program2D;
     private int externalTextureId, texture2DId;
     private int surfaceWidth, surfaceHeight;
@@ -71,13 +83,60 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
     private final float[] projectionMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
 
-    private SurfaceTexture surfaceTexture;
-    private boolean updateSurface = false;
+    private volatile SurfaceTexture surfaceTexture;
+    private volatile boolean updateSurface = false;
     private boolean useProcessedFrame = false;
     private byte[] processedFrameData;
     private int frameWidth, frameHeight;
+    
+    // Sensor timestamps of the frames awaiting upload and the one last displayed
+    private volatile long processedFrameTimestamp;
+    private long displayedTimestamp;
+    private long uploadTimeNs;
+    private FrameLatencyTracker latencyTracker;
+    private RenderScheduler renderScheduler;
+    private volatile StartupMetrics startupMetrics;
+    private volatile SurfaceTextureListener surfaceTextureListener;
+    
+    // Processed frames are uploaded off the render thread when the shared context is available
+    private volatile TextureUploader uploader;
+    private TextureUploader.UploadedFrame uploadedFrame;
+    
+    // GPU edge path: the camera texture runs through shader passes without leaving the GPU
+    private final AssetManager assets;
+    private ShaderEdgePipeline edgePipeline;
+    private volatile boolean gpuEdgeAvailable = false;  // Set once the passes compiled
+    private volatile boolean useGpuEdges = false;
+    private volatile int gpuEdgeWidth, gpuEdgeHeight;
+    private int gpuEdgeTexture;
+    
+    // Processed regions per frame timestamp, written by the processing thread. Frames
+    // processed in regions are drawn over the camera feed, inside the regions only.
+    private final Object regionLock = new Object();
+    private final long[] regionTimestamps = new long[REGION_HISTORY];
+    private final int[][] regionSets = new int[REGION_HISTORY][MAX_REGIONS * 4];
+    private final int[] regionCounts = new int[REGION_HISTORY];
+    private final int[] regionFrameSizes = new int[REGION_HISTORY * 2];
+    private int regionNext;
+    // Render thread copy of the regions being drawn
+    private final int[] drawRegions = new int[MAX_REGIONS * 4];
+
+    /**
+     * Told on the GL thread when the camera SurfaceTexture has been created
+     */
+    public interface SurfaceTextureListener {
+        void onSurfaceTextureCreated(SurfaceTexture surfaceTexture);
+    }
 
     public FrameRenderer() {
+        this(null);
+    }
+
+    /**
+     * @param assets Source of the GPU edge shaders; null disables the GPU edge path
+     */
+    public FrameRenderer(AssetManager assets) {
+        this.assets = assets;
         initializeVertexBuffer();
     }
 
@@ -87,6 +146,10 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
         vertexBuffer = bb.asFloatBuffer();
         vertexBuffer.put(VERTICES);
         vertexBuffer.position(0);
+        
+        ByteBuffer regions = ByteBuffer.allocateDirect(MAX_REGIONS * VERTICES.length * 4);
+        regions.order(ByteOrder.nativeOrder());
+        regionVertexBuffer = regions.asFloatBuffer();
     }
 
     @Override
@@ -105,9 +168,33 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
         surfaceTexture = new SurfaceTexture(externalTextureId);
         surfaceTexture.setOnFrameAvailableListener(texture -> {
             updateSurface = true;
+            if (renderScheduler != null) {
+                renderScheduler.markCameraDirty();
+            }
         });
         
+        startUploader();
+        
+        // Compile the GPU edge passes; the mode falls back to the camera feed without them
+        gpuEdgeTexture = 0;
+        edgePipeline = null;
+        gpuEdgeAvailable = false;
+        if (assets != null) {
+            ShaderEdgePipeline pipeline = new ShaderEdgePipeline(assets);
+            if (pipeline.initialize()) {
+                edgePipeline = pipeline;
+                gpuEdgeAvailable = true;
+            } else {
+                Log.w(TAG, "GPU edge pipeline unavailable");
+            }
+        }
+        
         Log.d(TAG, "OpenGL surface created successfully");
+        
+        SurfaceTextureListener listener = surfaceTextureListener;
+        if (listener != null) {
+            listener.onSurfaceTextureCreated(surfaceTexture);
+        }
     }
 
     @Override
@@ -127,23 +214,77 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
         // Calculate MVP matrix
         Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
         
+        // A resume that kept the context skips onSurfaceCreated; restart the uploader stopped on pause
+        if (uploader == null && surfaceTexture != null) {
+            startUploader();
+        }
+        
         Log.d(TAG, "Surface changed: " + width + "x" + height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        Tracer.begin("FrameRenderer.onDrawFrame");
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         
+        long cameraTimestamp = 0;
         if (updateSurface && surfaceTexture != null) {
             surfaceTexture.updateTexImage();
             updateSurface = false;
+            cameraTimestamp = surfaceTexture.getTimestamp();
+            uploadTimeNs = traceNow();
         }
         
-        if (useProcessedFrame && processedFrameData != null) {
+        TextureUploader currentUploader = uploader;
+        if (currentUploader == null) {
+            // A stopped uploader has deleted its textures
+            uploadedFrame = null;
+        } else if (useProcessedFrame) {
+            TextureUploader.UploadedFrame latest = currentUploader.acquireLatest();
+            if (latest != null) {
+                uploadedFrame = latest;
+            }
+        }
+        
+        long frameTimestamp;
+        if (useGpuEdges && edgePipeline != null) {
+            // Re-run the passes only for a new camera frame
+            if (cameraTimestamp != 0 || gpuEdgeTexture == 0) {
+                int width = gpuEdgeWidth > 0 ? gpuEdgeWidth : surfaceWidth;
+                int height = gpuEdgeHeight > 0 ? gpuEdgeHeight : surfaceHeight;
+                gpuEdgeTexture = edgePipeline.process(externalTextureId, width, height);
+                GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+            }
+            frameTimestamp = cameraTimestamp;
+            drawTexture2D(gpuEdgeTexture);
+        } else if (useProcessedFrame && uploadedFrame != null) {
+            frameTimestamp = uploadedFrame.timestamp;
+            uploadTimeNs = uploadedFrame.uploadTimeNs;
+            drawProcessedTexture(uploadedFrame.textureId, frameTimestamp);
+        } else if (useProcessedFrame && processedFrameData != null) {
+            frameTimestamp = processedFrameTimestamp;
             drawProcessedFrame();
         } else {
+            frameTimestamp = cameraTimestamp;
             drawCameraFrame();
+            if (cameraTimestamp != 0 && startupMetrics != null) {
+                startupMetrics.mark(StartupMetrics.FIRST_PREVIEW_FRAME);
+            }
+        }
+        
+        // Marked once per new frame; GLSurfaceView swaps as soon as this returns
+        if (frameTimestamp != 0 && frameTimestamp != displayedTimestamp) {
+            if (latencyTracker != null) {
+                latencyTracker.mark(frameTimestamp, FrameLatencyTracker.STAGE_UPLOADED, uploadTimeNs);
+                latencyTracker.mark(frameTimestamp, FrameLatencyTracker.STAGE_DISPLAYED);
+            }
+            Tracer.flowEnd("frame", frameTimestamp);
+            displayedTimestamp = frameTimestamp;
+        }
+        if (renderScheduler != null) {
+            renderScheduler.onFrameRendered();
         }
+        Tracer.end();
     }
 
     private void drawCameraFrame() {
@@ -182,7 +323,88 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
         GLES20.glDisableVertexAttribArray(texCoordHandle);
     }
 
+    /**
+     * Upload the processed frame on the render thread; only used when the uploader is unavailable
+     */
     private void drawProcessedFrame() {
+        // Update 2D texture with processed frame data
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture2DId);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
+            frameWidth, frameHeight, 0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
+            ByteBuffer.wrap(processedFrameData));
+        uploadTimeNs = traceNow();
+        
+        drawProcessedTexture(texture2DId, processedFrameTimestamp);
+    }
+
+    /**
+     * Draw a processed frame: whole, or only its regions over the camera feed
+     */
+    private void drawProcessedTexture(int textureId, long timestamp) {
+        int count = buildRegionQuads(timestamp);
+        if (count == 0) {
+            drawTexture2D(textureId, vertexBuffer, 1);
+            return;
+        }
+        drawCameraFrame();
+        drawTexture2D(textureId, regionVertexBuffer, count);
+    }
+
+    /**
+     * Fill the region vertex buffer with the frame's regions, one quad each, in the
+     * full-screen quad's coordinates so they land where the whole frame would
+     * @return Number of quads, 0 if the frame was processed whole
+     */
+    private int buildRegionQuads(long timestamp) {
+        int count = 0;
+        int width = 0;
+        int height = 0;
+        synchronized (regionLock) {
+            for (int i = 0; i < REGION_HISTORY; i++) {
+                if (regionTimestamps[i] == timestamp && regionCounts[i] > 0) {
+                    count = regionCounts[i];
+                    width = regionFrameSizes[i * 2];
+                    height = regionFrameSizes[i * 2 + 1];
+                    System.arraycopy(regionSets[i], 0, drawRegions, 0, count * 4);
+                    break;
+                }
+            }
+        }
+        if (count == 0 || width <= 0 || height <= 0
+                || (count == 1 && drawRegions[0] <= 0 && drawRegions[1] <= 0
+                    && drawRegions[2] >= width && drawRegions[3] >= height)) {
+            return 0;
+        }
+        
+        regionVertexBuffer.position(0);
+        for (int i = 0; i < count; i++) {
+            float u0 = (float) drawRegions[i * 4] / width;
+            float v0 = (float) drawRegions[i * 4 + 1] / height;
+            float u1 = (float) (drawRegions[i * 4] + drawRegions[i * 4 + 2]) / width;
+            float v1 = (float) (drawRegions[i * 4 + 1] + drawRegions[i * 4 + 3]) / height;
+            // Same corner order and texture mapping as VERTICES
+            putVertex(u0, v1);
+            putVertex(u1, v1);
+            putVertex(u0, v0);
+            putVertex(u1, v0);
+        }
+        regionVertexBuffer.position(0);
+        return count;
+    }
+
+    private void putVertex(float u, float v) {
+        regionVertexBuffer.put(u * 2f - 1f).put(1f - v * 2f).put(0f).put(u).put(v);
+    }
+
+    private void drawTexture2D(int textureId) {
+        drawTexture2D(textureId, vertexBuffer, 1);
+    }
+
+    /**
+     * Draw quads of VERTICES_PER_QUAD vertices each from vertices, sampling textureId
+     */
+    private void drawTexture2D(int textureId, FloatBuffer vertices, int quads) {
         GLES20.glUseProgram(program2D);
         
         int positionHandle = GLES20.glGetAttribLocation(program2D, "aPosition");
@@ -190,39 +412,74 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
         int mvpMatrixHandle = GLES20.glGetUniformLocation(program2D, "uMVPMatrix");
         int textureHandle = GLES20.glGetUniformLocation(program2D, "uTexture");
         
-        // Update 2D texture with processed frame data
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture2DId);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
-            frameWidth, frameHeight, 0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
-            ByteBuffer.wrap(processedFrameData));
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
         
         // Enable attributes
         GLES20.glEnableVertexAttribArray(positionHandle);
         GLES20.glEnableVertexAttribArray(texCoordHandle);
         
         // Set vertex positions
-        vertexBuffer.position(0);
+        vertices.position(0);
         GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX, 
-            GLES20.GL_FLOAT, false, VERTEX_STRIDE, vertexBuffer);
+            GLES20.GL_FLOAT, false, VERTEX_STRIDE, vertices);
         
         // Set texture coordinates
-        vertexBuffer.position(COORDS_PER_VERTEX);
+        vertices.position(COORDS_PER_VERTEX);
         GLES20.glVertexAttribPointer(texCoordHandle, TEX_COORDS_PER_VERTEX, 
-            GLES20.GL_FLOAT, false, VERTEX_STRIDE, vertexBuffer);
+            GLES20.GL_FLOAT, false, VERTEX_STRIDE, vertices);
         
         // Set uniforms
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
         GLES20.glUniform1i(textureHandle, 0);
         
         // Draw
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        for (int quad = 0; quad < quads; quad++) {
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, quad * VERTICES_PER_QUAD, VERTICES_PER_QUAD);
+        }
         
         // Disable attributes
         GLES20.glDisableVertexAttribArray(positionHandle);
         GLES20.glDisableVertexAttribArray(texCoordHandle);
     }
 
+    /**
+     * Start the upload thread with a context shared with the current render context
+     */
+    private void startUploader() {
+        stopUploader();
+        uploadedFrame = null;
+        
+        TextureUploader newUploader = new TextureUploader(() -> {
+            if (renderScheduler != null) {
+                renderScheduler.markProcessedDirty();
+            }
+        });
+        if (latencyTracker != null) {
+            newUploader.setClock(latencyTracker::now);
+        }
+        if (newUploader.start()) {
+            uploader = newUploader;
+        } else {
+            Log.w(TAG, "Texture uploader unavailable, uploading on the render thread");
+        }
+    }
+
+    /**
+     * Stop the upload thread; call before the render context goes away
+     */
+    public void stopUploader() {
+        TextureUploader current = uploader;
+        uploader = null;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    private long traceNow() {
+        return latencyTracker != null ? latencyTracker.now() : 0;
+    }
+
     private int createProgram(String vertexShaderCode, String fragmentShaderCode) {
         int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
         int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
@@ -270,9 +527,98 @@ public class FrameRenderer implements GLSurfaceView.Renderer {
     }
 
     public void setProcessedFrame(byte[] data, int width, int height) {
+        setProcessedFrame(data, width, height, 0);
+    }
+
+    /**
+     * Set the frame to display along with the sensor timestamp it was captured at
+     */
+    public void setProcessedFrame(byte[] data, int width, int height, long sensorTimestamp) {
+        TextureUploader current = uploader;
+        if (current != null) {
+            // The uploader marks the frame dirty once its texture is ready
+            current.submit(data, width, height, sensorTimestamp);
+            return;
+        }
+        
         this.processedFrameData = data;
         this.frameWidth = width;
         this.frameHeight = height;
+        this.processedFrameTimestamp = sensorTimestamp;
+        if (renderScheduler != null) {
+            renderScheduler.markProcessedDirty();
+        }
+    }
+
+    /**
+     * Regions the frame with this sensor timestamp was processed in, as x, y, width,
+     * height in frame pixels. Set before the frame itself; without regions, or with
+     * one covering the frame, the frame is drawn whole.
+     */
+    public void setProcessedRegions(long sensorTimestamp, int[] regions, int count, int width, int height) {
+        count = regions != null ? Math.max(0, Math.min(count, Math.min(MAX_REGIONS, regions.length / 4))) : 0;
+        synchronized (regionLock) {
+            int slot = regionNext;
+            regionNext = (regionNext + 1) % REGION_HISTORY;
+            regionTimestamps[slot] = sensorTimestamp;
+            regionCounts[slot] = count;
+            regionFrameSizes[slot * 2] = width;
+            regionFrameSizes[slot * 2 + 1] = height;
+            if (count > 0) {
+                System.arraycopy(regions, 0, regionSets[slot], 0, count * 4);
+            }
+        }
+    }
+
+    public void setLatencyTracker(FrameLatencyTracker tracker) {
+        this.latencyTracker = tracker;
+    }
+
+    /**
+     * Listener for the camera SurfaceTexture; called immediately if it already exists
+     */
+    public void setSurfaceTextureListener(SurfaceTextureListener listener) {
+        this.surfaceTextureListener = listener;
+        SurfaceTexture current = surfaceTexture;
+        if (listener != null && current != null) {
+            listener.onSurfaceTextureCreated(current);
+        }
+    }
+
+    /**
+     * Milestones to mark the first drawn camera frame on
+     */
+    public void setStartupMetrics(StartupMetrics metrics) {
+        this.startupMetrics = metrics;
+    }
+
+    /**
+     * Scheduler notified when camera frames arrive and when a draw completes
+     */
+    public void setRenderScheduler(RenderScheduler scheduler) {
+        this.renderScheduler = scheduler;
+    }
+
+    /**
+     * Switch between the GPU shader edge path and the regular display modes
+     */
+    public void setGpuEdgeMode(boolean enabled) {
+        this.useGpuEdges = enabled;
+    }
+
+    /**
+     * Resolution the GPU edge passes run at; defaults to the surface size
+     */
+    public void setGpuEdgeSize(int width, int height) {
+        this.gpuEdgeWidth = width;
+        this.gpuEdgeHeight = height;
+    }
+
+    /**
+     * Whether the GPU edge passes compiled on the current surface; false until it is created
+     */
+    public boolean isGpuEdgeModeAvailable() {
+        return gpuEdgeAvailable;
     }
 
     public void toggleProcessingMode(boolean useProcessed) {
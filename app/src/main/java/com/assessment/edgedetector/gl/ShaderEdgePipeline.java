@@ -0,0 +1,261 @@
+package com.assessment.edgedetector.gl;
+
+import android.content.res.AssetManager;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * GPU edge detection as a chain of fullscreen FBO passes
+ *
+ * luma -> horizontal blur -> vertical blur -> Sobel magnitude/direction ->
+ * non-maximum suppression -> double threshold, ping-ponging between two
+ * RGBA textures. The camera frame never leaves the GPU: the input is the
+ * external OES texture and the output is a texture the renderer draws
+ * directly. Shaders are loaded from assets/shaders, the same files
+ * tools/shader_validate checks against the OpenCV path on a desktop GL.
+ *
+ * All methods must be called on the GL thread.
+ */
+public class ShaderEdgePipeline {
+    private static final String TAG = "ShaderEdgePipeline";
+
+    private static final String SHADER_DIR = "shaders/";
+    private static final String EXTERNAL_INPUT_DEFINE = "#define EXTERNAL_INPUT\n";
+
+    private static final float[] QUAD = {-1f, -1f, 1f, -1f, -1f, 1f, 1f, 1f};
+
+    private final AssetManager assets;
+    private final FloatBuffer quadBuffer;
+
+    private int lumaProgram, blurProgram, sobelProgram, nmsProgram, thresholdProgram;
+    private final int[] textures = new int[2];
+    private final int[] framebuffers = new int[2];
+    private int width, height;
+    private boolean initialized = false;
+
+    private float lowThreshold = 50f;
+    private float highThreshold = 150f;
+
+    public ShaderEdgePipeline(AssetManager assets) {
+        this.assets = assets;
+        ByteBuffer bb = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder());
+        quadBuffer = bb.asFloatBuffer();
+        quadBuffer.put(QUAD).position(0);
+    }
+
+    /**
+     * Compile the pass programs
+     * @return false if a shader failed to load or compile
+     */
+    public boolean initialize() {
+        try {
+            String vertex = loadAsset("edge_pass.vert");
+            String common = loadAsset("edge_common.glsl");
+            lumaProgram = buildProgram(vertex, EXTERNAL_INPUT_DEFINE + loadAsset("edge_luma.frag"));
+            blurProgram = buildProgram(vertex, loadAsset("edge_blur.frag"));
+            sobelProgram = buildProgram(vertex, common + loadAsset("edge_sobel.frag"));
+            nmsProgram = buildProgram(vertex, common + loadAsset("edge_nms.frag"));
+            thresholdProgram = buildProgram(vertex, common + loadAsset("edge_threshold.frag"));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load edge shaders", e);
+            return false;
+        }
+
+        initialized = lumaProgram != 0 && blurProgram != 0 && sobelProgram != 0
+            && nmsProgram != 0 && thresholdProgram != 0;
+        if (!initialized) {
+            release();
+        }
+        return initialized;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Set the Canny-style thresholds (L1 gradient of 8-bit luma)
+     */
+    public void setThresholds(float low, float high) {
+        lowThreshold = low;
+        highThreshold = high;
+    }
+
+    /**
+     * Run every pass on the camera texture at the given processing size
+     * @return The texture holding the edge map (white edges on black)
+     */
+    public int process(int externalTextureId, int processWidth, int processHeight) {
+        if (!initialized) {
+            return 0;
+        }
+        if (processWidth != width || processHeight != height) {
+            allocateTargets(processWidth, processHeight);
+        }
+
+        Tracer.begin("ShaderEdgePipeline.process");
+        GLES20.glViewport(0, 0, width, height);
+        float texelX = 1f / width;
+        float texelY = 1f / height;
+
+        // 0: luma, 1: blur x, 0: blur y, 1: sobel, 0: nms, 1: threshold
+        runPass(lumaProgram, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, externalTextureId, 0);
+
+        GLES20.glUseProgram(blurProgram);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(blurProgram, "uStep"), texelX, 0f);
+        runPass(blurProgram, GLES20.GL_TEXTURE_2D, textures[0], 1);
+        GLES20.glUseProgram(blurProgram);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(blurProgram, "uStep"), 0f, texelY);
+        runPass(blurProgram, GLES20.GL_TEXTURE_2D, textures[1], 0);
+
+        setTexelSize(sobelProgram, texelX, texelY);
+        runPass(sobelProgram, GLES20.GL_TEXTURE_2D, textures[0], 1);
+
+        setTexelSize(nmsProgram, texelX, texelY);
+        runPass(nmsProgram, GLES20.GL_TEXTURE_2D, textures[1], 0);
+
+        setTexelSize(thresholdProgram, texelX, texelY);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(thresholdProgram, "uLowThreshold"), lowThreshold);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(thresholdProgram, "uHighThreshold"), highThreshold);
+        runPass(thresholdProgram, GLES20.GL_TEXTURE_2D, textures[0], 1);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        Tracer.end();
+        return textures[1];
+    }
+
+    /**
+     * Delete programs and targets; the renderer restores its own viewport
+     */
+    public void release() {
+        int[] programs = {lumaProgram, blurProgram, sobelProgram, nmsProgram, thresholdProgram};
+        for (int program : programs) {
+            if (program != 0) {
+                GLES20.glDeleteProgram(program);
+            }
+        }
+        lumaProgram = blurProgram = sobelProgram = nmsProgram = thresholdProgram = 0;
+        releaseTargets();
+        initialized = false;
+    }
+
+    private void setTexelSize(int program, float texelX, float texelY) {
+        GLES20.glUseProgram(program);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(program, "uTexelSize"), texelX, texelY);
+    }
+
+    private void runPass(int program, int inputTarget, int inputTexture, int output) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[output]);
+        GLES20.glUseProgram(program);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(inputTarget, inputTexture);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "uTexture"), 0);
+
+        int positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        quadBuffer.position(0);
+        GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, 0, quadBuffer);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glDisableVertexAttribArray(positionHandle);
+    }
+
+    private void allocateTargets(int newWidth, int newHeight) {
+        releaseTargets();
+        width = newWidth;
+        height = newHeight;
+
+        GLES20.glGenTextures(2, textures, 0);
+        GLES20.glGenFramebuffers(2, framebuffers, 0);
+        for (int i = 0; i < 2; i++) {
+            // Nearest sampling: every pass reads exact texels
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[i]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, textures[i], 0);
+            int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+            if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                Log.e(TAG, "Edge framebuffer incomplete: 0x" + Integer.toHexString(status));
+            }
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        Log.d(TAG, "Edge targets allocated: " + width + "x" + height);
+    }
+
+    private void releaseTargets() {
+        if (width != 0) {
+            GLES20.glDeleteFramebuffers(2, framebuffers, 0);
+            GLES20.glDeleteTextures(2, textures, 0);
+        }
+        width = 0;
+        height = 0;
+    }
+
+    private String loadAsset(String name) throws IOException {
+        try (InputStream in = assets.open(SHADER_DIR + name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private int buildProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            return 0;
+        }
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Edge program link failed: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Edge shader compile failed: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+}
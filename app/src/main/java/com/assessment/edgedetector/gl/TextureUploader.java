@@ -0,0 +1,427 @@
+package com.assessment.edgedetector.gl;
+
+import android.opengl.EGL14;
+import android.opengl.EGL15;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.EGLSync;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+import com.assessment.edgedetector.utils.NanoClock;
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Background texture uploader with its own EGL context shared with the renderer
+ *
+ * Processed frames are uploaded into a rotating set of three textures on a
+ * dedicated thread: one is being displayed, one holds the newest finished
+ * upload and one is free for the next upload. A finished upload is handed to
+ * the renderer with an EGL fence that the GL thread waits on GPU-side
+ * (eglWaitSync), and the renderer fences each texture it stops displaying so
+ * the uploader never overwrites one the GPU may still be sampling. Draw calls
+ * therefore never block on a pixel transfer.
+ *
+ * EGL fence syncs are used on API 29+ (EGL15). Below that, or when the driver
+ * refuses to create a fence, the uploader calls glFinish on its own thread
+ * before publishing, which still keeps the transfer off the render thread. A
+ * release fence the driver refuses is replaced by glFinish on the render thread.
+ */
+public class TextureUploader {
+    private static final String TAG = "TextureUploader";
+
+    private static final int TEXTURE_COUNT = 3;
+    private static final long RELEASE_WAIT_NS = 100_000_000L;
+    private static final long[] FENCE_ATTRIBS = {EGL14.EGL_NONE};
+
+    /**
+     * Called on the upload thread when a new frame is ready to draw
+     */
+    public interface Listener {
+        void onFrameUploaded();
+    }
+
+    /**
+     * A finished upload, valid on the render thread until the next acquire
+     */
+    public static class UploadedFrame {
+        public final int textureId;
+        public final int width;
+        public final int height;
+        public final long timestamp;
+        public final long uploadTimeNs;
+
+        UploadedFrame(int textureId, int width, int height, long timestamp, long uploadTimeNs) {
+            this.textureId = textureId;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+            this.uploadTimeNs = uploadTimeNs;
+        }
+    }
+
+    private final EGLDisplay display;
+    private final EGLContext shareContext;
+    private final Listener listener;
+    private volatile NanoClock clock = NanoClock.MONOTONIC;
+    private EGLContext context = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface surface = EGL14.EGL_NO_SURFACE;
+    private boolean useFences;
+    private boolean texturesCreated;
+
+    // Texture slots, guarded by lock
+    private final Object lock = new Object();
+    private final int[] textures = new int[TEXTURE_COUNT];
+    private final int[] textureWidth = new int[TEXTURE_COUNT];
+    private final int[] textureHeight = new int[TEXTURE_COUNT];
+    private final UploadedFrame[] slotFrames = new UploadedFrame[TEXTURE_COUNT];
+    private final EGLSync[] uploadFences = new EGLSync[TEXTURE_COUNT];
+    private final EGLSync[] releaseFences = new EGLSync[TEXTURE_COUNT];
+    private int readySlot = -1;
+    private int displaySlot = -1;
+
+    // Pending frame, guarded by lock; a newer frame replaces one not yet uploaded
+    private byte[] pendingData;
+    private int pendingWidth;
+    private int pendingHeight;
+    private long pendingTimestamp;
+    private boolean running = false;
+    private Thread thread;
+
+    /**
+     * Must be called on the render thread with its context current
+     */
+    public TextureUploader(Listener listener) {
+        this.display = EGL14.eglGetCurrentDisplay();
+        this.shareContext = EGL14.eglGetCurrentContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Clock used for the upload timestamps reported with each frame
+     */
+    public void setClock(NanoClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Start the upload thread
+     * @return false if the shared context could not be created
+     */
+    public boolean start() {
+        final boolean[] started = new boolean[1];
+        synchronized (lock) {
+            if (running) {
+                return true;
+            }
+            thread = new Thread(() -> {
+                boolean ok = createContext();
+                synchronized (lock) {
+                    started[0] = ok;
+                    running = ok;
+                    lock.notifyAll();
+                }
+                if (ok) {
+                    uploadLoop();
+                }
+                destroyContext();
+            }, "TextureUploader");
+            thread.start();
+
+            // Wait for the context so callers know whether to fall back
+            while (thread.isAlive() && !running) {
+                try {
+                    lock.wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return started[0];
+        }
+    }
+
+    /**
+     * Stop the upload thread, which deletes its textures and fences and releases its
+     * context. The share group outlives the uploader when the render context is kept
+     * across pause, so nothing may be left for it to free. acquireLatest returns null
+     * from here on.
+     */
+    public void stop() {
+        Thread uploadThread;
+        synchronized (lock) {
+            running = false;
+            pendingData = null;
+            uploadThread = thread;
+            thread = null;
+            lock.notifyAll();
+        }
+        if (uploadThread != null) {
+            try {
+                uploadThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queue a single-channel frame for upload; called from processing threads
+     */
+    public void submit(byte[] data, int width, int height, long timestamp) {
+        synchronized (lock) {
+            pendingData = data;
+            pendingWidth = width;
+            pendingHeight = height;
+            pendingTimestamp = timestamp;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Switch to the newest finished upload, if there is one. Call on the render
+     * thread before drawing; the returned texture is ready for sampling.
+     * @return The frame to draw, or null if nothing new was uploaded
+     */
+    public UploadedFrame acquireLatest() {
+        boolean retiring;
+        synchronized (lock) {
+            if (!running || readySlot < 0) {
+                return null;
+            }
+            // Only this thread changes displaySlot, and readySlot stays set until
+            // the swap below, so the texture being retired is known now
+            retiring = useFences && displaySlot >= 0;
+        }
+
+        // Covers every draw that sampled the retiring texture. It is stored in the
+        // same critical section as the swap, so the uploader never sees that slot
+        // free without its fence
+        EGLSync releaseFence = null;
+        if (retiring) {
+            releaseFence = EGL15.eglCreateSync(display, EGL15.EGL_SYNC_FENCE, FENCE_ATTRIBS, 0);
+            if (releaseFence == null || releaseFence == EGL15.EGL_NO_SYNC) {
+                releaseFence = null;
+                GLES20.glFinish();
+            }
+        }
+
+        EGLSync uploadFence;
+        UploadedFrame frame;
+        synchronized (lock) {
+            if (!running || readySlot < 0) {
+                frame = null;
+                uploadFence = null;
+            } else {
+                if (displaySlot >= 0) {
+                    releaseFences[displaySlot] = releaseFence;
+                    releaseFence = null;
+                }
+                displaySlot = readySlot;
+                readySlot = -1;
+                frame = slotFrames[displaySlot];
+                uploadFence = uploadFences[displaySlot];
+                uploadFences[displaySlot] = null;
+            }
+        }
+        if (releaseFence != null) {
+            // Stopped meanwhile; the upload thread no longer collects fences
+            EGL15.eglDestroySync(display, releaseFence);
+        }
+
+        if (uploadFence != null) {
+            // GPU-side wait: later draws sample the texture only once the upload lands
+            EGL15.eglWaitSync(display, uploadFence, 0);
+            EGL15.eglDestroySync(display, uploadFence);
+        }
+        return frame;
+    }
+
+    private boolean createContext() {
+        int[] configAttribs = {
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0)
+                || numConfigs[0] == 0) {
+            Log.e(TAG, "No pbuffer config for upload context");
+            return false;
+        }
+
+        int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        context = EGL14.eglCreateContext(display, configs[0], shareContext, contextAttribs, 0);
+        if (context == null || context == EGL14.EGL_NO_CONTEXT) {
+            Log.e(TAG, "Failed to create shared context: 0x" + Integer.toHexString(EGL14.eglGetError()));
+            return false;
+        }
+
+        int[] surfaceAttribs = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0], surfaceAttribs, 0);
+        if (surface == null || surface == EGL14.EGL_NO_SURFACE
+                || !EGL14.eglMakeCurrent(display, surface, surface, context)) {
+            Log.e(TAG, "Failed to make upload context current: 0x" + Integer.toHexString(EGL14.eglGetError()));
+            return false;
+        }
+
+        GLES20.glGenTextures(TEXTURE_COUNT, textures, 0);
+        texturesCreated = true;
+        for (int texture : textures) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+        // Probe fence support once; the fallback is glFinish before publishing
+        useFences = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            EGLSync probe = EGL15.eglCreateSync(display, EGL15.EGL_SYNC_FENCE, FENCE_ATTRIBS, 0);
+            if (probe != null && probe != EGL15.EGL_NO_SYNC) {
+                EGL15.eglDestroySync(display, probe);
+                useFences = true;
+            }
+        }
+        Log.d(TAG, "Upload context ready, fences " + (useFences ? "enabled" : "unavailable"));
+        return true;
+    }
+
+    private void destroyContext() {
+        synchronized (lock) {
+            for (int i = 0; i < TEXTURE_COUNT; i++) {
+                destroyFence(uploadFences, i);
+                destroyFence(releaseFences, i);
+                slotFrames[i] = null;
+            }
+            readySlot = -1;
+            displaySlot = -1;
+        }
+        if (texturesCreated) {
+            // Still current on this thread
+            GLES20.glDeleteTextures(TEXTURE_COUNT, textures, 0);
+            for (int i = 0; i < TEXTURE_COUNT; i++) {
+                textures[i] = 0;
+                textureWidth[i] = 0;
+                textureHeight[i] = 0;
+            }
+            texturesCreated = false;
+        }
+        if (context != EGL14.EGL_NO_CONTEXT && context != null) {
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroyContext(display, context);
+            context = EGL14.EGL_NO_CONTEXT;
+        }
+        if (surface != EGL14.EGL_NO_SURFACE && surface != null) {
+            EGL14.eglDestroySurface(display, surface);
+            surface = EGL14.EGL_NO_SURFACE;
+        }
+        EGL14.eglReleaseThread();
+    }
+
+    private void uploadLoop() {
+        while (true) {
+            byte[] data;
+            int width;
+            int height;
+            long timestamp;
+            int slot;
+            EGLSync releaseFence;
+            synchronized (lock) {
+                while (running && pendingData == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                data = pendingData;
+                width = pendingWidth;
+                height = pendingHeight;
+                timestamp = pendingTimestamp;
+                pendingData = null;
+
+                // Any slot that is neither on screen nor the newest finished upload
+                slot = 0;
+                while (slot == displaySlot || slot == readySlot) {
+                    slot++;
+                }
+                destroyFence(uploadFences, slot);
+                releaseFence = releaseFences[slot];
+                releaseFences[slot] = null;
+            }
+
+            if (releaseFence != null) {
+                EGL15.eglClientWaitSync(display, releaseFence, 0, RELEASE_WAIT_NS);
+                EGL15.eglDestroySync(display, releaseFence);
+            }
+            upload(slot, data, width, height, timestamp);
+        }
+    }
+
+    private void upload(int slot, byte[] data, int width, int height, long timestamp) {
+        Tracer.begin("TextureUploader.upload");
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[slot]);
+        ByteBuffer pixels = ByteBuffer.wrap(data, 0, width * height);
+        if (textureWidth[slot] != width || textureHeight[slot] != height) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, width, height, 0,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, pixels);
+            textureWidth[slot] = width;
+            textureHeight[slot] = height;
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, pixels);
+        }
+
+        EGLSync fence = null;
+        if (useFences) {
+            fence = EGL15.eglCreateSync(display, EGL15.EGL_SYNC_FENCE, FENCE_ATTRIBS, 0);
+            if (fence == EGL15.EGL_NO_SYNC) {
+                fence = null;
+            }
+            GLES20.glFlush();
+        }
+        if (fence == null) {
+            GLES20.glFinish();
+        }
+        Tracer.end();
+
+        UploadedFrame frame = new UploadedFrame(textures[slot], width, height, timestamp, clock.nanoTime());
+        synchronized (lock) {
+            if (!running) {
+                if (fence != null) {
+                    EGL15.eglDestroySync(display, fence);
+                }
+                return;
+            }
+            // An unconsumed older upload simply becomes free again
+            slotFrames[slot] = frame;
+            uploadFences[slot] = fence;
+            readySlot = slot;
+        }
+        if (listener != null) {
+            listener.onFrameUploaded();
+        }
+    }
+
+    private void destroyFence(EGLSync[] fences, int slot) {
+        if (fences[slot] != null) {
+            EGL15.eglDestroySync(display, fences[slot]);
+            fences[slot] = null;
+        }
+    }
+}
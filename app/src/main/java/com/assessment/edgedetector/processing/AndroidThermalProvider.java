@@ -0,0 +1,52 @@
+package com.assessment.edgedetector.processing;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Thermal and battery readings from PowerManager and BatteryManager
+ *
+ * Thermal status needs API 29 and headroom API 30; older devices report
+ * STATUS_NONE and NaN, and the policy then goes by battery alone.
+ */
+public class AndroidThermalProvider implements ThermalPolicy.Provider {
+    private final PowerManager powerManager;
+    private final BatteryManager batteryManager;
+
+    public AndroidThermalProvider(Context context) {
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+    }
+
+    @Override
+    public int getThermalStatus() {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return ThermalPolicy.STATUS_NONE;
+        }
+        return powerManager.getCurrentThermalStatus();
+    }
+
+    @Override
+    public float getThermalHeadroom(int forecastSeconds) {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return Float.NaN;
+        }
+        return powerManager.getThermalHeadroom(forecastSeconds);
+    }
+
+    @Override
+    public int getBatteryPercent() {
+        if (batteryManager == null) {
+            return -1;
+        }
+        int capacity = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+        return capacity >= 0 && capacity <= 100 ? capacity : -1;
+    }
+
+    @Override
+    public boolean isCharging() {
+        return batteryManager != null && batteryManager.isCharging();
+    }
+}
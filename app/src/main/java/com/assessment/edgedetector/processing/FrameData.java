@@ -0,0 +1,23 @@
+package com.assessment.edgedetector.processing;
+
+/**
+ * Single-channel frame in a heap array, as produced by edge processing or,
+ * in the unit tests, SyntheticFrameSource
+ */
+public final class FrameData {
+    public final byte[] data;
+    public final int width;
+    public final int height;
+    public final long timestampNs;
+
+    public FrameData(byte[] data, int width, int height, long timestampNs) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.timestampNs = timestampNs;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+}
@@ -0,0 +1,325 @@
+package com.assessment.edgedetector.processing;
+
+import android.util.Log;
+
+import com.assessment.edgedetector.reactive.RefCounted;
+import com.assessment.edgedetector.utils.NanoClock;
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.util.Locale;
+
+/**
+ * Deadline-aware frame scheduler
+ *
+ * Replaces thread-per-frame processing with a single worker and a one-frame
+ * pending slot. Each frame gets a deadline of its sensor timestamp plus a few
+ * display refresh periods; a frame that is still waiting when its deadline has
+ * passed is skipped before it reaches native code, and a newer frame replaces
+ * a pending one instead of queueing behind it. Skipped and late-completed
+ * frames are counted separately.
+ *
+ * Frames that are {@link RefCounted} are owned by the scheduler from submit()
+ * on: the caller hands over one reference, which the scheduler releases once
+ * the frame has been processed or dropped. Camera frames therefore reach the
+ * handler without being copied.
+ *
+ * The clock must be the one the sensor timestamps are based on. The unit
+ * tests pass a SimulatedClock, feed frames from a SyntheticFrameSource and
+ * call processNext() instead of start() for deterministic runs.
+ */
+public class FrameScheduler<T> {
+    private static final String TAG = "FrameScheduler";
+
+    public static final int DROP_STALE = 0;        // Deadline passed before processing started
+    public static final int DROP_SUPERSEDED = 1;   // Replaced by a newer frame while pending
+
+    private static final long DEFAULT_REFRESH_PERIOD_NS = 16_666_667L;
+    private static final int DEFAULT_DEADLINE_FRAMES = 3;
+
+    /**
+     * Does the actual work for a frame
+     */
+    public interface FrameHandler<T> {
+        /**
+         * @return true if the frame was processed successfully
+         */
+        boolean processFrame(T frame, int width, int height, long timestampNs);
+    }
+
+    /**
+     * Notified for every frame that is skipped without being processed
+     */
+    public interface DropListener {
+        void onFrameDropped(long timestampNs, int reason);
+    }
+
+    /**
+     * Immutable snapshot of the scheduler counters
+     */
+    public static class SchedulerStats {
+        public final long submitted;
+        public final long onTime;
+        public final long lateCompleted;
+        public final long skippedStale;
+        public final long superseded;
+        public final long failed;
+        public final long maxLatenessNs;
+
+        SchedulerStats(long submitted, long onTime, long lateCompleted, long skippedStale,
+                       long superseded, long failed, long maxLatenessNs) {
+            this.submitted = submitted;
+            this.onTime = onTime;
+            this.lateCompleted = lateCompleted;
+            this.skippedStale = skippedStale;
+            this.superseded = superseded;
+            this.failed = failed;
+            this.maxLatenessNs = maxLatenessNs;
+        }
+
+        public long getSkipped() {
+            return skippedStale + superseded;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "SchedulerStats{submitted=%d, onTime=%d, late=%d, skippedStale=%d, superseded=%d, "
+                    + "failed=%d, maxLateness=%.1fms}",
+                submitted, onTime, lateCompleted, skippedStale, superseded, failed, maxLatenessNs / 1e6);
+        }
+    }
+
+    private final NanoClock clock;
+    private final FrameHandler<T> handler;
+    private volatile DropListener dropListener;
+    private volatile long refreshPeriodNs = DEFAULT_REFRESH_PERIOD_NS;
+    private volatile int deadlineFrames = DEFAULT_DEADLINE_FRAMES;
+
+    // Pending slot, guarded by lock
+    private final Object lock = new Object();
+    private T pendingFrame;
+    private int pendingWidth;
+    private int pendingHeight;
+    private long pendingTimestamp;
+    private boolean hasPending = false;
+    private boolean running = false;
+    private Thread worker;
+
+    // Counters, guarded by lock
+    private long submitted = 0;
+    private long onTime = 0;
+    private long lateCompleted = 0;
+    private long skippedStale = 0;
+    private long superseded = 0;
+    private long failed = 0;
+    private long maxLatenessNs = 0;
+
+    public FrameScheduler(NanoClock clock, FrameHandler<T> handler) {
+        this.clock = clock;
+        this.handler = handler;
+    }
+
+    public void setDropListener(DropListener listener) {
+        this.dropListener = listener;
+    }
+
+    /**
+     * Set the display refresh rate the deadlines are derived from
+     */
+    public void setRefreshRate(float refreshRateHz) {
+        if (refreshRateHz > 0) {
+            refreshPeriodNs = (long) (1e9 / refreshRateHz);
+        }
+    }
+
+    /**
+     * Number of refresh periods after the sensor timestamp a frame may still start
+     */
+    public void setDeadlineFrames(int frames) {
+        deadlineFrames = Math.max(1, frames);
+    }
+
+    public long getDeadline(long timestampNs) {
+        return timestampNs + deadlineFrames * refreshPeriodNs;
+    }
+
+    /**
+     * Hand a frame to the scheduler; replaces any frame still waiting
+     * @param frame The frame, with a reference for the scheduler if it is RefCounted
+     */
+    public void submit(T frame, int width, int height, long timestampNs) {
+        long replaced = 0;
+        T replacedFrame = null;
+        boolean didReplace;
+        synchronized (lock) {
+            submitted++;
+            didReplace = hasPending;
+            if (didReplace) {
+                replaced = pendingTimestamp;
+                replacedFrame = pendingFrame;
+                superseded++;
+            }
+            pendingFrame = frame;
+            pendingWidth = width;
+            pendingHeight = height;
+            pendingTimestamp = timestampNs;
+            hasPending = true;
+            lock.notifyAll();
+        }
+        if (didReplace) {
+            release(replacedFrame);
+            notifyDropped(replaced, DROP_SUPERSEDED);
+        }
+    }
+
+    /**
+     * Start the worker thread
+     */
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            worker = new Thread(this::workerLoop, "FrameScheduler");
+            worker.start();
+        }
+        Log.d(TAG, "Scheduler started");
+    }
+
+    /**
+     * Stop the worker thread and drop any pending frame
+     */
+    public void stop() {
+        Thread thread;
+        T dropped;
+        synchronized (lock) {
+            running = false;
+            hasPending = false;
+            dropped = pendingFrame;
+            pendingFrame = null;
+            thread = worker;
+            worker = null;
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        release(dropped);
+    }
+
+    /**
+     * Take the pending frame, if any, and process or skip it on the calling thread
+     * @return true if a frame was taken
+     */
+    public boolean processNext() {
+        T frame;
+        int width;
+        int height;
+        long timestamp;
+        synchronized (lock) {
+            if (!hasPending) {
+                return false;
+            }
+            frame = pendingFrame;
+            width = pendingWidth;
+            height = pendingHeight;
+            timestamp = pendingTimestamp;
+            pendingFrame = null;
+            hasPending = false;
+        }
+        try {
+            runFrame(frame, width, height, timestamp);
+        } finally {
+            release(frame);
+        }
+        return true;
+    }
+
+    private void workerLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (running && !hasPending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            processNext();
+        }
+    }
+
+    private void runFrame(T frame, int width, int height, long timestamp) {
+        long deadline = getDeadline(timestamp);
+
+        if (clock.nanoTime() >= deadline) {
+            synchronized (lock) {
+                skippedStale++;
+            }
+            Tracer.instant("Scheduler.skipStale");
+            notifyDropped(timestamp, DROP_STALE);
+            return;
+        }
+
+        boolean success;
+        try {
+            success = handler.processFrame(frame, width, height, timestamp);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Frame handler failed", e);
+            success = false;
+        }
+
+        long lateness = clock.nanoTime() - deadline;
+        synchronized (lock) {
+            if (!success) {
+                failed++;
+            } else if (lateness > 0) {
+                lateCompleted++;
+                maxLatenessNs = Math.max(maxLatenessNs, lateness);
+            } else {
+                onTime++;
+            }
+        }
+    }
+
+    private static void release(Object frame) {
+        if (frame instanceof RefCounted) {
+            ((RefCounted) frame).release();
+        }
+    }
+
+    private void notifyDropped(long timestamp, int reason) {
+        DropListener listener = dropListener;
+        if (listener != null) {
+            listener.onFrameDropped(timestamp, reason);
+        }
+    }
+
+    public SchedulerStats getStats() {
+        synchronized (lock) {
+            return new SchedulerStats(submitted, onTime, lateCompleted, skippedStale,
+                superseded, failed, maxLatenessNs);
+        }
+    }
+
+    public void reset() {
+        synchronized (lock) {
+            submitted = 0;
+            onTime = 0;
+            lateCompleted = 0;
+            skippedStale = 0;
+            superseded = 0;
+            failed = 0;
+            maxLatenessNs = 0;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.assessment.edgedetector.processing;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Motion-gated idle mode for static scenes
+ *
+ * Fed one motion score per captured frame (see NativeLib.detectMotionDirect).
+ * After the scene has been static for the configured timeout, the controller
+ * enters idle. In idle only one frame per idle interval is processed, and the
+ * listener is told so it can lower the capture rate. The first frame whose
+ * score reaches the motion threshold leaves idle and is processed itself, so
+ * full-rate processing resumes on the frame that showed the motion.
+ *
+ * All times come from the frame timestamps, so the controller runs unchanged
+ * against SyntheticFrameSource timestamps in the unit tests.
+ */
+public class IdleController {
+    private static final String TAG = "IdleController";
+
+    private static final long DEFAULT_STATIC_TIMEOUT_NS = 10_000_000_000L;
+    private static final long DEFAULT_IDLE_INTERVAL_NS = 500_000_000L;
+    private static final float DEFAULT_MOTION_THRESHOLD = 0.005f;
+
+    /**
+     * Told on the thread that fed the transitioning frame
+     */
+    public interface Listener {
+        void onIdleEntered(long timestampNs, long staticNs);
+        void onIdleExited(long timestampNs, long idleNs, float motionScore);
+    }
+
+    /**
+     * Immutable snapshot of the idle counters
+     */
+    public static class IdleStats {
+        public final boolean idle;
+        public final long entries;
+        public final long exits;
+        public final long totalIdleNs;
+        public final long framesSkipped;
+        public final long framesProcessed;
+
+        IdleStats(boolean idle, long entries, long exits, long totalIdleNs,
+                  long framesSkipped, long framesProcessed) {
+            this.idle = idle;
+            this.entries = entries;
+            this.exits = exits;
+            this.totalIdleNs = totalIdleNs;
+            this.framesSkipped = framesSkipped;
+            this.framesProcessed = framesProcessed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "IdleStats{%s, entries=%d, exits=%d, idleTime=%.1fs, processed=%d, skipped=%d}",
+                idle ? "idle" : "active", entries, exits, totalIdleNs / 1e9, framesProcessed, framesSkipped);
+        }
+    }
+
+    private volatile Listener listener;
+    private volatile long staticTimeoutNs = DEFAULT_STATIC_TIMEOUT_NS;
+    private volatile long idleIntervalNs = DEFAULT_IDLE_INTERVAL_NS;
+    private volatile float motionThreshold = DEFAULT_MOTION_THRESHOLD;
+    private volatile boolean enabled = true;
+
+    // State and counters, guarded by this
+    private boolean idle = false;
+    private boolean hasFrame = false;
+    private long lastMotionNs;
+    private long idleSinceNs;
+    private long lastProcessedNs;
+    private long lastFrameNs;
+    private long entries = 0;
+    private long exits = 0;
+    private long completedIdleNs = 0;
+    private long framesSkipped = 0;
+    private long framesProcessed = 0;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * How long the scene must stay static before idling
+     */
+    public void setStaticTimeoutMs(long timeoutMs) {
+        this.staticTimeoutNs = Math.max(0, timeoutMs) * 1_000_000L;
+    }
+
+    /**
+     * Processing period while idle (e.g. 500ms for 2 frames per second)
+     */
+    public void setIdleIntervalMs(long intervalMs) {
+        this.idleIntervalNs = Math.max(0, intervalMs) * 1_000_000L;
+    }
+
+    /**
+     * Changed-cell fraction at or above which a frame counts as motion
+     */
+    public void setMotionThreshold(float threshold) {
+        this.motionThreshold = threshold;
+    }
+
+    /**
+     * Disabling leaves idle immediately and processes every frame
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (this) {
+                if (idle) {
+                    exitIdle(lastFrameNs, 0f);
+                }
+                hasFrame = false;
+            }
+        }
+    }
+
+    /**
+     * Feed one captured frame
+     * @param motionScore Changed-cell fraction from the motion detector
+     * @param timestampNs Frame timestamp
+     * @return true if the frame should be processed
+     */
+    public boolean onFrame(float motionScore, long timestampNs) {
+        if (!enabled) {
+            return true;
+        }
+
+        synchronized (this) {
+            lastFrameNs = timestampNs;
+            if (!hasFrame || motionScore >= motionThreshold) {
+                hasFrame = true;
+                lastMotionNs = timestampNs;
+                if (idle) {
+                    exitIdle(timestampNs, motionScore);
+                }
+                framesProcessed++;
+                return true;
+            }
+
+            if (!idle) {
+                if (timestampNs - lastMotionNs >= staticTimeoutNs) {
+                    enterIdle(timestampNs);
+                }
+                framesProcessed++;
+                return true;
+            }
+
+            if (timestampNs - lastProcessedNs >= idleIntervalNs) {
+                lastProcessedNs = timestampNs;
+                framesProcessed++;
+                return true;
+            }
+            framesSkipped++;
+            return false;
+        }
+    }
+
+    public synchronized boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Counters, including the idle period in progress up to the last frame
+     */
+    public synchronized IdleStats getStats() {
+        long totalIdleNs = completedIdleNs + (idle ? lastFrameNs - idleSinceNs : 0);
+        return new IdleStats(idle, entries, exits, totalIdleNs, framesSkipped, framesProcessed);
+    }
+
+    public synchronized void reset() {
+        if (idle) {
+            exitIdle(lastFrameNs, 0f);
+        }
+        hasFrame = false;
+        entries = 0;
+        exits = 0;
+        completedIdleNs = 0;
+        framesSkipped = 0;
+        framesProcessed = 0;
+    }
+
+    private void enterIdle(long timestampNs) {
+        idle = true;
+        idleSinceNs = timestampNs;
+        lastProcessedNs = timestampNs;
+        entries++;
+        long staticNs = timestampNs - lastMotionNs;
+        Log.i(TAG, String.format(Locale.US, "Entering idle after %.1fs without motion", staticNs / 1e9));
+        Listener current = listener;
+        if (current != null) {
+            current.onIdleEntered(timestampNs, staticNs);
+        }
+    }
+
+    private void exitIdle(long timestampNs, float motionScore) {
+        idle = false;
+        long idleNs = timestampNs - idleSinceNs;
+        completedIdleNs += idleNs;
+        exits++;
+        Log.i(TAG, String.format(Locale.US, "Leaving idle after %.1fs (motion %.3f)", idleNs / 1e9, motionScore));
+        Listener current = listener;
+        if (current != null) {
+            current.onIdleExited(timestampNs, idleNs, motionScore);
+        }
+    }
+}
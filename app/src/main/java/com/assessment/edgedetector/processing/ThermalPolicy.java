@@ -0,0 +1,264 @@
+package com.assessment.edgedetector.processing;
+
+import android.util.Log;
+
+import com.assessment.edgedetector.utils.PerformanceMonitor;
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.util.Locale;
+
+/**
+ * Thermal- and battery-aware throttling of the processing pipeline
+ *
+ * Reads thermal status, forecast headroom and battery state from a pluggable
+ * Provider and picks a throttle level on the PerformanceMonitor quality scale:
+ * 4 runs unthrottled and 1 is the most conservative. The chosen level caps the
+ * monitor's quality level. Each level maps to Settings (analysis downscale,
+ * OpenCV worker threads, processing rate) that the Listener applies.
+ *
+ * Headroom is read as a forecast, so the pipeline backs off before the OS
+ * starts throttling. Steps down happen at once. Steps back up go one level at
+ * a time, only after conditions have allowed it for the restore hold time,
+ * and with a headroom margin, so the level does not oscillate around a threshold.
+ *
+ * Time is passed in by the caller, so the unit tests run the policy
+ * deterministically on the JVM with FakeThermalProvider.
+ */
+public class ThermalPolicy {
+    private static final String TAG = "ThermalPolicy";
+
+    public static final int LEVEL_MIN = 1;
+    public static final int LEVEL_MAX = 4;
+
+    // Same values as android.os.PowerManager.THERMAL_STATUS_*
+    public static final int STATUS_NONE = 0;
+    public static final int STATUS_LIGHT = 1;
+    public static final int STATUS_MODERATE = 2;
+    public static final int STATUS_SEVERE = 3;
+
+    // Forecast headroom (1.0 = the point where the OS throttles) at which each level starts
+    private static final float HEADROOM_LEVEL_3 = 0.75f;
+    private static final float HEADROOM_LEVEL_2 = 0.85f;
+    private static final float HEADROOM_LEVEL_1 = 0.95f;
+    private static final float HEADROOM_RESTORE_MARGIN = 0.05f;
+
+    private static final int BATTERY_LOW_PERCENT = 15;
+    private static final int BATTERY_CRITICAL_PERCENT = 5;
+
+    private static final int DEFAULT_FORECAST_SECONDS = 10;
+    private static final long DEFAULT_RESTORE_HOLD_NS = 15_000_000_000L;
+    // The platform rate-limits headroom queries to about one per second
+    private static final long MIN_EVALUATE_INTERVAL_NS = 1_000_000_000L;
+
+    /**
+     * Source of thermal and battery readings
+     */
+    public interface Provider {
+        /**
+         * One of the STATUS_* values (PowerManager thermal status scale)
+         */
+        int getThermalStatus();
+
+        /**
+         * Forecast headroom in forecastSeconds; 1.0 means throttling. NaN if unsupported.
+         */
+        float getThermalHeadroom(int forecastSeconds);
+
+        /**
+         * Charge level 0-100, or -1 if unknown
+         */
+        int getBatteryPercent();
+
+        boolean isCharging();
+    }
+
+    /**
+     * Pipeline knobs for one level
+     */
+    public static class Settings {
+        public final int analysisDivisor;        // Downscale factor for edge detection
+        public final int workerThreads;          // OpenCV threads, 0 for the default
+        public final long minFrameIntervalNs;    // Shortest gap between processed frames, 0 for none
+
+        Settings(int analysisDivisor, int workerThreads, long minFrameIntervalNs) {
+            this.analysisDivisor = analysisDivisor;
+            this.workerThreads = workerThreads;
+            this.minFrameIntervalNs = minFrameIntervalNs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Settings{divisor=%d, threads=%s, maxFps=%s}",
+                analysisDivisor, workerThreads > 0 ? String.valueOf(workerThreads) : "default",
+                minFrameIntervalNs > 0 ? String.format(Locale.US, "%.0f", 1e9 / minFrameIntervalNs) : "unlimited");
+        }
+    }
+
+    private static final Settings[] LEVEL_SETTINGS = {
+        new Settings(4, 1, 100_000_000L),   // Level 1: quarter resolution, 10 fps
+        new Settings(2, 2, 50_000_000L),    // Level 2: half resolution, 20 fps
+        new Settings(1, 0, 40_000_000L),    // Level 3: full resolution, 25 fps
+        new Settings(1, 0, 0),              // Level 4: unthrottled
+    };
+
+    /**
+     * Told on the evaluating thread when the level changes
+     */
+    public interface Listener {
+        void onThrottleLevelChanged(int level, Settings settings, String reason);
+    }
+
+    private final Provider provider;
+    private final PerformanceMonitor monitor;
+    private volatile Listener listener;
+    private volatile int forecastSeconds = DEFAULT_FORECAST_SECONDS;
+    private volatile long restoreHoldNs = DEFAULT_RESTORE_HOLD_NS;
+
+    // Guarded by this
+    private int level = LEVEL_MAX;
+    private boolean evaluated = false;
+    private long lastEvaluateNs;
+    private long restoreSinceNs = -1;
+    private float lastHeadroom = Float.NaN;
+    private int lastStatus = STATUS_NONE;
+    private int lastBattery = -1;
+    private long stepsDown = 0;
+    private long stepsUp = 0;
+
+    /**
+     * @param monitor Gets the level as its quality ceiling; may be null
+     */
+    public ThermalPolicy(Provider provider, PerformanceMonitor monitor) {
+        this.provider = provider;
+        this.monitor = monitor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * How far ahead headroom is forecast
+     */
+    public void setForecastSeconds(int seconds) {
+        this.forecastSeconds = Math.max(0, seconds);
+    }
+
+    /**
+     * How long conditions must allow a higher level before stepping up
+     */
+    public void setRestoreHoldMs(long holdMs) {
+        this.restoreHoldNs = Math.max(0, holdMs) * 1_000_000L;
+    }
+
+    public static Settings getSettings(int level) {
+        return LEVEL_SETTINGS[clampLevel(level) - 1];
+    }
+
+    /**
+     * Read the provider and update the level; calls within a second of the
+     * previous evaluation return the current level without reading
+     * @param nowNs Monotonic time
+     * @return The level in effect
+     */
+    public int evaluate(long nowNs) {
+        int newLevel;
+        String reason;
+        synchronized (this) {
+            if (evaluated && nowNs - lastEvaluateNs < MIN_EVALUATE_INTERVAL_NS) {
+                return level;
+            }
+            evaluated = true;
+            lastEvaluateNs = nowNs;
+
+            lastStatus = provider.getThermalStatus();
+            lastHeadroom = provider.getThermalHeadroom(forecastSeconds);
+            lastBattery = provider.getBatteryPercent();
+            boolean charging = provider.isCharging();
+
+            int target = targetLevel(lastStatus, lastHeadroom, lastBattery, charging, 0f);
+            if (target < level) {
+                newLevel = target;
+                restoreSinceNs = -1;
+                stepsDown++;
+            } else if (target > level
+                    && targetLevel(lastStatus, lastHeadroom, lastBattery, charging, HEADROOM_RESTORE_MARGIN) > level) {
+                if (restoreSinceNs < 0) {
+                    restoreSinceNs = nowNs;
+                }
+                if (nowNs - restoreSinceNs < restoreHoldNs) {
+                    return level;
+                }
+                newLevel = level + 1;
+                // The next step needs its own hold
+                restoreSinceNs = nowNs;
+                stepsUp++;
+            } else {
+                restoreSinceNs = -1;
+                return level;
+            }
+
+            reason = String.format(Locale.US, "status=%d, headroom=%.2f, battery=%d%%%s",
+                lastStatus, lastHeadroom, lastBattery, charging ? " charging" : "");
+            Log.i(TAG, "Throttle level " + level + " -> " + newLevel + " (" + reason + ")");
+            level = newLevel;
+        }
+
+        Tracer.counter("throttleLevel", newLevel);
+        if (monitor != null) {
+            monitor.setQualityCeiling(newLevel);
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onThrottleLevelChanged(newLevel, getSettings(newLevel), reason);
+        }
+        return newLevel;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+            "ThermalPolicy{level=%d, status=%d, headroom=%.2f, battery=%d%%, down=%d, up=%d}",
+            level, lastStatus, lastHeadroom, lastBattery, stepsDown, stepsUp);
+    }
+
+    // Lowest level any reading asks for; margin lowers the headroom thresholds for restoring
+    private static int targetLevel(int status, float headroom, int battery, boolean charging, float margin) {
+        int target = LEVEL_MAX;
+
+        if (status >= STATUS_SEVERE) {
+            target = 1;
+        } else if (status == STATUS_MODERATE) {
+            target = 2;
+        } else if (status == STATUS_LIGHT) {
+            target = 3;
+        }
+
+        if (!Float.isNaN(headroom)) {
+            if (headroom >= HEADROOM_LEVEL_1 - margin) {
+                target = Math.min(target, 1);
+            } else if (headroom >= HEADROOM_LEVEL_2 - margin) {
+                target = Math.min(target, 2);
+            } else if (headroom >= HEADROOM_LEVEL_3 - margin) {
+                target = Math.min(target, 3);
+            }
+        }
+
+        if (!charging && battery >= 0) {
+            if (battery <= BATTERY_CRITICAL_PERCENT) {
+                target = Math.min(target, 1);
+            } else if (battery <= BATTERY_LOW_PERCENT) {
+                target = Math.min(target, 2);
+            }
+        }
+        return target;
+    }
+
+    private static int clampLevel(int level) {
+        return Math.max(LEVEL_MIN, Math.min(LEVEL_MAX, level));
+    }
+}
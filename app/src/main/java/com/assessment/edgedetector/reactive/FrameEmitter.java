@@ -0,0 +1,188 @@
+package com.assessment.edgedetector.reactive;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot source that pushes items to its subscribers as far as they have demand
+ *
+ * The producer checks hasDemand() before preparing an item and calls emit()
+ * with it. Each subscriber with outstanding demand gets the item; the others
+ * miss it. An item nobody asked for is counted and not delivered, so a
+ * producer that checks first never pays for it.
+ */
+public class FrameEmitter<T> extends FrameStream<T> {
+    private static final String TAG = "FrameEmitter";
+
+    private final List<Slot<T>> slots = new CopyOnWriteArrayList<>();
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong undemanded = new AtomicLong();
+    private volatile boolean terminated = false;
+    private volatile Throwable terminalError;
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Slot<T> slot = new Slot<>(this, subscriber);
+        slots.add(slot);
+        subscriber.onSubscribe(slot);
+        if (terminated && slots.remove(slot)) {
+            // Subscribed after the end; tell it right away
+            signalTerminal(slot);
+        }
+    }
+
+    /**
+     * Whether any subscriber has outstanding demand. Producers call this
+     * before preparing an item.
+     */
+    public boolean hasDemand() {
+        for (Slot<T> slot : slots) {
+            if (slot.requested.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasSubscribers() {
+        return !slots.isEmpty();
+    }
+
+    /**
+     * Deliver an item to every subscriber with outstanding demand, on the
+     * calling thread. The item only has to stay valid until this returns.
+     * @return Number of subscribers that received it
+     */
+    public int emit(T item) {
+        if (terminated) {
+            return 0;
+        }
+        emitted.incrementAndGet();
+        int count = 0;
+        for (Slot<T> slot : slots) {
+            if (!slot.tryConsume()) {
+                continue;
+            }
+            try {
+                slot.subscriber.onNext(item);
+                count++;
+            } catch (RuntimeException e) {
+                // A subscriber that throws is dropped so it cannot stall the source
+                Log.e(TAG, "Subscriber failed, cancelling it", e);
+                slot.cancel();
+            }
+        }
+        if (count == 0) {
+            undemanded.incrementAndGet();
+        }
+        delivered.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Count an item the producer did not prepare because hasDemand() was false
+     */
+    public void skip() {
+        emitted.incrementAndGet();
+        undemanded.incrementAndGet();
+    }
+
+    /**
+     * End the stream; current subscribers get onComplete
+     */
+    public void complete() {
+        terminate(null);
+    }
+
+    /**
+     * End the stream with an error
+     */
+    public void error(Throwable error) {
+        terminate(error);
+    }
+
+    /**
+     * Items emitted with no subscriber demand
+     */
+    public long getUndemandedCount() {
+        return undemanded.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "FrameEmitter{subscribers=%d, emitted=%d, delivered=%d, undemanded=%d}",
+            slots.size(), emitted.get(), delivered.get(), undemanded.get());
+    }
+
+    private void terminate(Throwable error) {
+        if (terminated) {
+            return;
+        }
+        terminalError = error;
+        terminated = true;
+        for (Slot<T> slot : slots) {
+            if (slots.remove(slot)) {
+                signalTerminal(slot);
+            }
+        }
+    }
+
+    private void signalTerminal(Slot<T> slot) {
+        Throwable error = terminalError;
+        if (error != null) {
+            slot.subscriber.onError(error);
+        } else {
+            slot.subscriber.onComplete();
+        }
+    }
+
+    private static final class Slot<T> implements Subscription {
+        final FrameEmitter<T> emitter;
+        final Subscriber<? super T> subscriber;
+        final AtomicLong requested = new AtomicLong();
+
+        Slot(FrameEmitter<T> emitter, Subscriber<? super T> subscriber) {
+            this.emitter = emitter;
+            this.subscriber = subscriber;
+        }
+
+        boolean tryConsume() {
+            long current;
+            do {
+                current = requested.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (current == Long.MAX_VALUE) {
+                    return true;
+                }
+            } while (!requested.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                Log.w(TAG, "Ignoring request for " + n + " items");
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+        }
+
+        @Override
+        public void cancel() {
+            requested.set(0);
+            emitter.slots.remove(this);
+        }
+    }
+}
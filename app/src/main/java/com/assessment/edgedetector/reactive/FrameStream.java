@@ -0,0 +1,186 @@
+package com.assessment.edgedetector.reactive;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Push stream of frames with demand signalling
+ *
+ * Modelled on Reactive Streams: a subscriber receives a Subscription, asks
+ * for n items with request(n), and is sent at most that many. Demand travels
+ * back to the source. A FrameEmitter with no outstanding demand drops the
+ * item before the source does any work for it, so the camera does not copy
+ * frames that nobody requested.
+ *
+ * Items are only valid during onNext. Operators that hold items across calls
+ * retain and release them when they are {@link RefCounted}.
+ *
+ * Delivery is synchronous on whichever thread emitted the item or called
+ * request(), so the whole pipeline runs unchanged on the JVM:
+ * <pre>
+ *  FrameEmitter&lt;Frame&gt; source = new FrameEmitter&lt;&gt;();
+ *  source.sample(100_000_000L, Frame::getTimestampNs)
+ *        .batch(4, 1_000_000_000L, Frame::getTimestampNs)
+ *        .subscribe(frames -&gt; analyse(frames));
+ *  source.emit(frame);
+ * </pre>
+ */
+public abstract class FrameStream<T> {
+    private static final String TAG = "FrameStream";
+
+    /**
+     * Receiver of stream items. onSubscribe comes first, then up to the
+     * requested number of onNext calls, then at most one of onComplete or onError.
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+        void onNext(T item);
+        void onError(Throwable error);
+        void onComplete();
+    }
+
+    /**
+     * Link between one subscriber and its upstream
+     */
+    public interface Subscription {
+        /**
+         * Ask for n more items; demand accumulates, Long.MAX_VALUE means unbounded
+         */
+        void request(long n);
+
+        /**
+         * Stop delivery; items already held for this subscriber are released
+         */
+        void cancel();
+    }
+
+    public abstract void subscribe(Subscriber<? super T> subscriber);
+
+    /**
+     * Subscribe a plain callback that requests one item at a time: the next
+     * item is requested only after the callback returns. On a demand-aware
+     * source this already means latest-only.
+     * @return The subscription, for cancelling
+     */
+    public Subscription subscribe(Consumer<? super T> consumer) {
+        PullSubscriber<T> subscriber = new PullSubscriber<>(consumer);
+        subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Keep only the latest item while the subscriber is busy. Requests
+     * everything upstream, so use it after sources that cannot slow down.
+     */
+    public FrameStream<T> conflate() {
+        return lift(Operators.Conflate::new);
+    }
+
+    /**
+     * Pass the first item of each period of item time
+     * @param periodNs Period length (100ms for 10 Hz)
+     * @param timestamp Extracts an item's timestamp in nanoseconds
+     */
+    public FrameStream<T> sample(long periodNs, ToLongFunction<? super T> timestamp) {
+        return lift(downstream -> new Operators.Sample<>(downstream, periodNs, timestamp));
+    }
+
+    /**
+     * Group items into lists of up to size items. A batch also closes when an
+     * item arrives windowNs or more after the batch's first item; that item
+     * starts the next batch. A partial batch is flushed on completion.
+     */
+    public FrameStream<List<T>> batch(int size, long windowNs, ToLongFunction<? super T> timestamp) {
+        FrameStream<T> upstream = this;
+        return new FrameStream<List<T>>() {
+            @Override
+            public void subscribe(Subscriber<? super List<T>> subscriber) {
+                upstream.subscribe(new Operators.Batch<>(subscriber, size, windowNs, timestamp));
+            }
+        };
+    }
+
+    /**
+     * Request up to capacity items ahead of the subscriber and queue them.
+     * Each delivered item requests one more, so a demand-aware source never
+     * produces more than capacity items that are not yet consumed.
+     */
+    public FrameStream<T> buffer(int capacity) {
+        return lift(downstream -> new Operators.Buffer<>(downstream, capacity));
+    }
+
+    private interface Lift<T> {
+        Subscriber<T> apply(Subscriber<? super T> downstream);
+    }
+
+    private FrameStream<T> lift(Lift<T> operator) {
+        FrameStream<T> upstream = this;
+        return new FrameStream<T>() {
+            @Override
+            public void subscribe(Subscriber<? super T> subscriber) {
+                upstream.subscribe(operator.apply(subscriber));
+            }
+        };
+    }
+
+    private static final class PullSubscriber<T> implements Subscriber<T>, Subscription {
+        private final Consumer<? super T> consumer;
+        private volatile Subscription upstream;
+        private volatile boolean cancelled = false;
+
+        PullSubscriber(Consumer<? super T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            try {
+                consumer.accept(item);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Stream consumer failed", e);
+            }
+            if (!cancelled) {
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            Log.e(TAG, "Stream failed", error);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void request(long n) {
+            Subscription subscription = upstream;
+            if (subscription != null) {
+                subscription.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Subscription subscription = upstream;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package com.assessment.edgedetector.reactive;
+
+import com.assessment.edgedetector.reactive.FrameStream.Subscriber;
+import com.assessment.edgedetector.reactive.FrameStream.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Operator implementations behind the FrameStream methods
+ */
+final class Operators {
+    private Operators() {
+    }
+
+    static void retain(Object item) {
+        if (item instanceof RefCounted) {
+            ((RefCounted) item).retain();
+        }
+    }
+
+    static void release(Object item) {
+        if (item instanceof RefCounted) {
+            ((RefCounted) item).release();
+        }
+    }
+
+    static long addDemand(long current, long n) {
+        long sum = current + n;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Operator that holds items and delivers them from a drain loop, either on
+     * the upstream thread or on the thread that requested more. Delivery happens
+     * outside the lock; only one thread drains at a time and a request or item
+     * arriving mid-drain makes that thread loop again.
+     */
+    abstract static class Queued<T, R> implements Subscriber<T>, Subscription {
+        final Subscriber<? super R> downstream;
+        Subscription upstream;
+
+        // Guarded by this
+        long requested = 0;
+        boolean cancelled = false;
+        boolean done = false;
+        Throwable error;
+        private boolean draining = false;
+        private boolean missed = false;
+        private boolean terminated = false;
+
+        Queued(Subscriber<? super R> downstream) {
+            this.downstream = downstream;
+        }
+
+        /**
+         * Next deliverable item, or null. Called with the lock held.
+         */
+        abstract R poll();
+
+        /**
+         * Whether anything is still held, including partial batches. Called with the lock held.
+         */
+        abstract boolean isEmpty();
+
+        /**
+         * Drop everything held. Called with the lock held.
+         */
+        abstract void clear();
+
+        /**
+         * Called after downstream.onNext returns for an item from poll()
+         */
+        abstract void onDelivered(R item);
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            synchronized (this) {
+                upstream = subscription;
+            }
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            synchronized (this) {
+                error = e;
+                done = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                done = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            synchronized (this) {
+                requested = addDemand(requested, n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Subscription subscription;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                if (!draining) {
+                    clear();
+                }
+                subscription = upstream;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        final void drain() {
+            synchronized (this) {
+                if (draining) {
+                    missed = true;
+                    return;
+                }
+                draining = true;
+            }
+            for (;;) {
+                R item = null;
+                boolean terminate = false;
+                synchronized (this) {
+                    if (cancelled) {
+                        clear();
+                        draining = false;
+                        return;
+                    }
+                    if (requested > 0) {
+                        item = poll();
+                        if (item != null && requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    }
+                    if (item == null) {
+                        if (done && !terminated && isEmpty()) {
+                            terminated = true;
+                            terminate = true;
+                        } else if (!missed) {
+                            draining = false;
+                            return;
+                        }
+                        missed = false;
+                    }
+                }
+                if (item != null) {
+                    try {
+                        downstream.onNext(item);
+                    } finally {
+                        onDelivered(item);
+                    }
+                } else if (terminate) {
+                    if (error != null) {
+                        downstream.onError(error);
+                    } else {
+                        downstream.onComplete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Latest-only slot
+     */
+    static final class Conflate<T> extends Queued<T, T> {
+        private T latest;
+
+        Conflate(Subscriber<? super T> downstream) {
+            super(downstream);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            super.onSubscribe(subscription);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            retain(item);
+            T previous;
+            synchronized (this) {
+                if (cancelled) {
+                    previous = item;
+                } else {
+                    previous = latest;
+                    latest = item;
+                }
+            }
+            release(previous);
+            drain();
+        }
+
+        @Override
+        T poll() {
+            T item = latest;
+            latest = null;
+            return item;
+        }
+
+        @Override
+        boolean isEmpty() {
+            return latest == null;
+        }
+
+        @Override
+        void clear() {
+            release(poll());
+        }
+
+        @Override
+        void onDelivered(T item) {
+            release(item);
+        }
+    }
+
+    /**
+     * Prefetching bounded queue
+     */
+    static final class Buffer<T> extends Queued<T, T> {
+        private final int capacity;
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+
+        Buffer(Subscriber<? super T> downstream, int capacity) {
+            super(downstream);
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            super.onSubscribe(subscription);
+            subscription.request(capacity);
+        }
+
+        @Override
+        public void onNext(T item) {
+            retain(item);
+            T overflow = null;
+            synchronized (this) {
+                if (cancelled) {
+                    overflow = item;
+                } else {
+                    // Only reached if upstream ignores demand; keep the newest
+                    if (queue.size() == capacity) {
+                        overflow = queue.poll();
+                    }
+                    queue.add(item);
+                }
+            }
+            release(overflow);
+            drain();
+        }
+
+        @Override
+        T poll() {
+            return queue.poll();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        @Override
+        void clear() {
+            T item;
+            while ((item = queue.poll()) != null) {
+                release(item);
+            }
+        }
+
+        @Override
+        void onDelivered(T item) {
+            release(item);
+            upstream.request(1);
+        }
+    }
+
+    /**
+     * Count- and time-windowed batches
+     */
+    static final class Batch<T> extends Queued<T, List<T>> {
+        private final int size;
+        private final long windowNs;
+        private final ToLongFunction<? super T> timestamp;
+        private final ArrayDeque<List<T>> ready = new ArrayDeque<>();
+        private List<T> current;
+        private long windowStartNs;
+
+        Batch(Subscriber<? super List<T>> downstream, int size, long windowNs,
+              ToLongFunction<? super T> timestamp) {
+            super(downstream);
+            this.size = Math.max(1, size);
+            this.windowNs = windowNs;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            // Each batch needs up to size items; short windows leave the rest for later batches
+            long items = n > Long.MAX_VALUE / size ? Long.MAX_VALUE : n * size;
+            upstream.request(items);
+            super.request(n);
+        }
+
+        @Override
+        public void onNext(T item) {
+            retain(item);
+            boolean drop;
+            synchronized (this) {
+                drop = cancelled;
+                if (!drop) {
+                    long ts = timestamp.applyAsLong(item);
+                    if (current != null && ts - windowStartNs >= windowNs) {
+                        ready.add(current);
+                        current = null;
+                    }
+                    if (current == null) {
+                        current = new ArrayList<>(size);
+                        windowStartNs = ts;
+                    }
+                    current.add(item);
+                    if (current.size() == size) {
+                        ready.add(current);
+                        current = null;
+                    }
+                }
+            }
+            if (drop) {
+                release(item);
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                if (current != null) {
+                    ready.add(current);
+                    current = null;
+                }
+            }
+            super.onComplete();
+        }
+
+        @Override
+        List<T> poll() {
+            return ready.poll();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return ready.isEmpty() && current == null;
+        }
+
+        @Override
+        void clear() {
+            if (current != null) {
+                ready.add(current);
+                current = null;
+            }
+            List<T> batch;
+            while ((batch = ready.poll()) != null) {
+                onDelivered(batch);
+            }
+        }
+
+        @Override
+        void onDelivered(List<T> batch) {
+            for (T item : batch) {
+                release(item);
+            }
+        }
+    }
+
+    /**
+     * Time-based thinning; holds nothing
+     */
+    static final class Sample<T> implements Subscriber<T>, Subscription {
+        private final Subscriber<? super T> downstream;
+        private final long periodNs;
+        private final ToLongFunction<? super T> timestamp;
+        private Subscription upstream;
+        private boolean hasLast = false;
+        private long lastPeriod;
+
+        Sample(Subscriber<? super T> downstream, long periodNs, ToLongFunction<? super T> timestamp) {
+            this.downstream = downstream;
+            this.periodNs = Math.max(1, periodNs);
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            // First item of each fixed period passes, so 30 fps sampled at 100ms gives 10 Hz, not 7.5
+            long period = Math.floorDiv(timestamp.applyAsLong(item), periodNs);
+            boolean pass;
+            synchronized (this) {
+                pass = !hasLast || period > lastPeriod;
+                if (pass) {
+                    hasLast = true;
+                    lastPeriod = period;
+                }
+            }
+            if (pass) {
+                downstream.onNext(item);
+            } else {
+                // The dropped item used up one unit of demand; ask for its replacement
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            downstream.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+    }
+}
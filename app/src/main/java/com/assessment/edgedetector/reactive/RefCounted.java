@@ -0,0 +1,20 @@
+package com.assessment.edgedetector.reactive;
+
+/**
+ * Item whose backing memory is shared and reference counted
+ *
+ * Stream items are only valid for the duration of onNext. Operators that keep
+ * an item past that call (conflate, buffer, batch) retain it while they hold
+ * it and release it once it has been delivered or dropped.
+ */
+public interface RefCounted {
+    /**
+     * Take an extra reference
+     */
+    RefCounted retain();
+
+    /**
+     * Drop a reference
+     */
+    void release();
+}
@@ -0,0 +1,421 @@
+package com.assessment.edgedetector.stream;
+
+import android.util.Log;
+
+import com.assessment.edgedetector.codec.EdgeFrameDecoder;
+import com.assessment.edgedetector.utils.PerformanceMonitor;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded WebSocket server that pushes processed frames and performance stats
+ * to connected web viewers.
+ *
+ * Each published frame is encoded exactly once into a ready-to-send WebSocket
+ * message that is shared by every client. Clients hold at most one pending frame:
+ * if a client has not finished sending the previous frame when a new one arrives,
+ * the older pending frame is dropped rather than queued.
+ *
+ * Delta-coded frames depend on their keyframe, so a pending keyframe is only ever
+ * replaced by a newer keyframe, and newly connected viewers first receive the most
+ * recent keyframe.
+ *
+ * Viewers are not authenticated, so by default the server only listens on the
+ * loopback interface and is reached through {@code adb forward}. Listening on
+ * every interface, for viewers on the LAN, has to be asked for explicitly.
+ */
+public class FrameStreamServer {
+    private static final String TAG = "FrameStreamServer";
+
+    public static final int DEFAULT_PORT = 8765;
+
+    private static final int SOCKET_SEND_BUFFER = 256 * 1024;
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final CopyOnWriteArrayList<ClientConnection> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger frameSequence = new AtomicInteger(0);
+    private final AtomicLong framesPublished = new AtomicLong(0);
+    private final AtomicLong framesDropped = new AtomicLong(0);
+
+    // Guards the cached keyframe together with the client list, so a viewer
+    // registering mid-broadcast gets either the replay or the live frame
+    private final Object broadcastLock = new Object();
+    private volatile byte[] lastKeyframeMessage;
+    private volatile ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    public FrameStreamServer() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * Server on the loopback interface only
+     */
+    public FrameStreamServer(int port) {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param bindAddress Interface to listen on; null for all interfaces
+     */
+    public FrameStreamServer(InetAddress bindAddress, int port) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+    }
+
+    /**
+     * Start listening. Safe to call more than once.
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(bindAddress, port));
+        serverSocket = socket;
+
+        acceptThread = new Thread(this::acceptLoop, "FrameStreamAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Log.i(TAG, "Frame stream server listening on "
+            + (bindAddress != null ? bindAddress.getHostAddress() : "all interfaces") + ", port " + getPort());
+    }
+
+    /**
+     * Stop accepting connections and disconnect all viewers
+     */
+    public synchronized void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing server socket", e);
+            }
+        }
+
+        for (ClientConnection client : clients) {
+            client.close();
+        }
+        synchronized (broadcastLock) {
+            clients.clear();
+            lastKeyframeMessage = null;
+        }
+
+        if (acceptThread != null) {
+            try {
+                acceptThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            acceptThread = null;
+        }
+
+        Log.i(TAG, "Frame stream server stopped");
+    }
+
+    /**
+     * Port actually bound (useful when constructed with port 0)
+     */
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : port;
+    }
+
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getFramesPublished() {
+        return framesPublished.get();
+    }
+
+    /**
+     * Frames discarded because a viewer was still sending an earlier frame
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * Publish a processed 0/255 edge map. The map is bit-packed once and the
+     * resulting message is shared by all viewers.
+     */
+    public void publishEdgeFrame(byte[] edges, int width, int height, long timestampNs) {
+        if (clients.isEmpty() || edges == null) {
+            return;
+        }
+
+        int pixelCount = width * height;
+        if (edges.length < pixelCount) {
+            Log.w(TAG, "Edge map too small for " + width + "x" + height);
+            return;
+        }
+
+        int messageLength = StreamProtocol.HEADER_SIZE + StreamProtocol.bitPackedSize(width, height);
+        byte[] message = new byte[WebSocketCodec.frameHeaderSize(messageLength) + messageLength];
+        int offset = WebSocketCodec.writeFrameHeader(message, WebSocketCodec.OPCODE_BINARY, messageLength);
+        offset = StreamProtocol.writeHeader(message, offset, StreamProtocol.TYPE_FRAME,
+            StreamProtocol.ENCODING_BITPACKED, width, height, frameSequence.incrementAndGet(), timestampNs);
+        StreamProtocol.packEdgeMap(edges, pixelCount, message, offset);
+
+        broadcastFrame(message, true);
+    }
+
+    /**
+     * Publish an edge map already encoded by NativeLib.encodeEdgeFrame. Frames must be
+     * published in the order they were encoded.
+     */
+    public void publishEncodedEdgeFrame(byte[] encoded, int length, int width, int height, long timestampNs) {
+        if (clients.isEmpty() || encoded == null || length < EdgeFrameDecoder.HEADER_SIZE) {
+            return;
+        }
+
+        int messageLength = StreamProtocol.HEADER_SIZE + length;
+        byte[] message = new byte[WebSocketCodec.frameHeaderSize(messageLength) + messageLength];
+        int offset = WebSocketCodec.writeFrameHeader(message, WebSocketCodec.OPCODE_BINARY, messageLength);
+        offset = StreamProtocol.writeHeader(message, offset, StreamProtocol.TYPE_FRAME,
+            StreamProtocol.ENCODING_DELTA_RLE, width, height, frameSequence.incrementAndGet(), timestampNs);
+        System.arraycopy(encoded, 0, message, offset, length);
+
+        broadcastFrame(message, EdgeFrameDecoder.isKeyframe(encoded, 0, length));
+    }
+
+    private void broadcastFrame(byte[] message, boolean keyframe) {
+        framesPublished.incrementAndGet();
+        synchronized (broadcastLock) {
+            if (keyframe) {
+                lastKeyframeMessage = message;
+            }
+            for (ClientConnection client : clients) {
+                client.offerFrame(message, keyframe);
+            }
+        }
+    }
+
+    /**
+     * Publish the current PerformanceMonitor figures to all viewers
+     */
+    public void publishStats(PerformanceMonitor monitor, long timestampNs) {
+        if (clients.isEmpty() || monitor == null) {
+            return;
+        }
+
+        int messageLength = StreamProtocol.HEADER_SIZE + StreamProtocol.STATS_PAYLOAD_SIZE;
+        byte[] message = new byte[WebSocketCodec.frameHeaderSize(messageLength) + messageLength];
+        int offset = WebSocketCodec.writeFrameHeader(message, WebSocketCodec.OPCODE_BINARY, messageLength);
+        offset = StreamProtocol.writeHeader(message, offset, StreamProtocol.TYPE_STATS,
+            StreamProtocol.ENCODING_RAW8, 0, 0, frameSequence.get(), timestampNs);
+        StreamProtocol.putInt(message, offset, Float.floatToIntBits((float) monitor.getCurrentFps()));
+        StreamProtocol.putInt(message, offset + 4,
+            Float.floatToIntBits((float) monitor.getAverageProcessingTimeMs()));
+        StreamProtocol.putInt(message, offset + 8, (int) monitor.getTotalFramesProcessed());
+        StreamProtocol.putInt(message, offset + 12, (int) monitor.getDroppedFrameCount());
+        message[offset + 16] = (byte) monitor.getCurrentQualityLevel();
+        StreamProtocol.putInt(message, offset + 17, Float.floatToIntBits(monitor.getCannyThresholdLow()));
+        StreamProtocol.putInt(message, offset + 21, Float.floatToIntBits(monitor.getCannyThresholdHigh()));
+
+        for (ClientConnection client : clients) {
+            client.offerStats(message);
+        }
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            ServerSocket socket = serverSocket;
+            if (socket == null) {
+                break;
+            }
+            try {
+                Socket clientSocket = socket.accept();
+                ClientConnection client = new ClientConnection(clientSocket);
+                client.start();
+            } catch (SocketException e) {
+                // Thrown when the server socket is closed by stop()
+                break;
+            } catch (IOException e) {
+                Log.w(TAG, "Error accepting viewer connection", e);
+            }
+        }
+    }
+
+    /**
+     * One connected viewer. A reader thread performs the handshake and watches for
+     * close/ping frames; a writer thread drains the single-slot mailboxes.
+     */
+    private class ClientConnection {
+        private final Socket socket;
+        private final Object lock = new Object();
+
+        // Single-slot mailboxes: a newer message replaces an unsent older one
+        private byte[] pendingKeyframe;
+        private byte[] pendingFrame;
+        private byte[] pendingStats;
+        private byte[] pendingControl;
+        private boolean open = true;
+
+        private OutputStream out;
+
+        ClientConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, "FrameStreamClient-" + socket.getPort());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void offerFrame(byte[] message, boolean keyframe) {
+            synchronized (lock) {
+                if (!open) return;
+                if (keyframe) {
+                    // A new keyframe supersedes everything still waiting
+                    if (pendingKeyframe != null) framesDropped.incrementAndGet();
+                    if (pendingFrame != null) framesDropped.incrementAndGet();
+                    pendingKeyframe = message;
+                    pendingFrame = null;
+                } else {
+                    if (pendingFrame != null) framesDropped.incrementAndGet();
+                    pendingFrame = message;
+                }
+                lock.notify();
+            }
+        }
+
+        void offerStats(byte[] message) {
+            synchronized (lock) {
+                if (!open) return;
+                pendingStats = message;
+                lock.notify();
+            }
+        }
+
+        private void offerControl(byte[] message) {
+            synchronized (lock) {
+                if (!open) return;
+                pendingControl = message;
+                lock.notify();
+            }
+        }
+
+        void close() {
+            synchronized (lock) {
+                if (!open) return;
+                open = false;
+                lock.notify();
+            }
+            clients.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        private void readLoop() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSendBufferSize(SOCKET_SEND_BUFFER);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+
+                String key = WebSocketCodec.readHandshakeKey(in);
+                if (key == null) {
+                    WebSocketCodec.writeBadRequest(out);
+                    close();
+                    return;
+                }
+                WebSocketCodec.writeHandshakeResponse(out, key);
+
+                Thread writer = new Thread(this::writeLoop, "FrameStreamWriter-" + socket.getPort());
+                writer.setDaemon(true);
+                writer.start();
+                synchronized (broadcastLock) {
+                    clients.add(this);
+                    byte[] keyframe = lastKeyframeMessage;
+                    if (keyframe != null) {
+                        offerFrame(keyframe, true);
+                    }
+                }
+                Log.i(TAG, "Viewer connected: " + socket.getRemoteSocketAddress());
+
+                byte[][] payload = new byte[1][];
+                while (true) {
+                    int opcode = WebSocketCodec.readClientFrame(in, payload);
+                    if (opcode == WebSocketCodec.OPCODE_CLOSE) {
+                        break;
+                    } else if (opcode == WebSocketCodec.OPCODE_PING) {
+                        offerControl(WebSocketCodec.buildFrame(
+                            WebSocketCodec.OPCODE_PONG, payload[0], payload[0].length));
+                    }
+                }
+            } catch (IOException e) {
+                // Viewer went away
+            } catch (RuntimeException e) {
+                // A malformed frame must only cost this viewer its connection
+                Log.w(TAG, "Dropping viewer after bad input", e);
+            } finally {
+                close();
+                Log.i(TAG, "Viewer disconnected: " + socket.getRemoteSocketAddress());
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    byte[] control, stats, keyframe, frame;
+                    synchronized (lock) {
+                        while (open && pendingControl == null && pendingStats == null &&
+                               pendingKeyframe == null && pendingFrame == null) {
+                            lock.wait();
+                        }
+                        if (!open) return;
+                        control = pendingControl;
+                        stats = pendingStats;
+                        keyframe = pendingKeyframe;
+                        frame = pendingFrame;
+                        pendingControl = null;
+                        pendingStats = null;
+                        pendingKeyframe = null;
+                        pendingFrame = null;
+                    }
+
+                    // Blocking writes provide the backpressure: while we're stuck here
+                    // new frames overwrite pendingFrame instead of piling up
+                    if (control != null) out.write(control);
+                    if (stats != null) out.write(stats);
+                    if (keyframe != null) out.write(keyframe);
+                    if (frame != null) out.write(frame);
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Viewer went away
+            } finally {
+                close();
+            }
+        }
+    }
+}
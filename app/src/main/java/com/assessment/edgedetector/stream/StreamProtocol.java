@@ -0,0 +1,116 @@
+package com.assessment.edgedetector.stream;
+
+/**
+ * Binary message layout shared by the device streaming server and the web viewer
+ *
+ * Every WebSocket binary message starts with a fixed 20-byte big-endian header:
+ * <pre>
+ *  0  u8   message type (FRAME or STATS)
+ *  1  u8   payload encoding
+ *  2  u16  width  (0 for STATS)
+ *  4  u16  height (0 for STATS)
+ *  6  u16  reserved
+ *  8  u32  sequence number
+ * 12  u64  sensor timestamp in nanoseconds
+ * </pre>
+ * followed by the payload. Keep in sync with web/src/streamClient.ts.
+ */
+public final class StreamProtocol {
+    public static final int HEADER_SIZE = 20;
+
+    // Message types
+    public static final int TYPE_FRAME = 1;
+    public static final int TYPE_STATS = 2;
+
+    // Payload encodings
+    public static final int ENCODING_RAW8 = 0;      // 1 byte per pixel
+    public static final int ENCODING_BITPACKED = 1; // 1 bit per pixel, MSB first, row-major
+    public static final int ENCODING_DELTA_RLE = 2; // EdgeFrameDecoder format, deltas against last keyframe
+
+    // STATS payload: f32 fps, f32 avg processing ms, u32 frames, u32 dropped, u8 quality,
+    // f32 Canny low threshold, f32 Canny high threshold
+    public static final int STATS_PAYLOAD_SIZE = 25;
+
+    private StreamProtocol() {
+    }
+
+    /**
+     * Size in bytes of a bit-packed edge map
+     */
+    public static int bitPackedSize(int width, int height) {
+        return (width * height + 7) / 8;
+    }
+
+    /**
+     * Write the common message header at the given offset
+     * @return offset of the first payload byte
+     */
+    public static int writeHeader(byte[] dst, int offset, int type, int encoding,
+                                  int width, int height, int sequence, long timestampNs) {
+        dst[offset] = (byte) type;
+        dst[offset + 1] = (byte) encoding;
+        putShort(dst, offset + 2, width);
+        putShort(dst, offset + 4, height);
+        putShort(dst, offset + 6, 0);
+        putInt(dst, offset + 8, sequence);
+        putLong(dst, offset + 12, timestampNs);
+        return offset + HEADER_SIZE;
+    }
+
+    /**
+     * Pack a 0/255 edge map into one bit per pixel. Any non-zero pixel is an edge.
+     * @return number of bytes written
+     */
+    public static int packEdgeMap(byte[] edges, int pixelCount, byte[] dst, int offset) {
+        int out = offset;
+        int i = 0;
+        int fullBytes = pixelCount >>> 3;
+        for (int b = 0; b < fullBytes; b++, i += 8) {
+            int v = 0;
+            if (edges[i] != 0) v |= 0x80;
+            if (edges[i + 1] != 0) v |= 0x40;
+            if (edges[i + 2] != 0) v |= 0x20;
+            if (edges[i + 3] != 0) v |= 0x10;
+            if (edges[i + 4] != 0) v |= 0x08;
+            if (edges[i + 5] != 0) v |= 0x04;
+            if (edges[i + 6] != 0) v |= 0x02;
+            if (edges[i + 7] != 0) v |= 0x01;
+            dst[out++] = (byte) v;
+        }
+        if (i < pixelCount) {
+            int v = 0;
+            for (int bit = 7; i < pixelCount; i++, bit--) {
+                if (edges[i] != 0) v |= 1 << bit;
+            }
+            dst[out++] = (byte) v;
+        }
+        return out - offset;
+    }
+
+    /**
+     * Expand a bit-packed edge map back to 0/255 bytes
+     */
+    public static void unpackEdgeMap(byte[] src, int offset, int pixelCount, byte[] dst) {
+        for (int i = 0; i < pixelCount; i++) {
+            int v = src[offset + (i >>> 3)] >> (7 - (i & 7));
+            dst[i] = (v & 1) != 0 ? (byte) 0xFF : 0;
+        }
+    }
+
+    static void putShort(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 8);
+        dst[offset + 1] = (byte) value;
+    }
+
+    static void putInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    static void putLong(byte[] dst, int offset, long value) {
+        putInt(dst, offset, (int) (value >>> 32));
+        putInt(dst, offset + 4, (int) value);
+    }
+}
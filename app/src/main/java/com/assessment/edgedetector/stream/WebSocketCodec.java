@@ -0,0 +1,196 @@
+package com.assessment.edgedetector.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Minimal RFC 6455 server-side framing: handshake, unmasked server frames
+ * and just enough client frame parsing to notice pings and close requests
+ */
+final class WebSocketCodec {
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private WebSocketCodec() {
+    }
+
+    /**
+     * Read the HTTP upgrade request and return the Sec-WebSocket-Key, or null if
+     * the request is not a WebSocket upgrade
+     */
+    static String readHandshakeKey(InputStream in) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream(512);
+        int tail = 0; // last four bytes read, looking for "\r\n\r\n"
+        while (tail != 0x0D0A0D0A) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            request.write(b);
+            if (request.size() > MAX_HEADER_BYTES) {
+                return null;
+            }
+            tail = (tail << 8) | b;
+        }
+
+        String[] lines = new String(request.toByteArray(), StandardCharsets.ISO_8859_1).split("\r\n");
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                return line.substring(colon + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    static void writeHandshakeResponse(OutputStream out, String key) throws IOException {
+        String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+            "Upgrade: websocket\r\n" +
+            "Connection: Upgrade\r\n" +
+            "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    static void writeBadRequest(OutputStream out) throws IOException {
+        out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n"
+            .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return base64(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Size of an unmasked server frame header for the given payload length
+     */
+    static int frameHeaderSize(int payloadLength) {
+        if (payloadLength < 126) return 2;
+        if (payloadLength <= 0xFFFF) return 4;
+        return 10;
+    }
+
+    /**
+     * Write a FIN frame header at the start of dst
+     * @return offset of the first payload byte
+     */
+    static int writeFrameHeader(byte[] dst, int opcode, int payloadLength) {
+        dst[0] = (byte) (0x80 | opcode);
+        if (payloadLength < 126) {
+            dst[1] = (byte) payloadLength;
+            return 2;
+        } else if (payloadLength <= 0xFFFF) {
+            dst[1] = 126;
+            StreamProtocol.putShort(dst, 2, payloadLength);
+            return 4;
+        } else {
+            dst[1] = 127;
+            StreamProtocol.putLong(dst, 2, payloadLength);
+            return 10;
+        }
+    }
+
+    /**
+     * Allocate a complete frame (header + payload) ready to be written to any number of sockets
+     */
+    static byte[] buildFrame(int opcode, byte[] payload, int length) {
+        byte[] frame = new byte[frameHeaderSize(length) + length];
+        int offset = writeFrameHeader(frame, opcode, length);
+        System.arraycopy(payload, 0, frame, offset, length);
+        return frame;
+    }
+
+    /**
+     * Read one client frame and unmask its payload into payloadHolder[0]
+     * @return the frame opcode
+     */
+    static int readClientFrame(InputStream in, byte[][] payloadHolder) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        // Viewers only ever send control frames; refuse anything large. A 64-bit
+        // length with the top bit set reads as negative
+        if (length < 0 || length > MAX_HEADER_BYTES) {
+            throw new IOException("Client frame too large: " + length);
+        }
+
+        byte[] mask = new byte[4];
+        if (masked) {
+            readFully(in, mask);
+        }
+        byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+        payloadHolder[0] = payload;
+        return opcode;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] dst) throws IOException {
+        int read = 0;
+        while (read < dst.length) {
+            int n = in.read(dst, read, dst.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+
+    // java.util.Base64 needs API 26 and android.util.Base64 is not available on the JVM
+    private static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xFF) << 16;
+            if (i + 1 < data.length) b |= (data[i + 1] & 0xFF) << 8;
+            if (i + 2 < data.length) b |= data[i + 2] & 0xFF;
+            sb.append(BASE64[(b >>> 18) & 0x3F]);
+            sb.append(BASE64[(b >>> 12) & 0x3F]);
+            sb.append(i + 1 < data.length ? BASE64[(b >>> 6) & 0x3F] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b & 0x3F] : '=');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,483 @@
+package com.assessment.edgedetector.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * In-memory flight recorder of the last few seconds of luma planes and edge maps
+ *
+ * Frames go into a ring of fixed-size slots carved out of one direct buffer
+ * that is sized when the first frame (or a new resolution) arrives: enough
+ * slots for the window at the expected frame rate, capped by the memory
+ * budget. When the budget is the limit, a spill reaches back only as far as
+ * the ring holds, and the shortfall is logged. Recording a frame copies into the next slot and
+ * allocates nothing. With compression on, edge maps are bit-packed (they are
+ * binary) and the luma plane is deflated into a slot half its raw size, so
+ * the same budget holds about three times as many frames. A luma plane that
+ * does not compress that far is left out, and its edge map is still kept.
+ *
+ * spill() pins the slots inside the time window and copies them to a
+ * memory-mapped temporary file on a background thread. The file is then
+ * renamed into place, so a reader never sees a partial recording. Recording
+ * continues during the spill: pinned slots are released as soon as they are
+ * copied, and a frame that would overwrite a slot not yet copied is skipped
+ * instead of blocking the caller.
+ *
+ * File layout (little endian): a 32-byte header (magic "EDFR", version,
+ * frame count, width, height, flags, window ns), then per frame a 32-byte
+ * record header (timestamp ns, flags, width, height, luma bytes, edge bytes,
+ * reserved) followed by the luma and edge data.
+ */
+public class FlightRecorder {
+    private static final String TAG = "FlightRecorder";
+
+    public static final int FLAG_LUMA_DEFLATED = 1;   // Luma is a zlib stream
+    public static final int FLAG_EDGES_PACKED = 2;    // Edges are 1 bit per pixel, MSB first
+    public static final int FLAG_LUMA_OMITTED = 4;    // Luma did not fit the compressed slot
+
+    private static final int FILE_MAGIC = 0x52464445;  // "EDFR"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 32;
+
+    // Compressed slots leave this fraction of the raw luma size for the deflated plane
+    private static final int COMPRESSED_LUMA_DIVISOR = 2;
+    private static final float DEFAULT_FRAME_RATE = 30f;
+
+    /**
+     * Told on the spill thread when a spill finishes
+     */
+    public interface SpillListener {
+        void onSpillComplete(File file, int frames, long bytes, long elapsedNs);
+        void onSpillFailed(File file, String error);
+    }
+
+    private final ExecutorService spillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FlightRecorderSpill");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private volatile long budgetBytes;
+    private volatile long windowNs;
+    private volatile float frameRate = DEFAULT_FRAME_RATE;
+    private volatile boolean compression = false;
+    private volatile boolean enabled = true;
+
+    // Ring layout and contents, guarded by this
+    private ByteBuffer arena;
+    private ByteBuffer[] slotViews = new ByteBuffer[0];
+    private long[] timestamps = new long[0];
+    private int[] flags = new int[0];
+    private int[] lumaLengths = new int[0];
+    private int[] edgeLengths = new int[0];
+    private boolean[] pinned = new boolean[0];
+    private int slotBytes = 0;
+    private int slotCount = 0;
+    private int width = 0;
+    private int height = 0;
+    private boolean layoutCompressed = false;
+    private int head = 0;
+    private int count = 0;
+    private boolean spilling = false;
+
+    // Compression scratch, reused for every frame
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] lumaScratch = new byte[0];
+    private byte[] lumaInput = new byte[0];    // Deflater input, which must be an array
+    private byte[] edgeScratch = new byte[0];
+
+    // Counters, guarded by this
+    private long recorded = 0;
+    private long skippedPinned = 0;
+    private long lumaOmitted = 0;
+    private long spills = 0;
+
+    /**
+     * @param budgetBytes Memory for the slot ring
+     * @param windowMs How far back a spill reaches
+     */
+    public FlightRecorder(long budgetBytes, long windowMs) {
+        this.budgetBytes = budgetBytes;
+        this.windowNs = windowMs * 1_000_000L;
+    }
+
+    /**
+     * Takes effect at the next layout change or reset()
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public void setWindowMs(long windowMs) {
+        this.windowNs = windowMs * 1_000_000L;
+    }
+
+    /**
+     * Highest rate frames are recorded at; with the window it sets how many
+     * slots the ring needs. Takes effect at the next layout change or reset().
+     */
+    public void setFrameRate(float fps) {
+        if (fps > 0) {
+            this.frameRate = fps;
+        }
+    }
+
+    /**
+     * Deflate luma and bit-pack edges to fit more frames in the budget.
+     * Costs a few milliseconds per 1080p frame on the recording thread.
+     * Takes effect at the next layout change or reset().
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Record one frame. The luma plane is read in place, e.g. from a shared
+     * camera Frame, and stored without its row padding; edges are
+     * width * height bytes.
+     * @param lumaOffset Byte offset of the luma plane in luma
+     * @param lumaRowStride Bytes between luma rows, at least width
+     * @return false if the frame was not recorded
+     */
+    public boolean record(ByteBuffer luma, int lumaOffset, int lumaRowStride, byte[] edges,
+                          int width, int height, long timestampNs) {
+        if (!enabled || luma == null || edges == null || width <= 0 || height <= 0
+                || lumaRowStride < width) {
+            return false;
+        }
+        int pixels = width * height;
+        long lumaEnd = lumaOffset + (long) lumaRowStride * (height - 1) + width;
+        if (lumaOffset < 0 || luma.capacity() < lumaEnd || edges.length < pixels) {
+            Log.e(TAG, "Frame smaller than " + width + "x" + height);
+            return false;
+        }
+
+        synchronized (this) {
+            if (!ensureLayout(width, height)) {
+                return false;
+            }
+            int index = head;
+            if (pinned[index]) {
+                // A spill has not copied this slot yet; drop the frame rather than wait
+                skippedPinned++;
+                return false;
+            }
+
+            ByteBuffer slot = slotViews[index];
+            slot.clear();
+            int frameFlags = 0;
+            int lumaLength;
+            int edgeLength;
+            if (layoutCompressed) {
+                frameFlags |= FLAG_LUMA_DEFLATED | FLAG_EDGES_PACKED;
+                lumaLength = deflateLuma(luma, lumaOffset, lumaRowStride, width, height);
+                if (lumaLength < 0) {
+                    frameFlags |= FLAG_LUMA_OMITTED;
+                    lumaLength = 0;
+                    lumaOmitted++;
+                }
+                slot.put(lumaScratch, 0, lumaLength);
+                edgeLength = packEdges(edges, pixels);
+                slot.put(edgeScratch, 0, edgeLength);
+            } else {
+                lumaLength = pixels;
+                edgeLength = pixels;
+                copyLuma(luma, lumaOffset, lumaRowStride, width, height, slot);
+                slot.put(edges, 0, pixels);
+            }
+
+            timestamps[index] = timestampNs;
+            flags[index] = frameFlags;
+            lumaLengths[index] = lumaLength;
+            edgeLengths[index] = edgeLength;
+            head = (index + 1) % slotCount;
+            if (count < slotCount) {
+                count++;
+            }
+            recorded++;
+            return true;
+        }
+    }
+
+    /**
+     * Write the frames within the window to a file, in the background
+     * @return false if a spill is already running or nothing is recorded
+     */
+    public boolean spill(File target, SpillListener listener) {
+        final int[] order;
+        final long[] frameTimestamps;
+        final int[] frameFlags;
+        final int[] frameLuma;
+        final int[] frameEdges;
+        final ByteBuffer[] views;
+        final int frameWidth;
+        final int frameHeight;
+        final long window;
+        final long startNs = System.nanoTime();
+
+        synchronized (this) {
+            if (spilling || count == 0) {
+                return false;
+            }
+            window = windowNs;
+            int newest = (head - 1 + slotCount) % slotCount;
+            long newestNs = timestamps[newest];
+
+            // Oldest first, limited to the window
+            int frames = 0;
+            while (frames < count) {
+                int index = (newest - frames + slotCount) % slotCount;
+                if (newestNs - timestamps[index] > window) {
+                    break;
+                }
+                frames++;
+            }
+            order = new int[frames];
+            frameTimestamps = new long[frames];
+            frameFlags = new int[frames];
+            frameLuma = new int[frames];
+            frameEdges = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                int index = (newest - (frames - 1 - i) + slotCount) % slotCount;
+                order[i] = index;
+                frameTimestamps[i] = timestamps[index];
+                frameFlags[i] = flags[index];
+                frameLuma[i] = lumaLengths[index];
+                frameEdges[i] = edgeLengths[index];
+                pinned[index] = true;
+            }
+            views = slotViews;
+            frameWidth = width;
+            frameHeight = height;
+            spilling = true;
+            spills++;
+        }
+
+        spillExecutor.execute(() -> {
+            int written = 0;
+            long bytes = FILE_HEADER_SIZE;
+            for (int i = 0; i < order.length; i++) {
+                bytes += RECORD_HEADER_SIZE + frameLuma[i] + frameEdges[i];
+            }
+
+            File temp = new File(target.getPath() + ".tmp");
+            try {
+                try (RandomAccessFile file = new RandomAccessFile(temp, "rw");
+                     FileChannel channel = file.getChannel()) {
+                    file.setLength(bytes);
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                    map.order(ByteOrder.LITTLE_ENDIAN);
+                    map.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(order.length)
+                        .putInt(frameWidth).putInt(frameHeight).putInt(0).putLong(window);
+
+                    for (; written < order.length; written++) {
+                        map.putLong(frameTimestamps[written]).putInt(frameFlags[written])
+                            .putInt(frameWidth).putInt(frameHeight)
+                            .putInt(frameLuma[written]).putInt(frameEdges[written]).putInt(0);
+                        ByteBuffer slot = views[order[written]];
+                        slot.clear();
+                        slot.limit(frameLuma[written] + frameEdges[written]);
+                        map.put(slot);
+                        unpin(order[written]);
+                    }
+                    map.force();
+                }
+                if (!temp.renameTo(target)) {
+                    throw new IOException("Cannot rename " + temp + " to " + target);
+                }
+                Log.i(TAG, String.format(Locale.US, "Spilled %d frames (%.1f MB) to %s in %.1fms",
+                    order.length, bytes / 1e6, target.getName(), (System.nanoTime() - startNs) / 1e6));
+                if (listener != null) {
+                    listener.onSpillComplete(target, order.length, bytes, System.nanoTime() - startNs);
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Spill to " + target + " failed", e);
+                temp.delete();
+                if (listener != null) {
+                    listener.onSpillFailed(target, e.getMessage());
+                }
+            } finally {
+                synchronized (this) {
+                    for (int i = written; i < order.length; i++) {
+                        pinned[order[i]] = false;
+                    }
+                    spilling = false;
+                }
+            }
+        });
+        return true;
+    }
+
+    public synchronized boolean isSpilling() {
+        return spilling;
+    }
+
+    /**
+     * Drop all recorded frames and release the ring; the next frame sizes it again
+     * @return false if a spill is running
+     */
+    public synchronized boolean reset() {
+        if (spilling) {
+            return false;
+        }
+        releaseLayout();
+        return true;
+    }
+
+    /**
+     * Stop the spill thread after any spill in progress
+     */
+    public void shutdown() {
+        spillExecutor.shutdown();
+    }
+
+    /**
+     * Time span currently held, newest minus oldest frame
+     */
+    public synchronized long getRecordedSpanNs() {
+        if (count == 0) {
+            return 0;
+        }
+        int newest = (head - 1 + slotCount) % slotCount;
+        int oldest = (head - count + slotCount) % slotCount;
+        return timestamps[newest] - timestamps[oldest];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+            "FlightRecorder{%dx%d, slots=%d x %.2f MB%s, held=%d (%.1fs), recorded=%d, "
+                + "skippedPinned=%d, lumaOmitted=%d, spills=%d}",
+            width, height, slotCount, slotBytes / 1e6, layoutCompressed ? " compressed" : "",
+            count, getRecordedSpanNs() / 1e9, recorded, skippedPinned, lumaOmitted, spills);
+    }
+
+    private synchronized void unpin(int index) {
+        pinned[index] = false;
+    }
+
+    // Called with the lock held
+    private boolean ensureLayout(int frameWidth, int frameHeight) {
+        boolean wantCompressed = compression;
+        if (arena != null && frameWidth == width && frameHeight == height
+                && wantCompressed == layoutCompressed) {
+            return true;
+        }
+        if (spilling) {
+            // The spill still reads the old ring
+            return false;
+        }
+        releaseLayout();
+
+        long pixels = (long) frameWidth * frameHeight;
+        long bytesPerSlot = wantCompressed
+            ? pixels / COMPRESSED_LUMA_DIVISOR + (pixels + 7) / 8
+            : pixels * 2;
+        long windowSlots = (long) Math.ceil(windowNs / 1e9 * frameRate) + 1;
+        long budgetSlots = budgetBytes / bytesPerSlot;
+        long slots = Math.min(Math.min(windowSlots, budgetSlots), Integer.MAX_VALUE / bytesPerSlot);
+        if (slots < 1) {
+            Log.e(TAG, "Budget of " + budgetBytes + " bytes holds no " + frameWidth + "x" + frameHeight + " frame");
+            return false;
+        }
+        if (slots < windowSlots) {
+            Log.w(TAG, String.format(Locale.US,
+                "Budget holds %.1fs of the %.1fs window at %dx%d and %.0f fps%s",
+                (slots - 1) / frameRate, windowNs / 1e9, frameWidth, frameHeight, frameRate,
+                wantCompressed ? "" : "; compression would hold about three times more"));
+        }
+
+        slotBytes = (int) bytesPerSlot;
+        slotCount = (int) slots;
+        width = frameWidth;
+        height = frameHeight;
+        layoutCompressed = wantCompressed;
+        arena = ByteBuffer.allocateDirect(slotBytes * slotCount);
+        slotViews = new ByteBuffer[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            arena.limit((i + 1) * slotBytes).position(i * slotBytes);
+            slotViews[i] = arena.slice();
+        }
+        timestamps = new long[slotCount];
+        flags = new int[slotCount];
+        lumaLengths = new int[slotCount];
+        edgeLengths = new int[slotCount];
+        pinned = new boolean[slotCount];
+        if (wantCompressed) {
+            lumaScratch = new byte[(int) (pixels / COMPRESSED_LUMA_DIVISOR)];
+            lumaInput = new byte[(int) pixels];
+            edgeScratch = new byte[(int) ((pixels + 7) / 8)];
+        }
+        Log.i(TAG, String.format(Locale.US, "Ring of %d slots x %.2f MB for %dx%d%s",
+            slotCount, slotBytes / 1e6, width, height, wantCompressed ? " (compressed)" : ""));
+        return true;
+    }
+
+    // Called with the lock held
+    private void releaseLayout() {
+        arena = null;
+        slotViews = new ByteBuffer[0];
+        slotCount = 0;
+        slotBytes = 0;
+        head = 0;
+        count = 0;
+        width = 0;
+        height = 0;
+    }
+
+    // Row by row, dropping the stride padding
+    private static void copyLuma(ByteBuffer luma, int offset, int rowStride, int width, int height,
+                                 ByteBuffer target) {
+        ByteBuffer source = luma.duplicate();
+        if (rowStride == width) {
+            source.limit(offset + width * height).position(offset);
+            target.put(source);
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            int row = offset + y * rowStride;
+            source.limit(row + width).position(row);
+            target.put(source);
+        }
+    }
+
+    // Called with the lock held; -1 if the plane does not fit the slot
+    private int deflateLuma(ByteBuffer luma, int offset, int rowStride, int width, int height) {
+        int pixels = width * height;
+        copyLuma(luma, offset, rowStride, width, height, ByteBuffer.wrap(lumaInput));
+        deflater.reset();
+        deflater.setInput(lumaInput, 0, pixels);
+        deflater.finish();
+        int length = deflater.deflate(lumaScratch, 0, lumaScratch.length);
+        return deflater.finished() ? length : -1;
+    }
+
+    // Called with the lock held
+    private int packEdges(byte[] edges, int pixels) {
+        int length = (pixels + 7) / 8;
+        Arrays.fill(edgeScratch, 0, length, (byte) 0);
+        for (int i = 0; i < pixels; i++) {
+            if (edges[i] != 0) {
+                edgeScratch[i >> 3] |= (byte) (0x80 >>> (i & 7));
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,120 @@
+package com.assessment.edgedetector.utils;
+
+import android.util.Log;
+
+import com.assessment.edgedetector.NativeLib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable direct-buffer batch for NativeLib.processBatchCanny
+ *
+ * Frames from a file or replay source are appended into one direct input
+ * buffer and processed with a single JNI call, so the per-frame transition,
+ * array pinning and result allocation are paid once per batch. Buffers are
+ * allocated once for the capacity and reused across batches.
+ */
+public class FrameBatch {
+    private static final String TAG = "FrameBatch";
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int capacity;
+    private final int inputFrameSize;
+    private final int outputFrameSize;
+
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private final int[] offsets;
+    private final int[] status;
+    private int count = 0;
+
+    public FrameBatch(int width, int height, int channels, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.capacity = capacity;
+        this.inputFrameSize = width * height * channels;
+        this.outputFrameSize = width * height;
+
+        input = ByteBuffer.allocateDirect(inputFrameSize * capacity).order(ByteOrder.nativeOrder());
+        output = ByteBuffer.allocateDirect(outputFrameSize * capacity).order(ByteOrder.nativeOrder());
+        offsets = new int[capacity];
+        status = new int[capacity];
+    }
+
+    /**
+     * Copy a frame into the batch
+     * @return false if the batch is full or the frame has the wrong size
+     */
+    public boolean add(byte[] frame) {
+        if (count >= capacity || frame.length < inputFrameSize) {
+            return false;
+        }
+        int offset = count * inputFrameSize;
+        input.position(offset);
+        input.put(frame, 0, inputFrameSize);
+        offsets[count++] = offset;
+        return true;
+    }
+
+    /**
+     * Process all queued frames natively
+     * @return Number of frames processed, or -1 on failure
+     */
+    public int process(NativeLib nativeLib) {
+        if (count == 0) {
+            return 0;
+        }
+        int processed = nativeLib.processBatchCanny(input, offsets, count,
+            width, height, channels, output, status);
+        if (processed < 0) {
+            Log.e(TAG, "Batch of " + count + " frames rejected");
+        }
+        return processed;
+    }
+
+    /**
+     * Whether frame index was processed by the last process() call
+     */
+    public boolean isProcessed(int index) {
+        return index < count && status[index] == 0;
+    }
+
+    /**
+     * Copy one processed edge map out of the batch
+     * @param out At least width * height bytes
+     */
+    public void getResult(int index, byte[] out) {
+        ByteBuffer view = output.duplicate();
+        view.position(index * outputFrameSize);
+        view.get(out, 0, outputFrameSize);
+    }
+
+    /**
+     * Read-only view of one processed edge map, without copying
+     */
+    public ByteBuffer getResultView(int index) {
+        ByteBuffer view = output.asReadOnlyBuffer();
+        view.position(index * outputFrameSize);
+        view.limit(index * outputFrameSize + outputFrameSize);
+        return view.slice();
+    }
+
+    /**
+     * Empty the batch for reuse
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count >= capacity;
+    }
+}
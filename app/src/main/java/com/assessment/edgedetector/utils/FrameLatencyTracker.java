@@ -0,0 +1,331 @@
+package com.assessment.edgedetector.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Glass-to-glass latency tracker keyed by camera sensor timestamp
+ *
+ * Each pipeline stage marks the frame it is handling with {@link #mark}; all
+ * marks are taken on the clock the sensor timestamps are based on, so the
+ * SENSOR stage is the exposure timestamp itself. A frame completes when it is
+ * marked DISPLAYED, at which point its per-stage deltas are committed to a
+ * fixed-size history used for percentiles and trace export. Frames that are
+ * superseded before reaching the display are counted as abandoned.
+ */
+public class FrameLatencyTracker {
+    // Pipeline stages, in order
+    public static final int STAGE_SENSOR = 0;        // Image.getTimestamp()
+    public static final int STAGE_ACQUIRED = 1;      // ImageReader image acquired
+    public static final int STAGE_COPIED = 2;        // YUV planes copied out of the Image
+    public static final int STAGE_PROCESS_START = 3; // JNI processing entered
+    public static final int STAGE_PROCESS_END = 4;   // JNI processing returned
+    public static final int STAGE_UPLOADED = 5;      // Texture upload / updateTexImage on the GL thread
+    public static final int STAGE_DISPLAYED = 6;     // onDrawFrame finished, buffer handed to the swap
+    public static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {
+        "sensor", "acquired", "copied", "process_start", "process_end", "uploaded", "displayed"
+    };
+
+    private static final int DEFAULT_IN_FLIGHT = 16;
+    private static final int DEFAULT_HISTORY = 512;
+
+    private volatile NanoClock clock;
+
+    // Frames currently moving through the pipeline, matched by sensor timestamp
+    private final long[][] inFlight;
+    private int nextInFlight = 0;
+
+    // Completed frames: stage timestamps, ring buffer
+    private final long[][] history;
+    private int historyCount = 0;
+    private int historyNext = 0;
+
+    private long completedFrames = 0;
+    private long abandonedFrames = 0;
+
+    /**
+     * Per-stage latency distribution. Delta i is the time spent reaching stage i
+     * from the previous marked stage; index STAGE_SENSOR holds the total
+     * sensor-to-display latency.
+     */
+    public static class LatencyStats {
+        public final int sampleCount;
+        public final double[] p50Ms = new double[STAGE_COUNT];
+        public final double[] p90Ms = new double[STAGE_COUNT];
+        public final double[] p99Ms = new double[STAGE_COUNT];
+        public final double[] maxMs = new double[STAGE_COUNT];
+        /** How often each stage had the largest delta among frames at or above the p90 total */
+        public final int[] tailOwnerCounts = new int[STAGE_COUNT];
+
+        LatencyStats(int sampleCount) {
+            this.sampleCount = sampleCount;
+        }
+
+        /**
+         * Stage that most often dominates slow frames, or -1 without samples
+         */
+        public int getTailOwner() {
+            int owner = -1;
+            int best = 0;
+            for (int i = 1; i < STAGE_COUNT; i++) {
+                if (tailOwnerCounts[i] > best) {
+                    best = tailOwnerCounts[i];
+                    owner = i;
+                }
+            }
+            return owner;
+        }
+
+        @Override
+        public String toString() {
+            if (sampleCount == 0) {
+                return "LatencyStats{no samples}";
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US,
+                "LatencyStats{n=%d, total p50/p90/p99/max: %.1f/%.1f/%.1f/%.1fms",
+                sampleCount, p50Ms[STAGE_SENSOR], p90Ms[STAGE_SENSOR], p99Ms[STAGE_SENSOR], maxMs[STAGE_SENSOR]));
+            for (int i = 1; i < STAGE_COUNT; i++) {
+                sb.append(String.format(Locale.US, ", %s p50/p99: %.1f/%.1fms",
+                    STAGE_NAMES[i], p50Ms[i], p99Ms[i]));
+            }
+            int owner = getTailOwner();
+            sb.append(", tail: ").append(owner >= 0 ? STAGE_NAMES[owner] : "n/a").append('}');
+            return sb.toString();
+        }
+    }
+
+    public FrameLatencyTracker(NanoClock clock) {
+        this(clock, DEFAULT_IN_FLIGHT, DEFAULT_HISTORY);
+    }
+
+    public FrameLatencyTracker(NanoClock clock, int inFlightCapacity, int historyCapacity) {
+        this.clock = clock;
+        this.inFlight = new long[inFlightCapacity][STAGE_COUNT];
+        this.history = new long[historyCapacity][STAGE_COUNT];
+    }
+
+    /**
+     * Switch to the clock the camera's sensor timestamps are based on
+     */
+    public void setClock(NanoClock clock) {
+        this.clock = clock;
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Current time on the sensor timestamp clock
+     */
+    public long now() {
+        return clock.nanoTime();
+    }
+
+    /**
+     * Mark a stage for a frame at the current time
+     */
+    public void mark(long sensorTimestampNs, int stage) {
+        mark(sensorTimestampNs, stage, clock.nanoTime());
+    }
+
+    /**
+     * Mark a stage for a frame at an explicit time on the sensor clock.
+     * The first mark for a timestamp starts tracking that frame.
+     */
+    public synchronized void mark(long sensorTimestampNs, int stage, long timeNs) {
+        if (sensorTimestampNs == 0 || stage <= STAGE_SENSOR || stage >= STAGE_COUNT) {
+            return;
+        }
+
+        long[] record = findInFlight(sensorTimestampNs);
+        if (record == null) {
+            if (stage == STAGE_DISPLAYED) {
+                return; // Redraw of a frame that already completed
+            }
+            record = inFlight[nextInFlight];
+            nextInFlight = (nextInFlight + 1) % inFlight.length;
+            if (record[STAGE_SENSOR] != 0) {
+                abandonedFrames++;
+            }
+            Arrays.fill(record, 0);
+            record[STAGE_SENSOR] = sensorTimestampNs;
+        }
+        record[stage] = timeNs;
+
+        if (stage == STAGE_DISPLAYED) {
+            System.arraycopy(record, 0, history[historyNext], 0, STAGE_COUNT);
+            historyNext = (historyNext + 1) % history.length;
+            historyCount = Math.min(historyCount + 1, history.length);
+            completedFrames++;
+            record[STAGE_SENSOR] = 0;
+        }
+    }
+
+    /**
+     * Drop a frame that will never reach the display (e.g. processing failed)
+     */
+    public synchronized void abandon(long sensorTimestampNs) {
+        long[] record = findInFlight(sensorTimestampNs);
+        if (record != null) {
+            record[STAGE_SENSOR] = 0;
+            abandonedFrames++;
+        }
+    }
+
+    private long[] findInFlight(long sensorTimestampNs) {
+        for (long[] record : inFlight) {
+            if (record[STAGE_SENSOR] == sensorTimestampNs) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    public synchronized long getCompletedFrameCount() {
+        return completedFrames;
+    }
+
+    public synchronized long getAbandonedFrameCount() {
+        return abandonedFrames;
+    }
+
+    /**
+     * Compute per-stage latency percentiles over the recorded history
+     */
+    public LatencyStats getStats() {
+        long[][] samples = snapshot();
+        int n = samples.length;
+        LatencyStats stats = new LatencyStats(n);
+        if (n == 0) {
+            return stats;
+        }
+
+        long[][] deltas = new long[n][];
+        for (int f = 0; f < n; f++) {
+            deltas[f] = stageDeltas(samples[f]);
+        }
+
+        long[] column = new long[n];
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            int count = 0;
+            for (int f = 0; f < n; f++) {
+                if (deltas[f][stage] >= 0) {
+                    column[count++] = deltas[f][stage];
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            Arrays.sort(column, 0, count);
+            stats.p50Ms[stage] = percentile(column, count, 0.50) / 1e6;
+            stats.p90Ms[stage] = percentile(column, count, 0.90) / 1e6;
+            stats.p99Ms[stage] = percentile(column, count, 0.99) / 1e6;
+            stats.maxMs[stage] = column[count - 1] / 1e6;
+        }
+
+        // Attribute the slow tail to the stage with the largest delta in each slow frame
+        long tailThreshold = (long) (stats.p90Ms[STAGE_SENSOR] * 1e6);
+        for (int f = 0; f < n; f++) {
+            if (deltas[f][STAGE_SENSOR] < tailThreshold) {
+                continue;
+            }
+            int owner = -1;
+            for (int stage = 1; stage < STAGE_COUNT; stage++) {
+                if (deltas[f][stage] >= 0 && (owner < 0 || deltas[f][stage] > deltas[f][owner])) {
+                    owner = stage;
+                }
+            }
+            if (owner > 0) {
+                stats.tailOwnerCounts[owner]++;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Export the recorded history as CSV: one row per frame with the absolute
+     * stage timestamps (ns, 0 if unmarked) followed by per-stage deltas in ms.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            header.append(STAGE_NAMES[i]).append("_ns,");
+        }
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            header.append(STAGE_NAMES[i]).append("_ms,");
+        }
+        header.append("total_ms\n");
+        out.write(header.toString());
+
+        StringBuilder row = new StringBuilder();
+        for (long[] frame : snapshot()) {
+            row.setLength(0);
+            long[] deltas = stageDeltas(frame);
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                row.append(frame[i]).append(',');
+            }
+            for (int i = 1; i < STAGE_COUNT; i++) {
+                if (deltas[i] >= 0) {
+                    row.append(String.format(Locale.US, "%.3f", deltas[i] / 1e6));
+                }
+                row.append(',');
+            }
+            row.append(String.format(Locale.US, "%.3f", deltas[STAGE_SENSOR] / 1e6)).append('\n');
+            out.write(row.toString());
+        }
+        out.flush();
+    }
+
+    public synchronized void reset() {
+        for (long[] record : inFlight) {
+            Arrays.fill(record, 0);
+        }
+        nextInFlight = 0;
+        historyCount = 0;
+        historyNext = 0;
+        completedFrames = 0;
+        abandonedFrames = 0;
+    }
+
+    /**
+     * Copy of the completed history, oldest first
+     */
+    private synchronized long[][] snapshot() {
+        long[][] copy = new long[historyCount][];
+        int start = (historyNext - historyCount + history.length) % history.length;
+        for (int i = 0; i < historyCount; i++) {
+            copy[i] = history[(start + i) % history.length].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Delta into each stage from the previous marked stage (-1 if unmarked);
+     * index STAGE_SENSOR holds sensor-to-display total
+     */
+    private static long[] stageDeltas(long[] frame) {
+        long[] deltas = new long[STAGE_COUNT];
+        deltas[STAGE_SENSOR] = frame[STAGE_DISPLAYED] - frame[STAGE_SENSOR];
+        long previous = frame[STAGE_SENSOR];
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            if (frame[i] == 0) {
+                deltas[i] = -1;
+                continue;
+            }
+            deltas[i] = Math.max(0, frame[i] - previous);
+            previous = frame[i];
+        }
+        return deltas;
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
@@ -0,0 +1,20 @@
+package com.assessment.edgedetector.utils;
+
+import android.os.SystemClock;
+
+/**
+ * Nanosecond clock abstraction so timing code can run against a simulated clock
+ */
+public interface NanoClock {
+    long nanoTime();
+
+    /**
+     * CLOCK_MONOTONIC; the camera timestamp base when SENSOR_INFO_TIMESTAMP_SOURCE is UNKNOWN
+     */
+    NanoClock MONOTONIC = System::nanoTime;
+
+    /**
+     * CLOCK_BOOTTIME; the camera timestamp base when SENSOR_INFO_TIMESTAMP_SOURCE is REALTIME
+     */
+    NanoClock ELAPSED_REALTIME = SystemClock::elapsedRealtimeNanos;
+}
@@ -0,0 +1,203 @@
+package com.assessment.edgedetector.utils;
+
+import java.util.Locale;
+
+/**
+ * Reusable holder for the native processing stats snapshot
+ *
+ * Filled in one JNI call by NativeLib.getStatsSnapshot(values) without
+ * allocating. Layout mirrors frame_processor.h:
+ * <pre>
+ *  [0]                      processed frame count
+ *  [1]                      samples in the rolling window
+ *  [2 + stage * 4 + field]  nanoseconds, field = LAST, MIN, MEAN, MAX
+ *  [22 + field]             placement of the thread that ran the last frame,
+ *                           field = THREAD_ID, CPU, CLUSTER, NICE, MIGRATIONS
+ *  [27 + field]             Canny thresholds of the last frame in hundredths,
+ *                           field = THRESHOLD_LOW, THRESHOLD_HIGH, THRESHOLD_MODE, THRESHOLD_NS
+ *  [31 + field]             pyramid mode of the last frame,
+ *                           field = PYRAMID_LEVELS, PYRAMID_COVERAGE (per-mille at full resolution)
+ *  [33 + field]             regions of interest of the last frame,
+ *                           field = ROI_REGIONS, ROI_COVERAGE (per-mille of the frame)
+ * </pre>
+ */
+public class NativeStats {
+    // Processing stages
+    public static final int STAGE_CONVERT = 0;
+    public static final int STAGE_BLUR = 1;
+    public static final int STAGE_CANNY = 2;
+    public static final int STAGE_COPY_OUT = 3;
+    public static final int STAGE_TOTAL = 4;
+    public static final int STAGE_COUNT = 5;
+
+    // Per-stage fields
+    public static final int FIELD_LAST = 0;
+    public static final int FIELD_MIN = 1;
+    public static final int FIELD_MEAN = 2;
+    public static final int FIELD_MAX = 3;
+    private static final int FIELDS_PER_STAGE = 4;
+
+    // Placement fields
+    public static final int PLACEMENT_THREAD_ID = 0;
+    public static final int PLACEMENT_CPU = 1;
+    public static final int PLACEMENT_CLUSTER = 2;
+    public static final int PLACEMENT_NICE = 3;
+    public static final int PLACEMENT_MIGRATIONS = 4;
+    private static final int PLACEMENT_FIELDS = 5;
+
+    // Threshold fields
+    public static final int THRESHOLD_LOW = 0;
+    public static final int THRESHOLD_HIGH = 1;
+    public static final int THRESHOLD_MODE = 2;
+    public static final int THRESHOLD_NS = 3;
+    private static final int THRESHOLD_FIELDS = 4;
+
+    // Pyramid fields
+    public static final int PYRAMID_LEVELS = 0;
+    public static final int PYRAMID_COVERAGE = 1;
+    private static final int PYRAMID_FIELDS = 2;
+
+    // Region of interest fields
+    public static final int ROI_REGIONS = 0;
+    public static final int ROI_COVERAGE = 1;
+    private static final int ROI_FIELDS = 2;
+
+    private static final int HEADER_SIZE = 2;
+    private static final int PLACEMENT_OFFSET = HEADER_SIZE + STAGE_COUNT * FIELDS_PER_STAGE;
+    private static final int THRESHOLD_OFFSET = PLACEMENT_OFFSET + PLACEMENT_FIELDS;
+    private static final int PYRAMID_OFFSET = THRESHOLD_OFFSET + THRESHOLD_FIELDS;
+    private static final int ROI_OFFSET = PYRAMID_OFFSET + PYRAMID_FIELDS;
+    public static final int SNAPSHOT_SIZE = ROI_OFFSET + ROI_FIELDS;
+
+    private static final String[] THRESHOLD_MODE_NAMES = {"fixed", "median", "otsu"};
+
+    private static final String[] STAGE_NAMES = {"convert", "blur", "canny", "copy", "total"};
+
+    public final long[] values = new long[SNAPSHOT_SIZE];
+
+    public long getProcessedFrameCount() {
+        return values[0];
+    }
+
+    public int getWindowSize() {
+        return (int) values[1];
+    }
+
+    public long getStageNs(int stage, int field) {
+        return values[HEADER_SIZE + stage * FIELDS_PER_STAGE + field];
+    }
+
+    public double getStageMs(int stage, int field) {
+        return getStageNs(stage, field) / 1e6;
+    }
+
+    /**
+     * Total time of the most recent frame in milliseconds
+     */
+    public double getLastTotalMs() {
+        return getStageMs(STAGE_TOTAL, FIELD_LAST);
+    }
+
+    public long getPlacement(int field) {
+        return values[PLACEMENT_OFFSET + field];
+    }
+
+    /**
+     * CPU the last frame finished on, -1 if unknown
+     */
+    public int getLastCpu() {
+        return (int) getPlacement(PLACEMENT_CPU);
+    }
+
+    /**
+     * Cluster of the last frame's CPU (0 = slowest), -1 if unknown
+     */
+    public int getLastCluster() {
+        return (int) getPlacement(PLACEMENT_CLUSTER);
+    }
+
+    /**
+     * Canny low threshold used for the last frame
+     */
+    public double getThresholdLow() {
+        return values[THRESHOLD_OFFSET + THRESHOLD_LOW] / 100.0;
+    }
+
+    /**
+     * Canny high threshold used for the last frame
+     */
+    public double getThresholdHigh() {
+        return values[THRESHOLD_OFFSET + THRESHOLD_HIGH] / 100.0;
+    }
+
+    /**
+     * NativeLib.THRESHOLD_* mode in effect
+     */
+    public int getThresholdMode() {
+        return (int) values[THRESHOLD_OFFSET + THRESHOLD_MODE];
+    }
+
+    /**
+     * Time the last frame spent choosing thresholds, included in the convert stage
+     */
+    public long getThresholdNs() {
+        return values[THRESHOLD_OFFSET + THRESHOLD_NS];
+    }
+
+    /**
+     * Pyramid levels used for the last frame, 0 if it ran full-frame Canny
+     */
+    public int getPyramidLevels() {
+        return (int) values[PYRAMID_OFFSET + PYRAMID_LEVELS];
+    }
+
+    /**
+     * Fraction of the last frame that ran full-resolution Canny (1 without the pyramid)
+     */
+    public double getPyramidCoverage() {
+        return values[PYRAMID_OFFSET + PYRAMID_COVERAGE] / 1000.0;
+    }
+
+    /**
+     * Regions of interest the last frame was processed in (1 for the whole frame)
+     */
+    public int getRoiRegions() {
+        return (int) values[ROI_OFFSET + ROI_REGIONS];
+    }
+
+    /**
+     * Fraction of the last frame inside its regions of interest
+     */
+    public double getRoiCoverage() {
+        return values[ROI_OFFSET + ROI_COVERAGE] / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "NativeStats{frames=%d, window=%d",
+            getProcessedFrameCount(), getWindowSize()));
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            sb.append(String.format(Locale.US, ", %s min/mean/max: %.2f/%.2f/%.2fms",
+                STAGE_NAMES[stage],
+                getStageMs(stage, FIELD_MIN), getStageMs(stage, FIELD_MEAN), getStageMs(stage, FIELD_MAX)));
+        }
+        sb.append(String.format(Locale.US, ", thread %d on cpu %d (cluster %d, nice %d, %d migrations)",
+            getPlacement(PLACEMENT_THREAD_ID), getLastCpu(), getLastCluster(),
+            getPlacement(PLACEMENT_NICE), getPlacement(PLACEMENT_MIGRATIONS)));
+        int mode = getThresholdMode();
+        sb.append(String.format(Locale.US, ", thresholds %.1f/%.1f (%s, %.3fms)",
+            getThresholdLow(), getThresholdHigh(),
+            mode >= 0 && mode < THRESHOLD_MODE_NAMES.length ? THRESHOLD_MODE_NAMES[mode] : "?",
+            getThresholdNs() / 1e6));
+        if (getPyramidLevels() > 0) {
+            sb.append(String.format(Locale.US, ", pyramid %d levels (%.0f%% at full resolution)",
+                getPyramidLevels(), getPyramidCoverage() * 100));
+        }
+        if (getRoiCoverage() < 1.0) {
+            sb.append(String.format(Locale.US, ", %d regions (%.0f%% of the frame)",
+                getRoiRegions(), getRoiCoverage() * 100));
+        }
+        return sb.append('}').toString();
+    }
+}
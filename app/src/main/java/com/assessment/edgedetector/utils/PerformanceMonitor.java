@@ -1,6 +1,8 @@
 package com.assessment.edgedetector.utils;
 
 import android.util.Log;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -27,6 +29,15 @@ public class PerformanceMonitor {
     // Optimization flags
     private volatile boolean adaptiveQualityEnabled = true;
     private volatile int currentQualityLevel = 3; // 1=low, 2=medium, 3=high, 4=ultra
+    private volatile int qualityCeiling = 4;      // Lowered by thermal throttling
+    private volatile int uncappedQualityLevel = 3; // Level to return to as the ceiling rises
+    
+    // Canny thresholds the native side used for the latest frame
+    private volatile float cannyThresholdLow = 0f;
+    private volatile float cannyThresholdHigh = 0f;
+    
+    // Sensor-to-display latency per pipeline stage
+    private final FrameLatencyTracker latencyTracker = new FrameLatencyTracker(NanoClock.MONOTONIC);
     
     public static class ProcessingResult {
         public final boolean success;
@@ -55,6 +66,8 @@ public class PerformanceMonitor {
             frameDropCount.incrementAndGet();
         }
         
+        Tracer.counter("processingTimeUs", (long) (processingTimeMs * 1000));
+        
         // Check if we need to adjust quality for performance
         String optimizationHint = checkPerformanceAndOptimize(processingTimeMs);
         
@@ -69,6 +82,7 @@ public class PerformanceMonitor {
      */
     public void updateFPS(double fps) {
         this.currentFps = fps;
+        Tracer.counter("fps", Math.round(fps));
         
         // Check if performance is below acceptable threshold
         if (fps < MIN_TARGET_FPS && !performanceWarningShown) {
@@ -93,14 +107,16 @@ public class PerformanceMonitor {
         // If processing is too slow, reduce quality
         if (processingTimeMs > MAX_PROCESSING_TIME_MS && currentQualityLevel > 1) {
             currentQualityLevel--;
+            Tracer.counter("qualityLevel", currentQualityLevel);
             hint = "Reduced quality to level " + currentQualityLevel + " for better performance";
             Log.i(TAG, hint);
             
         // If processing is fast and FPS is good, increase quality
         } else if (processingTimeMs < MAX_PROCESSING_TIME_MS * 0.5 && 
                    currentFps > OPTIMAL_TARGET_FPS && 
-                   currentQualityLevel < 4) {
+                   currentQualityLevel < qualityCeiling) {
             currentQualityLevel++;
+            Tracer.counter("qualityLevel", currentQualityLevel);
             hint = "Increased quality to level " + currentQualityLevel + " due to good performance";
             Log.i(TAG, hint);
         }
@@ -115,11 +131,102 @@ public class PerformanceMonitor {
         return currentQualityLevel;
     }
     
+    /**
+     * Get the most recently reported FPS
+     */
+    public double getCurrentFps() {
+        return currentFps;
+    }
+
+    /**
+     * Get average processing time of successful frames in milliseconds
+     */
+    public double getAverageProcessingTimeMs() {
+        long totalFrames = totalFramesProcessed.get();
+        return totalFrames > 0 ? (double) totalProcessingTimeMs.get() / totalFrames : 0.0;
+    }
+
+    /**
+     * Get total number of frames recorded
+     */
+    public long getTotalFramesProcessed() {
+        return totalFramesProcessed.get();
+    }
+
+    /**
+     * Get number of frames that failed processing
+     */
+    public long getDroppedFrameCount() {
+        return frameDropCount.get();
+    }
+
+    /**
+     * Record the Canny thresholds of the latest frame, fixed or automatic
+     */
+    public void recordCannyThresholds(double low, double high) {
+        cannyThresholdLow = (float) low;
+        cannyThresholdHigh = (float) high;
+    }
+    
+    public float getCannyThresholdLow() {
+        return cannyThresholdLow;
+    }
+    
+    public float getCannyThresholdHigh() {
+        return cannyThresholdHigh;
+    }
+    
+    /**
+     * Get the tracker that pipeline stages mark with sensor timestamps
+     */
+    public FrameLatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * Get sensor-to-display latency percentiles per pipeline stage
+     */
+    public FrameLatencyTracker.LatencyStats getLatencyStats() {
+        return latencyTracker.getStats();
+    }
+
+    /**
+     * Export recent per-frame stage timestamps as CSV
+     */
+    public void exportLatencyTrace(Writer out) throws IOException {
+        latencyTracker.writeCsv(out);
+    }
+
+    /**
+     * Cap the quality level (e.g. from ThermalPolicy). Lowering the cap lowers
+     * the current level at once; raising it restores the level held before
+     * capping, up to the new cap. Adaptive quality never exceeds the cap.
+     */
+    public synchronized void setQualityCeiling(int level) {
+        int ceiling = Math.max(1, Math.min(4, level));
+        if (currentQualityLevel >= qualityCeiling) {
+            // At the old cap: remember where we would be without it
+            uncappedQualityLevel = Math.max(uncappedQualityLevel, currentQualityLevel);
+        } else {
+            uncappedQualityLevel = currentQualityLevel;
+        }
+        qualityCeiling = ceiling;
+        int restored = Math.min(uncappedQualityLevel, ceiling);
+        if (restored != currentQualityLevel) {
+            currentQualityLevel = restored;
+            Tracer.counter("qualityLevel", currentQualityLevel);
+        }
+    }
+    
+    public int getQualityCeiling() {
+        return qualityCeiling;
+    }
+    
     /**
      * Set quality level manually (disables adaptive quality)
      */
     public void setQualityLevel(int level) {
-        this.currentQualityLevel = Math.max(1, Math.min(4, level));
+        this.currentQualityLevel = Math.max(1, Math.min(qualityCeiling, level));
         this.adaptiveQualityEnabled = false;
         Log.i(TAG, "Quality manually set to level " + currentQualityLevel);
     }
@@ -207,6 +314,10 @@ public class PerformanceMonitor {
                 currentFps, avgProcessingTime, totalFrames, droppedFrames, dropRate, currentQualityLevel
             ));
         }
+        
+        if (latencyTracker.getCompletedFrameCount() > 0) {
+            Log.i(TAG, latencyTracker.getStats().toString());
+        }
     }
     
     /**
@@ -220,6 +331,7 @@ public class PerformanceMonitor {
         performanceWarningShown = false;
         currentQualityLevel = 3; // Reset to high quality
         lastLogTime = System.currentTimeMillis();
+        latencyTracker.reset();
         
         Log.i(TAG, "Performance monitor reset");
     }
@@ -238,6 +350,8 @@ public class PerformanceMonitor {
         
         double avgProcessingTime = (double) totalTime / totalFrames;
         double dropRate = (double) droppedFrames / totalFrames * 100;
+        FrameLatencyTracker.LatencyStats latency = latencyTracker.getStats();
+        int tailOwner = latency.getTailOwner();
         
         return String.format(
             "Performance Report:\n" +
@@ -247,9 +361,12 @@ public class PerformanceMonitor {
             "- Frames Dropped: %d (%.1f%%)\n" +
             "- Current Quality Level: %d\n" +
             "- Adaptive Quality: %s\n" +
+            "- Sensor-to-Display Latency p50/p99: %.1f/%.1fms (tail: %s)\n" +
             "- Performance Status: %s",
             currentFps, avgProcessingTime, totalFrames, droppedFrames, dropRate,
             currentQualityLevel, adaptiveQualityEnabled ? "Enabled" : "Disabled",
+            latency.p50Ms[FrameLatencyTracker.STAGE_SENSOR], latency.p99Ms[FrameLatencyTracker.STAGE_SENSOR],
+            tailOwner >= 0 ? FrameLatencyTracker.getStageName(tailOwner) : "n/a",
             currentFps >= MIN_TARGET_FPS ? "Good" : "Below Target"
         );
     }
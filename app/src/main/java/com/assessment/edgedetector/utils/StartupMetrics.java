@@ -0,0 +1,147 @@
+package com.assessment.edgedetector.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cold-start milestones measured from process start
+ *
+ * Startup tasks run in parallel, so each milestone is marked by whichever
+ * thread reaches it; only the first mark counts. Startup is complete once
+ * both the first camera frame and the first edge map have been produced,
+ * at which point the listener is told once.
+ */
+public class StartupMetrics {
+    // Milestones, roughly in dependency order
+    public static final int ACTIVITY_CREATED = 0;     // onCreate entered
+    public static final int NATIVE_LOADED = 1;        // libedgedetector (and OpenCV) loaded
+    public static final int OPENCV_WARM = 2;          // First OpenCV pass run off the critical path
+    public static final int GL_READY = 3;             // Renderer created the camera SurfaceTexture
+    public static final int CAMERA_OPENED = 4;        // CameraDevice opened
+    public static final int PREVIEW_STARTED = 5;      // Repeating capture request running
+    public static final int PROCESSOR_READY = 6;      // Native processor initialised for the preview size
+    public static final int FIRST_PREVIEW_FRAME = 7;  // First camera frame drawn
+    public static final int FIRST_EDGE_FRAME = 8;     // First edge map produced from a camera frame
+    public static final int MILESTONE_COUNT = 9;
+
+    private static final String[] MILESTONE_NAMES = {
+        "activity", "native_loaded", "opencv_warm", "gl_ready", "camera_opened",
+        "preview_started", "processor_ready", "first_preview_frame", "first_edge_frame"
+    };
+
+    public interface Listener {
+        void onStartupComplete(StartupMetrics metrics);
+    }
+
+    private final NanoClock clock;
+    private final long originNs;
+    private final AtomicLongArray marks = new AtomicLongArray(MILESTONE_COUNT);
+    private volatile Listener listener;
+    private volatile boolean completed = false;
+
+    /**
+     * @param clock Clock the milestones are marked on
+     * @param originNs Start of the measurement on that clock (process start)
+     */
+    public StartupMetrics(NanoClock clock, long originNs) {
+        this.clock = clock;
+        this.originNs = originNs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Mark a milestone now
+     * @return true if this was the first mark of the milestone
+     */
+    public boolean mark(int milestone) {
+        // 0 means unmarked, so a mark exactly at the clock origin is nudged by 1ns
+        long now = Math.max(1, clock.nanoTime());
+        if (!marks.compareAndSet(milestone, 0, now)) {
+            return false;
+        }
+        if ((milestone == FIRST_PREVIEW_FRAME || milestone == FIRST_EDGE_FRAME) && isComplete()) {
+            notifyComplete();
+        }
+        return true;
+    }
+
+    public boolean isMarked(int milestone) {
+        return marks.get(milestone) != 0;
+    }
+
+    /**
+     * True once both first frames have been produced
+     */
+    public boolean isComplete() {
+        return isMarked(FIRST_PREVIEW_FRAME) && isMarked(FIRST_EDGE_FRAME);
+    }
+
+    /**
+     * Milliseconds from process start to the milestone, -1 if not reached
+     */
+    public double getMs(int milestone) {
+        long mark = marks.get(milestone);
+        return mark != 0 ? (mark - originNs) / 1e6 : -1;
+    }
+
+    public double getTimeToFirstPreviewMs() {
+        return getMs(FIRST_PREVIEW_FRAME);
+    }
+
+    public double getTimeToFirstEdgeMs() {
+        return getMs(FIRST_EDGE_FRAME);
+    }
+
+    /**
+     * CSV header matching {@link #writeCsvRow}
+     */
+    public static void writeCsvHeader(Writer out) throws IOException {
+        out.write("wall_clock_ms");
+        for (String name : MILESTONE_NAMES) {
+            out.write(',');
+            out.write(name);
+            out.write("_ms");
+        }
+        out.write('\n');
+    }
+
+    /**
+     * One row per launch, so runs can be compared across builds
+     */
+    public void writeCsvRow(Writer out, long wallClockMs) throws IOException {
+        out.write(Long.toString(wallClockMs));
+        for (int i = 0; i < MILESTONE_COUNT; i++) {
+            out.write(String.format(Locale.US, ",%.1f", getMs(i)));
+        }
+        out.write('\n');
+    }
+
+    private void notifyComplete() {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onStartupComplete(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.US,
+            "Startup{first preview %.1fms, first edge %.1fms",
+            getTimeToFirstPreviewMs(), getTimeToFirstEdgeMs()));
+        for (int i = 0; i < FIRST_PREVIEW_FRAME; i++) {
+            sb.append(String.format(Locale.US, ", %s %.1fms", MILESTONE_NAMES[i], getMs(i)));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,363 @@
+package com.assessment.edgedetector.utils;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.Trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low-overhead pipeline tracer producing Chrome Trace / Perfetto JSON
+ *
+ * Spans, counters and flow events are appended to a per-thread ring buffer
+ * owned by the calling thread, so recording never takes a lock. Dumping reads
+ * the rings from another thread and discards any events overwritten while
+ * they were being copied. Timestamps come from System.nanoTime(), the same
+ * CLOCK_MONOTONIC the native tracer (native_trace.cpp) uses, so Java and
+ * native events merge onto one timeline; thread ids are kernel tids for the
+ * same reason.
+ *
+ * When neither recording nor system forwarding is on, every call is a single
+ * volatile read. System forwarding mirrors spans into android.os.Trace for
+ * systrace/Perfetto captures.
+ */
+public final class Tracer {
+    public static final int MODE_RECORD = 1;        // Keep events in the in-app buffers
+    public static final int MODE_SYSTEM_TRACE = 2;  // Forward to android.os.Trace
+
+    private static final int BUFFER_CAPACITY = 1 << 13; // Events per thread, power of two
+    private static final int MAX_RETIRED_BUFFERS = 16;  // Buffers kept for threads that have exited
+
+    private static final byte TYPE_BEGIN = 0;
+    private static final byte TYPE_END = 1;
+    private static final byte TYPE_COUNTER = 2;
+    private static final byte TYPE_INSTANT = 3;
+    private static final byte TYPE_FLOW_START = 4;
+    private static final byte TYPE_FLOW_STEP = 5;
+    private static final byte TYPE_FLOW_END = 6;
+
+    private static final char[] PHASES = {'B', 'E', 'C', 'i', 's', 't', 'f'};
+
+    private static volatile int mode = 0;
+
+    private static final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<ThreadBuffer> localBuffer = new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+            ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), Process.myTid());
+            pruneRetiredBuffers();
+            buffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    /**
+     * Single-writer event ring. Only the owning thread writes; head is
+     * published with a release store after each event is complete.
+     */
+    private static final class ThreadBuffer {
+        final WeakReference<Thread> owner;
+        final int tid;
+        final String threadName;
+        final long[] timestamps = new long[BUFFER_CAPACITY];
+        final long[] values = new long[BUFFER_CAPACITY];
+        final String[] names = new String[BUFFER_CAPACITY];
+        final byte[] types = new byte[BUFFER_CAPACITY];
+        final AtomicLong head = new AtomicLong();
+        // Open span count, so an end() without a traced begin() is ignored
+        int depth = 0;
+
+        ThreadBuffer(Thread thread, int tid) {
+            this.owner = new WeakReference<>(thread);
+            this.tid = tid;
+            this.threadName = thread.getName();
+        }
+
+        boolean isRetired() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        void add(byte type, String name, long value) {
+            long index = head.get();
+            int slot = (int) index & (BUFFER_CAPACITY - 1);
+            timestamps[slot] = System.nanoTime();
+            types[slot] = type;
+            names[slot] = name;
+            values[slot] = value;
+            head.lazySet(index + 1);
+        }
+    }
+
+    private Tracer() {
+    }
+
+    /**
+     * Set the tracing mode, a combination of MODE_RECORD and MODE_SYSTEM_TRACE (0 disables)
+     */
+    public static void setMode(int newMode) {
+        mode = newMode;
+    }
+
+    public static int getMode() {
+        return mode;
+    }
+
+    public static boolean isEnabled() {
+        return mode != 0;
+    }
+
+    /**
+     * Open a span on the current thread; must be closed by {@link #end()} on the same thread
+     */
+    public static void begin(String name) {
+        int m = mode;
+        if (m == 0) {
+            return;
+        }
+        ThreadBuffer buffer = localBuffer.get();
+        buffer.depth++;
+        if ((m & MODE_RECORD) != 0) {
+            buffer.add(TYPE_BEGIN, name, 0);
+        }
+        if ((m & MODE_SYSTEM_TRACE) != 0) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Close the innermost span opened on the current thread
+     */
+    public static void end() {
+        int m = mode;
+        if (m == 0) {
+            return;
+        }
+        ThreadBuffer buffer = localBuffer.get();
+        // A span opened before tracing was enabled has no begin to match
+        if (buffer.depth == 0) {
+            return;
+        }
+        buffer.depth--;
+        if ((m & MODE_RECORD) != 0) {
+            buffer.add(TYPE_END, null, 0);
+        }
+        if ((m & MODE_SYSTEM_TRACE) != 0) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Record the current value of a named counter track
+     */
+    public static void counter(String name, long value) {
+        int m = mode;
+        if (m == 0) {
+            return;
+        }
+        if ((m & MODE_RECORD) != 0) {
+            localBuffer.get().add(TYPE_COUNTER, name, value);
+        }
+        if ((m & MODE_SYSTEM_TRACE) != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter(name, value);
+        }
+    }
+
+    /**
+     * Record a zero-duration marker on the current thread
+     */
+    public static void instant(String name) {
+        if ((mode & MODE_RECORD) != 0) {
+            localBuffer.get().add(TYPE_INSTANT, name, 0);
+        }
+    }
+
+    /**
+     * Start a flow (arrow between spans on different threads), e.g. keyed by sensor timestamp.
+     * Flow events bind to the span enclosing them on the current thread.
+     */
+    public static void flowStart(String name, long id) {
+        int m = mode;
+        if (m == 0) {
+            return;
+        }
+        if ((m & MODE_RECORD) != 0) {
+            localBuffer.get().add(TYPE_FLOW_START, name, id);
+        }
+        if ((m & MODE_SYSTEM_TRACE) != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, (int) (id ^ (id >>> 32)));
+        }
+    }
+
+    public static void flowStep(String name, long id) {
+        if ((mode & MODE_RECORD) != 0) {
+            localBuffer.get().add(TYPE_FLOW_STEP, name, id);
+        }
+    }
+
+    public static void flowEnd(String name, long id) {
+        int m = mode;
+        if (m == 0) {
+            return;
+        }
+        if ((m & MODE_RECORD) != 0) {
+            localBuffer.get().add(TYPE_FLOW_END, name, id);
+        }
+        if ((m & MODE_SYSTEM_TRACE) != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, (int) (id ^ (id >>> 32)));
+        }
+    }
+
+    /**
+     * Write all recorded events as a Chrome Trace JSON object
+     * @param nativeEvents comma-separated JSON events from the native tracer, or null
+     */
+    public static void writeChromeTrace(Writer out, String nativeEvents) throws IOException {
+        int pid = Process.myPid();
+        StringBuilder sb = new StringBuilder(256);
+        out.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+
+        for (ThreadBuffer buffer : buffers) {
+            sb.setLength(0);
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":").append(pid)
+              .append(",\"tid\":").append(buffer.tid)
+              .append(",\"args\":{\"name\":\"");
+            appendEscaped(sb, buffer.threadName);
+            sb.append("\"}}");
+            out.write(sb.toString());
+            writeBufferEvents(out, buffer, pid, sb);
+        }
+
+        if (nativeEvents != null && !nativeEvents.isEmpty()) {
+            if (!first) {
+                out.write(',');
+            }
+            out.write(nativeEvents);
+        }
+        out.write("]}\n");
+        out.flush();
+    }
+
+    private static void writeBufferEvents(Writer out, ThreadBuffer buffer, int pid,
+                                          StringBuilder sb) throws IOException {
+        long end = buffer.head.get();
+        long start = Math.max(0, end - BUFFER_CAPACITY);
+        int count = (int) (end - start);
+
+        long[] timestamps = new long[count];
+        long[] values = new long[count];
+        String[] names = new String[count];
+        byte[] types = new byte[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (start + i) & (BUFFER_CAPACITY - 1);
+            timestamps[i] = buffer.timestamps[slot];
+            values[i] = buffer.values[slot];
+            names[i] = buffer.names[slot];
+            types[i] = buffer.types[slot];
+        }
+
+        // Events the writer lapped during the copy are torn; skip them
+        long firstValid = Math.max(start, buffer.head.get() - BUFFER_CAPACITY + 1);
+        for (int i = (int) (firstValid - start); i < count; i++) {
+            byte type = types[i];
+            sb.setLength(0);
+            sb.append(",{\"ph\":\"").append(PHASES[type]).append('"')
+              .append(",\"pid\":").append(pid)
+              .append(",\"tid\":").append(buffer.tid)
+              .append(",\"ts\":");
+            appendMicros(sb, timestamps[i]);
+            if (names[i] != null) {
+                sb.append(",\"name\":\"");
+                appendEscaped(sb, names[i]);
+                sb.append('"');
+            }
+            switch (type) {
+                case TYPE_COUNTER:
+                    sb.append(",\"args\":{\"value\":").append(values[i]).append('}');
+                    break;
+                case TYPE_INSTANT:
+                    sb.append(",\"s\":\"t\"");
+                    break;
+                case TYPE_FLOW_START:
+                case TYPE_FLOW_STEP:
+                case TYPE_FLOW_END:
+                    sb.append(",\"cat\":\"flow\",\"id\":").append(values[i]);
+                    if (type == TYPE_FLOW_END) {
+                        sb.append(",\"bp\":\"e\"");
+                    }
+                    break;
+                default:
+                    break;
+            }
+            sb.append('}');
+            out.write(sb.toString());
+        }
+    }
+
+    /**
+     * Bound the memory held by short-lived threads: keep the buffers of the
+     * most recently registered exited threads and drop older ones
+     */
+    private static void pruneRetiredBuffers() {
+        int retired = 0;
+        for (int i = buffers.size() - 1; i >= 0; i--) {
+            ThreadBuffer buffer = buffers.get(i);
+            if (buffer.isRetired() && ++retired > MAX_RETIRED_BUFFERS) {
+                buffers.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Drop all recorded events. Only safe while recording is off.
+     */
+    public static void clear() {
+        for (ThreadBuffer buffer : buffers) {
+            buffer.head.set(0);
+        }
+    }
+
+    /**
+     * Measure the cost of a begin/end pair in the current mode
+     * @return nanoseconds per begin/end pair
+     */
+    public static double measureSpanOverheadNs(int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            begin("overhead");
+            end();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    private static void appendMicros(StringBuilder sb, long nanos) {
+        sb.append(nanos / 1000).append('.');
+        long frac = nanos % 1000;
+        if (frac < 100) sb.append('0');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
+    private static void appendEscaped(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
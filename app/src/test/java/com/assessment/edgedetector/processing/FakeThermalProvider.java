@@ -0,0 +1,59 @@
+package com.assessment.edgedetector.processing;
+
+/**
+ * Scripted thermal and battery readings for driving ThermalPolicy in tests
+ */
+public class FakeThermalProvider implements ThermalPolicy.Provider {
+    private volatile int thermalStatus = ThermalPolicy.STATUS_NONE;
+    private volatile float headroom = Float.NaN;
+    private volatile int batteryPercent = 100;
+    private volatile boolean charging = false;
+    private volatile int lastForecastSeconds = -1;
+
+    public FakeThermalProvider setThermalStatus(int status) {
+        this.thermalStatus = status;
+        return this;
+    }
+
+    /**
+     * Headroom returned for any forecast; NaN simulates a device without the API
+     */
+    public FakeThermalProvider setHeadroom(float headroom) {
+        this.headroom = headroom;
+        return this;
+    }
+
+    public FakeThermalProvider setBattery(int percent, boolean charging) {
+        this.batteryPercent = percent;
+        this.charging = charging;
+        return this;
+    }
+
+    /**
+     * Forecast requested by the last headroom query, or -1
+     */
+    public int getLastForecastSeconds() {
+        return lastForecastSeconds;
+    }
+
+    @Override
+    public int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    @Override
+    public float getThermalHeadroom(int forecastSeconds) {
+        lastForecastSeconds = forecastSeconds;
+        return headroom;
+    }
+
+    @Override
+    public int getBatteryPercent() {
+        return batteryPercent;
+    }
+
+    @Override
+    public boolean isCharging() {
+        return charging;
+    }
+}
@@ -0,0 +1,238 @@
+package com.assessment.edgedetector.processing;
+
+import com.assessment.edgedetector.reactive.RefCounted;
+import com.assessment.edgedetector.utils.NanoClock;
+import com.assessment.edgedetector.utils.SimulatedClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+    private static final long MS = 1_000_000L;
+    private static final long FRAME_PERIOD_NS = 33_333_333L;
+
+    private SimulatedClock clock;
+    private long processingCostNs;
+    private final List<Long> processed = new ArrayList<>();
+    private final List<Long> dropped = new ArrayList<>();
+    private final List<Integer> dropReasons = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new SimulatedClock();
+        processingCostNs = 10 * MS;
+        processed.clear();
+        dropped.clear();
+        dropReasons.clear();
+    }
+
+    private <T> FrameScheduler<T> newScheduler() {
+        FrameScheduler<T> scheduler = new FrameScheduler<>(clock, (frame, w, h, ts) -> {
+            processed.add(ts);
+            clock.advance(processingCostNs);
+            return true;
+        });
+        scheduler.setRefreshRate(60f);
+        scheduler.setDeadlineFrames(3);
+        scheduler.setDropListener((ts, reason) -> {
+            dropped.add(ts);
+            dropReasons.add(reason);
+        });
+        return scheduler;
+    }
+
+    @Test
+    public void deadlineIsRefreshPeriodsAfterTimestamp() {
+        FrameScheduler<byte[]> scheduler = newScheduler();
+        assertEquals(1_000 * MS + 3 * 16_666_666L, scheduler.getDeadline(1_000 * MS));
+
+        scheduler.setDeadlineFrames(0);
+        assertEquals(1_000 * MS + 16_666_666L, scheduler.getDeadline(1_000 * MS));
+    }
+
+    @Test
+    public void framesWithinBudgetCompleteOnTime() {
+        FrameScheduler<byte[]> scheduler = newScheduler();
+        SyntheticFrameSource source = new SyntheticFrameSource(clock, 64, 48, FRAME_PERIOD_NS);
+        source.setDeliveryDelayNs(5 * MS);
+
+        for (int i = 0; i < 30; i++) {
+            source.deliver(scheduler);
+            assertTrue(scheduler.processNext());
+        }
+        assertFalse(scheduler.processNext());
+
+        FrameScheduler.SchedulerStats stats = scheduler.getStats();
+        assertEquals(30, stats.submitted);
+        assertEquals(30, stats.onTime);
+        assertEquals(0, stats.lateCompleted);
+        assertEquals(0, stats.getSkipped());
+        assertEquals(30, processed.size());
+    }
+
+    @Test
+    public void staleFrameIsSkippedBeforeTheHandler() {
+        FrameScheduler<byte[]> scheduler = newScheduler();
+        scheduler.submit(new byte[1], 1, 1, 0);
+        clock.set(scheduler.getDeadline(0));
+
+        assertTrue(scheduler.processNext());
+        assertTrue(processed.isEmpty());
+        assertEquals(1, scheduler.getStats().skippedStale);
+        assertEquals(Long.valueOf(0), dropped.get(0));
+        assertEquals(Integer.valueOf(FrameScheduler.DROP_STALE), dropReasons.get(0));
+    }
+
+    @Test
+    public void newerFrameSupersedesPendingOne() {
+        FrameScheduler<byte[]> scheduler = newScheduler();
+        scheduler.submit(new byte[1], 1, 1, 0);
+        scheduler.submit(new byte[1], 1, 1, FRAME_PERIOD_NS);
+
+        assertTrue(scheduler.processNext());
+        assertFalse(scheduler.processNext());
+        assertEquals(1, processed.size());
+        assertEquals(Long.valueOf(FRAME_PERIOD_NS), processed.get(0));
+        assertEquals(Long.valueOf(0), dropped.get(0));
+        assertEquals(Integer.valueOf(FrameScheduler.DROP_SUPERSEDED), dropReasons.get(0));
+
+        FrameScheduler.SchedulerStats stats = scheduler.getStats();
+        assertEquals(2, stats.submitted);
+        assertEquals(1, stats.superseded);
+        assertEquals(1, stats.onTime);
+    }
+
+    @Test
+    public void frameFinishingPastDeadlineCountsAsLate() {
+        FrameScheduler<byte[]> scheduler = newScheduler();
+        processingCostNs = scheduler.getDeadline(0) + 20 * MS;
+        scheduler.submit(new byte[1], 1, 1, 0);
+
+        assertTrue(scheduler.processNext());
+        FrameScheduler.SchedulerStats stats = scheduler.getStats();
+        assertEquals(1, stats.lateCompleted);
+        assertEquals(0, stats.onTime);
+        assertEquals(20 * MS, stats.maxLatenessNs);
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void handlerFailuresAreCounted() {
+        FrameScheduler<byte[]> scheduler = new FrameScheduler<>(clock, (frame, w, h, ts) -> {
+            if (ts == 0) {
+                return false;
+            }
+            throw new IllegalStateException("handler failure");
+        });
+        scheduler.submit(new byte[1], 1, 1, 0);
+        scheduler.processNext();
+        scheduler.submit(new byte[1], 1, 1, 1);
+        scheduler.processNext();
+
+        assertEquals(2, scheduler.getStats().failed);
+    }
+
+    @Test
+    public void slowProcessingNeverStartsAFramePastItsDeadline() {
+        FrameScheduler<byte[]> deadlines = newScheduler();
+        processingCostNs = 45 * MS;
+        List<Long> startLateness = new ArrayList<>();
+        FrameScheduler<byte[]> checked = new FrameScheduler<>(clock, (frame, w, h, ts) -> {
+            startLateness.add(clock.nanoTime() - deadlines.getDeadline(ts));
+            clock.advance(processingCostNs);
+            return true;
+        });
+        checked.setRefreshRate(60f);
+        SyntheticFrameSource source = new SyntheticFrameSource(clock, 64, 48, FRAME_PERIOD_NS);
+        source.setDeliveryDelayNs(20 * MS);
+
+        // Two frames arrive per processed frame: a backlog the scheduler must shed
+        for (int i = 0; i < 150; i++) {
+            source.deliver(checked);
+            source.deliver(checked);
+            checked.processNext();
+        }
+
+        FrameScheduler.SchedulerStats stats = checked.getStats();
+        assertEquals(300, stats.submitted);
+        assertEquals(stats.submitted,
+            stats.onTime + stats.lateCompleted + stats.getSkipped() + stats.failed);
+        assertTrue(stats.superseded > 0);
+        for (long lateness : startLateness) {
+            assertTrue(lateness < 0);
+        }
+    }
+
+    @Test
+    public void refCountedFramesAreReleasedOnceProcessedOrDropped() {
+        FrameScheduler<CountedFrame> scheduler = newScheduler();
+
+        CountedFrame superseded = new CountedFrame();
+        CountedFrame processedFrame = new CountedFrame();
+        scheduler.submit(superseded, 1, 1, 0);
+        scheduler.submit(processedFrame, 1, 1, 1);
+        assertEquals(0, superseded.refs);
+        assertEquals(1, processedFrame.refs);
+        scheduler.processNext();
+        assertEquals(0, processedFrame.refs);
+
+        CountedFrame stale = new CountedFrame();
+        scheduler.submit(stale, 1, 1, 2);
+        clock.set(scheduler.getDeadline(2));
+        scheduler.processNext();
+        assertEquals(0, stale.refs);
+
+        CountedFrame pendingAtStop = new CountedFrame();
+        scheduler.submit(pendingAtStop, 1, 1, 3);
+        scheduler.stop();
+        assertEquals(0, pendingAtStop.refs);
+    }
+
+    @Test
+    public void workerThreadProcessesSubmittedFrames() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        FrameScheduler<CountedFrame> scheduler = new FrameScheduler<>(NanoClock.MONOTONIC,
+            (frame, w, h, ts) -> {
+                done.countDown();
+                return true;
+            });
+        CountedFrame frame = new CountedFrame();
+        scheduler.start();
+        scheduler.submit(frame, 1, 1, System.nanoTime());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler.stop();
+        assertEquals(1, scheduler.getStats().onTime);
+        assertEquals(0, frame.refs);
+    }
+
+    /**
+     * Frame that holds one reference when submitted
+     */
+    private static class CountedFrame implements RefCounted {
+        int refs = 1;
+
+        @Override
+        public RefCounted retain() {
+            refs++;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            if (refs <= 0) {
+                throw new IllegalStateException("Released more often than retained");
+            }
+            refs--;
+        }
+    }
+}
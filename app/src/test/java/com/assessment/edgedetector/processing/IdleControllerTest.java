@@ -0,0 +1,162 @@
+package com.assessment.edgedetector.processing;
+
+import com.assessment.edgedetector.reactive.FrameEmitter;
+import com.assessment.edgedetector.utils.SimulatedClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdleControllerTest {
+    private static final long MS = 1_000_000L;
+    // 20 fps keeps the frame times exact
+    private static final long FRAME_PERIOD_NS = 50 * MS;
+    private static final float THRESHOLD = 0.005f;
+
+    private IdleController controller;
+    private SyntheticFrameSource source;
+    private FrameEmitter<FrameData> frames;
+    private float motionScore;
+    private final List<Boolean> decisions = new ArrayList<>();
+    private final List<Long> entered = new ArrayList<>();
+    private final List<Long> exitedIdleNs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        controller = new IdleController();
+        controller.setStaticTimeoutMs(1_000);
+        controller.setIdleIntervalMs(500);
+        controller.setMotionThreshold(THRESHOLD);
+        controller.setListener(new IdleController.Listener() {
+            @Override
+            public void onIdleEntered(long timestampNs, long staticNs) {
+                entered.add(timestampNs);
+            }
+
+            @Override
+            public void onIdleExited(long timestampNs, long idleNs, float score) {
+                exitedIdleNs.add(idleNs);
+            }
+        });
+
+        source = new SyntheticFrameSource(new SimulatedClock(), 16, 8, FRAME_PERIOD_NS);
+        frames = new FrameEmitter<>();
+        frames.subscribe(frame -> decisions.add(controller.onFrame(motionScore, frame.timestampNs)));
+        decisions.clear();
+        entered.clear();
+        exitedIdleNs.clear();
+    }
+
+    /**
+     * Deliver count frames with the given motion score
+     * @return How many of them the controller let through
+     */
+    private int deliver(int count, float score) {
+        motionScore = score;
+        int from = decisions.size();
+        for (int i = 0; i < count; i++) {
+            source.deliver(frames);
+        }
+        int processed = 0;
+        for (boolean process : decisions.subList(from, decisions.size())) {
+            if (process) {
+                processed++;
+            }
+        }
+        return processed;
+    }
+
+    @Test
+    public void entersIdleAfterStaticTimeout() {
+        // Frames 0-19 cover 0-950ms
+        assertEquals(20, deliver(20, 0f));
+        assertFalse(controller.isIdle());
+
+        // Frame 20 at 1s reaches the timeout and is still processed
+        assertEquals(1, deliver(1, 0f));
+        assertTrue(controller.isIdle());
+        assertEquals(1, entered.size());
+        assertEquals(Long.valueOf(1_000 * MS), entered.get(0));
+    }
+
+    @Test
+    public void processesOneFramePerIdleInterval() {
+        deliver(21, 0f);
+
+        // Two seconds of idle at 20 fps: one frame per 500ms gets through
+        assertEquals(4, deliver(40, 0f));
+        for (int i = 21; i < decisions.size(); i++) {
+            assertEquals("Frame " + i, (i - 20) % 10 == 0, decisions.get(i));
+        }
+    }
+
+    @Test
+    public void firstFrameAtThresholdLeavesIdleAndIsProcessed() {
+        deliver(25, 0f);
+        assertTrue(controller.isIdle());
+
+        // Below the threshold stays idle and is skipped
+        assertEquals(0, deliver(1, THRESHOLD / 2));
+        assertTrue(controller.isIdle());
+
+        assertEquals(1, deliver(1, THRESHOLD));
+        assertFalse(controller.isIdle());
+        assertEquals(1, exitedIdleNs.size());
+        // Idle from frame 20 to frame 26
+        assertEquals(Long.valueOf(6 * FRAME_PERIOD_NS), exitedIdleNs.get(0));
+
+        // Back at full rate until the scene has been static for the timeout again
+        assertEquals(19, deliver(19, 0f));
+        assertFalse(controller.isIdle());
+    }
+
+    @Test
+    public void disablingLeavesIdleAndProcessesEveryFrame() {
+        deliver(30, 0f);
+        assertTrue(controller.isIdle());
+
+        controller.setEnabled(false);
+        assertFalse(controller.isIdle());
+        assertEquals(1, exitedIdleNs.size());
+        assertEquals(60, deliver(60, 0f));
+        assertFalse(controller.isIdle());
+
+        // Re-enabling starts the static timeout from the next frame
+        controller.setEnabled(true);
+        assertEquals(21, deliver(21, 0f));
+        assertTrue(controller.isIdle());
+    }
+
+    @Test
+    public void statsTotalProcessedSkippedAndIdleTime() {
+        // Frames 0-60: idle from 1s, frames 20, 30, 40, 50 and 60 processed while idle
+        deliver(61, 0f);
+        IdleController.IdleStats stats = controller.getStats();
+        assertTrue(stats.idle);
+        assertEquals(1, stats.entries);
+        assertEquals(0, stats.exits);
+        assertEquals(25, stats.framesProcessed);
+        assertEquals(36, stats.framesSkipped);
+        // The idle period in progress counts up to the last frame
+        assertEquals(2_000 * MS, stats.totalIdleNs);
+
+        deliver(1, 1f);
+        stats = controller.getStats();
+        assertFalse(stats.idle);
+        assertEquals(1, stats.exits);
+        assertEquals(26, stats.framesProcessed);
+        assertEquals(2_050 * MS, stats.totalIdleNs);
+        assertEquals(62, stats.framesProcessed + stats.framesSkipped);
+
+        controller.reset();
+        stats = controller.getStats();
+        assertEquals(0, stats.framesProcessed + stats.framesSkipped);
+        assertEquals(0, stats.totalIdleNs);
+    }
+}
@@ -0,0 +1,116 @@
+package com.assessment.edgedetector.processing;
+
+import com.assessment.edgedetector.reactive.FrameEmitter;
+import com.assessment.edgedetector.utils.SimulatedClock;
+
+/**
+ * Synthetic camera driven by a SimulatedClock
+ *
+ * Produces grayscale frames with a vertical bar that moves one step per frame,
+ * stamped like sensor frames: each frame advances the clock by the frame
+ * period and is delivered a fixed pipeline delay after its timestamp.
+ * Combined with a FrameHandler that advances the same clock by a simulated
+ * processing cost, this replays backlog scenarios through FrameScheduler
+ * deterministically:
+ * <pre>
+ *  SimulatedClock clock = new SimulatedClock();
+ *  FrameScheduler<byte[]> scheduler = new FrameScheduler<>(clock, (d, w, h, ts) -> {
+ *      clock.advance(45_000_000L);
+ *      return true;
+ *  });
+ *  SyntheticFrameSource source = new SyntheticFrameSource(clock, 64, 48, 33_333_333L);
+ *  for (int i = 0; i < 300; i++) {
+ *      source.deliver(scheduler);
+ *      scheduler.processNext();
+ *  }
+ * </pre>
+ *
+ * The same source drives a FrameEmitter for stream pipelines; frames without
+ * demand are not rendered, as the camera does not copy them.
+ */
+public class SyntheticFrameSource {
+    private static final int BAR_WIDTH = 4;
+
+    private final SimulatedClock clock;
+    private final int width;
+    private final int height;
+    private final long framePeriodNs;
+    private long deliveryDelayNs = 0;
+    private long nextTimestampNs;
+    private long frameIndex = 0;
+
+    public SyntheticFrameSource(SimulatedClock clock, int width, int height, long framePeriodNs) {
+        this.clock = clock;
+        this.width = width;
+        this.height = height;
+        this.framePeriodNs = framePeriodNs;
+        this.nextTimestampNs = clock.nanoTime();
+    }
+
+    /**
+     * Delay between the sensor timestamp and delivery to the scheduler
+     */
+    public void setDeliveryDelayNs(long delayNs) {
+        deliveryDelayNs = delayNs;
+    }
+
+    /**
+     * Render the next frame (width * height bytes, one channel)
+     */
+    public byte[] nextFrame() {
+        byte[] frame = new byte[width * height];
+        int barX = (int) ((frameIndex * BAR_WIDTH) % width);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = barX; x < Math.min(barX + BAR_WIDTH, width); x++) {
+                frame[row + x] = (byte) 0xFF;
+            }
+        }
+        frameIndex++;
+        return frame;
+    }
+
+    /**
+     * Advance the clock to the next frame's delivery time and submit it.
+     * If processing has already moved the clock past that point, the frame is
+     * delivered immediately, as a camera queue would after a stall.
+     * @return The frame's sensor timestamp
+     */
+    public long deliver(FrameScheduler<byte[]> scheduler) {
+        long timestamp = nextTimestampNs;
+        nextTimestampNs += framePeriodNs;
+
+        long deliveryTime = timestamp + deliveryDelayNs;
+        if (clock.nanoTime() < deliveryTime) {
+            clock.set(deliveryTime);
+        }
+        scheduler.submit(nextFrame(), width, height, timestamp);
+        return timestamp;
+    }
+
+    /**
+     * Advance the clock to the next frame's delivery time and emit it if any
+     * subscriber has demand
+     * @return The frame's sensor timestamp
+     */
+    public long deliver(FrameEmitter<FrameData> emitter) {
+        long timestamp = nextTimestampNs;
+        nextTimestampNs += framePeriodNs;
+
+        long deliveryTime = timestamp + deliveryDelayNs;
+        if (clock.nanoTime() < deliveryTime) {
+            clock.set(deliveryTime);
+        }
+        if (emitter.hasDemand()) {
+            emitter.emit(new FrameData(nextFrame(), width, height, timestamp));
+        } else {
+            frameIndex++;
+            emitter.skip();
+        }
+        return timestamp;
+    }
+
+    public long getFrameCount() {
+        return frameIndex;
+    }
+}
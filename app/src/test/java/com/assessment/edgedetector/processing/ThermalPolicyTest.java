@@ -0,0 +1,165 @@
+package com.assessment.edgedetector.processing;
+
+import com.assessment.edgedetector.utils.PerformanceMonitor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThermalPolicyTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private FakeThermalProvider provider;
+    private PerformanceMonitor monitor;
+    private ThermalPolicy policy;
+    private final List<Integer> changes = new ArrayList<>();
+    private long nowNs;
+
+    @Before
+    public void setUp() {
+        provider = new FakeThermalProvider();
+        monitor = new PerformanceMonitor();
+        policy = new ThermalPolicy(provider, monitor);
+        policy.setListener((level, settings, reason) -> {
+            assertSame(ThermalPolicy.getSettings(level), settings);
+            changes.add(level);
+        });
+        changes.clear();
+        nowNs = 0;
+    }
+
+    /**
+     * Evaluate once a second for the given number of seconds
+     * @return The level after the last evaluation
+     */
+    private int runFor(int seconds) {
+        int level = policy.getLevel();
+        for (int i = 0; i < seconds; i++) {
+            nowNs += SECOND;
+            level = policy.evaluate(nowNs);
+        }
+        return level;
+    }
+
+    @Test
+    public void staysUnthrottledWithoutThermalApis() {
+        assertEquals(ThermalPolicy.LEVEL_MAX, policy.evaluate(nowNs));
+        assertEquals(ThermalPolicy.LEVEL_MAX, runFor(30));
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void thermalStatusStepsDownAtOnce() {
+        provider.setThermalStatus(ThermalPolicy.STATUS_LIGHT);
+        assertEquals(3, policy.evaluate(nowNs));
+
+        provider.setThermalStatus(ThermalPolicy.STATUS_SEVERE);
+        assertEquals(1, runFor(1));
+
+        assertEquals(2, changes.size());
+        assertEquals(1, monitor.getQualityCeiling());
+    }
+
+    @Test
+    public void headroomIsReadAsForecast() {
+        policy.setForecastSeconds(5);
+        provider.setHeadroom(0.80f);
+
+        assertEquals(3, policy.evaluate(nowNs));
+        assertEquals(5, provider.getLastForecastSeconds());
+
+        provider.setHeadroom(0.90f);
+        assertEquals(2, runFor(1));
+        provider.setHeadroom(0.96f);
+        assertEquals(1, runFor(1));
+    }
+
+    @Test
+    public void evaluationsWithinASecondReuseTheLastReading() {
+        policy.evaluate(nowNs);
+        provider.setThermalStatus(ThermalPolicy.STATUS_SEVERE);
+
+        assertEquals(ThermalPolicy.LEVEL_MAX, policy.evaluate(nowNs + SECOND / 2));
+        assertEquals(1, policy.evaluate(nowNs + SECOND));
+    }
+
+    @Test
+    public void restoreStepsUpOneLevelPerHold() {
+        provider.setThermalStatus(ThermalPolicy.STATUS_SEVERE);
+        policy.evaluate(nowNs);
+        provider.setThermalStatus(ThermalPolicy.STATUS_NONE);
+
+        // Good readings start at 1s; each step needs 15s of them
+        assertEquals(1, runFor(15));
+        assertEquals(2, runFor(1));
+        assertEquals(2, runFor(14));
+        assertEquals(3, runFor(1));
+        assertEquals(ThermalPolicy.LEVEL_MAX, runFor(15));
+
+        assertEquals(4, changes.size());
+        assertEquals(ThermalPolicy.LEVEL_MAX, monitor.getQualityCeiling());
+    }
+
+    @Test
+    public void badReadingRestartsTheRestoreHold() {
+        provider.setThermalStatus(ThermalPolicy.STATUS_MODERATE);
+        policy.evaluate(nowNs);
+        provider.setThermalStatus(ThermalPolicy.STATUS_NONE);
+        runFor(10);
+
+        provider.setThermalStatus(ThermalPolicy.STATUS_MODERATE);
+        assertEquals(2, runFor(1));
+        provider.setThermalStatus(ThermalPolicy.STATUS_NONE);
+        assertEquals(2, runFor(15));
+        assertEquals(3, runFor(1));
+    }
+
+    @Test
+    public void restoreNeedsHeadroomMargin() {
+        policy.setRestoreHoldMs(0);
+        provider.setHeadroom(0.80f);
+        assertEquals(3, policy.evaluate(nowNs));
+
+        // Below the level 3 threshold, but within the margin
+        provider.setHeadroom(0.72f);
+        assertEquals(3, runFor(60));
+
+        provider.setHeadroom(0.65f);
+        assertEquals(ThermalPolicy.LEVEL_MAX, runFor(1));
+    }
+
+    @Test
+    public void lowBatteryThrottlesOnlyWhileDischarging() {
+        policy.setRestoreHoldMs(0);
+        provider.setBattery(12, false);
+        assertEquals(2, policy.evaluate(nowNs));
+
+        provider.setBattery(4, false);
+        assertEquals(1, runFor(1));
+
+        provider.setBattery(4, true);
+        assertEquals(2, runFor(1));
+        assertEquals(ThermalPolicy.LEVEL_MAX, runFor(2));
+
+        provider.setBattery(-1, false);
+        assertEquals(ThermalPolicy.LEVEL_MAX, runFor(1));
+    }
+
+    @Test
+    public void settingsTightenWithEachLevel() {
+        for (int level = ThermalPolicy.LEVEL_MIN; level < ThermalPolicy.LEVEL_MAX; level++) {
+            ThermalPolicy.Settings lower = ThermalPolicy.getSettings(level);
+            ThermalPolicy.Settings higher = ThermalPolicy.getSettings(level + 1);
+            assertTrue(lower.analysisDivisor >= higher.analysisDivisor);
+            assertTrue(lower.minFrameIntervalNs > higher.minFrameIntervalNs);
+        }
+        assertSame(ThermalPolicy.getSettings(ThermalPolicy.LEVEL_MIN), ThermalPolicy.getSettings(0));
+        assertSame(ThermalPolicy.getSettings(ThermalPolicy.LEVEL_MAX), ThermalPolicy.getSettings(9));
+    }
+}
@@ -0,0 +1,281 @@
+package com.assessment.edgedetector.reactive;
+
+import com.assessment.edgedetector.processing.FrameData;
+import com.assessment.edgedetector.processing.SyntheticFrameSource;
+import com.assessment.edgedetector.utils.SimulatedClock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameStreamTest {
+    private static final long MS = 1_000_000L;
+    private static final long FRAME_PERIOD_NS = 33_333_333L;
+
+    @Test
+    public void emitterDeliversOnlyRequestedItems() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.subscribe(recorder);
+        recorder.subscription.request(2);
+
+        assertTrue(emitter.hasDemand());
+        assertEquals(1, emitter.emit(new Item(0)));
+        assertEquals(1, emitter.emit(new Item(1)));
+        assertFalse(emitter.hasDemand());
+        assertEquals(0, emitter.emit(new Item(2)));
+
+        assertEquals(2, recorder.items.size());
+        assertEquals(1, emitter.getUndemandedCount());
+    }
+
+    @Test
+    public void sourceDoesNotRenderFramesWithoutDemand() {
+        SimulatedClock clock = new SimulatedClock();
+        SyntheticFrameSource source = new SyntheticFrameSource(clock, 16, 8, FRAME_PERIOD_NS);
+        FrameEmitter<FrameData> emitter = new FrameEmitter<>();
+        Recorder<FrameData> recorder = new Recorder<>();
+        emitter.subscribe(recorder);
+        recorder.subscription.request(1);
+
+        for (int i = 0; i < 5; i++) {
+            source.deliver(emitter);
+        }
+
+        assertEquals(1, recorder.items.size());
+        assertEquals(0, recorder.items.get(0).timestampNs);
+        assertEquals(4, emitter.getUndemandedCount());
+        assertEquals(4 * FRAME_PERIOD_NS, clock.nanoTime());
+    }
+
+    @Test
+    public void pullSubscriberReceivesEveryFrameOfSynchronousSource() {
+        SimulatedClock clock = new SimulatedClock();
+        SyntheticFrameSource source = new SyntheticFrameSource(clock, 16, 8, FRAME_PERIOD_NS);
+        FrameEmitter<FrameData> emitter = new FrameEmitter<>();
+        List<Long> timestamps = new ArrayList<>();
+        FrameStream.Subscription subscription = emitter.subscribe(frame -> timestamps.add(frame.timestampNs));
+
+        for (int i = 0; i < 10; i++) {
+            source.deliver(emitter);
+        }
+        subscription.cancel();
+        source.deliver(emitter);
+
+        assertEquals(10, timestamps.size());
+        assertFalse(emitter.hasSubscribers());
+    }
+
+    @Test
+    public void sampleAtHundredMillisecondsGivesTenHertz() {
+        SimulatedClock clock = new SimulatedClock();
+        SyntheticFrameSource source = new SyntheticFrameSource(clock, 16, 8, FRAME_PERIOD_NS);
+        FrameEmitter<FrameData> emitter = new FrameEmitter<>();
+        List<Long> sampled = new ArrayList<>();
+        emitter.sample(100 * MS, FrameData::getTimestampNs).subscribe(frame -> sampled.add(frame.timestampNs));
+
+        // Three seconds at 30 fps
+        for (int i = 0; i < 90; i++) {
+            source.deliver(emitter);
+        }
+
+        assertEquals(30, sampled.size());
+        for (int i = 0; i < sampled.size(); i++) {
+            assertEquals(i, sampled.get(i) / (100 * MS));
+        }
+        // Dropped frames were replaced upstream, so the source was never short of demand
+        assertEquals(0, emitter.getUndemandedCount());
+    }
+
+    @Test
+    public void batchClosesOnSizeAndWindow() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<List<Item>> recorder = new Recorder<>();
+        emitter.batch(4, 100 * MS, Item::getTimestampNs).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+
+        List<Item> items = new ArrayList<>();
+        for (long ts : new long[] {0, 10, 20, 30, 40, 200}) {
+            Item item = new Item(ts * MS);
+            items.add(item);
+            emitter.emit(item);
+        }
+        // The item at 200ms is still waiting for its batch to fill
+        assertEquals(2, items.get(5).refs);
+
+        emitter.complete();
+
+        assertEquals(3, recorder.items.size());
+        assertEquals(items.subList(0, 4), recorder.items.get(0));
+        assertEquals(Arrays.asList(items.get(4)), recorder.items.get(1));
+        assertEquals(Arrays.asList(items.get(5)), recorder.items.get(2));
+        assertTrue(recorder.completed);
+        assertReleased(items);
+    }
+
+    @Test
+    public void conflateKeepsOnlyLatestWhileSubscriberIsBusy() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.conflate().subscribe(recorder);
+        recorder.subscription.request(1);
+
+        Item first = new Item(0);
+        Item replaced = new Item(1);
+        Item latest = new Item(2);
+        emitter.emit(first);
+        emitter.emit(replaced);
+        emitter.emit(latest);
+
+        assertEquals(Arrays.asList(first), recorder.items);
+        assertEquals(1, replaced.refs);
+        assertEquals(2, latest.refs);
+
+        recorder.subscription.request(1);
+        assertEquals(Arrays.asList(first, latest), recorder.items);
+        assertReleased(Arrays.asList(first, replaced, latest));
+    }
+
+    @Test
+    public void bufferBoundsUpstreamDemandToCapacity() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.buffer(2).subscribe(recorder);
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Item item = new Item(i);
+            items.add(item);
+            emitter.emit(item);
+        }
+        assertTrue(recorder.items.isEmpty());
+        assertEquals(1, emitter.getUndemandedCount());
+        assertFalse(emitter.hasDemand());
+        assertEquals(2, items.get(0).refs);
+        assertEquals(2, items.get(1).refs);
+
+        // Each delivered item frees one place in the buffer
+        recorder.subscription.request(1);
+        assertSame(items.get(0), recorder.items.get(0));
+        assertEquals(1, items.get(0).refs);
+        assertTrue(emitter.hasDemand());
+    }
+
+    @Test
+    public void cancelReleasesHeldItems() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.buffer(3).subscribe(recorder);
+
+        List<Item> items = Arrays.asList(new Item(0), new Item(1));
+        for (Item item : items) {
+            emitter.emit(item);
+        }
+        recorder.subscription.cancel();
+
+        assertFalse(emitter.hasSubscribers());
+        assertTrue(recorder.items.isEmpty());
+        assertReleased(items);
+    }
+
+    @Test
+    public void errorReachesSubscriberThroughOperators() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.buffer(2).subscribe(recorder);
+        recorder.subscription.request(1);
+
+        IllegalStateException failure = new IllegalStateException("camera lost");
+        emitter.error(failure);
+
+        assertSame(failure, recorder.error);
+        assertFalse(recorder.completed);
+        assertEquals(0, emitter.emit(new Item(0)));
+    }
+
+    @Test
+    public void subscriberAfterCompletionIsCompletedImmediately() {
+        FrameEmitter<Item> emitter = new FrameEmitter<>();
+        emitter.complete();
+        Recorder<Item> recorder = new Recorder<>();
+        emitter.subscribe(recorder);
+
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertFalse(emitter.hasSubscribers());
+    }
+
+    private static void assertReleased(List<Item> items) {
+        for (Item item : items) {
+            assertEquals("Item " + item.timestampNs + " still retained", 1, item.refs);
+        }
+    }
+
+    /**
+     * Pooled-frame stand-in; the test holds the first reference
+     */
+    private static final class Item implements RefCounted {
+        final long timestampNs;
+        int refs = 1;
+
+        Item(long timestampNs) {
+            this.timestampNs = timestampNs;
+        }
+
+        long getTimestampNs() {
+            return timestampNs;
+        }
+
+        @Override
+        public RefCounted retain() {
+            refs++;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            if (refs <= 1) {
+                throw new IllegalStateException("Released the caller's reference");
+            }
+            refs--;
+        }
+    }
+
+    /**
+     * Subscriber that records what it receives and requests only when told to
+     */
+    private static final class Recorder<T> implements FrameStream.Subscriber<T> {
+        final List<T> items = new ArrayList<>();
+        FrameStream.Subscription subscription;
+        Throwable error;
+        boolean completed = false;
+
+        @Override
+        public void onSubscribe(FrameStream.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
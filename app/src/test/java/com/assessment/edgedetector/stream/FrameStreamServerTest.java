@@ -0,0 +1,294 @@
+package com.assessment.edgedetector.stream;
+
+import com.assessment.edgedetector.codec.EdgeFrameDecoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Loopback tests: a plain socket plays the web viewer against a server on an ephemeral port
+ */
+public class FrameStreamServerTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    // RFC 6455 section 1.3 example
+    private static final String SAMPLE_KEY = "dGhlIHNhbXBsZSBub25jZQ==";
+    private static final String SAMPLE_ACCEPT = "s3pPLMBiTxaQ9kYGzzhZRbK+xOo=";
+
+    // 4x2 edge map in EdgeFrameDecoder format: 2 clear, 3 set, 3 clear
+    private static final byte[] KEYFRAME = {EdgeFrameDecoder.FLAG_KEYFRAME, 0, 4, 0, 2, 2, 3, 3};
+    // Delta against it: no change
+    private static final byte[] DELTA = {0, 0, 4, 0, 2, 8};
+
+    private FrameStreamServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FrameStreamServer(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void acceptKeyMatchesRfcExample() {
+        assertEquals(SAMPLE_ACCEPT, WebSocketCodec.acceptKey(SAMPLE_KEY));
+    }
+
+    @Test
+    public void codecRejectsNegativeAndOversizedLengths() {
+        byte[][] frames = {
+            {(byte) 0x89, (byte) 0xFF, -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 3, 4},
+            {(byte) 0x89, (byte) 0xFF, 0, 0, 0, 0, 0x7F, -1, -1, -1, 1, 2, 3, 4},
+        };
+        for (byte[] frame : frames) {
+            try {
+                WebSocketCodec.readClientFrame(new ByteArrayInputStream(frame), new byte[1][]);
+                fail("Length accepted");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void handshakeRegistersViewer() throws Exception {
+        Socket socket = connect();
+        String response = sendHandshake(socket, SAMPLE_KEY);
+
+        assertTrue(response.startsWith("HTTP/1.1 101"));
+        assertTrue(response.contains("Sec-WebSocket-Accept: " + SAMPLE_ACCEPT));
+        awaitClients(1);
+    }
+
+    @Test
+    public void requestWithoutKeyIsRejected() throws Exception {
+        Socket socket = connect();
+        OutputStream out = socket.getOutputStream();
+        out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        assertTrue(readHttpResponse(socket.getInputStream()).startsWith("HTTP/1.1 400"));
+        assertEquals(0, server.getClientCount());
+    }
+
+    @Test
+    public void bitPackedFrameReachesViewer() throws Exception {
+        Socket socket = openViewer();
+        byte[] edges = new byte[13 * 3];
+        for (int i = 0; i < edges.length; i += 3) {
+            edges[i] = (byte) 0xFF;
+        }
+        server.publishEdgeFrame(edges, 13, 3, 123_456_789L);
+
+        byte[] message = readServerMessage(socket.getInputStream(), WebSocketCodec.OPCODE_BINARY);
+        assertEquals(StreamProtocol.HEADER_SIZE + StreamProtocol.bitPackedSize(13, 3), message.length);
+        assertEquals(StreamProtocol.TYPE_FRAME, message[0]);
+        assertEquals(StreamProtocol.ENCODING_BITPACKED, message[1]);
+        assertEquals(13, readShort(message, 2));
+        assertEquals(3, readShort(message, 4));
+        assertEquals(1, readInt(message, 8));
+        assertEquals(123_456_789L, ((long) readInt(message, 12) << 32) | (readInt(message, 16) & 0xFFFFFFFFL));
+
+        byte[] unpacked = new byte[edges.length];
+        StreamProtocol.unpackEdgeMap(message, StreamProtocol.HEADER_SIZE, edges.length, unpacked);
+        assertArrayEquals(edges, unpacked);
+        assertEquals(1, server.getFramesPublished());
+    }
+
+    @Test
+    public void lateViewerFirstReceivesLatestKeyframe() throws Exception {
+        Socket first = openViewer();
+        server.publishEncodedEdgeFrame(KEYFRAME, KEYFRAME.length, 4, 2, 1);
+        server.publishEncodedEdgeFrame(DELTA, DELTA.length, 4, 2, 2);
+        readServerMessage(first.getInputStream(), WebSocketCodec.OPCODE_BINARY);
+
+        Socket late = openViewer(2);
+        byte[] message = readServerMessage(late.getInputStream(), WebSocketCodec.OPCODE_BINARY);
+        assertEquals(StreamProtocol.ENCODING_DELTA_RLE, message[1]);
+        assertEquals(KEYFRAME.length, message.length - StreamProtocol.HEADER_SIZE);
+
+        byte[] decoded = new byte[8];
+        EdgeFrameDecoder decoder = new EdgeFrameDecoder();
+        assertTrue(decoder.decode(message, StreamProtocol.HEADER_SIZE, KEYFRAME.length, decoded));
+        assertArrayEquals(new byte[] {0, 0, -1, -1, -1, 0, 0, 0}, decoded);
+
+        // Deltas published from here on apply to the replayed keyframe
+        server.publishEncodedEdgeFrame(DELTA, DELTA.length, 4, 2, 3);
+        message = readServerMessage(late.getInputStream(), WebSocketCodec.OPCODE_BINARY);
+        assertTrue(decoder.decode(message, StreamProtocol.HEADER_SIZE, DELTA.length, decoded));
+    }
+
+    @Test
+    public void pingIsAnsweredWithPong() throws Exception {
+        Socket socket = openViewer();
+        byte[] payload = "ping".getBytes(StandardCharsets.ISO_8859_1);
+        writeMaskedFrame(socket.getOutputStream(), WebSocketCodec.OPCODE_PING, payload);
+
+        assertArrayEquals(payload, readServerMessage(socket.getInputStream(), WebSocketCodec.OPCODE_PONG));
+    }
+
+    @Test
+    public void closeFrameDisconnectsViewer() throws Exception {
+        Socket socket = openViewer();
+        writeMaskedFrame(socket.getOutputStream(), WebSocketCodec.OPCODE_CLOSE, new byte[0]);
+
+        awaitClients(0);
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    @Test
+    public void malformedFrameLengthDropsOnlyThatViewer() throws Exception {
+        Socket healthy = openViewer();
+        Socket attacker = openViewer();
+
+        // Masked ping with a 64-bit length of -1
+        OutputStream out = attacker.getOutputStream();
+        out.write(new byte[] {(byte) 0x89, (byte) 0xFF, -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 3, 4});
+        out.flush();
+
+        awaitClients(1);
+        assertEquals(-1, attacker.getInputStream().read());
+
+        server.publishEdgeFrame(new byte[16], 4, 4, 0);
+        assertEquals(StreamProtocol.HEADER_SIZE + 2,
+            readServerMessage(healthy.getInputStream(), WebSocketCodec.OPCODE_BINARY).length);
+        openViewer(2);
+    }
+
+    @Test
+    public void framesWithoutViewersAreNotPublished() {
+        server.publishEdgeFrame(new byte[16], 4, 4, 0);
+        assertEquals(0, server.getFramesPublished());
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(TIMEOUT_MS);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private Socket openViewer() throws Exception {
+        return openViewer(server.getClientCount() + 1);
+    }
+
+    private Socket openViewer(int expectedClients) throws Exception {
+        Socket socket = connect();
+        sendHandshake(socket, SAMPLE_KEY);
+        awaitClients(expectedClients);
+        return socket;
+    }
+
+    private String sendHandshake(Socket socket, String key) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET / HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + key + "\r\n"
+            + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        return readHttpResponse(socket.getInputStream());
+    }
+
+    private void awaitClients(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (server.getClientCount() != count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Expected " + count + " viewers, have " + server.getClientCount());
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static String readHttpResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        int tail = 0;
+        while (tail != 0x0D0A0D0A) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            response.write(b);
+            tail = (tail << 8) | b;
+        }
+        return new String(response.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Read one server frame, which must be unmasked and carry the expected opcode
+     */
+    private static byte[] readServerMessage(InputStream in, int expectedOpcode) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        assertEquals(0x80 | expectedOpcode, b0);
+        assertEquals(0, b1 & 0x80);
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        byte[] payload = new byte[(int) length];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) readByte(in);
+        }
+        return payload;
+    }
+
+    private static void writeMaskedFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        out.write(0x80 | opcode);
+        out.write(0x80 | payload.length);
+        out.write(mask);
+        for (int i = 0; i < payload.length; i++) {
+            out.write(payload[i] ^ mask[i & 3]);
+        }
+        out.flush();
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (readShort(data, offset) << 16) | readShort(data, offset + 2);
+    }
+}
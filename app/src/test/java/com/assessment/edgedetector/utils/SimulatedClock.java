@@ -0,0 +1,29 @@
+package com.assessment.edgedetector.utils;
+
+/**
+ * Manually advanced NanoClock for deterministic timing runs
+ */
+public class SimulatedClock implements NanoClock {
+    private volatile long nowNs;
+
+    public SimulatedClock() {
+        this(0);
+    }
+
+    public SimulatedClock(long startNs) {
+        this.nowNs = startNs;
+    }
+
+    @Override
+    public long nanoTime() {
+        return nowNs;
+    }
+
+    public synchronized void advance(long deltaNs) {
+        nowNs += deltaNs;
+    }
+
+    public synchronized void set(long timeNs) {
+        nowNs = timeNs;
+    }
+}
@@ -0,0 +1,222 @@
+package com.assessment.edgedetector.gl;
+
+import android.opengl.GLSurfaceView;
+import android.view.Choreographer;
+
+import com.assessment.edgedetector.utils.Tracer;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Vsync-paced render requests for a RENDERMODE_WHEN_DIRTY GLSurfaceView
+ *
+ * Camera and processed-frame producers only mark content dirty; a Choreographer
+ * frame callback, posted only while something is dirty, turns that into at
+ * most one requestRender() per vsync. A vsync is counted as missed when dirty
+ * content had to wait past the vsync it should have been drawn for, either
+ * because the callback ran late or because the GL thread was still drawing
+ * the previous frame. Each missed vsync is counted once. A render that has
+ * not reported back within RENDER_TIMEOUT_VSYNCS (e.g. the request was lost
+ * with the surface) is given up on so drawing resumes.
+ *
+ * Must be created on the main thread; the mark methods may be called from any thread.
+ */
+public class RenderScheduler implements Choreographer.FrameCallback {
+    private static final long DEFAULT_VSYNC_PERIOD_NS = 16_666_667L;
+    static final int RENDER_TIMEOUT_VSYNCS = 4;
+
+    /**
+     * Immutable snapshot of the scheduler counters
+     */
+    public static class RenderStats {
+        public final long vsyncCallbacks;
+        public final long rendersRequested;
+        public final long rendersCompleted;
+        public final long missedVsyncs;
+        public final long rendersTimedOut;
+
+        RenderStats(long vsyncCallbacks, long rendersRequested, long rendersCompleted, long missedVsyncs,
+                    long rendersTimedOut) {
+            this.vsyncCallbacks = vsyncCallbacks;
+            this.rendersRequested = rendersRequested;
+            this.rendersCompleted = rendersCompleted;
+            this.missedVsyncs = missedVsyncs;
+            this.rendersTimedOut = rendersTimedOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "RenderStats{vsyncs=%d, requested=%d, rendered=%d, missedVsyncs=%d, timedOut=%d}",
+                vsyncCallbacks, rendersRequested, rendersCompleted, missedVsyncs, rendersTimedOut);
+        }
+    }
+
+    private final GLSurfaceView view;
+    private final Choreographer choreographer;
+    private volatile long vsyncPeriodNs = DEFAULT_VSYNC_PERIOD_NS;
+
+    private final AtomicBoolean callbackPosted = new AtomicBoolean(false);
+    private final Object lock = new Object();
+    private boolean running = false;
+    private boolean cameraDirty = false;
+    private boolean processedDirty = false;
+    private long dirtySinceNs = 0;      // When the oldest undrawn change was marked
+    private boolean renderInFlight = false;
+    private long renderRequestedNs = 0; // Vsync the in-flight render was requested at
+
+    private long vsyncCallbacks = 0;
+    private long rendersRequested = 0;
+    private long rendersCompleted = 0;
+    private long missedVsyncs = 0;
+    private long rendersTimedOut = 0;
+
+    public RenderScheduler(GLSurfaceView view) {
+        this.view = view;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    public void setRefreshRate(float refreshRateHz) {
+        if (refreshRateHz > 0) {
+            vsyncPeriodNs = (long) (1e9 / refreshRateHz);
+        }
+    }
+
+    /**
+     * A new camera frame is waiting in the SurfaceTexture
+     */
+    public void markCameraDirty() {
+        synchronized (lock) {
+            markDirtyLocked();
+            cameraDirty = true;
+        }
+        postCallback();
+    }
+
+    /**
+     * The processed frame or what is being shown changed
+     */
+    public void markProcessedDirty() {
+        synchronized (lock) {
+            markDirtyLocked();
+            processedDirty = true;
+        }
+        postCallback();
+    }
+
+    private void markDirtyLocked() {
+        if (!cameraDirty && !processedDirty) {
+            dirtySinceNs = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called on the GL thread when onDrawFrame has finished
+     */
+    void onFrameRendered() {
+        synchronized (lock) {
+            renderInFlight = false;
+            rendersCompleted++;
+        }
+    }
+
+    public void start() {
+        synchronized (lock) {
+            running = true;
+            // Redraw whatever arrived while paused
+            if (cameraDirty || processedDirty) {
+                dirtySinceNs = System.nanoTime();
+            }
+            renderInFlight = false;
+        }
+        postCallback();
+    }
+
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+        }
+        choreographer.removeFrameCallback(this);
+        callbackPosted.set(false);
+    }
+
+    private void postCallback() {
+        synchronized (lock) {
+            if (!running || (!cameraDirty && !processedDirty)) {
+                return;
+            }
+        }
+        if (callbackPosted.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        callbackPosted.set(false);
+        boolean render = false;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            vsyncCallbacks++;
+
+            if (cameraDirty || processedDirty) {
+                // Content marked before an earlier vsync should have been drawn at that vsync
+                long waited = frameTimeNanos - dirtySinceNs;
+                if (waited > vsyncPeriodNs) {
+                    missedVsyncs += waited / vsyncPeriodNs;
+                    dirtySinceNs += (waited / vsyncPeriodNs) * vsyncPeriodNs;
+                }
+
+                if (renderInFlight
+                        && frameTimeNanos - renderRequestedNs > RENDER_TIMEOUT_VSYNCS * vsyncPeriodNs) {
+                    // The render never reported back; stop waiting for it
+                    renderInFlight = false;
+                    rendersTimedOut++;
+                }
+
+                if (renderInFlight) {
+                    // GL thread is still on the previous frame; this vsync is lost. Half a
+                    // period past it keeps the next callback, even if early or late, from
+                    // counting this vsync again above
+                    missedVsyncs++;
+                    dirtySinceNs = frameTimeNanos + vsyncPeriodNs / 2;
+                } else {
+                    cameraDirty = false;
+                    processedDirty = false;
+                    renderInFlight = true;
+                    renderRequestedNs = frameTimeNanos;
+                    rendersRequested++;
+                    render = true;
+                }
+            }
+        }
+
+        if (render) {
+            Tracer.instant("RenderScheduler.requestRender");
+            view.requestRender();
+        } else {
+            // Still dirty; try again next vsync
+            postCallback();
+        }
+    }
+
+    public RenderStats getStats() {
+        synchronized (lock) {
+            return new RenderStats(vsyncCallbacks, rendersRequested, rendersCompleted, missedVsyncs,
+                rendersTimedOut);
+        }
+    }
+
+    public void resetStats() {
+        synchronized (lock) {
+            vsyncCallbacks = 0;
+            rendersRequested = 0;
+            rendersCompleted = 0;
+            missedVsyncs = 0;
+            rendersTimedOut = 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import { EdgeFrameDecoder, expandGrayToRGBA, GRAY_TO_RGBA } from './frameRenderer.js';
+import { DecodeRequest, DecodeResponse, STREAM_HEADER_SIZE, StreamEncoding } from './types.js';
+
+/**
+ * Frame decode worker: turns device stream messages and raw frames into
+ * ImageBitmaps off the main thread. Pixels are written as 32-bit words into an
+ * OffscreenCanvas, which is then handed back as a transferable ImageBitmap.
+ */
+
+const edgeDecoder = new EdgeFrameDecoder();
+let canvas: OffscreenCanvas | null = null;
+let ctx: OffscreenCanvasRenderingContext2D | null = null;
+let imageData: ImageData | null = null;
+
+self.onmessage = async (event: MessageEvent<DecodeRequest>) => {
+    const request = event.data;
+    if (request.kind === 'reset') {
+        edgeDecoder.reset();
+        return;
+    }
+
+    let response: DecodeResponse;
+    try {
+        response = await decode(request);
+    } catch (error) {
+        response = { kind: 'skipped', reason: String(error) };
+    }
+
+    if (response.kind === 'frame') {
+        self.postMessage(response, { transfer: [response.bitmap] });
+    } else {
+        self.postMessage(response);
+    }
+};
+
+async function decode(request: DecodeRequest): Promise<DecodeResponse> {
+    const start = performance.now();
+
+    if (request.kind === 'base64') {
+        const blob = await (await fetch(`data:image/png;base64,${request.data}`)).blob();
+        const bitmap = await createImageBitmap(blob);
+        return { kind: 'frame', bitmap, width: bitmap.width, height: bitmap.height, decodeTime: performance.now() - start };
+    }
+
+    if (request.kind === 'raw') {
+        const pixels = beginFrame(request.width, request.height);
+        const src = new Uint8Array(request.buffer, request.byteOffset);
+        if (request.format === 'grayscale') {
+            expandGrayToRGBA(src, pixels);
+        } else if (request.format === 'rgb') {
+            const bytes = new Uint8Array(pixels.buffer);
+            for (let i = 0, o = 0; o < bytes.length; i += 3, o += 4) {
+                bytes[o] = src[i];
+                bytes[o + 1] = src[i + 1];
+                bytes[o + 2] = src[i + 2];
+                bytes[o + 3] = 255;
+            }
+        } else {
+            new Uint8Array(pixels.buffer).set(src.subarray(0, pixels.length * 4));
+        }
+        return endFrame(request.width, request.height, start);
+    }
+
+    if (request.kind !== 'stream') {
+        return { kind: 'skipped', reason: 'Unknown request' };
+    }
+
+    const view = new DataView(request.buffer);
+    const encoding = view.getUint8(1) as StreamEncoding;
+    const width = view.getUint16(2);
+    const height = view.getUint16(4);
+    const payload = new Uint8Array(request.buffer, STREAM_HEADER_SIZE);
+    const pixelCount = width * height;
+
+    if (encoding === StreamEncoding.DELTA_RLE) {
+        const decoded = edgeDecoder.decode(payload);
+        if (!decoded || decoded.width !== width || decoded.height !== height) {
+            return { kind: 'skipped', reason: 'Delta frame without keyframe' };
+        }
+        expandGrayToRGBA(decoded.pixels, beginFrame(width, height));
+    } else if (encoding === StreamEncoding.BITPACKED) {
+        if (payload.length < Math.ceil(pixelCount / 8)) {
+            return { kind: 'skipped', reason: 'Truncated bit-packed frame' };
+        }
+        const pixels = beginFrame(width, height);
+        const off = GRAY_TO_RGBA[0];
+        const on = GRAY_TO_RGBA[255];
+        for (let i = 0; i < pixelCount; i++) {
+            pixels[i] = (payload[i >> 3] >> (7 - (i & 7))) & 1 ? on : off;
+        }
+    } else if (encoding === StreamEncoding.RAW8) {
+        expandGrayToRGBA(payload.subarray(0, pixelCount), beginFrame(width, height));
+    } else {
+        return { kind: 'skipped', reason: `Unknown frame encoding ${encoding}` };
+    }
+
+    return endFrame(width, height, start);
+}
+
+/**
+ * Get a 32-bit view over a reusable ImageData of the given size
+ */
+function beginFrame(width: number, height: number): Uint32Array {
+    if (!canvas || canvas.width !== width || canvas.height !== height) {
+        canvas = new OffscreenCanvas(width, height);
+        ctx = canvas.getContext('2d');
+        imageData = null;
+    }
+    if (!imageData || imageData.width !== width || imageData.height !== height) {
+        imageData = new ImageData(width, height);
+    }
+    return new Uint32Array(imageData.data.buffer);
+}
+
+function endFrame(width: number, height: number, start: number): DecodeResponse {
+    if (!canvas || !ctx || !imageData) {
+        return { kind: 'skipped', reason: 'OffscreenCanvas 2D context unavailable' };
+    }
+    ctx.putImageData(imageData, 0, 0);
+    const bitmap = canvas.transferToImageBitmap();
+    return { kind: 'frame', bitmap, width, height, decodeTime: performance.now() - start };
+}
@@ -1,13 +1,58 @@
-import { FrameData, ProcessingAlgorithm } from './types.js';
+import {
+    FrameData, ProcessingAlgorithm, DecodeRequest, DecodeResponse,
+    StreamEncoding, StreamFrameInfo, STREAM_HEADER_SIZE
+} from './types.js';
+
+const LITTLE_ENDIAN = new Uint8Array(new Uint32Array([0x0a0b0c0d]).buffer)[0] === 0x0d;
+
+/**
+ * Gray level to packed opaque RGBA word in platform byte order
+ */
+export const GRAY_TO_RGBA: Uint32Array = (() => {
+    const table = new Uint32Array(256);
+    for (let g = 0; g < 256; g++) {
+        table[g] = LITTLE_ENDIAN
+            ? (0xff000000 | (g << 16) | (g << 8) | g) >>> 0
+            : ((g << 24) | (g << 16) | (g << 8) | 0xff) >>> 0;
+    }
+    return table;
+})();
 
 /**
- * Canvas-based frame renderer for displaying processed frames
+ * Expand grayscale bytes into RGBA pixels with one 32-bit write per pixel
+ */
+export function expandGrayToRGBA(gray: Uint8Array, rgba: Uint32Array): void {
+    const count = Math.min(gray.length, rgba.length);
+    for (let i = 0; i < count; i++) {
+        rgba[i] = GRAY_TO_RGBA[gray[i]];
+    }
+}
+
+/**
+ * Canvas-based frame renderer for displaying processed frames.
+ *
+ * Binary and base64 frames are decoded in a Web Worker that renders into an
+ * OffscreenCanvas and returns an ImageBitmap; the main thread only blits it.
+ * One frame is decoded at a time: while the worker is busy, newer frames
+ * replace older pending ones and the replaced frames are reported as dropped.
  */
 export class FrameRenderer {
     private canvas: HTMLCanvasElement;
     private ctx: CanvasRenderingContext2D;
     private currentFrame: FrameData | null = null;
 
+    // Off-main-thread decoding
+    private worker: Worker | null = null;
+    private workerBusy = false;
+    private pendingKeyframe: DecodeRequest | null = null;
+    private pendingFrame: DecodeRequest | null = null;
+    private generation = 0;
+    private inFlightGeneration = 0;
+    private droppedFrameCallback: (() => void) | null = null;
+
+    // Main-thread fallback decoder for delta-coded streams
+    private fallbackDecoder = new EdgeFrameDecoder();
+
     constructor(canvasElement: HTMLCanvasElement) {
         this.canvas = canvasElement;
         const context = this.canvas.getContext('2d');
@@ -20,20 +65,72 @@ export class FrameRenderer {
         this.canvas.width = 640;
         this.canvas.height = 480;
         
+        this.startWorker();
         this.clearFrame();
     }
 
     /**
-     * Render a frame to the canvas
+     * Register a callback for frames skipped because the decoder fell behind
+     */
+    public setDroppedFrameCallback(callback: () => void): void {
+        this.droppedFrameCallback = callback;
+    }
+
+    /**
+     * Render a device stream frame message. The buffer is transferred to the
+     * decode worker and must not be used by the caller afterwards.
+     */
+    public renderStreamFrame(buffer: ArrayBuffer, info: StreamFrameInfo): void {
+        if (this.worker) {
+            this.submit({ kind: 'stream', buffer }, info.keyframe);
+            return;
+        }
+
+        const decoded = decodeStreamPixels(buffer, this.fallbackDecoder);
+        if (decoded) {
+            this.resizeCanvas(decoded.width, decoded.height);
+            this.renderGrayPixels(decoded.pixels, decoded.width, decoded.height);
+        }
+    }
+
+    /**
+     * Forget decoder state after the stream restarts
+     */
+    public resetStream(): void {
+        this.pendingKeyframe = null;
+        this.pendingFrame = null;
+        this.fallbackDecoder.reset();
+        this.worker?.postMessage({ kind: 'reset' } as DecodeRequest);
+    }
+
+    /**
+     * Render a frame to the canvas. Binary data is copied and the copy is
+     * transferred to the decode worker when one is available, so the caller's
+     * array (kept as the current frame) stays attached.
      */
     public renderFrame(frame: FrameData): void {
         this.currentFrame = frame;
         
-        // Resize canvas if needed
-        if (this.canvas.width !== frame.width || this.canvas.height !== frame.height) {
-            this.canvas.width = frame.width;
-            this.canvas.height = frame.height;
+        if (this.worker) {
+            if (typeof frame.data === 'string') {
+                this.submit({ kind: 'base64', data: frame.data }, true);
+            } else {
+                // slice() copies only the viewed range into a fresh buffer
+                const bytes = frame.data.slice();
+                this.submit({
+                    kind: 'raw',
+                    buffer: bytes.buffer as ArrayBuffer,
+                    byteOffset: 0,
+                    width: frame.width,
+                    height: frame.height,
+                    format: frame.format
+                }, true);
+            }
+            return;
         }
+        
+        // Resize canvas if needed
+        this.resizeCanvas(frame.width, frame.height);
 
         try {
             if (typeof frame.data === 'string') {
@@ -68,20 +165,15 @@ export class FrameRenderer {
      */
     private renderBinaryFrame(frame: FrameData): void {
         const data = frame.data as Uint8Array;
-        const imageData = this.ctx.createImageData(frame.width, frame.height);
         
         if (frame.format === 'grayscale') {
-            // Convert grayscale to RGBA
-            for (let i = 0; i < data.length; i++) {
-                const pixelIndex = i * 4;
-                const grayValue = data[i];
-                
-                imageData.data[pixelIndex] = grayValue;     // Red
-                imageData.data[pixelIndex + 1] = grayValue; // Green
-                imageData.data[pixelIndex + 2] = grayValue; // Blue
-                imageData.data[pixelIndex + 3] = 255;       // Alpha
-            }
-        } else if (frame.format === 'rgb') {
+            this.renderGrayPixels(data, frame.width, frame.height);
+            return;
+        }
+        
+        const imageData = this.ctx.createImageData(frame.width, frame.height);
+        
+        if (frame.format === 'rgb') {
             // Convert RGB to RGBA
             for (let i = 0; i < data.length; i += 3) {
                 const pixelIndex = (i / 3) * 4;
@@ -99,10 +191,111 @@ export class FrameRenderer {
         this.ctx.putImageData(imageData, 0, 0);
     }
 
+    /**
+     * Render grayscale pixels on the main thread (fallback when workers are unavailable)
+     */
+    private renderGrayPixels(gray: Uint8Array, width: number, height: number): void {
+        const imageData = this.ctx.createImageData(width, height);
+        expandGrayToRGBA(gray, new Uint32Array(imageData.data.buffer));
+        this.ctx.putImageData(imageData, 0, 0);
+    }
+
+    private resizeCanvas(width: number, height: number): void {
+        if (this.canvas.width !== width || this.canvas.height !== height) {
+            this.canvas.width = width;
+            this.canvas.height = height;
+        }
+    }
+
+    /**
+     * Start the decode worker if the browser supports workers and OffscreenCanvas
+     */
+    private startWorker(): void {
+        if (typeof Worker === 'undefined' || typeof OffscreenCanvas === 'undefined') {
+            console.warn('⚠️ OffscreenCanvas workers unavailable, decoding on main thread');
+            return;
+        }
+
+        try {
+            this.worker = new Worker('frameDecodeWorker.js', { type: 'module' });
+            this.worker.onmessage = (event: MessageEvent<DecodeResponse>) => this.onWorkerResponse(event.data);
+            this.worker.onerror = (event: ErrorEvent) => {
+                console.error('Frame decode worker failed:', event.message);
+                this.worker?.terminate();
+                this.worker = null;
+                this.workerBusy = false;
+            };
+        } catch (error) {
+            console.warn('⚠️ Failed to start decode worker:', error);
+            this.worker = null;
+        }
+    }
+
+    /**
+     * Send a request to the worker, or park it while the worker is busy.
+     * Only independent frames may replace a pending keyframe.
+     */
+    private submit(request: DecodeRequest, independent: boolean): void {
+        if (!this.workerBusy) {
+            this.postToWorker(request);
+            return;
+        }
+
+        if (independent) {
+            if (this.pendingKeyframe) this.reportDroppedFrame();
+            if (this.pendingFrame) this.reportDroppedFrame();
+            this.pendingKeyframe = request;
+            this.pendingFrame = null;
+        } else {
+            if (this.pendingFrame) this.reportDroppedFrame();
+            this.pendingFrame = request;
+        }
+    }
+
+    private postToWorker(request: DecodeRequest): void {
+        if (!this.worker) {
+            return;
+        }
+        this.workerBusy = true;
+        this.inFlightGeneration = this.generation;
+        const transfer = request.kind === 'stream' || request.kind === 'raw' ? [request.buffer] : [];
+        this.worker.postMessage(request, transfer);
+    }
+
+    private onWorkerResponse(response: DecodeResponse): void {
+        this.workerBusy = false;
+
+        if (response.kind === 'frame') {
+            // Ignore frames that were in flight when the display was cleared
+            if (this.inFlightGeneration === this.generation) {
+                this.resizeCanvas(response.width, response.height);
+                this.ctx.drawImage(response.bitmap, 0, 0);
+            }
+            response.bitmap.close();
+        } else {
+            console.warn('⚠️ Frame skipped by decoder:', response.reason);
+        }
+
+        const next = this.pendingKeyframe ?? this.pendingFrame;
+        if (next === this.pendingKeyframe) {
+            this.pendingKeyframe = null;
+        } else {
+            this.pendingFrame = null;
+        }
+        if (next) {
+            this.postToWorker(next);
+        }
+    }
+
+    private reportDroppedFrame(): void {
+        this.droppedFrameCallback?.();
+    }
+
     /**
      * Generate a sample edge-detected frame for demonstration
      */
     public generateSampleFrame(): void {
+        this.generation++;
         const width = 640;
         const height = 480;
         
@@ -165,6 +358,7 @@ export class FrameRenderer {
      * Generate a test pattern
      */
     public generateTestPattern(): void {
+        this.generation++;
         const width = 640;
         const height = 480;
         
@@ -219,6 +413,9 @@ export class FrameRenderer {
      * Clear the frame display
      */
     public clearFrame(): void {
+        this.generation++;
+        this.pendingKeyframe = null;
+        this.pendingFrame = null;
         this.ctx.fillStyle = '#000000';
         this.ctx.fillRect(0, 0, this.canvas.width, this.canvas.height);
         
@@ -257,4 +454,133 @@ export class FrameRenderer {
             height: this.canvas.height
         };
     }
+}
+
+/**
+ * Decode a device stream frame message to grayscale pixels on the calling thread
+ */
+export function decodeStreamPixels(buffer: ArrayBuffer, decoder: EdgeFrameDecoder):
+        { pixels: Uint8Array; width: number; height: number } | null {
+    const view = new DataView(buffer);
+    const encoding = view.getUint8(1) as StreamEncoding;
+    const width = view.getUint16(2);
+    const height = view.getUint16(4);
+    const payload = new Uint8Array(buffer, STREAM_HEADER_SIZE);
+    const pixelCount = width * height;
+
+    if (encoding === StreamEncoding.DELTA_RLE) {
+        const decoded = decoder.decode(payload);
+        return decoded && decoded.width === width && decoded.height === height ? decoded : null;
+    }
+    if (encoding === StreamEncoding.BITPACKED) {
+        if (payload.length < Math.ceil(pixelCount / 8)) {
+            return null;
+        }
+        const pixels = new Uint8Array(pixelCount);
+        for (let i = 0; i < pixelCount; i++) {
+            if ((payload[i >> 3] >> (7 - (i & 7))) & 1) {
+                pixels[i] = 255;
+            }
+        }
+        return { pixels, width, height };
+    }
+    if (encoding === StreamEncoding.RAW8) {
+        return { pixels: payload.subarray(0, pixelCount), width, height };
+    }
+    return null;
+}
+
+/**
+ * Decoder for the device's temporal delta + run-length edge map codec
+ * (edge_codec.cpp / EdgeFrameDecoder.java).
+ *
+ * Layout: u8 flags, u16 BE width, u16 BE height, then LEB128 run lengths
+ * alternating clear/set bits, starting with clear. Keyframes hold the edge
+ * bits directly; delta frames hold the XOR against the most recent keyframe.
+ * Keep one decoder per stream.
+ */
+export class EdgeFrameDecoder {
+    public static readonly HEADER_SIZE = 5;
+    public static readonly FLAG_KEYFRAME = 0x01;
+
+    private reference: Uint8Array | null = null;
+    private refWidth = 0;
+    private refHeight = 0;
+
+    /**
+     * Decode one encoded frame into a 0/255 grayscale map, or null if the data
+     * is malformed or is a delta whose keyframe was never received
+     */
+    public decode(data: Uint8Array): { pixels: Uint8Array; width: number; height: number; keyframe: boolean } | null {
+        if (data.length < EdgeFrameDecoder.HEADER_SIZE) {
+            return null;
+        }
+
+        const keyframe = (data[0] & EdgeFrameDecoder.FLAG_KEYFRAME) !== 0;
+        const width = (data[1] << 8) | data[2];
+        const height = (data[3] << 8) | data[4];
+        const pixelCount = width * height;
+
+        const ref = keyframe ? null : this.reference;
+        if (!keyframe && (!ref || this.refWidth !== width || this.refHeight !== height)) {
+            return null;
+        }
+
+        const pixels = new Uint8Array(pixelCount);
+        let p = EdgeFrameDecoder.HEADER_SIZE;
+        let pos = 0;
+        let set = false;
+
+        while (pos < pixelCount) {
+            // LEB128 varint
+            let run = 0;
+            let shift = 0;
+            let byte: number;
+            do {
+                if (p >= data.length || shift > 28) {
+                    return null;
+                }
+                byte = data[p++];
+                run |= (byte & 0x7f) << shift;
+                shift += 7;
+            } while (byte & 0x80);
+
+            if (run < 0 || run > pixelCount - pos) {
+                return null;
+            }
+
+            const runEnd = pos + run;
+            if (ref) {
+                if (set) {
+                    for (let i = pos; i < runEnd; i++) {
+                        pixels[i] = ~ref[i] & 0xff;
+                    }
+                } else {
+                    pixels.set(ref.subarray(pos, runEnd), pos);
+                }
+            } else if (set) {
+                pixels.fill(255, pos, runEnd);
+            }
+
+            pos = runEnd;
+            set = !set;
+        }
+
+        if (keyframe) {
+            this.reference = pixels.slice();
+            this.refWidth = width;
+            this.refHeight = height;
+        }
+
+        return { pixels, width, height, keyframe };
+    }
+
+    /**
+     * Forget the current keyframe
+     */
+    public reset(): void {
+        this.reference = null;
+        this.refWidth = 0;
+        this.refHeight = 0;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 import { FrameRenderer } from './frameRenderer.js';
 import { StatsManager } from './statsManager.js';
-import { FrameData, ProcessingAlgorithm, ConnectionStatus } from './types.js';
+import { FrameStreamClient } from './streamClient.js';
+import { FrameData, ProcessingAlgorithm, ConnectionStatus, DeviceStats, StreamFrameInfo } from './types.js';
 
 /**
  * Main application class for the Edge Detection Web Viewer
@@ -8,6 +9,8 @@ import { FrameData, ProcessingAlgorithm, ConnectionStatus } from './types.js';
 class EdgeDetectionViewer {
     private frameRenderer: FrameRenderer;
     private statsManager: StatsManager;
+    private streamClient: FrameStreamClient | null = null;
+    private lastDeviceProcessingTime = 0;
     private isInitialized = false;
 
     constructor() {
@@ -38,6 +41,12 @@ class EdgeDetectionViewer {
             this.isInitialized = true;
             console.log('✅ Edge Detection Viewer initialized successfully');
             
+            // Connect to a device if one was given, e.g. ?stream=ws://localhost:8765 after adb forward
+            const streamUrl = new URLSearchParams(window.location.search).get('stream');
+            if (streamUrl) {
+                this.connectToDevice(streamUrl);
+            }
+            
         } catch (error) {
             console.error('❌ Failed to initialize viewer:', error);
             throw error;
@@ -67,6 +76,7 @@ class EdgeDetectionViewer {
         }
         
         this.frameRenderer = new FrameRenderer(canvas);
+        this.frameRenderer.setDroppedFrameCallback(() => this.statsManager.recordDroppedFrame());
         console.log('📹 Frame renderer initialized');
     }
 
@@ -208,7 +218,47 @@ class EdgeDetectionViewer {
     }
 
     /**
-     * Process incoming frame data (for future WebSocket/HTTP integration)
+     * Connect to the device frame streaming server
+     */
+    public connectToDevice(url: string): void {
+        this.streamClient?.disconnect();
+        
+        this.streamClient = new FrameStreamClient(url, {
+            onFrame: (buffer, info) => this.processStreamFrame(buffer, info),
+            onStats: (stats) => this.onDeviceStats(stats),
+            onConnected: () => this.frameRenderer.resetStream(),
+            onStatus: (status, message) => this.statsManager.updateConnectionStatus(status, message)
+        });
+        this.streamClient.connect();
+        
+        console.log(`📡 Streaming from ${url}`);
+    }
+
+    /**
+     * Disconnect from the device
+     */
+    public disconnectFromDevice(): void {
+        this.streamClient?.disconnect();
+        this.streamClient = null;
+    }
+
+    /**
+     * Render a frame message from the device stream
+     */
+    private processStreamFrame(buffer: ArrayBuffer, info: StreamFrameInfo): void {
+        this.frameRenderer.renderStreamFrame(buffer, info);
+        
+        this.statsManager.updateFrameStats(info.width, info.height, this.lastDeviceProcessingTime);
+        this.statsManager.updateFrameInfo(info.width, info.height, ProcessingAlgorithm.CANNY);
+    }
+
+    private onDeviceStats(stats: DeviceStats): void {
+        this.lastDeviceProcessingTime = stats.avgProcessingTime;
+        this.statsManager.updateDeviceStats(stats);
+    }
+
+    /**
+     * Process incoming frame data from other sources
      */
     public processIncomingFrame(frameData: FrameData): void {
         if (!this.isInitialized) {
@@ -224,7 +274,7 @@ class EdgeDetectionViewer {
             this.statsManager.updateFrameStats(
                 frameData.width, 
                 frameData.height, 
-                performance.now() - frameData.timestamp
+                frameData.processingTime ?? performance.now() - frameData.timestamp
             );
             
             this.statsManager.updateConnectionStatus(ConnectionStatus.CONNECTED, 'Receiving frames');
@@ -1,4 +1,4 @@
-import { FrameStats, ConnectionStatus, ProcessingAlgorithm } from './types.js';
+import { FrameStats, ConnectionStatus, ProcessingAlgorithm, DeviceStats } from './types.js';
 
 /**
  * Statistics manager for tracking and displaying frame processing statistics
@@ -9,6 +9,7 @@ export class StatsManager {
     private fpsElement: HTMLElement;
     private resolutionElement: HTMLElement;
     private processingTimeElement: HTMLElement;
+    private droppedFramesElement: HTMLElement;
     private statusTextElement: HTMLElement;
     private statusIndicatorElement: HTMLElement;
     private algorithmTextElement: HTMLElement;
@@ -26,6 +27,7 @@ export class StatsManager {
             height: 480,
             frameCount: 0,
             processingTime: 0,
+            droppedFrames: 0,
             lastUpdate: new Date()
         };
 
@@ -34,6 +36,7 @@ export class StatsManager {
         this.fpsElement = this.getElementById('fpsDisplay');
         this.resolutionElement = this.getElementById('resolutionDisplay');
         this.processingTimeElement = this.getElementById('processingTimeDisplay');
+        this.droppedFramesElement = this.getElementById('droppedFramesDisplay');
         this.statusTextElement = this.getElementById('statusText');
         this.statusIndicatorElement = this.getElementById('statusIndicator');
         this.algorithmTextElement = this.getElementById('algorithmText');
@@ -89,6 +92,25 @@ export class StatsManager {
         this.updateDisplay();
     }
 
+    /**
+     * Count a frame that was received but skipped because rendering fell behind
+     */
+    public recordDroppedFrame(): void {
+        this.stats.droppedFrames++;
+    }
+
+    /**
+     * Update statistics reported by the device
+     */
+    public updateDeviceStats(deviceStats: DeviceStats): void {
+        this.stats.processingTime = deviceStats.avgProcessingTime;
+        if (deviceStats.cannyLow !== undefined && deviceStats.cannyHigh !== undefined) {
+            this.algorithmTextElement.textContent =
+                `Canny Edge Detection (${deviceStats.cannyLow.toFixed(0)}/${deviceStats.cannyHigh.toFixed(0)})`;
+        }
+        this.updateDisplay();
+    }
+
     /**
      * Update connection status
      */
@@ -118,6 +140,7 @@ export class StatsManager {
         this.stats.frameCount = 0;
         this.stats.fps = 0;
         this.stats.processingTime = 0;
+        this.stats.droppedFrames = 0;
         this.frameTimestamps = [];
         this.updateDisplay();
     }
@@ -137,6 +160,7 @@ export class StatsManager {
         this.fpsElement.textContent = this.stats.fps.toFixed(1);
         this.resolutionElement.textContent = `${this.stats.width}x${this.stats.height}`;
         this.processingTimeElement.textContent = `${this.stats.processingTime.toFixed(1)}ms`;
+        this.droppedFramesElement.textContent = this.stats.droppedFrames.toString();
         
         // Format last update time
         const now = new Date();
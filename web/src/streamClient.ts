@@ -0,0 +1,120 @@
+import {
+    DeviceStats, ConnectionStatus, StreamFrameInfo, StreamEncoding, StreamMessageType, STREAM_HEADER_SIZE
+} from './types.js';
+
+const RECONNECT_DELAY_MS = 2000;
+
+/**
+ * Callbacks invoked by the stream client
+ */
+export interface StreamClientHandlers {
+    onFrame(buffer: ArrayBuffer, info: StreamFrameInfo): void;
+    onConnected(): void;
+    onStats(stats: DeviceStats): void;
+    onStatus(status: ConnectionStatus, message?: string): void;
+}
+
+/**
+ * WebSocket client for the device frame streaming server
+ */
+export class FrameStreamClient {
+    private socket: WebSocket | null = null;
+    private reconnectTimer: number | null = null;
+    private shouldReconnect = false;
+
+    constructor(private readonly url: string, private readonly handlers: StreamClientHandlers) {}
+
+    /**
+     * Connect to the device and keep reconnecting until disconnect() is called
+     */
+    public connect(): void {
+        this.shouldReconnect = true;
+        this.openSocket();
+    }
+
+    /**
+     * Close the connection and stop reconnecting
+     */
+    public disconnect(): void {
+        this.shouldReconnect = false;
+        if (this.reconnectTimer !== null) {
+            window.clearTimeout(this.reconnectTimer);
+            this.reconnectTimer = null;
+        }
+        this.socket?.close();
+        this.socket = null;
+    }
+
+    private openSocket(): void {
+        this.handlers.onStatus(ConnectionStatus.CONNECTING, `Connecting to ${this.url}...`);
+
+        const socket = new WebSocket(this.url);
+        socket.binaryType = 'arraybuffer';
+
+        socket.onopen = () => {
+            // The server opens every connection with its latest keyframe
+            this.handlers.onConnected();
+            this.handlers.onStatus(ConnectionStatus.CONNECTED, 'Connected to device');
+        };
+
+        socket.onmessage = (event: MessageEvent) => {
+            if (event.data instanceof ArrayBuffer) {
+                this.handleMessage(event.data);
+            }
+        };
+
+        socket.onerror = () => {
+            this.handlers.onStatus(ConnectionStatus.ERROR, 'Stream connection error');
+        };
+
+        socket.onclose = () => {
+            this.socket = null;
+            this.handlers.onStatus(ConnectionStatus.DISCONNECTED, 'Device disconnected');
+            if (this.shouldReconnect) {
+                this.reconnectTimer = window.setTimeout(() => {
+                    this.reconnectTimer = null;
+                    this.openSocket();
+                }, RECONNECT_DELAY_MS);
+            }
+        };
+
+        this.socket = socket;
+    }
+
+    private handleMessage(buffer: ArrayBuffer): void {
+        if (buffer.byteLength < STREAM_HEADER_SIZE) {
+            console.warn('⚠️ Ignoring short stream message');
+            return;
+        }
+
+        const view = new DataView(buffer);
+        const type = view.getUint8(0);
+
+        if (type === StreamMessageType.STATS) {
+            const hasThresholds = buffer.byteLength >= STREAM_HEADER_SIZE + 25;
+            this.handlers.onStats({
+                fps: view.getFloat32(STREAM_HEADER_SIZE),
+                avgProcessingTime: view.getFloat32(STREAM_HEADER_SIZE + 4),
+                totalFrames: view.getUint32(STREAM_HEADER_SIZE + 8),
+                droppedFrames: view.getUint32(STREAM_HEADER_SIZE + 12),
+                qualityLevel: view.getUint8(STREAM_HEADER_SIZE + 16),
+                cannyLow: hasThresholds ? view.getFloat32(STREAM_HEADER_SIZE + 17) : undefined,
+                cannyHigh: hasThresholds ? view.getFloat32(STREAM_HEADER_SIZE + 21) : undefined
+            });
+        } else if (type === StreamMessageType.FRAME) {
+            // Only the header is read here; decoding happens in the renderer's worker
+            const encoding = view.getUint8(1) as StreamEncoding;
+            const keyframe = encoding !== StreamEncoding.DELTA_RLE ||
+                (buffer.byteLength > STREAM_HEADER_SIZE && (view.getUint8(STREAM_HEADER_SIZE) & 0x01) !== 0);
+            this.handlers.onFrame(buffer, {
+                encoding,
+                width: view.getUint16(2),
+                height: view.getUint16(4),
+                sequence: view.getUint32(8),
+                // Sensor timestamp in ns; millisecond precision is enough for display
+                timestamp: Number(view.getBigUint64(12)) / 1e6,
+                keyframe
+            });
+        }
+    }
+}
\ No newline at end of file
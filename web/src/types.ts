@@ -7,6 +7,7 @@ export interface FrameStats {
     height: number;
     frameCount: number;
     processingTime: number;
+    droppedFrames: number;
     lastUpdate: Date;
 }
 
@@ -29,6 +30,21 @@ export interface FrameData {
     format: 'grayscale' | 'rgb' | 'rgba';
     timestamp: number;
     algorithm: ProcessingAlgorithm;
+    processingTime?: number; // Device-reported processing time in ms, if known
+}
+
+/**
+ * Performance figures pushed by the device streaming server
+ */
+export interface DeviceStats {
+    fps: number;
+    avgProcessingTime: number;
+    totalFrames: number;
+    droppedFrames: number;
+    qualityLevel: number;
+    /** Canny thresholds of the latest frame; absent from older servers */
+    cannyLow?: number;
+    cannyHigh?: number;
 }
 
 /**
@@ -39,4 +55,49 @@ export enum ConnectionStatus {
     DISCONNECTED = 'disconnected',
     CONNECTING = 'connecting',
     ERROR = 'error'
-}
\ No newline at end of file
+}
+
+/**
+ * Device stream message layout (StreamProtocol.java): 20-byte big-endian header
+ * of type, encoding, width, height, reserved, sequence, sensor timestamp (ns)
+ */
+export const STREAM_HEADER_SIZE = 20;
+
+export enum StreamMessageType {
+    FRAME = 1,
+    STATS = 2
+}
+
+export enum StreamEncoding {
+    RAW8 = 0,
+    BITPACKED = 1,
+    DELTA_RLE = 2
+}
+
+/**
+ * Header fields of a device frame message, parsed on the main thread
+ */
+export interface StreamFrameInfo {
+    encoding: StreamEncoding;
+    width: number;
+    height: number;
+    sequence: number;
+    timestamp: number; // ms
+    keyframe: boolean; // false only for delta frames that need an earlier keyframe
+}
+
+/**
+ * Requests sent to the frame decode worker. ArrayBuffers are transferred, not copied.
+ */
+export type DecodeRequest =
+    | { kind: 'stream'; buffer: ArrayBuffer }
+    | { kind: 'raw'; buffer: ArrayBuffer; byteOffset: number; width: number; height: number; format: FrameData['format'] }
+    | { kind: 'base64'; data: string }
+    | { kind: 'reset' };
+
+/**
+ * Replies from the frame decode worker; exactly one per request except 'reset'
+ */
+export type DecodeResponse =
+    | { kind: 'frame'; bitmap: ImageBitmap; width: number; height: number; decodeTime: number }
+    | { kind: 'skipped'; reason: string };
\ No newline at end of file